@@ -211,3 +211,17 @@ CREATE TABLE IF NOT EXISTS rpc (
 
 CREATE INDEX IF NOT EXISTS idx_rpc_tenant_id_device_id ON rpc(tenant_id, device_id);
 
+
+CREATE TABLE IF NOT EXISTS rule_node_delayed_msg (
+    id uuid NOT NULL CONSTRAINT rule_node_delayed_msg_pkey PRIMARY KEY,
+    created_time bigint NOT NULL,
+    rule_node_id uuid NOT NULL,
+    entity_type varchar(32) NOT NULL,
+    entity_id uuid NOT NULL,
+    queue_partition int NOT NULL,
+    fire_ts bigint NOT NULL,
+    msg_data bytea NOT NULL,
+    CONSTRAINT fk_rule_node_delayed_msg_node_id FOREIGN KEY (rule_node_id) REFERENCES rule_node(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_rule_node_delayed_msg_node_id_and_partition ON rule_node_delayed_msg(rule_node_id, queue_partition, fire_ts);
@@ -25,6 +25,7 @@ import com.google.common.util.concurrent.MoreExecutors;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
@@ -33,16 +34,21 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.thingsboard.rule.engine.api.MailService;
 import org.thingsboard.rule.engine.api.SmsService;
+import org.thingsboard.rule.engine.api.TbNodeStateCache;
+import org.thingsboard.rule.engine.api.TbNodeStateCacheStats;
 import org.thingsboard.rule.engine.api.sms.SmsSenderFactory;
 import org.thingsboard.server.actors.service.ActorService;
+import org.thingsboard.server.actors.tenant.DebugEventsSampler;
 import org.thingsboard.server.actors.tenant.DebugTbRateLimits;
 import org.thingsboard.server.common.data.DataConstants;
 import org.thingsboard.server.common.data.Event;
 import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.plugin.ComponentLifecycleEvent;
 import org.thingsboard.server.common.msg.TbActorMsg;
 import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
 import org.thingsboard.server.common.msg.tools.TbRateLimits;
@@ -64,6 +70,7 @@ import org.thingsboard.server.dao.ota.OtaPackageService;
 import org.thingsboard.server.dao.relation.RelationService;
 import org.thingsboard.server.dao.resource.ResourceService;
 import org.thingsboard.server.dao.rule.RuleChainService;
+import org.thingsboard.server.dao.rule.RuleNodeDelayedMsgService;
 import org.thingsboard.server.dao.rule.RuleNodeStateService;
 import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
 import org.thingsboard.server.dao.tenant.TenantProfileService;
@@ -98,11 +105,12 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 
 @Slf4j
 @Component
@@ -186,6 +194,10 @@ public class ActorSystemContext {
     @Getter
     private RuleNodeStateService ruleNodeStateService;
 
+    @Autowired
+    @Getter
+    private RuleNodeDelayedMsgService ruleNodeDelayedMsgService;
+
     @Autowired
     private PartitionService partitionService;
 
@@ -205,6 +217,9 @@ public class ActorSystemContext {
     @Getter
     private EventService eventService;
 
+    @Autowired
+    private DebugEventsSampler debugEventsSampler;
+
     @Autowired
     @Getter
     private RelationService relationService;
@@ -317,6 +332,9 @@ public class ActorSystemContext {
     @Getter
     private EdgeRpcService edgeRpcService;
 
+    @Autowired
+    private ObjectProvider<EdgeRpcService> edgeRpcServiceProvider;
+
     @Lazy
     @Autowired(required = false)
     @Getter
@@ -348,6 +366,16 @@ public class ActorSystemContext {
     @Getter
     private long ruleNodeErrorPersistFrequency;
 
+    @Value("${actors.rule.node.state_cache.max_size}")
+    @Getter
+    private long ruleNodeStateCacheMaxSize;
+
+    @Value("${actors.rule.node.state_cache.ttl_ms}")
+    @Getter
+    private long ruleNodeStateCacheTtlMs;
+
+    private final ConcurrentMap<RuleNodeId, TbNodeStateCache<?, ?>> ruleNodeStateCaches = new ConcurrentHashMap<>();
+
     @Value("${actors.statistics.enabled}")
     @Getter
     private boolean statisticsEnabled;
@@ -368,6 +396,22 @@ public class ActorSystemContext {
                         jsInvokeStats.getRequests(), jsInvokeStats.getResponses(), jsInvokeStats.getFailures());
                 jsInvokeStats.reset();
             }
+            debugEventsSampler.printStats();
+            ruleNodeStateCaches.forEach((ruleNodeId, cache) -> {
+                TbNodeStateCacheStats stats = cache.getAndResetStats();
+                if (stats.getEntities() > 0 || stats.getEvictions() > 0) {
+                    log.info("Rule Node State Cache Stats [{}]: entities [{}] estimated size [{}] KB hits [{}] misses [{}] evictions [{}]", ruleNodeId,
+                            stats.getEntities(), stats.getEstimatedBytes() / 1024, stats.getHits(), stats.getMisses(), stats.getEvictions());
+                }
+            });
+            if (actorSystem != null) {
+                for (TbActorTimerStats timerStats : actorSystem.getTimer().getAndResetStats()) {
+                    if (timerStats.getPendingTimers() > 0 || timerStats.getFiredTimers() > 0) {
+                        log.info("Actor Timer Stats [{}]: pending [{}] fired [{}] avg lag [{}] ms max lag [{}] ms", timerStats.getActorType(),
+                                timerStats.getPendingTimers(), timerStats.getFiredTimers(), timerStats.getAvgLagMs(), timerStats.getMaxLagMs());
+                    }
+                }
+            }
         }
     }
 
@@ -426,6 +470,16 @@ public class ActorSystemContext {
         return actorSystem.getScheduler();
     }
 
+    public <K extends EntityId, V> TbNodeStateCache<K, V> createRuleNodeStateCache(RuleNodeId ruleNodeId, ToLongFunction<V> sizeEstimator) {
+        TbNodeStateCache<K, V> cache = new TbNodeStateCache<>(ruleNodeStateCacheMaxSize, ruleNodeStateCacheTtlMs, sizeEstimator);
+        ruleNodeStateCaches.put(ruleNodeId, cache);
+        return cache;
+    }
+
+    public void removeRuleNodeStateCache(RuleNodeId ruleNodeId) {
+        ruleNodeStateCaches.remove(ruleNodeId);
+    }
+
     public void persistError(TenantId tenantId, EntityId entityId, String method, Exception e) {
         Event event = new Event();
         event.setTenantId(tenantId);
@@ -477,6 +531,17 @@ public class ActorSystemContext {
         return partitionService.resolve(serviceType, queueName, tenantId, entityId);
     }
 
+    public List<Integer> getMyPartitions(ServiceType serviceType, TenantId tenantId) {
+        return partitionService.getMyPartitions(serviceType, tenantId);
+    }
+
+    /**
+     * Returns the edge RPC service of this node, or null if the node does not serve the edge sessions.
+     */
+    public EdgeRpcService getLocalEdgeRpcService() {
+        return edgeRpcServiceProvider.getIfAvailable();
+    }
+
 
     public String getServiceId() {
         return serviceInfoProvider.getServiceId();
@@ -499,15 +564,15 @@ public class ActorSystemContext {
     }
 
     private void persistDebugAsync(TenantId tenantId, EntityId entityId, String type, TbMsg tbMsg, String relationType, Throwable error) {
-        if (checkLimits(tenantId, tbMsg, error)) {
-            try {
-                Event event = new Event();
-                event.setTenantId(tenantId);
-                event.setEntityId(entityId);
-                event.setType(DataConstants.DEBUG_RULE_NODE);
-
-                String metadata = mapper.writeValueAsString(tbMsg.getMetaData().getData());
-
+        if (debugEventsSampler.isSampled(tenantId, entityId, tbMsg) && checkLimits(tenantId, tbMsg, error)) {
+            Event event = new Event();
+            event.setTenantId(tenantId);
+            event.setEntityId(entityId);
+            event.setType(DataConstants.DEBUG_RULE_NODE);
+
+            // metadata may be modified by the next rule nodes, while the body is built by the events writer
+            TbMsgMetaData metaData = tbMsg.getMetaData().copy();
+            ListenableFuture<Void> future = eventService.saveBatchedAsync(event, () -> {
                 ObjectNode node = mapper.createObjectNode()
                         .put("type", type)
                         .put("server", getServiceId())
@@ -517,29 +582,28 @@ public class ActorSystemContext {
                         .put("msgType", tbMsg.getType())
                         .put("dataType", tbMsg.getDataType().name())
                         .put("relationType", relationType)
-                        .put("data", tbMsg.getData())
-                        .put("metadata", metadata);
-
+                        .put("data", tbMsg.getData());
+                try {
+                    node.put("metadata", mapper.writeValueAsString(metaData.getData()));
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to serialize rule node debug message metadata", e);
+                }
                 if (error != null) {
-                    node = node.put("error", toString(error));
+                    node.put("error", toString(error));
                 }
+                return node;
+            });
+            Futures.addCallback(future, new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(@Nullable Void result) {
 
-                event.setBody(node);
-                ListenableFuture<Event> future = eventService.saveAsync(event);
-                Futures.addCallback(future, new FutureCallback<Event>() {
-                    @Override
-                    public void onSuccess(@Nullable Event event) {
-
-                    }
+                }
 
-                    @Override
-                    public void onFailure(Throwable th) {
-                        log.error("Could not save debug Event for Node", th);
-                    }
-                }, MoreExecutors.directExecutor());
-            } catch (IOException ex) {
-                log.warn("Failed to persist rule node debug message", ex);
-            }
+                @Override
+                public void onFailure(Throwable th) {
+                    log.debug("Could not save debug Event for Node", th);
+                }
+            }, MoreExecutors.directExecutor());
         }
     }
 
@@ -606,13 +670,13 @@ public class ActorSystemContext {
 
     public void schedulePeriodicMsgWithDelay(TbActorRef ctx, TbActorMsg msg, long delayInMs, long periodInMs) {
         log.debug("Scheduling periodic msg {} every {} ms with delay {} ms", msg, periodInMs, delayInMs);
-        getScheduler().scheduleWithFixedDelay(() -> ctx.tell(msg), delayInMs, periodInMs, TimeUnit.MILLISECONDS);
+        actorSystem.getTimer().schedulePeriodic(ctx, msg, delayInMs, periodInMs);
     }
 
     public void scheduleMsgWithDelay(TbActorRef ctx, TbActorMsg msg, long delayInMs) {
         log.debug("Scheduling msg {} with delay {} ms", msg, delayInMs);
         if (delayInMs > 0) {
-            getScheduler().schedule(() -> ctx.tell(msg), delayInMs, TimeUnit.MILLISECONDS);
+            actorSystem.getTimer().schedule(ctx, msg, delayInMs);
         } else {
             ctx.tell(msg);
         }
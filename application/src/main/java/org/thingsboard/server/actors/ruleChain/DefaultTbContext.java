@@ -17,6 +17,7 @@ package org.thingsboard.server.actors.ruleChain;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.netty.channel.EventLoopGroup;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.StringUtils;
@@ -29,6 +30,7 @@ import org.thingsboard.rule.engine.api.RuleEngineTelemetryService;
 import org.thingsboard.rule.engine.api.ScriptEngine;
 import org.thingsboard.rule.engine.api.SmsService;
 import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeStateCache;
 import org.thingsboard.rule.engine.api.TbRelationTypes;
 import org.thingsboard.rule.engine.api.sms.SmsSenderFactory;
 import org.thingsboard.server.actors.ActorSystemContext;
@@ -46,11 +48,14 @@ import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.EdgeId;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.RuleChainId;
+import org.thingsboard.server.common.data.id.RuleNodeDelayedMsgId;
 import org.thingsboard.server.common.data.id.RuleNodeId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.PageLink;
+import org.thingsboard.server.common.data.page.TimePageLink;
 import org.thingsboard.server.common.data.rule.RuleNode;
+import org.thingsboard.server.common.data.rule.RuleNodeDelayedMsg;
 import org.thingsboard.server.common.data.rule.RuleNodeState;
 import org.thingsboard.server.common.msg.TbActorMsg;
 import org.thingsboard.server.common.msg.TbMsg;
@@ -79,12 +84,15 @@ import org.thingsboard.server.dao.user.UserService;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.queue.TbQueueCallback;
 import org.thingsboard.server.queue.TbQueueMsgMetadata;
+import org.thingsboard.server.service.edge.rpc.EdgeRpcService;
 import org.thingsboard.server.service.script.RuleNodeJsScriptEngine;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 /**
  * Created by ashvayka on 19.03.18.
@@ -332,7 +340,12 @@ class DefaultTbContext implements TbContext {
 
     @Override
     public void onEdgeEventUpdate(TenantId tenantId, EdgeId edgeId) {
-        mainCtx.getClusterService().onEdgeEventUpdate(tenantId, edgeId);
+        EdgeRpcService edgeRpcService = mainCtx.getLocalEdgeRpcService();
+        if (edgeRpcService != null && edgeRpcService.hasSession(edgeId)) {
+            edgeRpcService.onEdgeEvent(edgeId);
+        } else {
+            mainCtx.getClusterService().onEdgeEventUpdate(tenantId, edgeId);
+        }
     }
 
     public <E, I extends EntityId> TbMsg entityActionMsg(E entity, I id, RuleNodeId ruleNodeId, String action) {
@@ -581,6 +594,23 @@ class DefaultTbContext implements TbContext {
         return mainCtx.getRuleNodeStateService().save(getTenantId(), state);
     }
 
+    @Override
+    public ListenableFuture<Void> saveRuleNodeStateAsync(RuleNodeState state) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}][{}] Schedule persisting of Rule Node State for entity: {}", getTenantId(), getSelfId(), state.getEntityId(), state.getStateData());
+        }
+        state.setRuleNodeId(getSelfId());
+        return mainCtx.getRuleNodeStateService().saveAsync(getTenantId(), state);
+    }
+
+    @Override
+    public void flushRuleNodeStates() {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}] Going to flush rule node states", getTenantId(), getSelfId());
+        }
+        mainCtx.getRuleNodeStateService().flush(getTenantId(), getSelfId());
+    }
+
     @Override
     public void clearRuleNodeStates() {
         if (log.isDebugEnabled()) {
@@ -589,6 +619,11 @@ class DefaultTbContext implements TbContext {
         mainCtx.getRuleNodeStateService().removeByRuleNodeId(getTenantId(), getSelfId());
     }
 
+    @Override
+    public <K extends EntityId, V> TbNodeStateCache<K, V> createNodeStateCache(ToLongFunction<V> sizeEstimator) {
+        return mainCtx.createRuleNodeStateCache(getSelfId(), sizeEstimator);
+    }
+
     @Override
     public void removeRuleNodeStateForEntity(EntityId entityId) {
         if (log.isDebugEnabled()) {
@@ -597,6 +632,41 @@ class DefaultTbContext implements TbContext {
         mainCtx.getRuleNodeStateService().removeByRuleNodeIdAndEntityId(getTenantId(), getSelfId(), entityId);
     }
 
+    @Override
+    public ListenableFuture<RuleNodeDelayedMsg> saveRuleNodeDelayedMsg(RuleNodeDelayedMsg delayedMsg) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}][{}] Persist delayed msg with fire ts: {}", getTenantId(), getSelfId(), delayedMsg.getEntityId(), delayedMsg.getFireTs());
+        }
+        delayedMsg.setRuleNodeId(getSelfId());
+        delayedMsg.setPartition(mainCtx.resolve(ServiceType.TB_RULE_ENGINE, getTenantId(), delayedMsg.getEntityId()).getPartition().orElse(0));
+        return mainCtx.getRuleNodeDelayedMsgService().saveAsync(getTenantId(), delayedMsg);
+    }
+
+    @Override
+    public ListenableFuture<PageData<RuleNodeDelayedMsg>> findRuleNodeDelayedMsgs(TimePageLink pageLink) {
+        List<Integer> partitions = mainCtx.getMyPartitions(ServiceType.TB_RULE_ENGINE, getTenantId());
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}] Fetch delayed msgs of partitions: {}", getTenantId(), getSelfId(), partitions);
+        }
+        return mainCtx.getRuleNodeDelayedMsgService().findByRuleNodeIdAsync(getTenantId(), getSelfId(), partitions, pageLink);
+    }
+
+    @Override
+    public ListenableFuture<Void> removeRuleNodeDelayedMsg(RuleNodeDelayedMsgId delayedMsgId) {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}][{}] Remove delayed msg.", getTenantId(), getSelfId(), delayedMsgId);
+        }
+        return mainCtx.getRuleNodeDelayedMsgService().removeByIdAsync(getTenantId(), delayedMsgId);
+    }
+
+    @Override
+    public ListenableFuture<Void> clearRuleNodeDelayedMsgs() {
+        if (log.isDebugEnabled()) {
+            log.debug("[{}][{}] Going to clear delayed msgs", getTenantId(), getSelfId());
+        }
+        return mainCtx.getRuleNodeDelayedMsgService().removeByRuleNodeIdAsync(getTenantId(), getSelfId());
+    }
+
     @Override
     public void addTenantProfileListener(Consumer<TenantProfile> listener) {
         mainCtx.getTenantProfileCache().addListener(getTenantId(), getSelfId(), listener);
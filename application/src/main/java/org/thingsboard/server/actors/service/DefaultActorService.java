@@ -66,6 +66,12 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
     @Value("${actors.system.scheduler_pool_size:1}")
     private int schedulerPoolSize;
 
+    @Value("${actors.system.timer_tick_duration_ms:10}")
+    private long timerTickDurationMs;
+
+    @Value("${actors.system.timer_wheel_size:512}")
+    private int timerWheelSize;
+
     @Value("${actors.system.app_dispatcher_pool_size:1}")
     private int appDispatcherSize;
 
@@ -82,7 +88,8 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
     public void initActorSystem() {
         log.info("Initializing actor system.");
         actorContext.setActorService(this);
-        TbActorSystemSettings settings = new TbActorSystemSettings(actorThroughput, schedulerPoolSize, maxActorInitAttempts);
+        TbActorSystemSettings settings = new TbActorSystemSettings(actorThroughput, schedulerPoolSize, maxActorInitAttempts,
+                timerTickDurationMs, timerWheelSize);
         system = new DefaultTbActorSystem(settings);
 
         system.createDispatcher(APP_DISPATCHER_NAME, initDispatcherExecutor(APP_DISPATCHER_NAME, appDispatcherSize));
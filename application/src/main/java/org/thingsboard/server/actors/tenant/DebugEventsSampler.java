@@ -0,0 +1,159 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.tenant;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbMsg;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which rule node debug events are persisted.
+ * Sampling is consistent per message, so either all or none of the events of a single message are kept for the tenant,
+ * and the IN and OUT events of the same message are kept together for the rule node.
+ * The size of the persisted debug events is additionally limited by the byte budget per tenant.
+ */
+@Slf4j
+@Component
+public class DebugEventsSampler {
+
+    static final int SAMPLING_SCALE = 10000;
+    private static final int EVENT_OVERHEAD_BYTES = 256;
+
+    @Value("${actors.rule.debug_events.tenant_sampling_rate:1.0}")
+    private double tenantSamplingRate;
+
+    @Value("${actors.rule.debug_events.node_sampling_rate:1.0}")
+    private double nodeSamplingRate;
+
+    @Value("${actors.rule.debug_events.sampling_rate_overrides:}")
+    private String samplingRateOverrides;
+
+    @Value("${actors.rule.debug_events.max_bytes_per_tenant:0}")
+    private long maxBytesPerTenant;
+
+    @Value("${actors.rule.debug_events.budget_window_ms:60000}")
+    private long budgetWindowMs;
+
+    private final ConcurrentMap<TenantId, TenantBudget> budgets = new ConcurrentHashMap<>();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private Map<UUID, Integer> thresholdOverrides;
+    private int tenantThreshold;
+    private int nodeThreshold;
+
+    @PostConstruct
+    public void init() {
+        tenantThreshold = toThreshold(tenantSamplingRate);
+        nodeThreshold = toThreshold(nodeSamplingRate);
+        thresholdOverrides = new HashMap<>();
+        if (StringUtils.isNotBlank(samplingRateOverrides)) {
+            for (String override : samplingRateOverrides.split(",")) {
+                String[] parts = override.trim().split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Failed to parse debug events sampling rate override: " + override);
+                }
+                thresholdOverrides.put(UUID.fromString(parts[0].trim()), toThreshold(Double.parseDouble(parts[1].trim())));
+            }
+        }
+    }
+
+    public boolean isSampled(TenantId tenantId, EntityId ruleNodeId, TbMsg tbMsg) {
+        long msgHash = tbMsg.getId().hashCode();
+        int threshold = thresholdOverrides.getOrDefault(tenantId.getId(), tenantThreshold);
+        if (threshold < SAMPLING_SCALE && bucket(msgHash) >= threshold) {
+            sampledOut.incrementAndGet();
+            return false;
+        }
+        threshold = thresholdOverrides.getOrDefault(ruleNodeId.getId(), nodeThreshold);
+        if (threshold < SAMPLING_SCALE && bucket(msgHash * 31 + ruleNodeId.getId().hashCode()) >= threshold) {
+            sampledOut.incrementAndGet();
+            return false;
+        }
+        if (maxBytesPerTenant > 0) {
+            TenantBudget budget = budgets.computeIfAbsent(tenantId, id -> new TenantBudget());
+            if (!budget.tryConsume(estimateSize(tbMsg), System.currentTimeMillis())) {
+                overBudget.incrementAndGet();
+                if (log.isTraceEnabled()) {
+                    log.trace("[{}] Debug events byte budget exceeded: {}", tenantId, tbMsg);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void printStats() {
+        long sampledOutCount = sampledOut.getAndSet(0);
+        long overBudgetCount = overBudget.getAndSet(0);
+        if (sampledOutCount > 0 || overBudgetCount > 0) {
+            log.info("Rule Node Debug Events Stats: sampled out [{}] over budget [{}]", sampledOutCount, overBudgetCount);
+        }
+    }
+
+    private static int toThreshold(double rate) {
+        if (rate < 0.0 || rate > 1.0) {
+            throw new IllegalArgumentException("Debug events sampling rate should be in range [0, 1]: " + rate);
+        }
+        return (int) Math.round(rate * SAMPLING_SCALE);
+    }
+
+    private static int bucket(long hash) {
+        // finalizer of the MurmurHash3, spreads the bits of the correlated message and rule node hashes
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) Math.floorMod(hash, (long) SAMPLING_SCALE);
+    }
+
+    private static long estimateSize(TbMsg tbMsg) {
+        long size = EVENT_OVERHEAD_BYTES + (tbMsg.getData() != null ? tbMsg.getData().length() : 0);
+        for (Map.Entry<String, String> entry : tbMsg.getMetaData().getData().entrySet()) {
+            size += entry.getKey().length() + (entry.getValue() != null ? entry.getValue().length() : 0);
+        }
+        return size;
+    }
+
+    private class TenantBudget {
+        private long windowStartTs;
+        private long consumedBytes;
+
+        synchronized boolean tryConsume(long bytes, long ts) {
+            if (ts - windowStartTs >= budgetWindowMs) {
+                windowStartTs = ts;
+                consumedBytes = 0;
+            }
+            if (consumedBytes + bytes > maxBytesPerTenant) {
+                return false;
+            }
+            consumedBytes += bytes;
+            return true;
+        }
+    }
+}
@@ -115,9 +115,9 @@ public class AlarmController extends BaseController {
             logEntityAction(alarm.getOriginator(), alarm,
                     getCurrentUser().getCustomerId(),
                     ActionType.ALARM_DELETE, null);
+            Boolean deleted = alarmService.deleteAlarm(getTenantId(), alarmId);
             sendEntityNotificationMsg(getTenantId(), alarmId, EdgeEventActionType.DELETED);
-
-            return alarmService.deleteAlarm(getTenantId(), alarmId);
+            return deleted;
          } catch (Exception e) {
             throw handleException(e);
         }
@@ -26,16 +26,22 @@ import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.msg.tools.SchedulerUtils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class BaseApiUsageState {
-    private final Map<ApiUsageRecordKey, Long> currentCycleValues = new ConcurrentHashMap<>();
-    private final Map<ApiUsageRecordKey, Long> currentHourValues = new ConcurrentHashMap<>();
+    private static final ApiUsageRecordKey[] KEYS = ApiUsageRecordKey.values();
+
+    // indexed by the ordinal of the record key, guarded by the update lock of the state service
+    private final long[] currentCycleValues = new long[KEYS.length];
+    private final long[] currentHourValues = new long[KEYS.length];
+    // bit per record key, which values were changed since the last flush
+    private int dirtyKeys;
 
     @Getter
     private final ApiUsageState apiUsageState;
@@ -54,42 +60,55 @@ public abstract class BaseApiUsageState {
     }
 
     public void put(ApiUsageRecordKey key, Long value) {
-        currentCycleValues.put(key, value);
+        currentCycleValues[key.ordinal()] = value;
     }
 
     public void putHourly(ApiUsageRecordKey key, Long value) {
-        currentHourValues.put(key, value);
+        currentHourValues[key.ordinal()] = value;
     }
 
     public long add(ApiUsageRecordKey key, long value) {
-        long result = currentCycleValues.getOrDefault(key, 0L) + value;
-        currentCycleValues.put(key, result);
-        return result;
+        dirtyKeys |= 1 << key.ordinal();
+        return currentCycleValues[key.ordinal()] += value;
     }
 
     public long get(ApiUsageRecordKey key) {
-        return currentCycleValues.getOrDefault(key, 0L);
+        return currentCycleValues[key.ordinal()];
     }
 
     public long addToHourly(ApiUsageRecordKey key, long value) {
-        long result = currentHourValues.getOrDefault(key, 0L) + value;
-        currentHourValues.put(key, result);
-        return result;
+        dirtyKeys |= 1 << key.ordinal();
+        return currentHourValues[key.ordinal()] += value;
+    }
+
+    public long getHourly(ApiUsageRecordKey key) {
+        return currentHourValues[key.ordinal()];
+    }
+
+    public boolean isDirty() {
+        return dirtyKeys != 0;
+    }
+
+    public List<ApiUsageRecordKey> getAndResetDirtyKeys() {
+        List<ApiUsageRecordKey> keys = new ArrayList<>(Integer.bitCount(dirtyKeys));
+        for (ApiUsageRecordKey key : KEYS) {
+            if ((dirtyKeys & (1 << key.ordinal())) != 0) {
+                keys.add(key);
+            }
+        }
+        dirtyKeys = 0;
+        return keys;
     }
 
     public void setHour(long currentHourTs) {
         this.currentHourTs = currentHourTs;
-        for (ApiUsageRecordKey key : ApiUsageRecordKey.values()) {
-            currentHourValues.put(key, 0L);
-        }
+        Arrays.fill(currentHourValues, 0L);
     }
 
     public void setCycles(long currentCycleTs, long nextCycleTs) {
         this.currentCycleTs = currentCycleTs;
         this.nextCycleTs = nextCycleTs;
-        for (ApiUsageRecordKey key : ApiUsageRecordKey.values()) {
-            currentCycleValues.put(key, 0L);
-        }
+        Arrays.fill(currentCycleValues, 0L);
     }
 
     public ApiUsageStateValue getFeatureValue(ApiFeature feature) {
@@ -69,6 +69,7 @@ import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -119,12 +120,18 @@ public class DefaultTbApiUsageStateService extends TbApplicationEventListener<Pa
 
     private final Set<EntityId> deletedEntities = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
+    // States with the counters changed since the last flush, guarded by the update lock
+    private Set<BaseApiUsageState> dirtyStates = new HashSet<>();
+
     @Value("${usage.stats.report.enabled:true}")
     private boolean enabled;
 
     @Value("${usage.stats.check.cycle:60000}")
     private long nextCycleCheckInterval;
 
+    @Value("${usage.stats.flush_interval:10000}")
+    private long flushInterval;
+
     private final Lock updateLock = new ReentrantLock();
 
     private final ExecutorService mailExecutor;
@@ -155,6 +162,13 @@ public class DefaultTbApiUsageStateService extends TbApplicationEventListener<Pa
         if (enabled) {
             log.info("Starting api usage service.");
             scheduler.scheduleAtFixedRate(this::checkStartOfNextCycle, nextCycleCheckInterval, nextCycleCheckInterval, TimeUnit.MILLISECONDS);
+            scheduler.scheduleAtFixedRate(() -> {
+                try {
+                    flushUsageStates();
+                } catch (Exception e) {
+                    log.warn("Failed to flush api usage states", e);
+                }
+            }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
             log.info("Started api usage service.");
         }
     }
@@ -178,41 +192,84 @@ public class DefaultTbApiUsageStateService extends TbApplicationEventListener<Pa
     private void processEntityUsageStats(TenantId tenantId, EntityId entityId, List<UsageStatsKVProto> values) {
         if (deletedEntities.contains(entityId)) return;
 
-        BaseApiUsageState usageState;
-        List<TsKvEntry> updatedEntries;
-        Map<ApiFeature, ApiUsageStateValue> result;
-
         updateLock.lock();
         try {
-            usageState = getOrFetchState(tenantId, entityId);
-            long ts = usageState.getCurrentCycleTs();
-            long hourTs = usageState.getCurrentHourTs();
+            BaseApiUsageState usageState = getOrFetchState(tenantId, entityId);
             long newHourTs = SchedulerUtils.getStartOfCurrentHour();
-            if (newHourTs != hourTs) {
+            if (newHourTs != usageState.getCurrentHourTs()) {
+                saveDirtyCounts(usageState);
                 usageState.setHour(newHourTs);
             }
-            updatedEntries = new ArrayList<>(ApiUsageRecordKey.values().length);
-            Set<ApiFeature> apiFeatures = new HashSet<>();
             for (UsageStatsKVProto kvProto : values) {
                 ApiUsageRecordKey recordKey = ApiUsageRecordKey.valueOf(kvProto.getKey());
-                long newValue = usageState.add(recordKey, kvProto.getValue());
-                updatedEntries.add(new BasicTsKvEntry(ts, new LongDataEntry(recordKey.getApiCountKey(), newValue)));
-                long newHourlyValue = usageState.addToHourly(recordKey, kvProto.getValue());
-                updatedEntries.add(new BasicTsKvEntry(newHourTs, new LongDataEntry(recordKey.getApiCountKey() + HOURLY, newHourlyValue)));
-                apiFeatures.add(recordKey.getApiFeature());
+                usageState.add(recordKey, kvProto.getValue());
+                usageState.addToHourly(recordKey, kvProto.getValue());
             }
-            if (usageState.getEntityType() == EntityType.TENANT && !usageState.getEntityId().equals(TenantId.SYS_TENANT_ID)) {
-                result = ((TenantApiUsageState) usageState).checkStateUpdatedDueToThreshold(apiFeatures);
-            } else {
-                result = Collections.emptyMap();
+            if (usageState.isDirty()) {
+                dirtyStates.add(usageState);
             }
         } finally {
             updateLock.unlock();
         }
-        tsWsService.saveAndNotifyInternal(tenantId, usageState.getApiUsageState().getId(), updatedEntries, VOID_CALLBACK);
-        if (!result.isEmpty()) {
-            persistAndNotify(usageState, result);
+    }
+
+    /**
+     * Persists the counters changed since the previous flush and checks the thresholds of the affected tenants.
+     * The reports of all the core services for the same entity are coalesced into a single telemetry update.
+     */
+    void flushUsageStates() {
+        Map<BaseApiUsageState, List<TsKvEntry>> updatedEntries = new HashMap<>();
+        Map<BaseApiUsageState, Map<ApiFeature, ApiUsageStateValue>> updatedFeatures = new HashMap<>();
+        updateLock.lock();
+        try {
+            if (dirtyStates.isEmpty()) {
+                return;
+            }
+            Set<BaseApiUsageState> states = dirtyStates;
+            dirtyStates = new HashSet<>();
+            for (BaseApiUsageState usageState : states) {
+                if (deletedEntities.contains(usageState.getEntityId())) {
+                    continue;
+                }
+                List<ApiUsageRecordKey> keys = usageState.getAndResetDirtyKeys();
+                if (keys.isEmpty()) {
+                    continue;
+                }
+                updatedEntries.put(usageState, toCountEntries(usageState, keys));
+                Set<ApiFeature> apiFeatures = keys.stream().map(ApiUsageRecordKey::getApiFeature).collect(Collectors.toSet());
+                if (usageState.getEntityType() == EntityType.TENANT && !usageState.getEntityId().equals(TenantId.SYS_TENANT_ID)) {
+                    Map<ApiFeature, ApiUsageStateValue> result = ((TenantApiUsageState) usageState).checkStateUpdatedDueToThreshold(apiFeatures);
+                    if (!result.isEmpty()) {
+                        updatedFeatures.put(usageState, result);
+                    }
+                }
+            }
+        } finally {
+            updateLock.unlock();
+        }
+        updatedEntries.forEach((usageState, entries) ->
+                tsWsService.saveAndNotifyInternal(usageState.getTenantId(), usageState.getApiUsageState().getId(), entries, VOID_CALLBACK));
+        updatedFeatures.forEach(this::persistAndNotify);
+        log.debug("Flushed api usage counters of {} entities, {} states updated", updatedEntries.size(), updatedFeatures.size());
+    }
+
+    private void saveDirtyCounts(BaseApiUsageState usageState) {
+        if (usageState.isDirty()) {
+            // counters of the previous hour or cycle are about to be reset
+            tsWsService.saveAndNotifyInternal(usageState.getTenantId(), usageState.getApiUsageState().getId(),
+                    toCountEntries(usageState, usageState.getAndResetDirtyKeys()), VOID_CALLBACK);
+        }
+    }
+
+    private List<TsKvEntry> toCountEntries(BaseApiUsageState usageState, List<ApiUsageRecordKey> keys) {
+        long ts = usageState.getCurrentCycleTs();
+        long hourTs = usageState.getCurrentHourTs();
+        List<TsKvEntry> entries = new ArrayList<>(keys.size() * 2);
+        for (ApiUsageRecordKey recordKey : keys) {
+            entries.add(new BasicTsKvEntry(ts, new LongDataEntry(recordKey.getApiCountKey(), usageState.get(recordKey))));
+            entries.add(new BasicTsKvEntry(hourTs, new LongDataEntry(recordKey.getApiCountKey() + HOURLY, usageState.getHourly(recordKey))));
         }
+        return entries;
     }
 
     @Override
@@ -398,6 +455,7 @@ public class DefaultTbApiUsageStateService extends TbApplicationEventListener<Pa
             long now = System.currentTimeMillis();
             myUsageStates.values().forEach(state -> {
                 if ((state.getNextCycleTs() < now) && (now - state.getNextCycleTs() < TimeUnit.HOURS.toMillis(1))) {
+                    saveDirtyCounts(state);
                     state.setCycles(state.getNextCycleTs(), SchedulerUtils.getStartOfNextNextMonth());
                     saveNewCounts(state, Arrays.asList(ApiUsageRecordKey.values()));
                     if (state.getEntityType() == EntityType.TENANT && !state.getEntityId().equals(TenantId.SYS_TENANT_ID)) {
@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.thingsboard.server.common.data.EdgeUtils;
@@ -54,6 +55,7 @@ import org.thingsboard.server.dao.rule.RuleChainService;
 import org.thingsboard.server.dao.user.UserService;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.queue.util.TbCoreComponent;
+import org.thingsboard.server.service.edge.rpc.EdgeRpcService;
 import org.thingsboard.server.service.executors.DbCallbackExecutorService;
 import org.thingsboard.server.service.queue.TbClusterService;
 
@@ -98,6 +100,10 @@ public class DefaultEdgeNotificationService implements EdgeNotificationService {
     @Autowired
     private DbCallbackExecutorService dbCallbackExecutorService;
 
+    // the service is present only when edges are enabled on the core node
+    @Autowired
+    private ObjectProvider<EdgeRpcService> edgeRpcServiceProvider;
+
     private ExecutorService tsCallBackExecutor;
 
     @PostConstruct
@@ -142,7 +148,13 @@ public class DefaultEdgeNotificationService implements EdgeNotificationService {
         Futures.addCallback(future, new FutureCallback<EdgeEvent>() {
             @Override
             public void onSuccess(@Nullable EdgeEvent result) {
-                clusterService.onEdgeEventUpdate(tenantId, edgeId);
+                EdgeRpcService edgeRpcService = edgeRpcServiceProvider.getIfAvailable();
+                if (edgeRpcService != null && edgeRpcService.hasSession(edgeId)) {
+                    // edge is connected to this node, so there is no need to go through the queue
+                    edgeRpcService.onEdgeEvent(edgeId);
+                } else {
+                    clusterService.onEdgeEventUpdate(tenantId, edgeId);
+                }
             }
 
             @Override
@@ -21,6 +21,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.thingsboard.server.actors.service.ActorService;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.alarm.AlarmService;
 import org.thingsboard.server.dao.asset.AssetService;
 import org.thingsboard.server.dao.attributes.AttributesService;
@@ -230,4 +231,7 @@ public class EdgeContextComponent {
     @Autowired
     @Getter
     private DbCallbackExecutorService dbCallbackExecutor;
+
+    @Autowired
+    private StatsFactory statsFactory;
 }
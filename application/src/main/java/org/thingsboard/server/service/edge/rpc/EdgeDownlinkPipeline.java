@@ -0,0 +1,415 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.edge.rpc;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.thingsboard.server.common.data.edge.EdgeEvent;
+import org.thingsboard.server.common.data.id.EdgeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.page.SortOrder;
+import org.thingsboard.server.common.data.page.TimePageLink;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.gen.edge.DownlinkMsg;
+import org.thingsboard.server.gen.edge.DownlinkResponseMsg;
+import org.thingsboard.server.gen.edge.ResponseMsg;
+import org.thingsboard.server.service.edge.EdgeContextComponent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-session downlink pipeline of the edge events.
+ * <p>
+ * Keeps at most {@code maxPendingDownlinkMsgs} downlink messages unacknowledged by the edge,
+ * prefetches the next page of edge events while acknowledgements arrive and respects gRPC flow control.
+ * The queue start ts of the edge is moved forward only over the events that were acknowledged in order.
+ * <p>
+ * Downlink messages are prepared under the pipeline monitor, but written to the session only after the monitor
+ * is released, so the pipeline never holds its monitor while waiting for the session's downlink lock.
+ */
+@Slf4j
+class EdgeDownlinkPipeline {
+
+    private static final String STATS_KEY = "edges.downlink";
+    private static final String LAG_STATS_KEY = "edges.downlink.lag";
+
+    private final EdgeGrpcSession session;
+    private final EdgeContextComponent ctx;
+    private final UUID sessionId;
+    private final TenantId tenantId;
+    private final EdgeId edgeId;
+    private final int pageSize;
+    private final int maxPendingDownlinkMsgs;
+    private final long ackTimeoutMs;
+
+    private final Deque<PendingDownlink> queued = new ArrayDeque<>();
+    private final Deque<PendingDownlink> unacked = new ArrayDeque<>();
+    private final Map<Integer, PendingDownlink> inFlight = new LinkedHashMap<>();
+    private final Queue<ResponseMsg> outbox = new ArrayDeque<>();
+
+    private final DefaultCounter sentMsgs;
+    private final DefaultCounter ackedMsgs;
+    private final DefaultCounter failedMsgs;
+    private final DefaultCounter retriedMsgs;
+    private final Timer lagTimer;
+
+    private boolean started;
+    private boolean stopped;
+    private boolean scanRequested;
+    private boolean fetchInProgress;
+    private TimePageLink pageLink;
+    private long nextStartTs;
+    private long committedTs;
+    private int committedSinceUpdate;
+    private int msgIdSeq;
+    private boolean draining;
+    private ScheduledFuture<?> ackTimeoutCheck;
+
+    EdgeDownlinkPipeline(EdgeGrpcSession session, EdgeContextComponent ctx, TenantId tenantId, EdgeId edgeId) {
+        this.session = session;
+        this.ctx = ctx;
+        this.sessionId = session.getSessionId();
+        this.tenantId = tenantId;
+        this.edgeId = edgeId;
+        this.pageSize = ctx.getEdgeEventStorageSettings().getMaxReadRecordsCount();
+        this.maxPendingDownlinkMsgs = ctx.getEdgeEventStorageSettings().getMaxPendingDownlinkMsgs();
+        this.ackTimeoutMs = ctx.getEdgeEventStorageSettings().getDownlinkAckTimeout();
+
+        StatsFactory statsFactory = ctx.getStatsFactory();
+        String edgeIdStr = edgeId.getId().toString();
+        this.sentMsgs = statsFactory.createDefaultCounter(STATS_KEY, "edgeId", edgeIdStr, "statsName", "sentMsgs");
+        this.ackedMsgs = statsFactory.createDefaultCounter(STATS_KEY, "edgeId", edgeIdStr, "statsName", "ackedMsgs");
+        this.failedMsgs = statsFactory.createDefaultCounter(STATS_KEY, "edgeId", edgeIdStr, "statsName", "failedMsgs");
+        this.retriedMsgs = statsFactory.createDefaultCounter(STATS_KEY, "edgeId", edgeIdStr, "statsName", "retriedMsgs");
+        this.lagTimer = statsFactory.createTimer(LAG_STATS_KEY, "edgeId", edgeIdStr);
+    }
+
+    void start(long queueStartTs, ScheduledExecutorService scheduler) {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            log.debug("[{}] Starting downlink pipeline for edge [{}] from queue start ts [{}]", sessionId, edgeId, queueStartTs);
+            this.started = true;
+            this.nextStartTs = queueStartTs;
+            this.committedTs = queueStartTs;
+            this.ackTimeoutCheck = scheduler.scheduleWithFixedDelay(this::onTick, ackTimeoutMs, ackTimeoutMs, TimeUnit.MILLISECONDS);
+            // catch up with the events that were stored while the edge was offline
+            this.scanRequested = true;
+            maybeFetch();
+        }
+        drainOutbox();
+    }
+
+    void onNewEvents() {
+        synchronized (this) {
+            scanRequested = true;
+            maybeFetch();
+        }
+        drainOutbox();
+    }
+
+    void onDownlinkResponse(DownlinkResponseMsg msg) {
+        synchronized (this) {
+            processDownlinkResponse(msg);
+        }
+        drainOutbox();
+    }
+
+    void trySend() {
+        synchronized (this) {
+            prepareSend();
+        }
+        drainOutbox();
+    }
+
+    synchronized void stop() {
+        stopped = true;
+        if (ackTimeoutCheck != null) {
+            ackTimeoutCheck.cancel(false);
+        }
+        queued.clear();
+        unacked.clear();
+        inFlight.clear();
+        outbox.clear();
+        log.debug("[{}] Downlink pipeline for edge [{}] stopped. Sent [{}], acked [{}], failed [{}], retried [{}] msgs",
+                sessionId, edgeId, sentMsgs.get(), ackedMsgs.get(), failedMsgs.get(), retriedMsgs.get());
+    }
+
+    private void processDownlinkResponse(DownlinkResponseMsg msg) {
+        PendingDownlink pending;
+        if (msg.getDownlinkMsgId() != 0) {
+            pending = inFlight.remove(msg.getDownlinkMsgId());
+        } else {
+            // edges that do not echo the downlink msg id acknowledge messages in the order they were sent
+            pending = removeOldestInFlight();
+        }
+        if (pending == null) {
+            log.debug("[{}] Received response for unknown or already retried downlink msg [{}]", sessionId, msg.getDownlinkMsgId());
+            return;
+        }
+        if (msg.getSuccess()) {
+            log.debug("[{}] Msg has been processed successfully! {}", edgeId, msg);
+            ackedMsgs.increment();
+        } else {
+            log.error("[{}] Msg processing failed! Error msg: {}", edgeId, msg.getErrorMsg());
+            failedMsgs.increment();
+        }
+        lagTimer.record(Math.max(0, System.currentTimeMillis() - pending.eventCreatedTime), TimeUnit.MILLISECONDS);
+        pending.acked = true;
+        commitAcked();
+        prepareSend();
+    }
+
+    private void prepareSend() {
+        while (!stopped && session.isConnected() && inFlight.size() < maxPendingDownlinkMsgs && !queued.isEmpty()) {
+            PendingDownlink pending = queued.peek();
+            if (pending.msg != null && !pending.acked) {
+                if (!session.isReady()) {
+                    // gRPC will call trySend again once the transport buffer is drained
+                    break;
+                }
+                pending.msgId = nextMsgId();
+                pending.sentTs = System.currentTimeMillis();
+                inFlight.put(pending.msgId, pending);
+                outbox.add(ResponseMsg.newBuilder()
+                        .setDownlinkMsg(pending.msg.toBuilder().setDownlinkMsgId(pending.msgId).build())
+                        .build());
+            } else {
+                pending.acked = true;
+            }
+            queued.poll();
+            unacked.add(pending);
+        }
+        commitAcked();
+        maybeFetch();
+    }
+
+    /**
+     * Writes the prepared messages to the session in the order they were prepared.
+     * Only one thread drains the outbox at a time, the others just leave their messages in it.
+     * Callers that still hold the monitor (e.g. a fetch completed in the calling thread) skip draining,
+     * the outbox is drained by the outer caller once it releases the monitor.
+     */
+    private void drainOutbox() {
+        if (Thread.holdsLock(this)) {
+            return;
+        }
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            ResponseMsg msg;
+            synchronized (this) {
+                msg = outbox.poll();
+                if (msg == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            try {
+                session.sendDownlinkMsg(msg);
+                sentMsgs.increment();
+            } catch (Exception e) {
+                log.warn("[{}] Failed to send downlink msg to edge [{}]", sessionId, edgeId, e);
+            }
+        }
+    }
+
+    private void maybeFetch() {
+        if (!started || stopped || fetchInProgress || !session.isConnected() || queued.size() >= pageSize) {
+            return;
+        }
+        if (pageLink == null) {
+            if (!scanRequested) {
+                return;
+            }
+            scanRequested = false;
+            pageLink = new TimePageLink(pageSize, 0, null,
+                    new SortOrder("createdTime", SortOrder.Direction.ASC), nextStartTs, null);
+        }
+        fetchInProgress = true;
+        TimePageLink link = pageLink;
+        ListenableFuture<FetchedPage> future = ctx.getDbCallbackExecutor().executeAsync(() -> fetch(link));
+        Futures.addCallback(future, new FutureCallback<FetchedPage>() {
+            @Override
+            public void onSuccess(@Nullable FetchedPage page) {
+                onPage(link, page);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                onFetchFailure(t);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private FetchedPage fetch(TimePageLink link) {
+        PageData<EdgeEvent> pageData = ctx.getEdgeEventService().findEdgeEvents(tenantId, edgeId, link, true);
+        List<PendingDownlink> result = new ArrayList<>(pageData.getData().size());
+        for (EdgeEvent edgeEvent : pageData.getData()) {
+            DownlinkMsg downlinkMsg = session.convertToDownlinkMsg(edgeEvent);
+            result.add(new PendingDownlink(downlinkMsg, Uuids.unixTimestamp(edgeEvent.getUuidId()), edgeEvent.getCreatedTime()));
+        }
+        return new FetchedPage(result, pageData.hasNext());
+    }
+
+    private void onPage(TimePageLink link, FetchedPage page) {
+        synchronized (this) {
+            fetchInProgress = false;
+            if (stopped || link != pageLink) {
+                return;
+            }
+            log.trace("[{}] [{}] event(s) are going to be processed.", sessionId, page.downlinks.size());
+            queued.addAll(page.downlinks);
+            if (page.hasNext) {
+                pageLink = pageLink.nextPageLink();
+            } else {
+                pageLink = null;
+                if (!page.downlinks.isEmpty()) {
+                    nextStartTs = page.downlinks.get(page.downlinks.size() - 1).eventTs + 1;
+                }
+            }
+            prepareSend();
+        }
+        drainOutbox();
+    }
+
+    private synchronized void onFetchFailure(Throwable t) {
+        fetchInProgress = false;
+        log.warn("[{}] Failed to fetch edge events for edge [{}]", sessionId, edgeId, t);
+        // the current page link is kept, so the page is fetched again on the next tick
+        scanRequested = true;
+    }
+
+    private void onTick() {
+        try {
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                checkAckTimeouts();
+                maybeFetch();
+            }
+            drainOutbox();
+        } catch (Exception e) {
+            log.warn("[{}] Failed to process downlink pipeline tick for edge [{}]", sessionId, edgeId, e);
+        }
+    }
+
+    private void checkAckTimeouts() {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        PendingDownlink oldest = inFlight.values().iterator().next();
+        if (System.currentTimeMillis() - oldest.sentTs < ackTimeoutMs) {
+            return;
+        }
+        log.warn("[{}] Failed to deliver [{}] downlink msg(s) to edge [{}] within {} ms. Going to retry",
+                sessionId, inFlight.size(), edgeId, ackTimeoutMs);
+        retriedMsgs.add(inFlight.size());
+        inFlight.clear();
+        // messages that were not written yet are prepared again with new ids
+        outbox.clear();
+        Iterator<PendingDownlink> it = unacked.descendingIterator();
+        while (it.hasNext()) {
+            queued.addFirst(it.next());
+        }
+        unacked.clear();
+        prepareSend();
+    }
+
+    private PendingDownlink removeOldestInFlight() {
+        Iterator<PendingDownlink> it = inFlight.values().iterator();
+        if (it.hasNext()) {
+            PendingDownlink pending = it.next();
+            it.remove();
+            return pending;
+        }
+        return null;
+    }
+
+    private void commitAcked() {
+        long newCommittedTs = committedTs;
+        while (!unacked.isEmpty() && unacked.peek().acked) {
+            newCommittedTs = unacked.poll().eventTs;
+            committedSinceUpdate++;
+        }
+        if (newCommittedTs != committedTs) {
+            committedTs = newCommittedTs;
+            boolean idle = unacked.isEmpty() && queued.isEmpty();
+            if (idle || committedSinceUpdate >= pageSize) {
+                committedSinceUpdate = 0;
+                session.updateQueueStartTs(committedTs);
+            }
+        }
+    }
+
+    private int nextMsgId() {
+        msgIdSeq++;
+        if (msgIdSeq <= 0) {
+            msgIdSeq = 1;
+        }
+        return msgIdSeq;
+    }
+
+    private static class FetchedPage {
+        private final List<PendingDownlink> downlinks;
+        private final boolean hasNext;
+
+        FetchedPage(List<PendingDownlink> downlinks, boolean hasNext) {
+            this.downlinks = downlinks;
+            this.hasNext = hasNext;
+        }
+    }
+
+    private static class PendingDownlink {
+        private final DownlinkMsg msg;
+        private final long eventTs;
+        private final long eventCreatedTime;
+        private int msgId;
+        private long sentTs;
+        private boolean acked;
+
+        PendingDownlink(DownlinkMsg msg, long eventTs, long eventCreatedTime) {
+            this.msg = msg;
+            this.eventTs = eventTs;
+            this.eventCreatedTime = eventCreatedTime;
+        }
+    }
+}
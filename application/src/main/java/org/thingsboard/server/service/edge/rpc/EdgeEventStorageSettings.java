@@ -29,4 +29,8 @@ public class EdgeEventStorageSettings {
     private long noRecordsSleepInterval;
     @Value("${edges.storage.sleep_between_batches}")
     private long sleepIntervalBetweenBatches;
+    @Value("${edges.storage.max_pending_downlink_msgs}")
+    private int maxPendingDownlinkMsgs;
+    @Value("${edges.storage.downlink_ack_timeout}")
+    private long downlinkAckTimeout;
 }
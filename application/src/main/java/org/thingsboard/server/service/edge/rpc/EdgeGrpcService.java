@@ -51,13 +51,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
-import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -67,8 +64,6 @@ import java.util.concurrent.TimeUnit;
 public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase implements EdgeRpcService {
 
     private final ConcurrentMap<EdgeId, EdgeGrpcSession> sessions = new ConcurrentHashMap<>();
-    private final ConcurrentMap<EdgeId, Boolean> sessionNewEvents = new ConcurrentHashMap<>();
-    private final ConcurrentMap<EdgeId, ScheduledFuture<?>> sessionEdgeEventChecks = new ConcurrentHashMap<>();
     private static final ObjectMapper mapper = new ObjectMapper();
 
     @Value("${edges.rpc.port}")
@@ -130,14 +125,6 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
         if (server != null) {
             server.shutdownNow();
         }
-        for (Map.Entry<EdgeId, ScheduledFuture<?>> entry : sessionEdgeEventChecks.entrySet()) {
-            EdgeId edgeId = entry.getKey();
-            ScheduledFuture<?> sessionEdgeEventCheck = entry.getValue();
-            if (sessionEdgeEventCheck != null && !sessionEdgeEventCheck.isCancelled() && !sessionEdgeEventCheck.isDone()) {
-                sessionEdgeEventCheck.cancel(true);
-                sessionEdgeEventChecks.remove(edgeId);
-            }
-        }
         if (scheduler != null) {
             scheduler.shutdownNow();
         }
@@ -145,7 +132,7 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
 
     @Override
     public StreamObserver<RequestMsg> handleMsgs(StreamObserver<ResponseMsg> outputStream) {
-        return new EdgeGrpcSession(ctx, outputStream, this::onEdgeConnect, this::onEdgeDisconnect, mapper).getInputStream();
+        return new EdgeGrpcSession(ctx, outputStream, this::onEdgeConnect, this::onEdgeDisconnect, mapper, scheduler).getInputStream();
     }
 
     @Override
@@ -166,28 +153,33 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
             log.info("Closing and removing session for edge [{}]", edgeId);
             session.close();
             sessions.remove(edgeId);
-            sessionNewEvents.remove(edgeId);
-            cancelScheduleEdgeEventsCheck(edgeId);
         }
     }
 
+    @Override
+    public boolean hasSession(EdgeId edgeId) {
+        EdgeGrpcSession session = sessions.get(edgeId);
+        return session != null && session.isConnected();
+    }
+
     @Override
     public void onEdgeEvent(EdgeId edgeId) {
         log.trace("[{}] onEdgeEvent", edgeId.getId());
-        if (Boolean.FALSE.equals(sessionNewEvents.get(edgeId))) {
-            log.trace("[{}] set session new events flag to true", edgeId.getId());
-            sessionNewEvents.put(edgeId, true);
+        EdgeGrpcSession session = sessions.get(edgeId);
+        if (session != null && session.isConnected()) {
+            try {
+                session.processEdgeEvents();
+            } catch (Exception e) {
+                log.warn("[{}] Failed to process edge events for edge!", edgeId.getId(), e);
+            }
         }
     }
 
     private void onEdgeConnect(EdgeId edgeId, EdgeGrpcSession edgeGrpcSession) {
         log.info("[{}] edge [{}] connected successfully.", edgeGrpcSession.getSessionId(), edgeId);
         sessions.put(edgeId, edgeGrpcSession);
-        sessionNewEvents.put(edgeId, false);
         save(edgeId, DefaultDeviceStateService.ACTIVITY_STATE, true);
         save(edgeId, DefaultDeviceStateService.LAST_CONNECT_TIME, System.currentTimeMillis());
-        cancelScheduleEdgeEventsCheck(edgeId);
-        scheduleEdgeEventsCheck(edgeGrpcSession);
     }
 
     public EdgeGrpcSession getEdgeGrpcSessionById(TenantId tenantId, EdgeId edgeId) {
@@ -200,48 +192,11 @@ public class EdgeGrpcService extends EdgeRpcServiceGrpc.EdgeRpcServiceImplBase i
         }
     }
 
-    private void scheduleEdgeEventsCheck(EdgeGrpcSession session) {
-        EdgeId edgeId = session.getEdge().getId();
-        UUID tenantId = session.getEdge().getTenantId().getId();
-        if (sessions.containsKey(edgeId)) {
-            ScheduledFuture<?> schedule = scheduler.schedule(() -> {
-                try {
-                    if (Boolean.TRUE.equals(sessionNewEvents.get(edgeId))) {
-                        log.trace("[{}] Set session new events flag to false", edgeId.getId());
-                        sessionNewEvents.put(edgeId, false);
-                        session.processEdgeEvents();
-                    }
-                } catch (Exception e) {
-                    log.warn("[{}] Failed to process edge events for edge [{}]!", tenantId, session.getEdge().getId().getId(), e);
-                }
-                scheduleEdgeEventsCheck(session);
-            }, ctx.getEdgeEventStorageSettings().getNoRecordsSleepInterval(), TimeUnit.MILLISECONDS);
-            sessionEdgeEventChecks.put(edgeId, schedule);
-            log.trace("[{}] Check edge event scheduled for edge [{}]", tenantId, edgeId.getId());
-        } else {
-            log.debug("[{}] Session was removed and edge event check schedule must not be started [{}]",
-                    tenantId, edgeId.getId());
-        }
-    }
-
-    private void cancelScheduleEdgeEventsCheck(EdgeId edgeId) {
-        log.trace("[{}] cancelling edge event check for edge", edgeId);
-        if (sessionEdgeEventChecks.containsKey(edgeId)) {
-            ScheduledFuture<?> sessionEdgeEventCheck = sessionEdgeEventChecks.get(edgeId);
-            if (sessionEdgeEventCheck != null && !sessionEdgeEventCheck.isCancelled() && !sessionEdgeEventCheck.isDone()) {
-                sessionEdgeEventCheck.cancel(true);
-                sessionEdgeEventChecks.remove(edgeId);
-            }
-        }
-    }
-
     private void onEdgeDisconnect(EdgeId edgeId) {
         log.info("[{}] edge disconnected!", edgeId);
         sessions.remove(edgeId);
-        sessionNewEvents.remove(edgeId);
         save(edgeId, DefaultDeviceStateService.ACTIVITY_STATE, false);
         save(edgeId, DefaultDeviceStateService.LAST_DISCONNECT_TIME, System.currentTimeMillis());
-        cancelScheduleEdgeEventsCheck(edgeId);
     }
 
     private void save(EdgeId edgeId, String key, long value) {
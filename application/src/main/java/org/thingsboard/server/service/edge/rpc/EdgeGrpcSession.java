@@ -15,7 +15,6 @@
  */
 package org.thingsboard.server.service.edge.rpc;
 
-import com.datastax.oss.driver.api.core.uuid.Uuids;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -24,6 +23,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.JsonElement;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -60,9 +60,6 @@ import org.thingsboard.server.common.data.id.WidgetsBundleId;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
 import org.thingsboard.server.common.data.kv.BaseAttributeKvEntry;
 import org.thingsboard.server.common.data.kv.LongDataEntry;
-import org.thingsboard.server.common.data.page.PageData;
-import org.thingsboard.server.common.data.page.SortOrder;
-import org.thingsboard.server.common.data.page.TimePageLink;
 import org.thingsboard.server.common.data.relation.EntityRelation;
 import org.thingsboard.server.common.data.rule.RuleChain;
 import org.thingsboard.server.common.data.rule.RuleChainMetaData;
@@ -115,9 +112,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -126,31 +121,40 @@ import java.util.function.Consumer;
 @Data
 public final class EdgeGrpcSession implements Closeable {
 
-    private static final ReentrantLock downlinkMsgLock = new ReentrantLock();
-
     private static final String QUEUE_START_TS_ATTR_KEY = "queueStartTs";
 
     private final UUID sessionId;
     private final BiConsumer<EdgeId, EdgeGrpcSession> sessionOpenListener;
     private final Consumer<EdgeId> sessionCloseListener;
     private final ObjectMapper mapper;
+    private final ScheduledExecutorService scheduler;
+    private final ReentrantLock downlinkMsgLock = new ReentrantLock();
 
     private EdgeContextComponent ctx;
     private Edge edge;
     private StreamObserver<RequestMsg> inputStream;
     private StreamObserver<ResponseMsg> outputStream;
-    private boolean connected;
+    private volatile boolean connected;
 
-    private CountDownLatch latch;
+    private volatile EdgeDownlinkPipeline downlinkPipeline;
 
     EdgeGrpcSession(EdgeContextComponent ctx, StreamObserver<ResponseMsg> outputStream, BiConsumer<EdgeId, EdgeGrpcSession> sessionOpenListener,
-                    Consumer<EdgeId> sessionCloseListener, ObjectMapper mapper) {
+                    Consumer<EdgeId> sessionCloseListener, ObjectMapper mapper, ScheduledExecutorService scheduler) {
         this.sessionId = UUID.randomUUID();
         this.ctx = ctx;
         this.outputStream = outputStream;
         this.sessionOpenListener = sessionOpenListener;
         this.sessionCloseListener = sessionCloseListener;
         this.mapper = mapper;
+        this.scheduler = scheduler;
+        if (outputStream instanceof ServerCallStreamObserver) {
+            ((ServerCallStreamObserver<ResponseMsg>) outputStream).setOnReadyHandler(() -> {
+                EdgeDownlinkPipeline pipeline = downlinkPipeline;
+                if (pipeline != null) {
+                    pipeline.trySend();
+                }
+            });
+        }
         initInputStream();
     }
 
@@ -167,6 +171,7 @@ public final class EdgeGrpcSession implements Closeable {
                         outputStream.onError(new RuntimeException(responseMsg.getErrorMsg()));
                     } else {
                         connected = true;
+                        startDownlinkPipeline();
                     }
                 }
                 if (connected && requestMsg.getMsgType().equals(RequestMsgType.SYNC_REQUEST_RPC_MESSAGE)) {
@@ -195,6 +200,7 @@ public final class EdgeGrpcSession implements Closeable {
 
             private void closeSession() {
                 connected = false;
+                stopDownlinkPipeline();
                 if (edge != null) {
                     try {
                         sessionCloseListener.accept(edge.getId());
@@ -230,31 +236,67 @@ public final class EdgeGrpcSession implements Closeable {
 
     private void onDownlinkResponse(DownlinkResponseMsg msg) {
         try {
-            if (msg.getSuccess()) {
-                log.debug("[{}] Msg has been processed successfully! {}", edge.getRoutingKey(), msg);
-            } else {
-                log.error("[{}] Msg processing failed! Error msg: {}", edge.getRoutingKey(), msg.getErrorMsg());
+            EdgeDownlinkPipeline pipeline = downlinkPipeline;
+            if (pipeline != null) {
+                pipeline.onDownlinkResponse(msg);
             }
-            latch.countDown();
         } catch (Exception e) {
             log.error("[{}] Can't process downlink response message [{}]", this.sessionId, msg, e);
         }
     }
 
-    private void sendDownlinkMsg(ResponseMsg downlinkMsg) {
+    private void startDownlinkPipeline() {
+        EdgeDownlinkPipeline pipeline = new EdgeDownlinkPipeline(this, ctx, edge.getTenantId(), edge.getId());
+        downlinkPipeline = pipeline;
+        Futures.addCallback(getQueueStartTs(), new FutureCallback<Long>() {
+            @Override
+            public void onSuccess(@Nullable Long queueStartTs) {
+                pipeline.start(queueStartTs != null ? queueStartTs : 0L, scheduler);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.error("[{}] Failed to fetch queue start ts for edge [{}]", sessionId, edge.getId(), t);
+                pipeline.start(0L, scheduler);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void stopDownlinkPipeline() {
+        EdgeDownlinkPipeline pipeline = downlinkPipeline;
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    boolean isReady() {
+        if (outputStream instanceof ServerCallStreamObserver) {
+            return ((ServerCallStreamObserver<ResponseMsg>) outputStream).isReady();
+        }
+        return true;
+    }
+
+    void sendDownlinkMsg(ResponseMsg downlinkMsg) {
         log.trace("[{}] Sending downlink msg [{}]", this.sessionId, downlinkMsg);
         if (isConnected()) {
+            Exception error = null;
+            downlinkMsgLock.lock();
             try {
-                downlinkMsgLock.lock();
                 outputStream.onNext(downlinkMsg);
             } catch (Exception e) {
-                log.error("[{}] Failed to send downlink message [{}]", this.sessionId, downlinkMsg, e);
-                connected = false;
-                sessionCloseListener.accept(edge.getId());
+                error = e;
             } finally {
                 downlinkMsgLock.unlock();
             }
-            log.trace("[{}] Response msg successfully sent [{}]", this.sessionId, downlinkMsg);
+            if (error != null) {
+                log.error("[{}] Failed to send downlink message [{}]", this.sessionId, downlinkMsg, error);
+                connected = false;
+                // the downlink lock is released, so the pipeline can be stopped by any thread without lock-order issues
+                stopDownlinkPipeline();
+                sessionCloseListener.accept(edge.getId());
+            } else {
+                log.trace("[{}] Response msg successfully sent [{}]", this.sessionId, downlinkMsg);
+            }
         }
     }
 
@@ -269,106 +311,47 @@ public final class EdgeGrpcSession implements Closeable {
         sendDownlinkMsg(edgeConfigMsg);
     }
 
-    void processEdgeEvents() throws ExecutionException, InterruptedException {
-        log.trace("[{}] processHandleMessages started", this.sessionId);
-        if (isConnected()) {
-            Long queueStartTs = getQueueStartTs().get();
-            TimePageLink pageLink = new TimePageLink(
-                    ctx.getEdgeEventStorageSettings().getMaxReadRecordsCount(),
-                    0,
-                    null,
-                    new SortOrder("createdTime", SortOrder.Direction.ASC),
-                    queueStartTs,
-                    null);
-            PageData<EdgeEvent> pageData;
-            UUID ifOffset = null;
-            boolean success = true;
-            do {
-                pageData = ctx.getEdgeEventService().findEdgeEvents(edge.getTenantId(), edge.getId(), pageLink, true);
-                if (isConnected() && !pageData.getData().isEmpty()) {
-                    log.trace("[{}] [{}] event(s) are going to be processed.", this.sessionId, pageData.getData().size());
-                    List<DownlinkMsg> downlinkMsgsPack = convertToDownlinkMsgsPack(pageData.getData());
-                    log.trace("[{}] [{}] downlink msg(s) are going to be send.", this.sessionId, downlinkMsgsPack.size());
-
-                    latch = new CountDownLatch(downlinkMsgsPack.size());
-                    for (DownlinkMsg downlinkMsg : downlinkMsgsPack) {
-                        sendDownlinkMsg(ResponseMsg.newBuilder()
-                                .setDownlinkMsg(downlinkMsg)
-                                .build());
-                    }
-
-                    ifOffset = pageData.getData().get(pageData.getData().size() - 1).getUuidId();
-
-                    success = latch.await(10, TimeUnit.SECONDS);
-                    if (!success) {
-                        log.warn("[{}] Failed to deliver the batch: {}", this.sessionId, downlinkMsgsPack);
-                    }
-                }
-                if (isConnected() && (!success || pageData.hasNext())) {
-                    try {
-                        Thread.sleep(ctx.getEdgeEventStorageSettings().getSleepIntervalBetweenBatches());
-                    } catch (InterruptedException e) {
-                        log.error("[{}] Error during sleep between batches", this.sessionId, e);
-                    }
-                    if (success) {
-                        pageLink = pageLink.nextPageLink();
-                    }
-                }
-            } while (isConnected() && (!success || pageData.hasNext()));
-
-            if (ifOffset != null) {
-                Long newStartTs = Uuids.unixTimestamp(ifOffset);
-                updateQueueStartTs(newStartTs);
-            }
+    void processEdgeEvents() {
+        log.trace("[{}] processEdgeEvents", this.sessionId);
+        EdgeDownlinkPipeline pipeline = downlinkPipeline;
+        if (isConnected() && pipeline != null) {
+            pipeline.onNewEvents();
         }
-        log.trace("[{}] processHandleMessages finished", this.sessionId);
     }
 
-    private List<DownlinkMsg> convertToDownlinkMsgsPack(List<EdgeEvent> edgeEvents) {
-        List<DownlinkMsg> result = new ArrayList<>();
-        for (EdgeEvent edgeEvent : edgeEvents) {
-            log.trace("[{}] Processing edge event [{}]", this.sessionId, edgeEvent);
-            try {
-                DownlinkMsg downlinkMsg = null;
-                switch (edgeEvent.getAction()) {
-                    case UPDATED:
-                    case ADDED:
-                    case DELETED:
-                    case ASSIGNED_TO_EDGE:
-                    case UNASSIGNED_FROM_EDGE:
-                    case ALARM_ACK:
-                    case ALARM_CLEAR:
-                    case CREDENTIALS_UPDATED:
-                    case RELATION_ADD_OR_UPDATE:
-                    case RELATION_DELETED:
-                    case ASSIGNED_TO_CUSTOMER:
-                    case UNASSIGNED_FROM_CUSTOMER:
-                        downlinkMsg = processEntityMessage(edgeEvent, edgeEvent.getAction());
-                        break;
-                    case ATTRIBUTES_UPDATED:
-                    case POST_ATTRIBUTES:
-                    case ATTRIBUTES_DELETED:
-                    case TIMESERIES_UPDATED:
-                        downlinkMsg = processTelemetryMessage(edgeEvent);
-                        break;
-                    case CREDENTIALS_REQUEST:
-                        downlinkMsg = processCredentialsRequestMessage(edgeEvent);
-                        break;
-                    case ENTITY_MERGE_REQUEST:
-                        downlinkMsg = processEntityMergeRequestMessage(edgeEvent);
-                        break;
-                    case RPC_CALL:
-                        downlinkMsg = processRpcCallMsg(edgeEvent);
-                        break;
-                }
-                if (downlinkMsg != null) {
-                    result.add(downlinkMsg);
-                }
-            } catch (Exception e) {
-                log.error("Exception during processing records from queue", e);
+    DownlinkMsg convertToDownlinkMsg(EdgeEvent edgeEvent) {
+        log.trace("[{}] Processing edge event [{}]", this.sessionId, edgeEvent);
+        try {
+            switch (edgeEvent.getAction()) {
+                case UPDATED:
+                case ADDED:
+                case DELETED:
+                case ASSIGNED_TO_EDGE:
+                case UNASSIGNED_FROM_EDGE:
+                case ALARM_ACK:
+                case ALARM_CLEAR:
+                case CREDENTIALS_UPDATED:
+                case RELATION_ADD_OR_UPDATE:
+                case RELATION_DELETED:
+                case ASSIGNED_TO_CUSTOMER:
+                case UNASSIGNED_FROM_CUSTOMER:
+                    return processEntityMessage(edgeEvent, edgeEvent.getAction());
+                case ATTRIBUTES_UPDATED:
+                case POST_ATTRIBUTES:
+                case ATTRIBUTES_DELETED:
+                case TIMESERIES_UPDATED:
+                    return processTelemetryMessage(edgeEvent);
+                case CREDENTIALS_REQUEST:
+                    return processCredentialsRequestMessage(edgeEvent);
+                case ENTITY_MERGE_REQUEST:
+                    return processEntityMergeRequestMessage(edgeEvent);
+                case RPC_CALL:
+                    return processRpcCallMsg(edgeEvent);
             }
+        } catch (Exception e) {
+            log.error("Exception during processing records from queue", e);
         }
-        return result;
+        return null;
     }
 
     private DownlinkMsg processEntityMergeRequestMessage(EdgeEvent edgeEvent) {
@@ -427,7 +410,7 @@ public final class EdgeGrpcSession implements Closeable {
         }, ctx.getDbCallbackExecutor());
     }
 
-    private void updateQueueStartTs(Long newStartTs) {
+    void updateQueueStartTs(Long newStartTs) {
         log.trace("[{}] updating QueueStartTs [{}][{}]", this.sessionId, edge.getId(), newStartTs);
         newStartTs = ++newStartTs; // increments ts by 1 - next edge event search starts from current offset + 1
         List<AttributeKvEntry> attributes = Collections.singletonList(new BaseAttributeKvEntry(new LongDataEntry(QUEUE_START_TS_ATTR_KEY, newStartTs), System.currentTimeMillis()));
@@ -1036,6 +1019,7 @@ public final class EdgeGrpcSession implements Closeable {
     public void close() {
         log.debug("[{}] Closing session", sessionId);
         connected = false;
+        stopDownlinkPipeline();
         try {
             outputStream.onCompleted();
         } catch (Exception e) {
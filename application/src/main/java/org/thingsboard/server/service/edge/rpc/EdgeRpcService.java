@@ -24,5 +24,7 @@ public interface EdgeRpcService {
 
     void deleteEdge(EdgeId edgeId);
 
+    boolean hasSession(EdgeId edgeId);
+
     void onEdgeEvent(EdgeId edgeId);
 }
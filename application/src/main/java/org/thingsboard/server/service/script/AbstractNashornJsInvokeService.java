@@ -23,49 +23,69 @@ import delight.nashornsandbox.NashornSandbox;
 import delight.nashornsandbox.NashornSandboxes;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.thingsboard.common.util.JacksonUtil;
 import org.thingsboard.common.util.ThingsBoardExecutors;
 import org.thingsboard.server.queue.usagestats.TbApiUsageClient;
 import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Executes the scripts on a pool of isolated Nashorn engines (or sandboxes), so the invocations run in parallel
+ * without a global lock. An engine is used by a single thread at a time. Each script is compiled once per engine,
+ * on the first invocation that lands on it, and the compiled function is invoked directly instead of by name.
+ */
 @Slf4j
 public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeService {
 
-    private NashornSandbox sandbox;
-    private ScriptEngine engine;
     private ExecutorService monitorExecutorService;
+    private final List<NashornJsEngine> engines = new ArrayList<>();
+    private BlockingQueue<NashornJsEngine> idleEngines;
+    private final Map<UUID, String> scriptIdToBodyMap = new ConcurrentHashMap<>();
 
     private final AtomicInteger jsPushedMsgs = new AtomicInteger(0);
     private final AtomicInteger jsInvokeMsgs = new AtomicInteger(0);
     private final AtomicInteger jsEvalMsgs = new AtomicInteger(0);
     private final AtomicInteger jsFailedMsgs = new AtomicInteger(0);
     private final AtomicInteger jsTimeoutMsgs = new AtomicInteger(0);
+    private final AtomicInteger jsCompiledScripts = new AtomicInteger(0);
     private final FutureCallback<UUID> evalCallback = new JsStatCallback<>(jsEvalMsgs, jsTimeoutMsgs, jsFailedMsgs);
     private final FutureCallback<Object> invokeCallback = new JsStatCallback<>(jsInvokeMsgs, jsTimeoutMsgs, jsFailedMsgs);
 
-    private final ReentrantLock evalLock = new ReentrantLock();
-
     @Getter
     private final JsExecutorService jsExecutor;
 
     @Value("${js.local.max_requests_timeout:0}")
     private long maxRequestsTimeout;
 
+    @Value("${js.local.engine_pool_size:0}")
+    private int enginePoolSize;
+
     @Value("${js.local.stats.enabled:false}")
     private boolean statsEnabled;
 
@@ -82,9 +102,10 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
             int evalMsgs = jsEvalMsgs.getAndSet(0);
             int failed = jsFailedMsgs.getAndSet(0);
             int timedOut = jsTimeoutMsgs.getAndSet(0);
+            int compiled = jsCompiledScripts.getAndSet(0);
             if (pushedMsgs > 0 || invokeMsgs > 0 || evalMsgs > 0 || failed > 0 || timedOut > 0) {
-                log.info("Nashorn JS Invoke Stats: pushed [{}] received [{}] invoke [{}] eval [{}] failed [{}] timedOut [{}]",
-                        pushedMsgs, invokeMsgs + evalMsgs, invokeMsgs, evalMsgs, failed, timedOut);
+                log.info("Nashorn JS Invoke Stats: pushed [{}] received [{}] invoke [{}] eval [{}] compiled [{}] failed [{}] timedOut [{}]",
+                        pushedMsgs, invokeMsgs + evalMsgs, invokeMsgs, evalMsgs, compiled, failed, timedOut);
             }
         }
     }
@@ -92,18 +113,18 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     @PostConstruct
     public void init() {
         super.init(maxRequestsTimeout);
+        int poolSize = enginePoolSize > 0 ? enginePoolSize : Runtime.getRuntime().availableProcessors();
         if (useJsSandbox()) {
-            sandbox = NashornSandboxes.create();
             monitorExecutorService = ThingsBoardExecutors.newWorkStealingPool(getMonitorThreadPoolSize(), "nashorn-js-monitor");
-            sandbox.setExecutor(monitorExecutorService);
-            sandbox.setMaxCPUTime(getMaxCpuTime());
-            sandbox.allowNoBraces(false);
-            sandbox.allowLoadFunctions(true);
-            sandbox.setMaxPreparedStatements(30);
-        } else {
-            ScriptEngineManager factory = new ScriptEngineManager();
-            engine = factory.getEngineByName("nashorn");
         }
+        ScriptEngineManager factory = new ScriptEngineManager();
+        idleEngines = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            NashornJsEngine engine = useJsSandbox() ? new NashornJsEngine(createSandbox()) : new NashornJsEngine(factory.getEngineByName("nashorn"));
+            engines.add(engine);
+            idleEngines.add(engine);
+        }
+        log.info("Initialized {} Nashorn JS engines", poolSize);
     }
 
     @PreDestroy
@@ -120,27 +141,32 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
 
     protected abstract long getMaxCpuTime();
 
+    private NashornSandbox createSandbox() {
+        NashornSandbox sandbox = NashornSandboxes.create();
+        sandbox.setExecutor(monitorExecutorService);
+        sandbox.setMaxCPUTime(getMaxCpuTime());
+        sandbox.allowNoBraces(false);
+        sandbox.allowLoadFunctions(true);
+        sandbox.setMaxPreparedStatements(30);
+        return sandbox;
+    }
+
     @Override
     protected ListenableFuture<UUID> doEval(UUID scriptId, String functionName, String jsScript) {
         jsPushedMsgs.incrementAndGet();
         ListenableFuture<UUID> result = jsExecutor.executeAsync(() -> {
+            NashornJsEngine engine = idleEngines.take();
             try {
-                evalLock.lock();
-                try {
-                    if (useJsSandbox()) {
-                        sandbox.eval(jsScript);
-                    } else {
-                        engine.eval(jsScript);
-                    }
-                } finally {
-                    evalLock.unlock();
-                }
-                scriptIdToNameMap.put(scriptId, functionName);
-                return scriptId;
+                engine.compile(scriptId, functionName, jsScript);
             } catch (Exception e) {
                 log.debug("Failed to compile JS script: {}", e.getMessage(), e);
                 throw new ExecutionException(e);
+            } finally {
+                idleEngines.add(engine);
             }
+            scriptIdToBodyMap.put(scriptId, jsScript);
+            scriptIdToNameMap.put(scriptId, functionName);
+            return scriptId;
         });
         if (maxRequestsTimeout > 0) {
             result = Futures.withTimeout(result, maxRequestsTimeout, TimeUnit.MILLISECONDS, timeoutExecutorService);
@@ -153,15 +179,14 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
     protected ListenableFuture<Object> doInvokeFunction(UUID scriptId, String functionName, Object[] args) {
         jsPushedMsgs.incrementAndGet();
         ListenableFuture<Object> result = jsExecutor.executeAsync(() -> {
+            NashornJsEngine engine = idleEngines.take();
             try {
-                if (useJsSandbox()) {
-                    return sandbox.getSandboxedInvocable().invokeFunction(functionName, args);
-                } else {
-                    return ((Invocable) engine).invokeFunction(functionName, args);
-                }
+                return engine.invoke(scriptId, functionName, args);
             } catch (Exception e) {
                 onScriptExecutionError(scriptId, e, functionName);
                 throw new ExecutionException(e);
+            } finally {
+                idleEngines.add(engine);
             }
         });
 
@@ -172,11 +197,106 @@ public abstract class AbstractNashornJsInvokeService extends AbstractJsInvokeSer
         return result;
     }
 
-    protected void doRelease(UUID scriptId, String functionName) throws ScriptException {
-        if (useJsSandbox()) {
-            sandbox.eval(functionName + " = undefined;");
-        } else {
-            engine.eval(functionName + " = undefined;");
+    protected void doRelease(UUID scriptId, String functionName) {
+        scriptIdToBodyMap.remove(scriptId);
+        // the function is dropped by the engine itself, once it is taken from the pool
+        engines.forEach(engine -> engine.release(scriptId, functionName));
+    }
+
+    private class NashornJsEngine {
+
+        private final NashornSandbox sandbox;
+        private final ScriptEngine engine;
+        // accessed only by the thread that holds the engine
+        private final Map<UUID, Object> functions = new HashMap<>();
+        private final Queue<Pair<UUID, String>> releasedFunctions = new ConcurrentLinkedQueue<>();
+
+        NashornJsEngine(NashornSandbox sandbox) {
+            this.sandbox = sandbox;
+            this.engine = null;
+        }
+
+        NashornJsEngine(ScriptEngine engine) {
+            this.sandbox = null;
+            this.engine = engine;
+        }
+
+        void compile(UUID scriptId, String functionName, String jsScript) throws ScriptException {
+            dropReleasedFunctions();
+            jsCompiledScripts.incrementAndGet();
+            if (sandbox != null) {
+                sandbox.eval(jsScript);
+                functions.put(scriptId, functionName);
+            } else {
+                CompiledScript compiledScript = ((Compilable) engine).compile(jsScript);
+                compiledScript.eval();
+                functions.put(scriptId, engine.get(functionName));
+            }
+        }
+
+        Object invoke(UUID scriptId, String functionName, Object[] args) throws ScriptException, NoSuchMethodException {
+            dropReleasedFunctions();
+            Object function = functions.get(scriptId);
+            if (function == null) {
+                String jsScript = scriptIdToBodyMap.get(scriptId);
+                if (jsScript == null) {
+                    throw new ScriptException("No compiled script found for scriptId: [" + scriptId + "]!");
+                }
+                compile(scriptId, functionName, jsScript);
+                function = functions.get(scriptId);
+            }
+            if (sandbox != null) {
+                return sandbox.getSandboxedInvocable().invokeFunction(functionName, toSandboxArgs(args));
+            }
+            // Function.prototype.call of the compiled function, the first argument is 'this'
+            return ((Invocable) engine).invokeMethod(function, "call", toJsArgs(args));
+        }
+
+        void release(UUID scriptId, String functionName) {
+            releasedFunctions.add(Pair.of(scriptId, functionName));
+        }
+
+        private void dropReleasedFunctions() {
+            Pair<UUID, String> released;
+            while ((released = releasedFunctions.poll()) != null) {
+                if (functions.remove(released.getKey()) != null) {
+                    try {
+                        if (sandbox != null) {
+                            sandbox.eval(released.getValue() + " = undefined;");
+                        } else {
+                            engine.eval(released.getValue() + " = undefined;");
+                        }
+                    } catch (ScriptException e) {
+                        log.debug("[{}] Failed to release JS function: {}", released.getKey(), e.getMessage());
+                    }
+                }
+            }
+        }
+
+        /*
+         * Map arguments are handed over to the script as native JS objects, so they are not serialized to JSON and parsed back.
+         * */
+        private Object[] toJsArgs(Object[] args) throws ScriptException, NoSuchMethodException {
+            Object[] jsArgs = new Object[args.length + 1];
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] instanceof Map) {
+                    // a new JS object is exposed to Java as Bindings, its entries become the object properties
+                    Bindings jsObject = (Bindings) ((Invocable) engine).invokeFunction("Object");
+                    ((Map<?, ?>) args[i]).forEach((key, value) -> jsObject.put(key.toString(), value));
+                    jsArgs[i + 1] = jsObject;
+                } else {
+                    jsArgs[i + 1] = args[i];
+                }
+            }
+            return jsArgs;
+        }
+
+        private Object[] toSandboxArgs(Object[] args) {
+            Object[] sandboxArgs = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sandboxArgs[i] = args[i] instanceof Map ? JacksonUtil.toString(args[i]) : args[i];
+            }
+            return sandboxArgs;
         }
     }
 
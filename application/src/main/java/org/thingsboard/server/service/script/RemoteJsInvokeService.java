@@ -15,9 +15,13 @@
  */
 package org.thingsboard.server.service.script;
 
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,8 +30,10 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StopWatch;
+import org.thingsboard.common.util.JacksonUtil;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.gen.js.JsInvokeProtos;
+import org.thingsboard.server.queue.TbQueueRequestLatencyStats;
 import org.thingsboard.server.queue.TbQueueRequestTemplate;
 import org.thingsboard.server.queue.common.TbProtoJsQueueMsg;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
@@ -37,11 +43,15 @@ import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -57,6 +67,15 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
     @Value("${queue.js.max_requests_timeout}")
     private long maxRequestsTimeout;
 
+    @Value("${queue.js.invoke_by_script_hash:false}")
+    private boolean invokeByScriptHash;
+
+    @Value("${queue.js.invoke_batch_max_delay_ms:0}")
+    private long invokeBatchMaxDelayMs;
+
+    @Value("${queue.js.invoke_batch_max_size:100}")
+    private int invokeBatchMaxSize;
+
     @Getter
     @Value("${js.remote.max_errors}")
     private int maxErrors;
@@ -91,6 +110,13 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
                 log.info("Queue JS Invoke Stats: pushed [{}] received [{}] invoke [{}] eval [{}] failed [{}] timedOut [{}]",
                         pushedMsgs, invokeMsgs + evalMsgs, invokeMsgs, evalMsgs, failed, timedOut);
             }
+            for (TbQueueRequestLatencyStats latencyStats : requestTemplate.getAndResetLatencyStats()) {
+                if (latencyStats.getResponses() > 0 || latencyStats.getTimeouts() > 0) {
+                    log.info("Queue JS Latency Stats [{}]: responses [{}] timeouts [{}] avg [{}] us p50 [{}] us p99 [{}] us max [{}] us",
+                            latencyStats.getRequestType(), latencyStats.getResponses(), latencyStats.getTimeouts(),
+                            latencyStats.getAvgUs(), latencyStats.getP50Us(), latencyStats.getP99Us(), latencyStats.getMaxUs());
+                }
+            }
         }
     }
 
@@ -98,15 +124,27 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
     private TbQueueRequestTemplate<TbProtoJsQueueMsg<JsInvokeProtos.RemoteJsRequest>, TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> requestTemplate;
 
     private Map<UUID, String> scriptIdToBodysMap = new ConcurrentHashMap<>();
+    private Map<UUID, String> scriptIdToHashMap = new ConcurrentHashMap<>();
+
+    private final List<PendingInvocation> pendingInvocations = new ArrayList<>();
+    private ScheduledExecutorService invokeBatchExecutor;
 
     @PostConstruct
     public void init() {
         super.init(maxRequestsTimeout);
+        requestTemplate.setRequestTypeResolver(RemoteJsInvokeService::getRequestType);
         requestTemplate.init();
+        if (invokeBatchMaxDelayMs > 0 && invokeBatchMaxSize > 1) {
+            invokeBatchExecutor = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("js-executor-remote-batch"));
+            invokeBatchExecutor.scheduleWithFixedDelay(this::flushPendingInvocations, invokeBatchMaxDelayMs, invokeBatchMaxDelayMs, TimeUnit.MILLISECONDS);
+        }
     }
 
     @PreDestroy
     public void destroy() {
+        if (invokeBatchExecutor != null) {
+            invokeBatchExecutor.shutdownNow();
+        }
         super.stop();
         if (requestTemplate != null) {
             requestTemplate.stop();
@@ -151,6 +189,7 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
             if (compilationResult.getSuccess()) {
                 scriptIdToNameMap.put(scriptId, functionName);
                 scriptIdToBodysMap.put(scriptId, scriptBody);
+                scriptIdToHashMap.put(scriptId, Hashing.sha256().hashString(scriptBody, StandardCharsets.UTF_8).toString());
                 return compiledScriptId;
             } else {
                 log.debug("[{}] Failed to compile script due to [{}]: {}", compiledScriptId, compilationResult.getErrorCode().name(), compilationResult.getErrorDetails());
@@ -163,7 +202,8 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
     protected ListenableFuture<Object> doInvokeFunction(UUID scriptId, String functionName, Object[] args) {
         log.trace("doInvokeFunction js-request for uuid {} with timeout {}ms", scriptId, maxRequestsTimeout);
         final String scriptBody = scriptIdToBodysMap.get(scriptId);
-        if (scriptBody == null) {
+        final String scriptHash = scriptIdToHashMap.get(scriptId);
+        if (scriptBody == null || scriptHash == null) {
             return Futures.immediateFailedFuture(new RuntimeException("No script body found for scriptId: [" + scriptId + "]!"));
         }
         JsInvokeProtos.JsInvokeRequest.Builder jsRequestBuilder = JsInvokeProtos.JsInvokeRequest.newBuilder()
@@ -171,27 +211,38 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
                 .setScriptIdLSB(scriptId.getLeastSignificantBits())
                 .setFunctionName(functionName)
                 .setTimeout((int) maxRequestsTimeout)
-                .setScriptBody(scriptBody);
+                .setScriptHash(scriptHash);
+        if (!invokeByScriptHash) {
+            jsRequestBuilder.setScriptBody(scriptBody);
+        }
 
         for (Object arg : args) {
-            jsRequestBuilder.addArgs(arg.toString());
+            if (arg instanceof String) {
+                jsRequestBuilder.addArgs((String) arg);
+            } else if (arg instanceof Map) {
+                jsRequestBuilder.addArgs(JacksonUtil.toString(arg));
+            } else {
+                jsRequestBuilder.addArgs(arg.toString());
+            }
         }
-
-        JsInvokeProtos.RemoteJsRequest jsRequestWrapper = JsInvokeProtos.RemoteJsRequest.newBuilder()
-                .setInvokeRequest(jsRequestBuilder.build())
-                .build();
+        JsInvokeProtos.JsInvokeRequest jsRequest = jsRequestBuilder.build();
 
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
 
-        ListenableFuture<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> future = requestTemplate.send(new TbProtoJsQueueMsg<>(UUID.randomUUID(), jsRequestWrapper));
+        ListenableFuture<JsInvokeProtos.JsInvokeResponse> future = Futures.transformAsync(invoke(jsRequest), invokeResult -> {
+            if (isScriptNotFound(jsRequest, invokeResult)) {
+                log.trace("[{}] Script is not cached by the executor, resending invoke request with the script body", scriptId);
+                return sendInvokeRequest(jsRequest.toBuilder().setScriptBody(scriptBody).build());
+            }
+            return Futures.immediateFuture(invokeResult);
+        }, callbackExecutor);
         if (maxRequestsTimeout > 0) {
             future = Futures.withTimeout(future, maxRequestsTimeout, TimeUnit.MILLISECONDS, timeoutExecutorService);
         }
-        queuePushedMsgs.incrementAndGet();
-        Futures.addCallback(future, new FutureCallback<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>>() {
+        Futures.addCallback(future, new FutureCallback<JsInvokeProtos.JsInvokeResponse>() {
             @Override
-            public void onSuccess(@Nullable TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse> result) {
+            public void onSuccess(@Nullable JsInvokeProtos.JsInvokeResponse result) {
                 queueInvokeMsgs.incrementAndGet();
             }
 
@@ -204,10 +255,9 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
                 queueFailedMsgs.incrementAndGet();
             }
         }, callbackExecutor);
-        return Futures.transform(future, response -> {
+        return Futures.transform(future, invokeResult -> {
             stopWatch.stop();
-            log.trace("doInvokeFunction js-response took {}ms for uuid {}", stopWatch.getTotalTimeMillis(), response.getKey());
-            JsInvokeProtos.JsInvokeResponse invokeResult = response.getValue().getInvokeResponse();
+            log.trace("doInvokeFunction js-response took {}ms for uuid {}", stopWatch.getTotalTimeMillis(), scriptId);
             if (invokeResult.getSuccess()) {
                 return invokeResult.getResult();
             } else {
@@ -219,6 +269,90 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
         }, callbackExecutor);
     }
 
+    /*
+     * The executor reports NOT_FOUND_ERROR if it has no script with the requested hash.
+     * Executors that do not know the script hash yet try to compile the missing body and fail with COMPILATION_ERROR,
+     * the script itself was compiled successfully on eval, so in both cases the request is resent with the body.
+     * */
+    private static boolean isScriptNotFound(JsInvokeProtos.JsInvokeRequest jsRequest, JsInvokeProtos.JsInvokeResponse invokeResult) {
+        if (invokeResult.getSuccess() || !jsRequest.getScriptBody().isEmpty()) {
+            return false;
+        }
+        return JsInvokeProtos.JsInvokeErrorCode.NOT_FOUND_ERROR.equals(invokeResult.getErrorCode())
+                || JsInvokeProtos.JsInvokeErrorCode.COMPILATION_ERROR.equals(invokeResult.getErrorCode());
+    }
+
+    private ListenableFuture<JsInvokeProtos.JsInvokeResponse> invoke(JsInvokeProtos.JsInvokeRequest jsRequest) {
+        if (invokeBatchExecutor == null) {
+            return sendInvokeRequest(jsRequest);
+        }
+        PendingInvocation invocation = new PendingInvocation(jsRequest);
+        boolean flush;
+        synchronized (pendingInvocations) {
+            pendingInvocations.add(invocation);
+            flush = pendingInvocations.size() >= invokeBatchMaxSize;
+        }
+        if (flush) {
+            flushPendingInvocations();
+        }
+        return invocation.getFuture();
+    }
+
+    private ListenableFuture<JsInvokeProtos.JsInvokeResponse> sendInvokeRequest(JsInvokeProtos.JsInvokeRequest jsRequest) {
+        JsInvokeProtos.RemoteJsRequest jsRequestWrapper = JsInvokeProtos.RemoteJsRequest.newBuilder()
+                .setInvokeRequest(jsRequest)
+                .build();
+        queuePushedMsgs.incrementAndGet();
+        return Futures.transform(requestTemplate.send(new TbProtoJsQueueMsg<>(UUID.randomUUID(), jsRequestWrapper)),
+                response -> response.getValue().getInvokeResponse(), MoreExecutors.directExecutor());
+    }
+
+    private void flushPendingInvocations() {
+        List<PendingInvocation> batch;
+        synchronized (pendingInvocations) {
+            if (pendingInvocations.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pendingInvocations);
+            pendingInvocations.clear();
+        }
+        try {
+            if (batch.size() == 1) {
+                batch.get(0).getFuture().setFuture(sendInvokeRequest(batch.get(0).getRequest()));
+                return;
+            }
+            JsInvokeProtos.JsInvokeBatchRequest.Builder batchRequest = JsInvokeProtos.JsInvokeBatchRequest.newBuilder();
+            batch.forEach(invocation -> batchRequest.addInvokeRequests(invocation.getRequest()));
+            JsInvokeProtos.RemoteJsRequest jsRequestWrapper = JsInvokeProtos.RemoteJsRequest.newBuilder()
+                    .setInvokeBatchRequest(batchRequest)
+                    .build();
+            queuePushedMsgs.incrementAndGet();
+            ListenableFuture<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> future = requestTemplate.send(new TbProtoJsQueueMsg<>(UUID.randomUUID(), jsRequestWrapper));
+            Futures.addCallback(future, new FutureCallback<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>>() {
+                @Override
+                public void onSuccess(@Nullable TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse> result) {
+                    List<JsInvokeProtos.JsInvokeResponse> responses = result.getValue().getInvokeBatchResponse().getInvokeResponsesList();
+                    // responses are in the same order as the requests of the batch
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (i < responses.size()) {
+                            batch.get(i).getFuture().set(responses.get(i));
+                        } else {
+                            batch.get(i).getFuture().setException(new RuntimeException("No response for the invoke request in the batch!"));
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    batch.forEach(invocation -> invocation.getFuture().setException(t));
+                }
+            }, MoreExecutors.directExecutor());
+        } catch (Exception e) {
+            log.warn("Failed to send batch of {} invoke requests", batch.size(), e);
+            batch.forEach(invocation -> invocation.getFuture().setException(e));
+        }
+    }
+
     @Override
     protected void doRelease(UUID scriptId, String functionName) throws Exception {
         JsInvokeProtos.JsReleaseRequest jsRequest = JsInvokeProtos.JsReleaseRequest.newBuilder()
@@ -240,6 +374,7 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
         UUID compiledScriptId = new UUID(compilationResult.getScriptIdMSB(), compilationResult.getScriptIdLSB());
         if (compilationResult.getSuccess()) {
             scriptIdToBodysMap.remove(scriptId);
+            scriptIdToHashMap.remove(scriptId);
         } else {
             log.debug("[{}] Failed to release script due", compiledScriptId);
         }
@@ -250,4 +385,23 @@ public class RemoteJsInvokeService extends AbstractJsInvokeService {
         return TimeUnit.SECONDS.toMillis(maxBlackListDurationSec);
     }
 
+    private static String getRequestType(TbProtoJsQueueMsg<JsInvokeProtos.RemoteJsRequest> request) {
+        JsInvokeProtos.RemoteJsRequest jsRequest = request.getValue();
+        if (jsRequest.hasInvokeRequest()) {
+            return "invoke";
+        } else if (jsRequest.hasInvokeBatchRequest()) {
+            return "invokeBatch";
+        } else if (jsRequest.hasCompileRequest()) {
+            return "compile";
+        } else {
+            return "release";
+        }
+    }
+
+    @Data
+    private static class PendingInvocation {
+        private final JsInvokeProtos.JsInvokeRequest request;
+        private final SettableFuture<JsInvokeProtos.JsInvokeResponse> future = SettableFuture.create();
+    }
+
 }
@@ -65,15 +65,16 @@ public class RuleNodeJsScriptEngine implements org.thingsboard.rule.engine.api.S
         }
     }
 
-    private static String[] prepareArgs(TbMsg msg) {
+    private static Object[] prepareArgs(TbMsg msg) {
         try {
-            String[] args = new String[3];
+            Object[] args = new Object[3];
             if (msg.getData() != null) {
                 args[0] = msg.getData();
             } else {
                 args[0] = "";
             }
-            args[1] = mapper.writeValueAsString(msg.getMetaData().getData());
+            // metadata is serialized only if the script engine can't take it as an object
+            args[1] = msg.getMetaData().getData();
             args[2] = msg.getType();
             return args;
         } catch (Throwable th) {
@@ -206,7 +207,7 @@ public class RuleNodeJsScriptEngine implements org.thingsboard.rule.engine.api.S
 
     ListenableFuture<JsonNode> executeScriptAsync(TbMsg msg) {
         log.trace("execute script async, msg {}", msg);
-        String[] inArgs = prepareArgs(msg);
+        Object[] inArgs = prepareArgs(msg);
         return executeScriptAsync(msg.getCustomerId(), inArgs[0], inArgs[1], inArgs[2]);
     }
 
@@ -24,7 +24,7 @@ public class RuleNodeScriptFactory {
 
     private static final String JS_WRAPPER_PREFIX_TEMPLATE = "function %s(msgStr, metadataStr, msgType) { " +
             "    var msg = JSON.parse(msgStr); " +
-            "    var metadata = JSON.parse(metadataStr); " +
+            "    var metadata = typeof metadataStr === 'string' ? JSON.parse(metadataStr) : metadataStr; " +
             "    return JSON.stringify(%s(msg, metadata, msgType));" +
             "    function %s(%s, %s, %s) {";
     private static final String JS_WRAPPER_SUFFIX = "\n}" +
@@ -35,7 +35,7 @@ import java.sql.Statement;
 @RequiredArgsConstructor
 public abstract class AbstractCleanUpService {
 
-    private final PartitionService partitionService;
+    protected final PartitionService partitionService;
 
     protected boolean isSystemTenantPartitionMine(){
         return partitionService.resolve(ServiceType.TB_CORE, TenantId.SYS_TENANT_ID, TenantId.SYS_TENANT_ID).isMyPartition();
@@ -19,10 +19,20 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.thingsboard.server.common.data.TenantProfile;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.page.PageLink;
+import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
+import org.thingsboard.server.dao.tenant.TenantDao;
 import org.thingsboard.server.dao.timeseries.TimeseriesService;
 import org.thingsboard.server.queue.discovery.PartitionService;
 import org.thingsboard.server.queue.util.TbCoreComponent;
-import org.thingsboard.server.service.ttl.AbstractCleanUpService;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @TbCoreComponent
 @Slf4j
@@ -36,17 +46,52 @@ public class TimeseriesCleanUpService extends AbstractCleanUpService {
     private boolean ttlTaskExecutionEnabled;
 
     private final TimeseriesService timeseriesService;
+    private final TenantDao tenantDao;
+    private final TbTenantProfileCache tenantProfileCache;
 
-    public TimeseriesCleanUpService(PartitionService partitionService, TimeseriesService timeseriesService) {
+    public TimeseriesCleanUpService(PartitionService partitionService, TimeseriesService timeseriesService,
+                                    TenantDao tenantDao, TbTenantProfileCache tenantProfileCache) {
         super(partitionService);
         this.timeseriesService = timeseriesService;
+        this.tenantDao = tenantDao;
+        this.tenantProfileCache = tenantProfileCache;
     }
 
     @Scheduled(initialDelayString = "${sql.ttl.ts.execution_interval_ms}", fixedDelayString = "${sql.ttl.ts.execution_interval_ms}")
     public void cleanUp() {
-        if (ttlTaskExecutionEnabled && isSystemTenantPartitionMine()) {
-            timeseriesService.cleanup(systemTtl);
+        if (ttlTaskExecutionEnabled) {
+            if (isSystemTenantPartitionMine()) {
+                timeseriesService.cleanup(systemTtl);
+            }
+            PageLink tenantsBatchRequest = new PageLink(10_000, 0);
+            PageData<TenantId> tenantsIds;
+            do {
+                tenantsIds = tenantDao.findTenantsIds(tenantsBatchRequest);
+                for (TenantId tenantId : tenantsIds.getData()) {
+                    if (partitionService.resolve(ServiceType.TB_CORE, tenantId, tenantId).isMyPartition()) {
+                        TenantProfile tenantProfile = tenantProfileCache.get(tenantId);
+                        if (tenantProfile == null) {
+                            log.debug("[{}] Skipping timeseries TTL cleanup of the removed tenant", tenantId);
+                            continue;
+                        }
+                        try {
+                            timeseriesService.cleanup(tenantId, getTenantTtl(tenantProfile));
+                        } catch (Exception e) {
+                            log.warn("[{}] Failed to clean up expired timeseries", tenantId, e);
+                        }
+                    }
+                }
+                tenantsBatchRequest = tenantsBatchRequest.nextPageLink();
+            } while (tenantsIds.hasNext());
+        }
+    }
+
+    private long getTenantTtl(TenantProfile tenantProfile) {
+        Optional<DefaultTenantProfileConfiguration> tenantProfileConfiguration = tenantProfile.getProfileConfiguration();
+        if (tenantProfileConfiguration.isPresent() && tenantProfileConfiguration.get().getDefaultStorageTtlDays() > 0) {
+            return TimeUnit.DAYS.toSeconds(tenantProfileConfiguration.get().getDefaultStorageTtlDays());
         }
+        return systemTtl;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.tenant;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DebugEventsSamplerTest {
+
+    private static final int MSG_COUNT = 10000;
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final RuleNodeId ruleNodeId = new RuleNodeId(UUID.randomUUID());
+
+    @Test
+    public void testAllEventsAreSampledByDefault() {
+        DebugEventsSampler sampler = createSampler(1.0, 1.0, "", 0);
+        for (int i = 0; i < MSG_COUNT; i++) {
+            assertTrue(sampler.isSampled(tenantId, ruleNodeId, newMsg()));
+        }
+    }
+
+    @Test
+    public void testTenantSamplingIsConsistentPerMessage() {
+        DebugEventsSampler sampler = createSampler(0.1, 1.0, "", 0);
+        RuleNodeId otherRuleNodeId = new RuleNodeId(UUID.randomUUID());
+        int sampled = 0;
+        for (int i = 0; i < MSG_COUNT; i++) {
+            TbMsg msg = newMsg();
+            boolean result = sampler.isSampled(tenantId, ruleNodeId, msg);
+            assertEquals(result, sampler.isSampled(tenantId, otherRuleNodeId, msg));
+            if (result) {
+                sampled++;
+            }
+        }
+        assertTrue("Sampled: " + sampled, sampled > MSG_COUNT * 0.07 && sampled < MSG_COUNT * 0.13);
+    }
+
+    @Test
+    public void testNodeSamplingRateOverride() {
+        RuleNodeId mutedRuleNodeId = new RuleNodeId(UUID.randomUUID());
+        DebugEventsSampler sampler = createSampler(1.0, 0.5, mutedRuleNodeId.getId() + ":0.0, " + ruleNodeId.getId() + ":1.0", 0);
+        RuleNodeId otherRuleNodeId = new RuleNodeId(UUID.randomUUID());
+        int sampled = 0;
+        for (int i = 0; i < MSG_COUNT; i++) {
+            TbMsg msg = newMsg();
+            assertTrue(sampler.isSampled(tenantId, ruleNodeId, msg));
+            assertFalse(sampler.isSampled(tenantId, mutedRuleNodeId, msg));
+            boolean result = sampler.isSampled(tenantId, otherRuleNodeId, msg);
+            // IN and OUT events of the same message are kept together
+            assertEquals(result, sampler.isSampled(tenantId, otherRuleNodeId, msg));
+            if (result) {
+                sampled++;
+            }
+        }
+        assertTrue("Sampled: " + sampled, sampled > MSG_COUNT * 0.45 && sampled < MSG_COUNT * 0.55);
+    }
+
+    @Test
+    public void testByteBudgetPerTenant() {
+        DebugEventsSampler sampler = createSampler(1.0, 1.0, "", 10 * 1024);
+        int sampled = 0;
+        for (int i = 0; i < 100; i++) {
+            if (sampler.isSampled(tenantId, ruleNodeId, newMsg())) {
+                sampled++;
+            }
+        }
+        // every message is estimated as about 300 bytes
+        assertTrue("Sampled: " + sampled, sampled > 20 && sampled < 40);
+        assertTrue(sampler.isSampled(new TenantId(UUID.randomUUID()), ruleNodeId, newMsg()));
+    }
+
+    private DebugEventsSampler createSampler(double tenantSamplingRate, double nodeSamplingRate, String overrides, long maxBytesPerTenant) {
+        DebugEventsSampler sampler = new DebugEventsSampler();
+        ReflectionTestUtils.setField(sampler, "tenantSamplingRate", tenantSamplingRate);
+        ReflectionTestUtils.setField(sampler, "nodeSamplingRate", nodeSamplingRate);
+        ReflectionTestUtils.setField(sampler, "samplingRateOverrides", overrides);
+        ReflectionTestUtils.setField(sampler, "maxBytesPerTenant", maxBytesPerTenant);
+        ReflectionTestUtils.setField(sampler, "budgetWindowMs", 60000L);
+        sampler.init();
+        return sampler;
+    }
+
+    private TbMsg newMsg() {
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue("deviceName", "Thermostat A");
+        return TbMsg.newMsg("POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), metaData, "{\"temperature\":25}");
+    }
+}
@@ -30,7 +30,10 @@ import org.thingsboard.server.common.data.rule.RuleChainMetaData;
 import org.thingsboard.server.dao.rule.RuleChainService;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  * Created by ashvayka on 20.03.18.
@@ -63,6 +66,21 @@ public class AbstractRuleEngineControllerTest extends AbstractControllerTest {
                 }, pageLink, entityId.getEntityType(), entityId.getId(), DataConstants.DEBUG_RULE_NODE, tenantId.getId());
     }
 
+    protected List<Event> awaitCustomDebugEvents(TenantId tenantId, EntityId entityId, int expectedCount) throws Exception {
+        // debug events are persisted in batches, after the message is already processed
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        List<Event> events = getCustomDebugEvents(tenantId, entityId);
+        while (events.size() < expectedCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            events = getCustomDebugEvents(tenantId, entityId);
+        }
+        return events;
+    }
+
+    private List<Event> getCustomDebugEvents(TenantId tenantId, EntityId entityId) throws Exception {
+        return getDebugEvents(tenantId, entityId, 1000).getData().stream().filter(filterByCustomEvent()).collect(Collectors.toList());
+    }
+
     protected JsonNode getMetadata(Event outEvent) {
         String metaDataStr = outEvent.getBody().get("metadata").asText();
         try {
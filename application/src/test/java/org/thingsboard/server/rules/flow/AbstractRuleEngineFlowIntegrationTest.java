@@ -27,7 +27,6 @@ import org.thingsboard.server.actors.ActorSystemContext;
 import org.thingsboard.server.common.data.*;
 import org.thingsboard.server.common.data.kv.BaseAttributeKvEntry;
 import org.thingsboard.server.common.data.kv.StringDataEntry;
-import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.rule.RuleChain;
 import org.thingsboard.server.common.data.rule.RuleChainMetaData;
 import org.thingsboard.server.common.data.rule.RuleNode;
@@ -42,7 +41,6 @@ import org.thingsboard.server.dao.attributes.AttributesService;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -150,8 +148,7 @@ public abstract class AbstractRuleEngineFlowIntegrationTest extends AbstractRule
         actorSystem.tell(qMsg);
         Mockito.verify(tbMsgCallback, Mockito.timeout(10000)).onSuccess();
 
-        PageData<Event> eventsPage = getDebugEvents(savedTenant.getId(), ruleChain.getFirstRuleNodeId(), 1000);
-        List<Event> events = eventsPage.getData().stream().filter(filterByCustomEvent()).collect(Collectors.toList());
+        List<Event> events = awaitCustomDebugEvents(savedTenant.getId(), ruleChain.getFirstRuleNodeId(), 2);
         Assert.assertEquals(2, events.size());
 
         Event inEvent = events.stream().filter(e -> e.getBody().get("type").asText().equals(DataConstants.IN)).findFirst().get();
@@ -167,8 +164,7 @@ public abstract class AbstractRuleEngineFlowIntegrationTest extends AbstractRule
         RuleChain finalRuleChain = ruleChain;
         RuleNode lastRuleNode = metaData.getNodes().stream().filter(node -> !node.getId().equals(finalRuleChain.getFirstRuleNodeId())).findFirst().get();
 
-        eventsPage = getDebugEvents(savedTenant.getId(), lastRuleNode.getId(), 1000);
-        events = eventsPage.getData().stream().filter(filterByCustomEvent()).collect(Collectors.toList());
+        events = awaitCustomDebugEvents(savedTenant.getId(), lastRuleNode.getId(), 2);
 
         Assert.assertEquals(2, events.size());
 
@@ -263,8 +259,7 @@ public abstract class AbstractRuleEngineFlowIntegrationTest extends AbstractRule
 
         Mockito.verify(tbMsgCallback, Mockito.timeout(10000)).onSuccess();
 
-        PageData<Event> eventsPage = getDebugEvents(savedTenant.getId(), rootRuleChain.getFirstRuleNodeId(), 1000);
-        List<Event> events = eventsPage.getData().stream().filter(filterByCustomEvent()).collect(Collectors.toList());
+        List<Event> events = awaitCustomDebugEvents(savedTenant.getId(), rootRuleChain.getFirstRuleNodeId(), 2);
 
         Assert.assertEquals(2, events.size());
 
@@ -281,8 +276,7 @@ public abstract class AbstractRuleEngineFlowIntegrationTest extends AbstractRule
         RuleChain finalRuleChain = rootRuleChain;
         RuleNode lastRuleNode = secondaryMetaData.getNodes().stream().filter(node -> !node.getId().equals(finalRuleChain.getFirstRuleNodeId())).findFirst().get();
 
-        eventsPage = getDebugEvents(savedTenant.getId(), lastRuleNode.getId(), 1000);
-        events = eventsPage.getData().stream().filter(filterByCustomEvent()).collect(Collectors.toList());
+        events = awaitCustomDebugEvents(savedTenant.getId(), lastRuleNode.getId(), 2);
 
 
         Assert.assertEquals(2, events.size());
@@ -31,7 +31,6 @@ import org.thingsboard.server.common.data.Tenant;
 import org.thingsboard.server.common.data.User;
 import org.thingsboard.server.common.data.kv.BaseAttributeKvEntry;
 import org.thingsboard.server.common.data.kv.StringDataEntry;
-import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.rule.RuleChain;
 import org.thingsboard.server.common.data.rule.RuleChainMetaData;
 import org.thingsboard.server.common.data.rule.RuleNode;
@@ -45,7 +44,6 @@ import org.thingsboard.server.dao.attributes.AttributesService;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -142,8 +140,7 @@ public abstract class AbstractRuleEngineLifecycleIntegrationTest extends Abstrac
         Mockito.verify(tbMsgCallback, Mockito.timeout(3000)).onSuccess();
 
 
-        PageData<Event> eventsPage = getDebugEvents(savedTenant.getId(), ruleChain.getFirstRuleNodeId(), 1000);
-        List<Event> events = eventsPage.getData().stream().filter(filterByCustomEvent()).collect(Collectors.toList());
+        List<Event> events = awaitCustomDebugEvents(savedTenant.getId(), ruleChain.getFirstRuleNodeId(), 2);
 
         Assert.assertEquals(2, events.size());
 
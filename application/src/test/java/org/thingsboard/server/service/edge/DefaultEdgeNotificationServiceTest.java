@@ -0,0 +1,99 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.edge;
+
+import com.google.common.util.concurrent.Futures;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.beans.factory.ObjectProvider;
+import org.thingsboard.server.common.data.edge.Edge;
+import org.thingsboard.server.common.data.edge.EdgeEvent;
+import org.thingsboard.server.common.data.id.EdgeId;
+import org.thingsboard.server.common.data.id.RuleChainId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.dao.edge.EdgeEventService;
+import org.thingsboard.server.dao.edge.EdgeService;
+import org.thingsboard.server.service.edge.rpc.EdgeRpcService;
+import org.thingsboard.server.service.executors.DbCallbackExecutorService;
+import org.thingsboard.server.service.queue.TbClusterService;
+
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultEdgeNotificationServiceTest {
+
+    @Mock
+    EdgeService edgeService;
+    @Mock
+    EdgeEventService edgeEventService;
+    @Mock
+    TbClusterService clusterService;
+    @Mock
+    DbCallbackExecutorService dbCallbackExecutorService;
+    @Mock
+    ObjectProvider<EdgeRpcService> edgeRpcServiceProvider;
+    @Mock
+    EdgeRpcService edgeRpcService;
+
+    @InjectMocks
+    DefaultEdgeNotificationService edgeNotificationService;
+
+    TenantId tenantId;
+    Edge edge;
+
+    @Before
+    public void setUp() {
+        tenantId = new TenantId(UUID.randomUUID());
+        edge = new Edge(new EdgeId(UUID.randomUUID()));
+        edge.setTenantId(tenantId);
+        when(edgeEventService.saveAsync(any())).thenAnswer(invocation -> Futures.immediateFuture(invocation.<EdgeEvent>getArgument(0)));
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(dbCallbackExecutorService).execute(any());
+    }
+
+    @Test
+    public void givenEdgesDisabled_whenEdgeEventSaved_thenNotificationGoesThroughQueue() throws Exception {
+        when(edgeRpcServiceProvider.getIfAvailable()).thenReturn(null);
+
+        edgeNotificationService.setEdgeRootRuleChain(tenantId, edge, new RuleChainId(UUID.randomUUID()));
+
+        verify(clusterService).onEdgeEventUpdate(tenantId, edge.getId());
+    }
+
+    @Test
+    public void givenEdgeConnectedToThisNode_whenEdgeEventSaved_thenSessionIsNotifiedDirectly() throws Exception {
+        when(edgeRpcServiceProvider.getIfAvailable()).thenReturn(edgeRpcService);
+        when(edgeRpcService.hasSession(edge.getId())).thenReturn(true);
+
+        edgeNotificationService.setEdgeRootRuleChain(tenantId, edge, new RuleChainId(UUID.randomUUID()));
+
+        verify(edgeRpcService).onEdgeEvent(edge.getId());
+        verify(clusterService, never()).onEdgeEventUpdate(any(), any());
+    }
+
+}
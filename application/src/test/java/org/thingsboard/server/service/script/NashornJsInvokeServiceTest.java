@@ -0,0 +1,161 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.ApiUsageState;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.queue.usagestats.TbApiUsageClient;
+import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class NashornJsInvokeServiceTest {
+
+    private static final TenantId TENANT_ID = new TenantId(UUID.randomUUID());
+    private static final String FILTER_SCRIPT = "return msg.temperature > 20;";
+    private static final String SWITCH_SCRIPT = "if (msg.temperature > 30) { return ['High', 'Alarm']; } " +
+            "else if (msg.temperature > 20) { return 'Normal'; } return 'Low';";
+    private static final String TRANSFORM_SCRIPT = "msg.temperatureF = msg.temperature * 1.8 + 32; " +
+            "metadata.converted = 'true'; return {msg: msg, metadata: metadata, msgType: 'CONVERTED_' + msgType};";
+
+    private JsExecutorService jsExecutor;
+    private NashornJsInvokeService jsInvokeService;
+
+    @After
+    public void after() {
+        stopService();
+    }
+
+    @Test
+    public void testFilterSwitchAndTransformScripts() throws Exception {
+        initService(false, 2);
+        RuleNodeJsScriptEngine filter = new RuleNodeJsScriptEngine(TENANT_ID, jsInvokeService, null, FILTER_SCRIPT);
+        RuleNodeJsScriptEngine switchEngine = new RuleNodeJsScriptEngine(TENANT_ID, jsInvokeService, null, SWITCH_SCRIPT);
+        RuleNodeJsScriptEngine transform = new RuleNodeJsScriptEngine(TENANT_ID, jsInvokeService, null, TRANSFORM_SCRIPT);
+
+        // more invocations than engines, so every engine compiles the scripts on its own
+        for (int i = 0; i < 10; i++) {
+            assertTrue(filter.executeFilterAsync(newMsg(25)).get(5, TimeUnit.SECONDS));
+            assertFalse(filter.executeFilterAsync(newMsg(15)).get(5, TimeUnit.SECONDS));
+            assertEquals(Collections.singleton("Low"), switchEngine.executeSwitchAsync(newMsg(15)).get(5, TimeUnit.SECONDS));
+            assertEquals(new HashSet<>(Arrays.asList("High", "Alarm")), switchEngine.executeSwitchAsync(newMsg(35)).get(5, TimeUnit.SECONDS));
+
+            TbMsg result = transform.executeUpdateAsync(newMsg(100)).get(5, TimeUnit.SECONDS).get(0);
+            assertEquals("{\"temperature\":100,\"temperatureF\":212}", result.getData());
+            assertEquals("true", result.getMetaData().getValue("converted"));
+            assertEquals("thermostat", result.getMetaData().getValue("deviceType"));
+            assertEquals("CONVERTED_POST_TELEMETRY_REQUEST", result.getType());
+        }
+
+        transform.destroy();
+        try {
+            transform.executeUpdateAsync(newMsg(100)).get(5, TimeUnit.SECONDS);
+            throw new AssertionError("Released script must not be invoked!");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().contains("No compiled script found"));
+        }
+        assertTrue(filter.executeFilterAsync(newMsg(25)).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSandboxedFilterSwitchAndTransformScripts() throws Exception {
+        initService(true, 2);
+        RuleNodeJsScriptEngine switchEngine = new RuleNodeJsScriptEngine(TENANT_ID, jsInvokeService, null, SWITCH_SCRIPT);
+        RuleNodeJsScriptEngine transform = new RuleNodeJsScriptEngine(TENANT_ID, jsInvokeService, null, TRANSFORM_SCRIPT);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Collections.singleton("Normal"), switchEngine.executeSwitchAsync(newMsg(25)).get(5, TimeUnit.SECONDS));
+            TbMsg result = transform.executeUpdateAsync(newMsg(100)).get(5, TimeUnit.SECONDS).get(0);
+            assertEquals("{\"temperature\":100,\"temperatureF\":212}", result.getData());
+            assertEquals("true", result.getMetaData().getValue("converted"));
+        }
+    }
+
+    @Test
+    public void testScriptIsCompiledOncePerEngine() throws Exception {
+        int enginePoolSize = 2;
+        initService(false, enginePoolSize);
+        RuleNodeJsScriptEngine transform = new RuleNodeJsScriptEngine(TENANT_ID, jsInvokeService, null, TRANSFORM_SCRIPT);
+        AtomicInteger compiledScripts = (AtomicInteger) ReflectionTestUtils.getField(jsInvokeService, "jsCompiledScripts");
+        assertEquals(1, compiledScripts.get());
+
+        List<ListenableFuture<List<TbMsg>>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(transform.executeUpdateAsync(newMsg(100)));
+        }
+        for (List<TbMsg> results : Futures.allAsList(futures).get(10, TimeUnit.SECONDS)) {
+            assertEquals("{\"temperature\":100,\"temperatureF\":212}", results.get(0).getData());
+            assertEquals("CONVERTED_POST_TELEMETRY_REQUEST", results.get(0).getType());
+        }
+        // the engine of the eval request reuses its compiled script, the others compile it on the first invocation
+        assertTrue(compiledScripts.get() <= enginePoolSize);
+    }
+
+    private TbMsg newMsg(int temperature) {
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue("deviceType", "thermostat");
+        metaData.putValue("deviceName", "Thermostat A");
+        return TbMsg.newMsg("POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), metaData, "{\"temperature\":" + temperature + "}");
+    }
+
+    private void initService(boolean useJsSandbox, int enginePoolSize) {
+        jsExecutor = new JsExecutorService();
+        ReflectionTestUtils.setField(jsExecutor, "jsExecutorThreadPoolSize", 2 * Runtime.getRuntime().availableProcessors());
+        jsExecutor.init();
+
+        TbApiUsageStateService apiUsageStateService = mock(TbApiUsageStateService.class);
+        when(apiUsageStateService.getApiUsageState(any())).thenReturn(new ApiUsageState());
+        jsInvokeService = new NashornJsInvokeService(apiUsageStateService, mock(TbApiUsageClient.class), jsExecutor);
+        ReflectionTestUtils.setField(jsInvokeService, "useJsSandbox", useJsSandbox);
+        ReflectionTestUtils.setField(jsInvokeService, "monitorThreadPoolSize", 4);
+        ReflectionTestUtils.setField(jsInvokeService, "maxCpuTime", 8000L);
+        ReflectionTestUtils.setField(jsInvokeService, "maxErrors", 3);
+        ReflectionTestUtils.setField(jsInvokeService, "enginePoolSize", enginePoolSize);
+        jsInvokeService.init();
+    }
+
+    private void stopService() {
+        if (jsInvokeService != null) {
+            jsInvokeService.stop();
+            jsInvokeService = null;
+        }
+        if (jsExecutor != null) {
+            jsExecutor.destroy();
+            jsExecutor = null;
+        }
+    }
+}
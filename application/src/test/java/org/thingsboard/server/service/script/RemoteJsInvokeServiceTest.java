@@ -0,0 +1,263 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.script;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.server.common.data.ApiUsageState;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.stats.MessagesStats;
+import org.thingsboard.server.gen.js.JsInvokeProtos;
+import org.thingsboard.server.queue.TbQueueRequestTemplate;
+import org.thingsboard.server.queue.common.TbProtoJsQueueMsg;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.usagestats.TbApiUsageClient;
+import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RemoteJsInvokeServiceTest {
+
+    private static final TenantId TENANT_ID = new TenantId(UUID.randomUUID());
+    private static final String SCRIPT = "var result = JSON.parse(msg); result.temperature = result.temperature * 1.8 + 32; " +
+            "metadata.converted = 'true'; return {msg: result, metadata: metadata, msgType: msgType};";
+
+    private RemoteJsInvokeService jsInvokeService;
+    private StandInJsExecutor jsExecutor;
+
+    @After
+    public void after() {
+        if (jsInvokeService != null) {
+            jsInvokeService.destroy();
+        }
+    }
+
+    @Test
+    public void testScriptBodyIsSentByDefault() throws Exception {
+        initService(false, 0, 1);
+        UUID scriptId = jsInvokeService.eval(TENANT_ID, JsScriptType.RULE_NODE_SCRIPT, SCRIPT, "msg", "metadata", "msgType").get();
+
+        assertEquals("{\"temperature\":42}", invoke(scriptId, "{\"temperature\":42}").get(5, TimeUnit.SECONDS));
+        assertEquals("{\"temperature\":43}", invoke(scriptId, "{\"temperature\":43}").get(5, TimeUnit.SECONDS));
+        assertEquals(2, jsExecutor.invokeRequestsWithBody.get());
+        assertEquals(0, jsExecutor.notFoundResponses.get());
+    }
+
+    @Test
+    public void testScriptBodyIsSentToExecutorWithoutScriptHashSupport() throws Exception {
+        initService(true, 0, 1);
+        jsExecutor.legacy = true;
+        UUID scriptId = jsInvokeService.eval(TENANT_ID, JsScriptType.RULE_NODE_SCRIPT, SCRIPT, "msg", "metadata", "msgType").get();
+
+        // executor restart drops the compiled scripts, the request without the body fails to compile
+        jsExecutor.scripts.clear();
+        assertEquals("{\"temperature\":42}", invoke(scriptId, "{\"temperature\":42}").get(5, TimeUnit.SECONDS));
+        assertEquals(1, jsExecutor.invokeRequestsWithBody.get());
+    }
+
+    @Test
+    public void testScriptBodyIsSentOnlyOnCacheMiss() throws Exception {
+        initService(true, 0, 1);
+        UUID scriptId = jsInvokeService.eval(TENANT_ID, JsScriptType.RULE_NODE_SCRIPT, SCRIPT, "msg", "metadata", "msgType").get();
+
+        assertEquals("{\"temperature\":42}", invoke(scriptId, "{\"temperature\":42}").get(5, TimeUnit.SECONDS));
+        assertEquals(0, jsExecutor.invokeRequestsWithBody.get());
+
+        // executor restart drops the compiled scripts
+        jsExecutor.scripts.clear();
+        assertEquals("{\"temperature\":43}", invoke(scriptId, "{\"temperature\":43}").get(5, TimeUnit.SECONDS));
+        assertEquals(1, jsExecutor.notFoundResponses.get());
+        assertEquals(1, jsExecutor.invokeRequestsWithBody.get());
+
+        assertEquals("{\"temperature\":44}", invoke(scriptId, "{\"temperature\":44}").get(5, TimeUnit.SECONDS));
+        assertEquals(1, jsExecutor.invokeRequestsWithBody.get());
+    }
+
+    @Test
+    public void testInvocationsAreBatched() throws Exception {
+        initService(true, 50, 10);
+        UUID scriptId = jsInvokeService.eval(TENANT_ID, JsScriptType.RULE_NODE_SCRIPT, SCRIPT, "msg", "metadata", "msgType").get();
+        int pushedBefore = jsExecutor.requests.get();
+
+        List<ListenableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            futures.add(invoke(scriptId, "{\"temperature\":" + i + "}"));
+        }
+        List<Object> results = Futures.allAsList(futures).get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("{\"temperature\":" + i + "}", results.get(i));
+        }
+        // two full batches and the remaining invocations flushed by the timer, which may also split one of the batches
+        int batches = jsExecutor.requests.get() - pushedBefore;
+        assertTrue(batches >= 3 && batches <= 4);
+    }
+
+    @Test
+    public void testInvokeRequestsByHashAreSmallerThanWithBody() throws Exception {
+        initService(true, 0, 1);
+        UUID scriptId = jsInvokeService.eval(TENANT_ID, JsScriptType.RULE_NODE_SCRIPT, SCRIPT, "msg", "metadata", "msgType").get();
+        jsExecutor.reset();
+
+        int invocations = 10;
+        List<ListenableFuture<Object>> futures = new ArrayList<>(invocations);
+        for (int i = 0; i < invocations; i++) {
+            futures.add(invoke(scriptId, "{\"temperature\":" + i + "}"));
+        }
+        assertEquals(invocations, Futures.allAsList(futures).get(5, TimeUnit.SECONDS).size());
+        assertEquals(invocations, jsExecutor.requests.get());
+        assertEquals(0, jsExecutor.invokeRequestsWithBody.get());
+        assertTrue(jsExecutor.bytes.get() < jsExecutor.bytesWithBody.get());
+    }
+
+    private ListenableFuture<Object> invoke(UUID scriptId, String msg) {
+        return jsInvokeService.invokeFunction(TENANT_ID, new CustomerId(CustomerId.NULL_UUID), scriptId, msg, "{\"deviceType\":\"thermostat\"}", "POST_TELEMETRY_REQUEST");
+    }
+
+    private void initService(boolean invokeByScriptHash, long batchMaxDelayMs, int batchMaxSize) {
+        TbApiUsageStateService apiUsageStateService = mock(TbApiUsageStateService.class);
+        when(apiUsageStateService.getApiUsageState(any())).thenReturn(new ApiUsageState());
+        jsInvokeService = new RemoteJsInvokeService(apiUsageStateService, mock(TbApiUsageClient.class));
+        jsExecutor = new StandInJsExecutor();
+        ReflectionTestUtils.setField(jsInvokeService, "requestTemplate", jsExecutor);
+        ReflectionTestUtils.setField(jsInvokeService, "maxEvalRequestsTimeout", 10000L);
+        ReflectionTestUtils.setField(jsInvokeService, "maxRequestsTimeout", 10000L);
+        ReflectionTestUtils.setField(jsInvokeService, "maxErrors", 3);
+        ReflectionTestUtils.setField(jsInvokeService, "invokeByScriptHash", invokeByScriptHash);
+        ReflectionTestUtils.setField(jsInvokeService, "invokeBatchMaxDelayMs", batchMaxDelayMs);
+        ReflectionTestUtils.setField(jsInvokeService, "invokeBatchMaxSize", batchMaxSize);
+        jsInvokeService.init();
+    }
+
+    /*
+     * Stand-in for the remote js-executor: caches the scripts by id and hash and returns the first argument as a result.
+     * */
+    private static class StandInJsExecutor implements TbQueueRequestTemplate<TbProtoJsQueueMsg<JsInvokeProtos.RemoteJsRequest>, TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> {
+
+        private final RemoteJsRequestEncoder encoder = new RemoteJsRequestEncoder();
+        private final Map<UUID, String> scripts = new ConcurrentHashMap<>();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong bytesWithBody = new AtomicLong();
+        private final AtomicInteger notFoundResponses = new AtomicInteger();
+        private final AtomicInteger invokeRequestsWithBody = new AtomicInteger();
+        private final Map<UUID, String> scriptBodies = new ConcurrentHashMap<>();
+        private ExecutorService executor;
+        // executor of the previous version: ignores the script hash and compiles the body of the request if the script is not cached
+        private volatile boolean legacy;
+
+        @Override
+        public void init() {
+            executor = Executors.newFixedThreadPool(4, ThingsBoardThreadFactory.forName("js-executor-stand-in"));
+        }
+
+        void reset() {
+            requests.set(0);
+            bytes.set(0);
+            bytesWithBody.set(0);
+        }
+
+        @Override
+        public ListenableFuture<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> send(TbProtoJsQueueMsg<JsInvokeProtos.RemoteJsRequest> request) {
+            requests.incrementAndGet();
+            bytes.addAndGet(encoder.encode(request).length);
+            SettableFuture<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> future = SettableFuture.create();
+            executor.submit(() -> future.set(new TbProtoQueueMsg<>(request.getKey(), process(request.getValue()))));
+            return future;
+        }
+
+        @Override
+        public ListenableFuture<TbProtoQueueMsg<JsInvokeProtos.RemoteJsResponse>> send(TbProtoJsQueueMsg<JsInvokeProtos.RemoteJsRequest> request, long timeoutNs) {
+            return send(request);
+        }
+
+        @Override
+        public void stop() {
+            executor.shutdownNow();
+        }
+
+        @Override
+        public void setMessagesStats(MessagesStats messagesStats) {
+        }
+
+        private JsInvokeProtos.RemoteJsResponse process(JsInvokeProtos.RemoteJsRequest request) {
+            JsInvokeProtos.RemoteJsResponse.Builder response = JsInvokeProtos.RemoteJsResponse.newBuilder();
+            if (request.hasCompileRequest()) {
+                JsInvokeProtos.JsCompileRequest compileRequest = request.getCompileRequest();
+                UUID scriptId = new UUID(compileRequest.getScriptIdMSB(), compileRequest.getScriptIdLSB());
+                scripts.put(scriptId, hash(compileRequest.getScriptBody()));
+                scriptBodies.put(scriptId, compileRequest.getScriptBody());
+                response.setCompileResponse(JsInvokeProtos.JsCompileResponse.newBuilder().setSuccess(true)
+                        .setScriptIdMSB(compileRequest.getScriptIdMSB()).setScriptIdLSB(compileRequest.getScriptIdLSB()));
+            } else if (request.hasInvokeRequest()) {
+                response.setInvokeResponse(invoke(request.getInvokeRequest()));
+            } else if (request.hasInvokeBatchRequest()) {
+                JsInvokeProtos.JsInvokeBatchResponse.Builder batchResponse = JsInvokeProtos.JsInvokeBatchResponse.newBuilder();
+                request.getInvokeBatchRequest().getInvokeRequestsList().forEach(invokeRequest -> batchResponse.addInvokeResponses(invoke(invokeRequest)));
+                response.setInvokeBatchResponse(batchResponse);
+            }
+            return response.build();
+        }
+
+        private JsInvokeProtos.JsInvokeResponse invoke(JsInvokeProtos.JsInvokeRequest invokeRequest) {
+            UUID scriptId = new UUID(invokeRequest.getScriptIdMSB(), invokeRequest.getScriptIdLSB());
+            String scriptBody = scriptBodies.get(scriptId);
+            if (scriptBody != null) {
+                bytesWithBody.addAndGet(encoder.encode(new TbProtoQueueMsg<>(scriptId, JsInvokeProtos.RemoteJsRequest.newBuilder()
+                        .setInvokeRequest(invokeRequest.toBuilder().setScriptBody(scriptBody)).build())).length);
+            }
+            if (legacy && !scripts.containsKey(scriptId) && invokeRequest.getScriptBody().isEmpty()) {
+                return JsInvokeProtos.JsInvokeResponse.newBuilder().setSuccess(false)
+                        .setErrorCode(JsInvokeProtos.JsInvokeErrorCode.COMPILATION_ERROR).build();
+            }
+            if (!invokeRequest.getScriptBody().isEmpty()) {
+                invokeRequestsWithBody.incrementAndGet();
+                scripts.put(scriptId, hash(invokeRequest.getScriptBody()));
+            } else if (!legacy && !invokeRequest.getScriptHash().equals(scripts.get(scriptId))) {
+                notFoundResponses.incrementAndGet();
+                return JsInvokeProtos.JsInvokeResponse.newBuilder().setSuccess(false)
+                        .setErrorCode(JsInvokeProtos.JsInvokeErrorCode.NOT_FOUND_ERROR).build();
+            }
+            return JsInvokeProtos.JsInvokeResponse.newBuilder().setSuccess(true).setResult(invokeRequest.getArgs(0)).build();
+        }
+
+        private static String hash(String scriptBody) {
+            return Hashing.sha256().hashString(scriptBody, StandardCharsets.UTF_8).toString();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.ttl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.TenantProfile;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
+import org.thingsboard.server.common.data.tenant.profile.TenantProfileData;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
+import org.thingsboard.server.dao.tenant.TenantDao;
+import org.thingsboard.server.dao.timeseries.TimeseriesService;
+import org.thingsboard.server.queue.discovery.PartitionService;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TimeseriesCleanUpServiceTest {
+
+    private static final long SYSTEM_TTL = TimeUnit.DAYS.toSeconds(30);
+
+    private final TenantId myTenantId = new TenantId(UUID.randomUUID());
+    private final TenantId myProfileTtlTenantId = new TenantId(UUID.randomUUID());
+    private final TenantId otherTenantId = new TenantId(UUID.randomUUID());
+    private final TenantId removedTenantId = new TenantId(UUID.randomUUID());
+
+    private PartitionService partitionService;
+    private TimeseriesService timeseriesService;
+    private TimeseriesCleanUpService cleanUpService;
+
+    @Before
+    public void before() {
+        partitionService = mock(PartitionService.class);
+        timeseriesService = mock(TimeseriesService.class);
+        TenantDao tenantDao = mock(TenantDao.class);
+        TbTenantProfileCache tenantProfileCache = mock(TbTenantProfileCache.class);
+
+        when(tenantDao.findTenantsIds(any())).thenReturn(new PageData<>(Arrays.asList(removedTenantId, myTenantId, myProfileTtlTenantId, otherTenantId), 1, 4, false));
+        mockPartition(myTenantId, true);
+        mockPartition(myProfileTtlTenantId, true);
+        mockPartition(otherTenantId, false);
+        mockPartition(removedTenantId, true);
+        when(tenantProfileCache.get(any(TenantId.class))).thenReturn(newTenantProfile(0));
+        when(tenantProfileCache.get(myProfileTtlTenantId)).thenReturn(newTenantProfile(7));
+        when(tenantProfileCache.get(removedTenantId)).thenReturn(null);
+
+        cleanUpService = new TimeseriesCleanUpService(partitionService, timeseriesService, tenantDao, tenantProfileCache);
+        ReflectionTestUtils.setField(cleanUpService, "systemTtl", SYSTEM_TTL);
+        ReflectionTestUtils.setField(cleanUpService, "ttlTaskExecutionEnabled", true);
+    }
+
+    @Test
+    public void testCleanupOfMyTenantsWithEffectiveTtl() {
+        mockPartition(TenantId.SYS_TENANT_ID, false);
+
+        cleanUpService.cleanUp();
+
+        verify(timeseriesService, never()).cleanup(anyLong());
+        verify(timeseriesService).cleanup(myTenantId, SYSTEM_TTL);
+        verify(timeseriesService).cleanup(myProfileTtlTenantId, TimeUnit.DAYS.toSeconds(7));
+        verify(timeseriesService, never()).cleanup(eq(otherTenantId), anyLong());
+        verify(timeseriesService, never()).cleanup(eq(removedTenantId), anyLong());
+    }
+
+    @Test
+    public void testFailedTenantCleanupDoesNotStopOtherTenants() {
+        mockPartition(TenantId.SYS_TENANT_ID, false);
+        doThrow(new RuntimeException("Database is down")).when(timeseriesService).cleanup(myTenantId, SYSTEM_TTL);
+
+        cleanUpService.cleanUp();
+
+        verify(timeseriesService).cleanup(myProfileTtlTenantId, TimeUnit.DAYS.toSeconds(7));
+    }
+
+    @Test
+    public void testPartitionsAreCleanedUpBySystemTenantOwner() {
+        mockPartition(TenantId.SYS_TENANT_ID, true);
+
+        cleanUpService.cleanUp();
+
+        verify(timeseriesService).cleanup(SYSTEM_TTL);
+    }
+
+    private void mockPartition(TenantId tenantId, boolean myPartition) {
+        when(partitionService.resolve(ServiceType.TB_CORE, tenantId, tenantId))
+                .thenReturn(new TopicPartitionInfo("tb_core", tenantId, 0, myPartition));
+    }
+
+    private TenantProfile newTenantProfile(int defaultStorageTtlDays) {
+        DefaultTenantProfileConfiguration configuration = new DefaultTenantProfileConfiguration();
+        configuration.setDefaultStorageTtlDays(defaultStorageTtlDays);
+        TenantProfileData profileData = new TenantProfileData();
+        profileData.setConfiguration(configuration);
+        TenantProfile tenantProfile = new TenantProfile();
+        tenantProfile.setProfileData(profileData);
+        return tenantProfile;
+    }
+
+}
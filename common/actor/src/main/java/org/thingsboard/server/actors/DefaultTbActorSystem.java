@@ -48,10 +48,14 @@ public class DefaultTbActorSystem implements TbActorSystem {
     private final TbActorSystemSettings settings;
     @Getter
     private final ScheduledExecutorService scheduler;
+    @Getter
+    private final TbActorTimer timer;
 
     public DefaultTbActorSystem(TbActorSystemSettings settings) {
         this.settings = settings;
         this.scheduler = Executors.newScheduledThreadPool(settings.getSchedulerPoolSize(), ThingsBoardThreadFactory.forName("actor-system-scheduler"));
+        this.timer = new TbActorTimer("actor-system-timer", settings.getTimerTickDurationMs(), settings.getTimerWheelSize());
+        this.timer.start();
     }
 
     @Override
@@ -194,6 +198,7 @@ public class DefaultTbActorSystem implements TbActorSystem {
         if (mailbox != null) {
             mailbox.destroy();
         }
+        timer.cancelAll(actorId);
     }
 
     @Override
@@ -209,6 +214,7 @@ public class DefaultTbActorSystem implements TbActorSystem {
         if (scheduler != null) {
             scheduler.shutdownNow();
         }
+        timer.stop();
         actors.clear();
     }
 
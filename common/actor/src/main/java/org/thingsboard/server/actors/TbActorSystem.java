@@ -26,6 +26,8 @@ public interface TbActorSystem {
 
     ScheduledExecutorService getScheduler();
 
+    TbActorTimer getTimer();
+
     void createDispatcher(String dispatcherId, ExecutorService executor);
 
     void destroyDispatcher(String dispatcherId);
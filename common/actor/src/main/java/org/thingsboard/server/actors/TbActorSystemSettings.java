@@ -23,5 +23,7 @@ public class TbActorSystemSettings {
     private final int actorThroughput;
     private final int schedulerPoolSize;
     private final int maxActorInitAttempts;
+    private final long timerTickDurationMs;
+    private final int timerWheelSize;
 
 }
@@ -0,0 +1,369 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.server.common.msg.TbActorMsg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hierarchical timing wheel that delivers delayed and periodic messages to the actors.
+ * <p>
+ * Level 0 has one bucket per tick, every next level has buckets that span the whole previous level.
+ * Timeouts are cascaded to the lower level once their bucket is reached, so scheduling, cancellation and expiration
+ * are O(1) regardless of the delay, and a single thread serves any number of pending timers.
+ * The delivery precision is the tick duration.
+ */
+@Slf4j
+public class TbActorTimer {
+
+    private static final int PENDING = 0;
+    private static final int FIRED = 1;
+    private static final int CANCELLED = 2;
+    private static final long MAX_DELAY_MS = TimeUnit.DAYS.toMillis(365 * 100);
+
+    private final long tickNanos;
+    private final int wheelSize;
+    // spans of a single bucket of each level, in ticks
+    private final List<Long> spans = new ArrayList<>();
+    private final List<List<List<Timeout>>> levels = new ArrayList<>();
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<TbActorId, ActorTimers> actorTimers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ActorTypeStats> stats = new ConcurrentHashMap<>();
+    private final Thread workerThread;
+
+    private volatile boolean running;
+    private long startNanos;
+    private long currentTick;
+
+    public TbActorTimer(String name, long tickDurationMs, int wheelSize) {
+        if (tickDurationMs <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive: " + tickDurationMs);
+        }
+        if (wheelSize < 2) {
+            throw new IllegalArgumentException("Wheel size must be at least 2: " + wheelSize);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDurationMs);
+        this.wheelSize = wheelSize;
+        this.workerThread = ThingsBoardThreadFactory.forName(name).newThread(this::run);
+    }
+
+    public synchronized void start() {
+        if (!running) {
+            startNanos = System.nanoTime();
+            running = true;
+            workerThread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        if (running) {
+            running = false;
+            workerThread.interrupt();
+        }
+    }
+
+    public Timeout schedule(TbActorRef target, TbActorMsg msg, long delayMs) {
+        return schedule(target, msg, delayMs, 0);
+    }
+
+    public Timeout schedulePeriodic(TbActorRef target, TbActorMsg msg, long delayMs, long periodMs) {
+        if (periodMs <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodMs);
+        }
+        return schedule(target, msg, delayMs, periodMs);
+    }
+
+    private Timeout schedule(TbActorRef target, TbActorMsg msg, long delayMs, long periodMs) {
+        ActorTimers owner = actorTimers.compute(target.getActorId(), this::addTimer);
+        Timeout timeout = new Timeout(owner, target, msg,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(Math.max(0, delayMs), MAX_DELAY_MS)),
+                TimeUnit.MILLISECONDS.toNanos(periodMs));
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    private ActorTimers addTimer(TbActorId actorId, ActorTimers owner) {
+        if (owner == null) {
+            owner = new ActorTimers(stats.computeIfAbsent(getActorType(actorId), ActorTypeStats::new));
+        }
+        owner.add();
+        return owner;
+    }
+
+    /**
+     * Cancels all pending timers of the actor in O(1), e.g. once the actor is stopped.
+     * The timeouts are dropped lazily, once the wheel reaches their buckets.
+     */
+    public int cancelAll(TbActorId actorId) {
+        ActorTimers owner = actorTimers.remove(actorId);
+        return owner != null ? owner.cancelAll() : 0;
+    }
+
+    public int getPendingTimersCount() {
+        return stats.values().stream().mapToInt(typeStats -> typeStats.pending.get()).sum();
+    }
+
+    /**
+     * Returns the pending timers count and the firing lag per actor type. The lag is reset, so every call
+     * returns the lag of the timers fired since the previous one.
+     */
+    public List<TbActorTimerStats> getAndResetStats() {
+        List<TbActorTimerStats> result = new ArrayList<>(stats.size());
+        for (ActorTypeStats typeStats : stats.values()) {
+            long fired = typeStats.fired.getAndSet(0);
+            long lagSumNanos = typeStats.lagSumNanos.getAndSet(0);
+            long maxLagNanos = typeStats.maxLagNanos.getAndSet(0);
+            result.add(new TbActorTimerStats(typeStats.actorType, typeStats.pending.get(), fired,
+                    fired > 0 ? TimeUnit.NANOSECONDS.toMillis(lagSumNanos / fired) : 0, TimeUnit.NANOSECONDS.toMillis(maxLagNanos)));
+        }
+        return result;
+    }
+
+    private void run() {
+        while (running) {
+            long sleepNanos = startNanos + (currentTick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        break;
+                    }
+                }
+            } else {
+                currentTick++;
+                try {
+                    processTick(currentTick);
+                } catch (Throwable t) {
+                    log.warn("Failed to process timer tick", t);
+                }
+            }
+        }
+        newTimeouts.clear();
+        levels.clear();
+    }
+
+    private void processTick(long tick) {
+        for (int level = levels.size() - 1; level > 0; level--) {
+            long span = spans.get(level);
+            if (tick % span == 0) {
+                List<Timeout> bucket = levels.get(level).get((int) ((tick / span) % wheelSize));
+                if (!bucket.isEmpty()) {
+                    List<Timeout> cascaded = new ArrayList<>(bucket);
+                    bucket.clear();
+                    cascaded.forEach(timeout -> place(timeout, tick));
+                }
+            }
+        }
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            timeout.deadlineTick = toTick(timeout.deadlineNanos);
+            place(timeout, tick);
+        }
+        if (levels.isEmpty()) {
+            return;
+        }
+        List<Timeout> bucket = levels.get(0).get((int) (tick % wheelSize));
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Timeout> expired = new ArrayList<>(bucket);
+        bucket.clear();
+        long now = System.nanoTime();
+        for (Timeout expiredTimeout : expired) {
+            expire(expiredTimeout, tick, now);
+        }
+    }
+
+    private void expire(Timeout timeout, long tick, long now) {
+        if (timeout.isCancelled()) {
+            return;
+        }
+        ActorTypeStats typeStats = timeout.owner.typeStats;
+        if (timeout.periodNanos > 0) {
+            typeStats.recordFired(now - timeout.deadlineNanos);
+            // fixed delay semantics, same as ScheduledExecutorService.scheduleWithFixedDelay
+            timeout.deadlineNanos = now + timeout.periodNanos;
+            timeout.deadlineTick = toTick(timeout.deadlineNanos);
+            place(timeout, tick);
+        } else {
+            if (!timeout.state.compareAndSet(PENDING, FIRED)) {
+                return;
+            }
+            typeStats.recordFired(now - timeout.deadlineNanos);
+            release(timeout);
+        }
+        try {
+            timeout.target.tell(timeout.msg);
+        } catch (Exception e) {
+            log.warn("[{}] Failed to deliver delayed msg: {}", timeout.target.getActorId(), timeout.msg, e);
+        }
+    }
+
+    private void place(Timeout timeout, long tick) {
+        if (timeout.isCancelled()) {
+            return;
+        }
+        long deadlineTick = Math.max(timeout.deadlineTick, tick);
+        long delta = deadlineTick - tick;
+        int level = 0;
+        while (delta >= getSpan(level) * wheelSize) {
+            level++;
+        }
+        long span = getSpan(level);
+        levels.get(level).get((int) ((deadlineTick / span) % wheelSize)).add(timeout);
+    }
+
+    private long getSpan(int level) {
+        while (spans.size() <= level) {
+            spans.add(spans.isEmpty() ? 1L : spans.get(spans.size() - 1) * wheelSize);
+            List<List<Timeout>> buckets = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(new ArrayList<>());
+            }
+            levels.add(buckets);
+        }
+        return spans.get(level);
+    }
+
+    private long toTick(long deadlineNanos) {
+        long elapsedNanos = deadlineNanos - startNanos;
+        return elapsedNanos <= 0 ? 0 : (elapsedNanos + tickNanos - 1) / tickNanos;
+    }
+
+    private void release(Timeout timeout) {
+        ActorTimers owner = timeout.owner;
+        if (owner.release()) {
+            // the owner may be reused by a concurrent schedule call, so it is removed only if still empty
+            actorTimers.computeIfPresent(timeout.target.getActorId(), (id, current) -> current == owner && owner.isEmpty() ? null : current);
+        }
+    }
+
+    private static String getActorType(TbActorId actorId) {
+        if (actorId instanceof TbEntityActorId) {
+            return ((TbEntityActorId) actorId).getEntityId().getEntityType().name();
+        } else {
+            return actorId.toString();
+        }
+    }
+
+    public class Timeout {
+
+        private final ActorTimers owner;
+        private final TbActorRef target;
+        private final TbActorMsg msg;
+        private final long periodNanos;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // owned by the worker thread once the timeout is placed into the wheel
+        private long deadlineNanos;
+        private long deadlineTick;
+
+        private Timeout(ActorTimers owner, TbActorRef target, TbActorMsg msg, long deadlineNanos, long periodNanos) {
+            this.owner = owner;
+            this.target = target;
+            this.msg = msg;
+            this.deadlineNanos = deadlineNanos;
+            this.periodNanos = periodNanos;
+        }
+
+        /**
+         * Cancels the timer. The bucket entry is dropped lazily, once the wheel reaches it.
+         */
+        public boolean cancel() {
+            if (!owner.isCancelled() && state.compareAndSet(PENDING, CANCELLED)) {
+                release(this);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED || owner.isCancelled();
+        }
+    }
+
+    /**
+     * Pending timers of a single actor, cancelled all at once when the actor stops.
+     */
+    private static class ActorTimers {
+        private final ActorTypeStats typeStats;
+        private int pending;
+        private volatile boolean cancelled;
+
+        private ActorTimers(ActorTypeStats typeStats) {
+            this.typeStats = typeStats;
+        }
+
+        private synchronized void add() {
+            pending++;
+            typeStats.pending.incrementAndGet();
+        }
+
+        private synchronized boolean release() {
+            if (cancelled) {
+                return false;
+            }
+            pending--;
+            typeStats.pending.decrementAndGet();
+            return pending == 0;
+        }
+
+        private synchronized int cancelAll() {
+            int cancelled = pending;
+            this.cancelled = true;
+            typeStats.pending.addAndGet(-pending);
+            pending = 0;
+            return cancelled;
+        }
+
+        private synchronized boolean isEmpty() {
+            return pending == 0;
+        }
+
+        private boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static class ActorTypeStats {
+        private final String actorType;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong fired = new AtomicLong();
+        private final AtomicLong lagSumNanos = new AtomicLong();
+        private final AtomicLong maxLagNanos = new AtomicLong();
+
+        private ActorTypeStats(String actorType) {
+            this.actorType = actorType;
+        }
+
+        private void recordFired(long lagNanos) {
+            fired.incrementAndGet();
+            lagSumNanos.addAndGet(Math.max(0, lagNanos));
+            maxLagNanos.accumulateAndGet(lagNanos, Math::max);
+        }
+    }
+}
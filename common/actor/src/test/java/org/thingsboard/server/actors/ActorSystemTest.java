@@ -51,7 +51,7 @@ public class ActorSystemTest {
     public void initActorSystem() {
         int cores = Runtime.getRuntime().availableProcessors();
         parallelism = Math.max(2, cores / 2);
-        TbActorSystemSettings settings = new TbActorSystemSettings(5, parallelism, 42);
+        TbActorSystemSettings settings = new TbActorSystemSettings(5, parallelism, 42, 10, 512);
         actorSystem = new DefaultTbActorSystem(settings);
         submitPool = Executors.newFixedThreadPool(parallelism); //order guaranteed
     }
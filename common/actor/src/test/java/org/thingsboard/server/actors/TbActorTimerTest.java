@@ -0,0 +1,130 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.msg.TbActorMsg;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class TbActorTimerTest {
+
+    private TbActorTimer timer;
+
+    @After
+    public void after() {
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public void testTimersAreFiredAcrossWheelLevels() throws InterruptedException {
+        // 8 ticks per level, so the delays below are cascaded from up to 3 levels
+        timer = new TbActorTimer("test-timer", 5, 8);
+        timer.start();
+        int[] delays = {0, 3, 20, 45, 120, 350, 700};
+        CountDownLatch latch = new CountDownLatch(delays.length);
+        Map<Integer, Long> firedAfterMs = new ConcurrentHashMap<>();
+        long startTs = System.currentTimeMillis();
+        TestActorRef actorRef = new TestActorRef(new TbEntityActorId(new DeviceId(UUID.randomUUID())), msg -> {
+            firedAfterMs.put(((IntTbActorMsg) msg).getValue(), System.currentTimeMillis() - startTs);
+            latch.countDown();
+        });
+        for (int delay : delays) {
+            timer.schedule(actorRef, new IntTbActorMsg(delay), delay);
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int delay : delays) {
+            long firedAfter = firedAfterMs.get(delay);
+            Assert.assertTrue("Fired too early: " + delay + " -> " + firedAfter, firedAfter >= delay);
+            Assert.assertTrue("Fired too late: " + delay + " -> " + firedAfter, firedAfter < delay + 200);
+        }
+        Assert.assertEquals(0, timer.getPendingTimersCount());
+    }
+
+    @Test
+    public void testPeriodicTimersAndBulkCancellation() throws InterruptedException {
+        timer = new TbActorTimer("test-timer", 5, 16);
+        timer.start();
+        AtomicInteger deviceMsgs = new AtomicInteger();
+        AtomicInteger ruleNodeMsgs = new AtomicInteger();
+        TestActorRef deviceActor = new TestActorRef(new TbEntityActorId(new DeviceId(UUID.randomUUID())), msg -> deviceMsgs.incrementAndGet());
+        TestActorRef ruleNodeActor = new TestActorRef(new TbEntityActorId(new RuleNodeId(UUID.randomUUID())), msg -> ruleNodeMsgs.incrementAndGet());
+
+        timer.schedulePeriodic(deviceActor, new IntTbActorMsg(1), 10, 20);
+        timer.schedule(deviceActor, new IntTbActorMsg(2), TimeUnit.MINUTES.toMillis(5));
+        timer.schedulePeriodic(ruleNodeActor, new IntTbActorMsg(3), 10, 20);
+        TbActorTimer.Timeout cancelled = timer.schedule(ruleNodeActor, new IntTbActorMsg(4), 50);
+        Assert.assertTrue(cancelled.cancel());
+        Assert.assertFalse(cancelled.cancel());
+        Assert.assertEquals(3, timer.getPendingTimersCount());
+
+        Thread.sleep(300);
+        Assert.assertTrue(deviceMsgs.get() >= 5);
+        Assert.assertEquals(2, timer.cancelAll(deviceActor.getActorId()));
+        Assert.assertEquals(0, timer.cancelAll(deviceActor.getActorId()));
+        int deviceMsgsAfterStop = deviceMsgs.get();
+        Thread.sleep(100);
+        Assert.assertEquals(deviceMsgsAfterStop, deviceMsgs.get());
+        Assert.assertTrue(ruleNodeMsgs.get() >= 10);
+
+        Map<String, TbActorTimerStats> stats = timer.getAndResetStats().stream()
+                .collect(Collectors.toMap(TbActorTimerStats::getActorType, Function.identity()));
+        Assert.assertEquals(0, stats.get("DEVICE").getPendingTimers());
+        Assert.assertEquals(1, stats.get("RULE_NODE").getPendingTimers());
+        Assert.assertTrue(stats.get("RULE_NODE").getFiredTimers() >= 10);
+        Assert.assertTrue(stats.get("RULE_NODE").getMaxLagMs() < 100);
+    }
+
+    private static class TestActorRef implements TbActorRef {
+
+        private final TbActorId actorId;
+        private final Consumer<TbActorMsg> consumer;
+
+        private TestActorRef(TbActorId actorId, Consumer<TbActorMsg> consumer) {
+            this.actorId = actorId;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public TbActorId getActorId() {
+            return actorId;
+        }
+
+        @Override
+        public void tell(TbActorMsg actorMsg) {
+            consumer.accept(actorMsg);
+        }
+
+        @Override
+        public void tellWithHighPriority(TbActorMsg actorMsg) {
+            consumer.accept(actorMsg);
+        }
+    }
+}
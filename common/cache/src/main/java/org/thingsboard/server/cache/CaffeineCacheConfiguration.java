@@ -25,7 +25,6 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -52,7 +51,7 @@ public class CaffeineCacheConfiguration {
         log.trace("Initializing cache: {}", Arrays.toString(RemovalCause.values()));
         SimpleCacheManager manager = new SimpleCacheManager();
         if (specs != null) {
-            List<CaffeineCache> caches =
+            List<TbCaffeineCache> caches =
                     specs.entrySet().stream()
                             .map(entry -> buildCache(entry.getKey(),
                                     entry.getValue()))
@@ -62,14 +61,14 @@ public class CaffeineCacheConfiguration {
         return manager;
     }
 
-    private CaffeineCache buildCache(String name, CacheSpecs cacheSpec) {
+    private TbCaffeineCache buildCache(String name, CacheSpecs cacheSpec) {
         final Caffeine<Object, Object> caffeineBuilder
                 = Caffeine.newBuilder()
                 .weigher(collectionSafeWeigher())
                 .maximumWeight(cacheSpec.getMaxSize())
                 .expireAfterWrite(cacheSpec.getTimeToLiveInMinutes(), TimeUnit.MINUTES)
                 .ticker(ticker());
-        return new CaffeineCache(name, caffeineBuilder.build());
+        return new TbCaffeineCache(name, caffeineBuilder.build());
     }
 
     @Bean
@@ -0,0 +1,64 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+public class TbCaffeineCache extends CaffeineCache implements TbMultiKeyCache {
+
+    public TbCaffeineCache(String name, Cache<Object, Object> cache) {
+        super(name, cache);
+    }
+
+    @Override
+    public Map<Object, ValueWrapper> getAll(Collection<?> keys) {
+        Map<Object, Object> storeValues = getNativeCache().getAllPresent(keys);
+        Map<Object, ValueWrapper> result = new HashMap<>(storeValues.size());
+        storeValues.forEach((key, storeValue) -> result.put(key, toValueWrapper(storeValue)));
+        return result;
+    }
+
+    @Override
+    public void putAll(Map<?, ?> values) {
+        Map<Object, Object> storeValues = new HashMap<>(values.size());
+        values.forEach((key, value) -> storeValues.put(key, toStoreValue(value)));
+        getNativeCache().putAll(storeValues);
+    }
+
+    @Override
+    public void putAllIfAbsent(Map<?, ?> values) {
+        values.forEach((key, value) -> getNativeCache().asMap().putIfAbsent(key, toStoreValue(value)));
+    }
+
+    @Override
+    public void putAllIfNewer(Map<?, ?> values, BiPredicate<Object, Object> isNewer) {
+        values.forEach((key, value) -> getNativeCache().asMap().compute(key, (k, storeValue) -> {
+            Object cachedValue = storeValue != null ? fromStoreValue(storeValue) : null;
+            return cachedValue == null || isNewer.test(value, cachedValue) ? toStoreValue(value) : storeValue;
+        }));
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        getNativeCache().invalidateAll(keys);
+    }
+}
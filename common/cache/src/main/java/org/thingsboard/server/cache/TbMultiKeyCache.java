@@ -0,0 +1,51 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache;
+
+import org.springframework.cache.Cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/**
+ * Cache that reads and writes a group of keys with a single round trip to the cache storage.
+ */
+public interface TbMultiKeyCache extends Cache {
+
+    /**
+     * @return the wrapped values of the cached keys only, the same way as {@link Cache#get(Object)} returns them
+     */
+    Map<Object, ValueWrapper> getAll(Collection<?> keys);
+
+    void putAll(Map<?, ?> values);
+
+    /**
+     * Puts the values of the keys that are absent in the cache only.
+     * Used to cache the values loaded from the database, so they do not overwrite the newer values put concurrently.
+     */
+    void putAllIfAbsent(Map<?, ?> values);
+
+    /**
+     * Puts the values that are absent in the cache, or are newer than the cached ones.
+     * If the cache can not guarantee that the cached values were not modified concurrently, the keys are evicted.
+     *
+     * @param isNewer tests the new value against the cached one
+     */
+    void putAllIfNewer(Map<?, ?> values, BiPredicate<Object, Object> isNewer);
+
+    void evictAll(Collection<?> keys);
+}
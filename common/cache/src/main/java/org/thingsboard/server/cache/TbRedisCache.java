@@ -0,0 +1,171 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/**
+ * Redis cache that reads the group of keys with MGET and writes them with a single pipeline.
+ * The keys and values are serialized the same way as {@link RedisCache} does it, so both APIs may be used for the same keys.
+ */
+@Slf4j
+public class TbRedisCache extends RedisCache implements TbMultiKeyCache {
+
+    private final RedisConnectionFactory connectionFactory;
+
+    protected TbRedisCache(String name, RedisCacheWriter cacheWriter, RedisCacheConfiguration cacheConfig, RedisConnectionFactory connectionFactory) {
+        super(name, cacheWriter, cacheConfig);
+        this.connectionFactory = connectionFactory;
+    }
+
+    @Override
+    public Map<Object, ValueWrapper> getAll(Collection<?> keys) {
+        List<Object> keysList = new ArrayList<>(keys);
+        byte[][] rawKeys = toRawKeys(keysList);
+        List<byte[]> rawValues;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            rawValues = connection.mGet(rawKeys);
+        }
+        return toValueWrappers(keysList, rawValues);
+    }
+
+    @Override
+    public void putAll(Map<?, ?> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            // pipelining is not supported for the cluster connections
+            boolean pipelined = !(connection instanceof RedisClusterConnection);
+            if (pipelined) {
+                connection.openPipeline();
+            }
+            values.forEach((key, value) -> set(connection, toRawKey(key), value, RedisStringCommands.SetOption.upsert()));
+            if (pipelined) {
+                connection.closePipeline();
+            }
+        }
+    }
+
+    @Override
+    public void putAllIfAbsent(Map<?, ?> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            boolean pipelined = !(connection instanceof RedisClusterConnection);
+            if (pipelined) {
+                connection.openPipeline();
+            }
+            values.forEach((key, value) -> set(connection, toRawKey(key), value, RedisStringCommands.SetOption.ifAbsent()));
+            if (pipelined) {
+                connection.closePipeline();
+            }
+        }
+    }
+
+    @Override
+    public void putAllIfNewer(Map<?, ?> values, BiPredicate<Object, Object> isNewer) {
+        if (values.isEmpty()) {
+            return;
+        }
+        List<Object> keysList = new ArrayList<>(values.keySet());
+        byte[][] rawKeys = toRawKeys(keysList);
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            if (connection instanceof RedisClusterConnection) {
+                // transactions are not supported for the cluster connections
+                connection.del(rawKeys);
+                return;
+            }
+            connection.watch(rawKeys);
+            Map<Object, ValueWrapper> cachedValues = toValueWrappers(keysList, connection.mGet(rawKeys));
+            connection.multi();
+            for (int i = 0; i < rawKeys.length; i++) {
+                Object key = keysList.get(i);
+                Object value = values.get(key);
+                ValueWrapper cachedValue = cachedValues.get(key);
+                if (cachedValue == null || cachedValue.get() == null || isNewer.test(value, cachedValue.get())) {
+                    set(connection, rawKeys[i], value, RedisStringCommands.SetOption.upsert());
+                }
+            }
+            if (connection.exec() == null) {
+                log.debug("[{}] Cached values were modified concurrently, evicting {} keys", getName(), rawKeys.length);
+                connection.del(rawKeys);
+            }
+        }
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.del(toRawKeys(new ArrayList<>(keys)));
+        }
+    }
+
+    private void set(RedisConnection connection, byte[] rawKey, Object value, RedisStringCommands.SetOption option) {
+        byte[] rawValue = serializeCacheValue(toStoreValue(value));
+        Duration ttl = getCacheConfiguration().getTtl();
+        if (ttl != null && !ttl.isZero() && !ttl.isNegative()) {
+            connection.set(rawKey, rawValue, Expiration.from(ttl), option);
+        } else {
+            connection.set(rawKey, rawValue, Expiration.persistent(), option);
+        }
+    }
+
+    private Map<Object, ValueWrapper> toValueWrappers(List<Object> keys, List<byte[]> rawValues) {
+        Map<Object, ValueWrapper> result = new HashMap<>(keys.size());
+        if (rawValues != null) {
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] rawValue = rawValues.get(i);
+                if (rawValue != null) {
+                    result.put(keys.get(i), toValueWrapper(deserializeCacheValue(rawValue)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private byte[][] toRawKeys(List<Object> keys) {
+        byte[][] rawKeys = new byte[keys.size()][];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = toRawKey(keys.get(i));
+        }
+        return rawKeys;
+    }
+
+    private byte[] toRawKey(Object key) {
+        return serializeCacheKey(createCacheKey(key));
+    }
+}
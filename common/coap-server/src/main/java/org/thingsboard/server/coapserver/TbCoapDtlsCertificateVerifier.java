@@ -63,11 +63,11 @@ public class TbCoapDtlsCertificateVerifier implements NewAdvancedCertificateVeri
     private TbServiceInfoProvider serviceInfoProvider;
     private boolean skipValidityCheckForClientCert;
 
-    public TbCoapDtlsCertificateVerifier(TransportService transportService, TbServiceInfoProvider serviceInfoProvider, long dtlsSessionInactivityTimeout, long dtlsSessionReportTimeout, boolean skipValidityCheckForClientCert) {
+    public TbCoapDtlsCertificateVerifier(TransportService transportService, TbServiceInfoProvider serviceInfoProvider, long dtlsSessionInactivityTimeout, long dtlsSessionReportTimeout, long dtlsSessionMaxCount, boolean skipValidityCheckForClientCert) {
         this.transportService = transportService;
         this.serviceInfoProvider = serviceInfoProvider;
         this.skipValidityCheckForClientCert = skipValidityCheckForClientCert;
-        this.tbCoapDtlsSessionInMemoryStorage = new TbCoapDtlsSessionInMemoryStorage(dtlsSessionInactivityTimeout, dtlsSessionReportTimeout);
+        this.tbCoapDtlsSessionInMemoryStorage = new TbCoapDtlsSessionInMemoryStorage(dtlsSessionInactivityTimeout, dtlsSessionReportTimeout, dtlsSessionMaxCount);
     }
 
     @Override
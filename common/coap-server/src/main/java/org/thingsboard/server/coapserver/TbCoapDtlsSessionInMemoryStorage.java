@@ -15,24 +15,43 @@
  */
 package org.thingsboard.server.coapserver;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Bounded in-memory storage of the DTLS sessions.
+ * Sessions expire after the inactivity timeout since the last access, and the least recently used ones are evicted
+ * once the maximum number of sessions is reached, so a flood of handshakes can't exhaust the memory.
+ */
 @Slf4j
 @Data
 public class TbCoapDtlsSessionInMemoryStorage {
 
-    private final ConcurrentMap<String, TbCoapDtlsSessionInfo> dtlsSessionIdMap = new ConcurrentHashMap<>();
+    private final Cache<String, TbCoapDtlsSessionInfo> dtlsSessions;
+    private final ConcurrentMap<String, TbCoapDtlsSessionInfo> dtlsSessionIdMap;
     private long dtlsSessionInactivityTimeout;
     private long dtlsSessionReportTimeout;
 
 
-    public TbCoapDtlsSessionInMemoryStorage(long dtlsSessionInactivityTimeout, long dtlsSessionReportTimeout) {
+    public TbCoapDtlsSessionInMemoryStorage(long dtlsSessionInactivityTimeout, long dtlsSessionReportTimeout, long dtlsSessionMaxCount) {
         this.dtlsSessionInactivityTimeout = dtlsSessionInactivityTimeout;
         this.dtlsSessionReportTimeout = dtlsSessionReportTimeout;
+        this.dtlsSessions = Caffeine.newBuilder()
+                .expireAfterAccess(dtlsSessionInactivityTimeout, TimeUnit.MILLISECONDS)
+                .maximumSize(dtlsSessionMaxCount)
+                .removalListener((String dtlsSessionId, TbCoapDtlsSessionInfo dtlsSessionInfo, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        log.trace("DTLS session was removed from in-memory store: [{}] cause: [{}]", dtlsSessionId, cause);
+                    }
+                })
+                .build();
+        this.dtlsSessionIdMap = dtlsSessions.asMap();
     }
 
     public void put(String dtlsSessionId, TbCoapDtlsSessionInfo dtlsSessionInfo) {
@@ -41,15 +60,7 @@ public class TbCoapDtlsSessionInMemoryStorage {
     }
 
     public void evictTimeoutSessions() {
-        long expTime = System.currentTimeMillis() - dtlsSessionInactivityTimeout;
-        dtlsSessionIdMap.entrySet().removeIf(entry -> {
-            if (entry.getValue().getLastActivityTime() < expTime) {
-                log.trace("DTLS session was removed from in-memory store: [{}]", entry.getKey());
-                return true;
-            } else {
-                return false;
-            }
-        });
+        dtlsSessions.cleanUp();
     }
 
-}
\ No newline at end of file
+}
@@ -66,6 +66,9 @@ public class TbCoapDtlsSettings {
     @Value("${transport.coap.dtls.x509.dtls_session_report_timeout:1800000}")
     private long dtlsSessionReportTimeout;
 
+    @Value("${transport.coap.dtls.x509.dtls_session_max_count:100000}")
+    private long dtlsSessionMaxCount;
+
     @Autowired
     private TransportService transportService;
 
@@ -86,6 +89,7 @@ public class TbCoapDtlsSettings {
                         serviceInfoProvider,
                         dtlsSessionInactivityTimeout,
                         dtlsSessionReportTimeout,
+                        dtlsSessionMaxCount,
                         skipValidityCheckForClientCert
                 )
         );
@@ -24,10 +24,20 @@ import org.thingsboard.server.common.data.query.EntityCountQuery;
 import org.thingsboard.server.common.data.query.EntityData;
 import org.thingsboard.server.common.data.query.EntityDataQuery;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface EntityService {
 
     ListenableFuture<String> fetchEntityNameAsync(TenantId tenantId, EntityId entityId);
 
+    /**
+     * Fetches the names of the entities with one query per entity type, using the entity name cache.
+     *
+     * @return names of the existing entities only
+     */
+    Map<EntityId, String> fetchEntityNames(TenantId tenantId, Collection<? extends EntityId> entityIds);
+
     CustomerId fetchEntityCustomerId(TenantId tenantId, EntityId entityId);
 
     void deleteEntityRelations(TenantId tenantId, EntityId entityId);
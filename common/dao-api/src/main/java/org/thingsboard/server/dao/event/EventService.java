@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.dao.event;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.thingsboard.server.common.data.Event;
 import org.thingsboard.server.common.data.event.EventFilter;
@@ -25,6 +26,7 @@ import org.thingsboard.server.common.data.page.TimePageLink;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public interface EventService {
 
@@ -32,6 +34,12 @@ public interface EventService {
 
     ListenableFuture<Event> saveAsync(Event event);
 
+    /**
+     * Queues the event for the batched insert. The body is built by the supplier on the writer thread,
+     * so the caller does not pay for the serialization.
+     */
+    ListenableFuture<Void> saveBatchedAsync(Event event, Supplier<JsonNode> bodySupplier);
+
     Optional<Event> saveIfNotExists(Event event);
 
     Optional<Event> findEvent(TenantId tenantId, EntityId entityId, String eventType, String eventUid);
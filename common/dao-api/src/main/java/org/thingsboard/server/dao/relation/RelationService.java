@@ -40,6 +40,8 @@ public interface RelationService {
 
     ListenableFuture<Boolean> saveRelationAsync(TenantId tenantId, EntityRelation relation);
 
+    void saveRelations(TenantId tenantId, List<EntityRelation> relations);
+
     boolean deleteRelation(TenantId tenantId, EntityRelation relation);
 
     ListenableFuture<Boolean> deleteRelationAsync(TenantId tenantId, EntityRelation relation);
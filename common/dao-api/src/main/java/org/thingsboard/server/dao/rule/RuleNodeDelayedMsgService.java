@@ -0,0 +1,37 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.rule;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.thingsboard.server.common.data.id.RuleNodeDelayedMsgId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.page.TimePageLink;
+import org.thingsboard.server.common.data.rule.RuleNodeDelayedMsg;
+
+import java.util.Collection;
+
+public interface RuleNodeDelayedMsgService {
+
+    ListenableFuture<RuleNodeDelayedMsg> saveAsync(TenantId tenantId, RuleNodeDelayedMsg delayedMsg);
+
+    ListenableFuture<PageData<RuleNodeDelayedMsg>> findByRuleNodeIdAsync(TenantId tenantId, RuleNodeId ruleNodeId, Collection<Integer> partitions, TimePageLink pageLink);
+
+    ListenableFuture<Void> removeByIdAsync(TenantId tenantId, RuleNodeDelayedMsgId delayedMsgId);
+
+    ListenableFuture<Void> removeByRuleNodeIdAsync(TenantId tenantId, RuleNodeId ruleNodeId);
+}
@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.dao.rule;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.RuleNodeId;
 import org.thingsboard.server.common.data.id.TenantId;
@@ -30,6 +31,10 @@ public interface RuleNodeStateService {
 
     RuleNodeState save(TenantId tenantId, RuleNodeState ruleNodeState);
 
+    ListenableFuture<Void> saveAsync(TenantId tenantId, RuleNodeState ruleNodeState);
+
+    void flush(TenantId tenantId, RuleNodeId ruleNodeId);
+
     void removeByRuleNodeId(TenantId tenantId, RuleNodeId selfId);
 
     void removeByRuleNodeIdAndEntityId(TenantId tenantId, RuleNodeId selfId, EntityId entityId);
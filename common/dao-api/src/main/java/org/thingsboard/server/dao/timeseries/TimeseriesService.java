@@ -54,4 +54,6 @@ public interface TimeseriesService {
     List<String> findAllKeysByEntityIds(TenantId tenantId, List<EntityId> entityIds);
 
     void cleanup(long systemTtl);
+
+    void cleanup(TenantId tenantId, long ttl);
 }
@@ -0,0 +1,46 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.data.query;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.thingsboard.server.common.data.page.PageData;
+
+import java.util.List;
+
+public class EntityDataPageData extends PageData<EntityData> {
+
+    private final String nextPageCursor;
+
+    @JsonCreator
+    public EntityDataPageData(@JsonProperty("data") List<EntityData> data,
+                              @JsonProperty("totalPages") int totalPages,
+                              @JsonProperty("totalElements") long totalElements,
+                              @JsonProperty("hasNext") boolean hasNext,
+                              @JsonProperty("nextPageCursor") String nextPageCursor) {
+        super(data, totalPages, totalElements, hasNext);
+        this.nextPageCursor = nextPageCursor;
+    }
+
+    /**
+     * Opaque position of the last entity on this page. Pass it back in {@link EntityDataPageLink#getCursor()}
+     * to continue after this entity instead of skipping {@code page * pageSize} rows.
+     */
+    public String getNextPageCursor() {
+        return nextPageCursor;
+    }
+
+}
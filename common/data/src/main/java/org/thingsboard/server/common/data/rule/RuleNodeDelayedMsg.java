@@ -0,0 +1,53 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.data.rule;
+
+import lombok.Data;
+import org.thingsboard.server.common.data.BaseData;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.RuleNodeDelayedMsgId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+
+/**
+ * Message that is delayed by the rule node and persisted, so it survives restarts and partition moves.
+ */
+@Data
+public class RuleNodeDelayedMsg extends BaseData<RuleNodeDelayedMsgId> {
+
+    private RuleNodeId ruleNodeId;
+    private EntityId entityId;
+    // rule engine queue partition of the entity, so each server loads the messages of its own partitions only
+    private int partition;
+    private long fireTs;
+    private byte[] msgData;
+
+    public RuleNodeDelayedMsg() {
+        super();
+    }
+
+    public RuleNodeDelayedMsg(RuleNodeDelayedMsgId id) {
+        super(id);
+    }
+
+    public RuleNodeDelayedMsg(RuleNodeDelayedMsg delayedMsg) {
+        super(delayedMsg);
+        this.ruleNodeId = delayedMsg.getRuleNodeId();
+        this.entityId = delayedMsg.getEntityId();
+        this.partition = delayedMsg.getPartition();
+        this.fireTs = delayedMsg.getFireTs();
+        this.msgData = delayedMsg.getMsgData();
+    }
+}
@@ -17,10 +17,15 @@ package org.thingsboard.server.common.msg;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.id.CustomerId;
@@ -32,7 +37,9 @@ import org.thingsboard.server.common.msg.gen.MsgProtos;
 import org.thingsboard.server.common.msg.queue.ServiceQueue;
 import org.thingsboard.server.common.msg.queue.TbMsgCallback;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -66,6 +73,14 @@ public final class TbMsg implements Serializable {
     @JsonIgnore
     transient private final TbMsgCallback callback;
 
+    // Bytes the message was decoded from, passed through to the queue as is while the message is not modified
+    @JsonIgnore
+    @Getter(value = AccessLevel.NONE)
+    @Setter(value = AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    transient private EncodedMsg encoded;
+
     public static TbMsg newMsg(String queueName, String type, EntityId originator, TbMsgMetaData metaData, String data, RuleChainId ruleChainId, RuleNodeId ruleNodeId) {
         return newMsg(queueName, type, originator, null, metaData, data, ruleChainId, ruleNodeId);
     }
@@ -175,10 +190,35 @@ public final class TbMsg implements Serializable {
     }
 
     public static ByteString toByteString(TbMsg msg) {
-        return ByteString.copyFrom(toByteArray(msg));
+        EncodedMsg encoded = msg.encoded;
+        if (encoded != null && msg.metaData != null && encoded.metaData.equals(msg.metaData.getData())) {
+            int ruleNodeExecCounter = msg.ruleNodeExecCounter.get();
+            if (ruleNodeExecCounter == encoded.ruleNodeExecCounter) {
+                return encoded.bytes;
+            }
+            // the last value of the singular field wins, so the counter is appended instead of encoding the whole message
+            return encoded.bytes.concat(encodeRuleNodeExecCounter(ruleNodeExecCounter));
+        }
+        return toProto(msg).toByteString();
     }
 
     public static byte[] toByteArray(TbMsg msg) {
+        return toByteString(msg).toByteArray();
+    }
+
+    private static ByteString encodeRuleNodeExecCounter(int ruleNodeExecCounter) {
+        try {
+            ByteString.Output output = ByteString.newOutput(CodedOutputStream.computeInt32Size(MsgProtos.TbMsgProto.RULENODEEXECCOUNTER_FIELD_NUMBER, ruleNodeExecCounter));
+            CodedOutputStream codedOutput = CodedOutputStream.newInstance(output);
+            codedOutput.writeInt32(MsgProtos.TbMsgProto.RULENODEEXECCOUNTER_FIELD_NUMBER, ruleNodeExecCounter);
+            codedOutput.flush();
+            return output.toByteString();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode rule node execution counter", e);
+        }
+    }
+
+    private static MsgProtos.TbMsgProto toProto(TbMsg msg) {
         MsgProtos.TbMsgProto.Builder builder = MsgProtos.TbMsgProto.newBuilder();
         builder.setId(msg.getId().toString());
         builder.setTs(msg.getTs());
@@ -209,34 +249,51 @@ public final class TbMsg implements Serializable {
         builder.setDataType(msg.getDataType().ordinal());
         builder.setData(msg.getData());
         builder.setRuleNodeExecCounter(msg.ruleNodeExecCounter.get());
-        return builder.build().toByteArray();
+        return builder.build();
     }
 
     public static TbMsg fromBytes(String queueName, byte[] data, TbMsgCallback callback) {
         try {
-            MsgProtos.TbMsgProto proto = MsgProtos.TbMsgProto.parseFrom(data);
-            TbMsgMetaData metaData = new TbMsgMetaData(proto.getMetaData().getDataMap());
-            EntityId entityId = EntityIdFactory.getByTypeAndUuid(proto.getEntityType(), new UUID(proto.getEntityIdMSB(), proto.getEntityIdLSB()));
-            CustomerId customerId = null;
-            RuleChainId ruleChainId = null;
-            RuleNodeId ruleNodeId = null;
-            if (proto.getCustomerIdMSB() != 0L && proto.getCustomerIdLSB() != 0L) {
-                customerId = new CustomerId(new UUID(proto.getCustomerIdMSB(), proto.getCustomerIdLSB()));
-            }
-            if (proto.getRuleChainIdMSB() != 0L && proto.getRuleChainIdLSB() != 0L) {
-                ruleChainId = new RuleChainId(new UUID(proto.getRuleChainIdMSB(), proto.getRuleChainIdLSB()));
-            }
-            if (proto.getRuleNodeIdMSB() != 0L && proto.getRuleNodeIdLSB() != 0L) {
-                ruleNodeId = new RuleNodeId(new UUID(proto.getRuleNodeIdMSB(), proto.getRuleNodeIdLSB()));
-            }
+            return fromProto(queueName, MsgProtos.TbMsgProto.parseFrom(data), callback);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException("Could not parse protobuf for TbMsg", e);
+        }
+    }
 
-            TbMsgDataType dataType = TbMsgDataType.values()[proto.getDataType()];
-            return new TbMsg(queueName, UUID.fromString(proto.getId()), proto.getTs(), proto.getType(), entityId, customerId, metaData, dataType, proto.getData(), ruleChainId, ruleNodeId, proto.getRuleNodeExecCounter(), callback);
+    /**
+     * Decodes the message and keeps the original bytes, so the unmodified message is sent to the next queue without encoding.
+     */
+    public static TbMsg fromBytes(String queueName, ByteString data, TbMsgCallback callback) {
+        try {
+            MsgProtos.TbMsgProto proto = MsgProtos.TbMsgProto.parseFrom(data);
+            TbMsg msg = fromProto(queueName, proto, callback);
+            msg.encoded = new EncodedMsg(data, proto.getMetaData().getDataMap(), proto.getRuleNodeExecCounter());
+            return msg;
         } catch (InvalidProtocolBufferException e) {
             throw new IllegalStateException("Could not parse protobuf for TbMsg", e);
         }
     }
 
+    private static TbMsg fromProto(String queueName, MsgProtos.TbMsgProto proto, TbMsgCallback callback) {
+        TbMsgMetaData metaData = new TbMsgMetaData(proto.getMetaData().getDataMap());
+        EntityId entityId = EntityIdFactory.getByTypeAndUuid(proto.getEntityType(), new UUID(proto.getEntityIdMSB(), proto.getEntityIdLSB()));
+        CustomerId customerId = null;
+        RuleChainId ruleChainId = null;
+        RuleNodeId ruleNodeId = null;
+        if (proto.getCustomerIdMSB() != 0L && proto.getCustomerIdLSB() != 0L) {
+            customerId = new CustomerId(new UUID(proto.getCustomerIdMSB(), proto.getCustomerIdLSB()));
+        }
+        if (proto.getRuleChainIdMSB() != 0L && proto.getRuleChainIdLSB() != 0L) {
+            ruleChainId = new RuleChainId(new UUID(proto.getRuleChainIdMSB(), proto.getRuleChainIdLSB()));
+        }
+        if (proto.getRuleNodeIdMSB() != 0L && proto.getRuleNodeIdLSB() != 0L) {
+            ruleNodeId = new RuleNodeId(new UUID(proto.getRuleNodeIdMSB(), proto.getRuleNodeIdLSB()));
+        }
+
+        TbMsgDataType dataType = TbMsgDataType.values()[proto.getDataType()];
+        return new TbMsg(queueName, UUID.fromString(proto.getId()), proto.getTs(), proto.getType(), entityId, customerId, metaData, dataType, proto.getData(), ruleChainId, ruleNodeId, proto.getRuleNodeExecCounter(), callback);
+    }
+
     public TbMsg copyWithRuleChainId(RuleChainId ruleChainId) {
         return copyWithRuleChainId(ruleChainId, this.id);
     }
@@ -261,4 +318,11 @@ public final class TbMsg implements Serializable {
     public String getQueueName() {
         return queueName != null ? queueName : ServiceQueue.MAIN;
     }
+
+    @RequiredArgsConstructor
+    private static class EncodedMsg {
+        private final ByteString bytes;
+        private final Map<String, String> metaData;
+        private final int ruleNodeExecCounter;
+    }
 }
@@ -0,0 +1,123 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.msg;
+
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RuleChainId;
+import org.thingsboard.server.common.msg.queue.TbMsgCallback;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TbMsgTest {
+
+    @Test
+    public void testUnmodifiedDecodedMsgIsPassedThrough() {
+        ByteString bytes = TbMsg.toByteString(newMsg());
+        TbMsg decoded = TbMsg.fromBytes("Main", bytes, TbMsgCallback.EMPTY);
+        assertSame(bytes, TbMsg.toByteString(decoded));
+        assertEquals(bytes, ByteString.copyFrom(TbMsg.toByteArray(decoded)));
+    }
+
+    @Test
+    public void testRuleNodeExecCounterIsAppendedToDecodedMsg() {
+        TbMsg msg = newMsg();
+        TbMsg decoded = TbMsg.fromBytes("Main", TbMsg.toByteString(msg), TbMsgCallback.EMPTY);
+        decoded.getAndIncrementRuleNodeCounter();
+        decoded.getAndIncrementRuleNodeCounter();
+
+        TbMsg result = TbMsg.fromBytes("Main", TbMsg.toByteString(decoded), TbMsgCallback.EMPTY);
+        assertMsgEquals(decoded, result);
+        assertEquals(2, result.getAndIncrementRuleNodeCounter());
+
+        // the counter is appended again for every hop, the last value wins
+        result = TbMsg.fromBytes("Main", TbMsg.toByteString(result), TbMsgCallback.EMPTY);
+        assertEquals(3, result.getAndIncrementRuleNodeCounter());
+    }
+
+    @Test
+    public void testModifiedMetadataIsEncoded() {
+        ByteString bytes = TbMsg.toByteString(newMsg());
+        TbMsg decoded = TbMsg.fromBytes("Main", bytes, TbMsgCallback.EMPTY);
+        decoded.getMetaData().putValue("ts", "12345");
+
+        ByteString modifiedBytes = TbMsg.toByteString(decoded);
+        assertNotSame(bytes, modifiedBytes);
+        TbMsg result = TbMsg.fromBytes("Main", modifiedBytes, TbMsgCallback.EMPTY);
+        assertEquals("12345", result.getMetaData().getValue("ts"));
+        assertMsgEquals(decoded, result);
+    }
+
+    @Test
+    public void testCachedEncodingEqualsFreshEncoding() {
+        TbMsg decoded = TbMsg.fromBytes("Main", TbMsg.toByteString(newMsg()), TbMsgCallback.EMPTY);
+        // the transformed copy has the same content, but no cached encoding
+        TbMsg fresh = TbMsg.transformMsg(decoded, decoded.getType(), decoded.getOriginator(), decoded.getMetaData(), decoded.getData());
+        assertEquals(TbMsg.toByteString(fresh), TbMsg.toByteString(decoded));
+
+        decoded.getAndIncrementRuleNodeCounter();
+        fresh.getAndIncrementRuleNodeCounter();
+        assertMsgEquals(TbMsg.fromBytes("Main", TbMsg.toByteString(fresh), TbMsgCallback.EMPTY),
+                TbMsg.fromBytes("Main", TbMsg.toByteString(decoded), TbMsgCallback.EMPTY));
+    }
+
+    @Test
+    public void testCachedEncodingIsNotReusedByCopies() {
+        ByteString bytes = TbMsg.toByteString(newMsg());
+        TbMsg decoded = TbMsg.fromBytes("Main", bytes, TbMsgCallback.EMPTY);
+
+        RuleChainId ruleChainId = new RuleChainId(UUID.randomUUID());
+        TbMsg copy = decoded.copyWithRuleChainId(ruleChainId);
+        ByteString copyBytes = TbMsg.toByteString(copy);
+        assertNotEquals(bytes, copyBytes);
+        assertEquals(ruleChainId, TbMsg.fromBytes("Main", copyBytes, TbMsgCallback.EMPTY).getRuleChainId());
+
+        TbMsg transformed = TbMsg.transformMsg(decoded, decoded.getType(), decoded.getOriginator(), decoded.getMetaData(), "{\"temperature\":26.5}");
+        TbMsg result = TbMsg.fromBytes("Main", TbMsg.toByteString(transformed), TbMsgCallback.EMPTY);
+        assertEquals("{\"temperature\":26.5}", result.getData());
+        assertMsgEquals(transformed, result);
+
+        // the source msg still passes its own bytes through
+        assertSame(bytes, TbMsg.toByteString(decoded));
+    }
+
+    private void assertMsgEquals(TbMsg expected, TbMsg actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTs(), actual.getTs());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getOriginator(), actual.getOriginator());
+        assertEquals(expected.getCustomerId(), actual.getCustomerId());
+        assertEquals(expected.getMetaData(), actual.getMetaData());
+        assertEquals(expected.getData(), actual.getData());
+        assertEquals(expected.getRuleChainId(), actual.getRuleChainId());
+    }
+
+    private TbMsg newMsg() {
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue("deviceName", "Thermostat A");
+        metaData.putValue("deviceType", "thermostat");
+        metaData.putValue("ts", String.valueOf(System.currentTimeMillis()));
+        return TbMsg.newMsg("Main", "POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), new CustomerId(UUID.randomUUID()),
+                metaData, "{\"temperature\":25.5,\"humidity\":60}", new RuleChainId(UUID.randomUUID()), null);
+    }
+}
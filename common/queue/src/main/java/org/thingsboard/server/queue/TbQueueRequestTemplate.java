@@ -18,6 +18,10 @@ package org.thingsboard.server.queue;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.thingsboard.server.common.stats.MessagesStats;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
 public interface TbQueueRequestTemplate<Request extends TbQueueMsg, Response extends TbQueueMsg> {
 
     void init();
@@ -29,4 +33,14 @@ public interface TbQueueRequestTemplate<Request extends TbQueueMsg, Response ext
     void stop();
 
     void setMessagesStats(MessagesStats messagesStats);
+
+    /**
+     * Sets the function that resolves the type of the request, the latency of the responses is tracked per request type.
+     */
+    default void setRequestTypeResolver(Function<Request, String> requestTypeResolver) {
+    }
+
+    default List<TbQueueRequestLatencyStats> getAndResetLatencyStats() {
+        return Collections.emptyList();
+    }
 }
@@ -30,20 +30,22 @@ import org.thingsboard.server.queue.TbQueueConsumer;
 import org.thingsboard.server.queue.TbQueueMsg;
 import org.thingsboard.server.queue.TbQueueMsgMetadata;
 import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.TbQueueRequestLatencyStats;
 import org.thingsboard.server.queue.TbQueueRequestTemplate;
 import org.thingsboard.server.common.stats.MessagesStats;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.LockSupport;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 @Slf4j
 public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response extends TbQueueMsg> extends AbstractTbQueueTemplate
@@ -52,17 +54,23 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
     private final TbQueueAdmin queueAdmin;
     private final TbQueueProducer<Request> requestTemplate;
     private final TbQueueConsumer<Response> responseTemplate;
-    final ConcurrentHashMap<UUID, DefaultTbQueueRequestTemplate.ResponseMetaData<Response>> pendingRequests = new ConcurrentHashMap<>();
+    private static final String DEFAULT_REQUEST_TYPE = "default";
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+
+    final ConcurrentHashMap<UUID, DefaultTbQueueRequestTemplate.ResponseMetaData<Response>> pendingRequests;
+    final RequestTimeoutWheel<ResponseMetaData<Response>> requestTimeouts;
     final boolean internalExecutor;
     final ExecutorService executor;
     final long maxRequestTimeoutNs;
     final long maxPendingRequests;
     final long pollInterval;
     volatile boolean stopped = false;
-    long nextCleanupNs = 0L;
-    private final Lock cleanerLock = new ReentrantLock();
+    private final ConcurrentMap<String, RequestLatencyHistogram> latencyHistograms = new ConcurrentHashMap<>();
+
+    private final byte[] responseTopicBytes;
 
     private MessagesStats messagesStats;
+    private Function<Request, String> requestTypeResolver;
 
     @Builder
     public DefaultTbQueueRequestTemplate(TbQueueAdmin queueAdmin,
@@ -78,8 +86,12 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
         this.maxRequestTimeoutNs = TimeUnit.MILLISECONDS.toNanos(maxRequestTimeout);
         this.maxPendingRequests = maxPendingRequests;
         this.pollInterval = pollInterval;
+        // presized, so the map is not resized under the load. ConcurrentHashMap already locks per bin and counts the size with striped cells
+        this.pendingRequests = new ConcurrentHashMap<>((int) Math.max(16, Math.min(maxPendingRequests, MAX_INITIAL_CAPACITY)));
+        this.requestTimeouts = new RequestTimeoutWheel<>(TimeUnit.MILLISECONDS.toNanos(pollInterval), this.maxRequestTimeoutNs);
         this.internalExecutor = (executor == null);
         this.executor = internalExecutor ? createExecutor() : executor;
+        this.responseTopicBytes = stringToBytes(responseTemplate.getTopic());
     }
 
     ExecutorService createExecutor() {
@@ -114,36 +126,17 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
         log.trace("Completed template poll topic {}, for pendingRequests [{}], received [{}] responses", responseTemplate.getTopic(), pendingRequestsCount, responses.size());
         responses.forEach(this::processResponse); //this can take a long time
         responseTemplate.commit();
-        tryCleanStaleRequests();
+        cleanStaleRequests();
     }
 
-    private boolean tryCleanStaleRequests() {
-        if (!cleanerLock.tryLock()) {
-            return false;
-        }
-        try {
-            log.trace("tryCleanStaleRequest...");
-            final long currentNs = getCurrentClockNs();
-            if (nextCleanupNs < currentNs) {
-                pendingRequests.forEach((key, value) -> {
-                    if (value.expTime < currentNs) {
-                        ResponseMetaData<Response> staleRequest = pendingRequests.remove(key);
-                        if (staleRequest != null) {
-                            setTimeoutException(key, staleRequest, currentNs);
-                        }
-                    }
-                });
-                setupNextCleanup();
+    void cleanStaleRequests() {
+        final long currentNs = getCurrentClockNs();
+        requestTimeouts.expire(currentNs, staleRequest -> {
+            if (pendingRequests.remove(staleRequest.requestId, staleRequest)) {
+                getLatencyHistogram(staleRequest.requestType).recordTimeout();
+                setTimeoutException(staleRequest.requestId, staleRequest, currentNs);
             }
-        } finally {
-            cleanerLock.unlock();
-        }
-        return true;
-    }
-
-    void setupNextCleanup() {
-        nextCleanupNs = getCurrentClockNs() + maxRequestTimeoutNs;
-        log.trace("setupNextCleanup {}", nextCleanupNs);
+        });
     }
 
     List<Response> doPoll() {
@@ -175,6 +168,9 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
             if (expectedResponse == null) {
                 log.warn("[{}] Invalid or stale request, response: {}", requestId, String.valueOf(response).replace("\n", " "));
             } else {
+                requestTimeouts.cancel(expectedResponse);
+                getLatencyHistogram(expectedResponse.requestType)
+                        .record(TimeUnit.NANOSECONDS.toMicros(getCurrentClockNs() - expectedResponse.submitTime));
                 expectedResponse.future.set(response);
             }
         }
@@ -202,6 +198,26 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
         this.messagesStats = messagesStats;
     }
 
+    @Override
+    public void setRequestTypeResolver(Function<Request, String> requestTypeResolver) {
+        this.requestTypeResolver = requestTypeResolver;
+    }
+
+    @Override
+    public List<TbQueueRequestLatencyStats> getAndResetLatencyStats() {
+        List<TbQueueRequestLatencyStats> result = new ArrayList<>(latencyHistograms.size());
+        latencyHistograms.values().forEach(histogram -> result.add(histogram.getAndReset()));
+        return result;
+    }
+
+    private RequestLatencyHistogram getLatencyHistogram(String requestType) {
+        RequestLatencyHistogram histogram = latencyHistograms.get(requestType);
+        if (histogram == null) {
+            histogram = latencyHistograms.computeIfAbsent(requestType, RequestLatencyHistogram::new);
+        }
+        return histogram;
+    }
+
     @Override
     public ListenableFuture<Response> send(Request request) {
         return send(request, this.maxRequestTimeoutNs);
@@ -215,16 +231,18 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
         }
         UUID requestId = UUID.randomUUID();
         request.getHeaders().put(REQUEST_ID_HEADER, uuidToBytes(requestId));
-        request.getHeaders().put(RESPONSE_TOPIC_HEADER, stringToBytes(responseTemplate.getTopic()));
+        request.getHeaders().put(RESPONSE_TOPIC_HEADER, responseTopicBytes);
         request.getHeaders().put(REQUEST_TIME, longToBytes(getCurrentTimeMs()));
         long currentClockNs = getCurrentClockNs();
         SettableFuture<Response> future = SettableFuture.create();
-        ResponseMetaData<Response> responseMetaData = new ResponseMetaData<>(currentClockNs + requestTimeoutNs, future, currentClockNs, requestTimeoutNs);
+        String requestType = requestTypeResolver != null ? requestTypeResolver.apply(request) : DEFAULT_REQUEST_TYPE;
+        ResponseMetaData<Response> responseMetaData = new ResponseMetaData<>(requestId, requestType, currentClockNs + requestTimeoutNs, future, currentClockNs, requestTimeoutNs);
         log.trace("pending {}", responseMetaData);
         if (pendingRequests.putIfAbsent(requestId, responseMetaData) != null) {
             log.warn("Pending request already exists [{}]!", maxPendingRequests);
             return Futures.immediateFailedFuture(new RuntimeException("Pending request already exists !" + requestId));
         }
+        requestTimeouts.add(responseMetaData);
         sendToRequestTemplate(request, requestId, future, responseMetaData);
         return future;
     }
@@ -270,13 +288,17 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
     }
 
     @Getter
-    static class ResponseMetaData<T> {
+    static class ResponseMetaData<T> extends RequestTimeoutWheel.Entry {
+        private final UUID requestId;
+        private final String requestType;
         private final long submitTime;
         private final long timeout;
         private final long expTime;
         private final SettableFuture<T> future;
 
-        ResponseMetaData(long ts, SettableFuture<T> future, long submitTime, long timeout) {
+        ResponseMetaData(UUID requestId, String requestType, long ts, SettableFuture<T> future, long submitTime, long timeout) {
+            this.requestId = requestId;
+            this.requestType = requestType;
             this.submitTime = submitTime;
             this.timeout = timeout;
             this.expTime = ts;
@@ -286,7 +308,8 @@ public class DefaultTbQueueRequestTemplate<Request extends TbQueueMsg, Response
         @Override
         public String toString() {
             return "ResponseMetaData{" +
-                    "submitTime=" + submitTime +
+                    "requestType=" + requestType +
+                    ", submitTime=" + submitTime +
                     ", calculatedExpTime=" + (submitTime + timeout) +
                     ", deltaMs=" + (expTime - submitTime) +
                     ", expTime=" + expTime +
@@ -0,0 +1,102 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.common;
+
+import org.thingsboard.server.queue.TbQueueRequestLatencyStats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of the request latencies in microseconds.
+ * Every power of two is split into {@link #SUB_BUCKETS} buckets, so the percentile error is within 12.5%.
+ */
+class RequestLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String requestType;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder totalUs = new LongAdder();
+    private final AtomicLong maxUs = new AtomicLong();
+
+    RequestLatencyHistogram(String requestType) {
+        this.requestType = requestType;
+    }
+
+    void record(long latencyUs) {
+        long value = Math.max(0, latencyUs);
+        buckets.incrementAndGet(bucketIndex(value));
+        totalUs.add(value);
+        if (value > maxUs.get()) {
+            maxUs.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    void recordTimeout() {
+        timeouts.increment();
+    }
+
+    TbQueueRequestLatencyStats getAndReset() {
+        long[] counts = new long[BUCKETS];
+        long responses = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.getAndSet(i, 0);
+            responses += counts[i];
+        }
+        long total = totalUs.sumThenReset();
+        long max = maxUs.getAndSet(0);
+        return new TbQueueRequestLatencyStats(requestType, responses, timeouts.sumThenReset(),
+                responses > 0 ? total / responses : 0, percentile(counts, responses, 0.5), percentile(counts, responses, 0.99), max);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exp = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exp - SUB_BUCKET_BITS);
+    }
+
+    private static long percentile(long[] counts, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketLowerBound(i);
+            }
+        }
+        return bucketLowerBound(counts.length - 1);
+    }
+}
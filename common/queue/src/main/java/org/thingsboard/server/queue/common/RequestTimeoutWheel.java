@@ -0,0 +1,143 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.common;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel that tracks the deadlines of the pending requests.
+ * Entries may be added from any thread, while {@link #cancel} and {@link #expire} are invoked by the single owner thread,
+ * so the buckets are plain doubly linked lists and the response removes its entry in O(1).
+ * Expiration visits only the buckets of the elapsed ticks instead of scanning all pending requests.
+ */
+class RequestTimeoutWheel<T extends RequestTimeoutWheel.Entry> {
+
+    private static final int MAX_WHEEL_SIZE = 1 << 16;
+
+    private final Queue<T> newEntries = new ConcurrentLinkedQueue<>();
+    private final Entry[] buckets;
+    private final int mask;
+    private final long tickNs;
+    private boolean started;
+    private long originNs;
+    private long currentTick;
+    private int size;
+
+    RequestTimeoutWheel(long tickNs, long maxTimeoutNs) {
+        this.tickNs = Math.max(1, tickNs);
+        long ticksPerTimeout = maxTimeoutNs / this.tickNs + 1;
+        int wheelSize = 1;
+        while (wheelSize < ticksPerTimeout && wheelSize < MAX_WHEEL_SIZE) {
+            wheelSize <<= 1;
+        }
+        this.buckets = new Entry[wheelSize];
+        this.mask = wheelSize - 1;
+    }
+
+    void add(T entry) {
+        newEntries.add(entry);
+    }
+
+    void cancel(T entry) {
+        if (entry.bucket >= 0) {
+            unlink(entry);
+        } else {
+            entry.cancelled = true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void expire(long currentNs, Consumer<T> onExpired) {
+        if (!started) {
+            started = true;
+            originNs = currentNs;
+            currentTick = 0;
+        }
+        long tick = Math.floorDiv(currentNs - originNs, tickNs);
+        long lastTick = currentTick;
+        currentTick = Math.max(currentTick, tick);
+        T entry;
+        while ((entry = newEntries.poll()) != null) {
+            if (entry.cancelled) {
+                continue;
+            }
+            long deadlineTick = -Math.floorDiv(originNs - entry.getExpTime(), tickNs);
+            if (deadlineTick <= currentTick) {
+                onExpired.accept(entry);
+            } else {
+                entry.deadlineTick = deadlineTick;
+                link(entry, (int) (deadlineTick & mask));
+            }
+        }
+        // after a full revolution every bucket is visited, so the longer pauses are bounded by the wheel size
+        long toTick = Math.min(currentTick, lastTick + buckets.length);
+        for (long t = lastTick + 1; t <= toTick; t++) {
+            Entry bucketEntry = buckets[(int) (t & mask)];
+            while (bucketEntry != null) {
+                Entry next = bucketEntry.next;
+                if (bucketEntry.deadlineTick <= currentTick) {
+                    unlink(bucketEntry);
+                    onExpired.accept((T) bucketEntry);
+                }
+                bucketEntry = next;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void link(Entry entry, int bucket) {
+        Entry head = buckets[bucket];
+        entry.bucket = bucket;
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        buckets[bucket] = entry;
+        size++;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            buckets[entry.bucket] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+        entry.bucket = -1;
+        entry.cancelled = true;
+        size--;
+    }
+
+    abstract static class Entry {
+        Entry prev;
+        Entry next;
+        int bucket = -1;
+        long deadlineTick;
+        boolean cancelled;
+
+        abstract long getExpTime();
+    }
+}
@@ -125,6 +125,14 @@ public class HashPartitionService implements PartitionService {
         return tpiCache.computeIfAbsent(cacheKey, key -> buildTopicPartitionInfo(serviceQueue, tenantId, partition));
     }
 
+    @Override
+    public List<Integer> getMyPartitions(ServiceType serviceType, TenantId tenantId) {
+        ServiceQueue serviceQueue = new ServiceQueue(serviceType);
+        TenantId partitionsTenantId = isIsolated(serviceQueue, tenantId) ? tenantId : new TenantId(TenantId.NULL_UUID);
+        List<Integer> partitions = myPartitions.get(new ServiceQueueKey(serviceQueue, partitionsTenantId));
+        return partitions != null ? new ArrayList<>(partitions) : Collections.emptyList();
+    }
+
     @Override
     public synchronized void recalculatePartitions(ServiceInfo currentService, List<ServiceInfo> otherServices) {
         logServiceInfo(currentService);
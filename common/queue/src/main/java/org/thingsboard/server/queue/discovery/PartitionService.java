@@ -35,6 +35,14 @@ public interface PartitionService {
 
     TopicPartitionInfo resolve(ServiceType serviceType, String queueName, TenantId tenantId, EntityId entityId);
 
+    /**
+     * Get the partitions of the main queue of the service type that are assigned to the current service
+     * @param serviceType of the queue
+     * @param tenantId to resolve the partitions of the isolated tenants
+     * @return indexes of the partitions, the same as {@link TopicPartitionInfo#getPartition()} of the resolved entities
+     */
+    List<Integer> getMyPartitions(ServiceType serviceType, TenantId tenantId);
+
     /**
      * Received from the Discovery service when network topology is changed.
      * @param currentService - current service information {@link org.thingsboard.server.gen.transport.TransportProtos.ServiceInfo}
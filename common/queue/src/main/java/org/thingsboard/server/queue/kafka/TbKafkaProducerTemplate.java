@@ -28,12 +28,15 @@ import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
 import org.thingsboard.server.queue.TbQueueAdmin;
 import org.thingsboard.server.queue.TbQueueCallback;
 import org.thingsboard.server.queue.TbQueueMsg;
+import org.thingsboard.server.queue.TbQueueMsgHeaders;
 import org.thingsboard.server.queue.TbQueueProducer;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * Created by ashvayka on 24.09.18.
@@ -80,9 +83,7 @@ public class TbKafkaProducerTemplate<T extends TbQueueMsg> implements TbQueuePro
         createTopicIfNotExist(tpi);
         String key = msg.getKey().toString();
         byte[] data = msg.getData();
-        ProducerRecord<String, byte[]> record;
-        Iterable<Header> headers = msg.getHeaders().getData().entrySet().stream().map(e -> new RecordHeader(e.getKey(), e.getValue())).collect(Collectors.toList());
-        record = new ProducerRecord<>(tpi.getFullTopicName(), null, key, data, headers);
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(tpi.getFullTopicName(), null, key, data, toHeaders(msg.getHeaders()));
         producer.send(record, (metadata, exception) -> {
             if (exception == null) {
                 if (callback != null) {
@@ -98,6 +99,19 @@ public class TbKafkaProducerTemplate<T extends TbQueueMsg> implements TbQueuePro
         });
     }
 
+    private static List<Header> toHeaders(TbQueueMsgHeaders msgHeaders) {
+        Map<String, byte[]> headersData = msgHeaders.getData();
+        if (headersData.isEmpty()) {
+            return null;
+        }
+        Header[] headers = new Header[headersData.size()];
+        int i = 0;
+        for (Map.Entry<String, byte[]> entry : headersData.entrySet()) {
+            headers[i++] = new RecordHeader(entry.getKey(), entry.getValue());
+        }
+        return Arrays.asList(headers);
+    }
+
     private void createTopicIfNotExist(TopicPartitionInfo tpi) {
         if (topics.contains(tpi)) {
             return;
@@ -35,14 +35,14 @@ import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
 import org.thingsboard.server.queue.scheduler.SchedulerComponent;
 
 import javax.annotation.PostConstruct;
-import java.util.EnumMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 @Component
 @Slf4j
@@ -55,7 +55,9 @@ public class DefaultTbApiUsageClient implements TbApiUsageClient {
     @Value("${usage.stats.report.interval:10}")
     private int interval;
 
-    private final EnumMap<ApiUsageRecordKey, ConcurrentMap<OwnerId, AtomicLong>> stats = new EnumMap<>(ApiUsageRecordKey.class);
+    private static final ApiUsageRecordKey[] KEYS = ApiUsageRecordKey.values();
+
+    private final ConcurrentMap<OwnerId, OwnerStats> stats = new ConcurrentHashMap<>();
 
     private final PartitionService partitionService;
     private final SchedulerComponent scheduler;
@@ -72,9 +74,6 @@ public class DefaultTbApiUsageClient implements TbApiUsageClient {
     private void init() {
         if (enabled) {
             msgProducer = this.producerProvider.getTbUsageStatsMsgProducer();
-            for (ApiUsageRecordKey key : ApiUsageRecordKey.values()) {
-                stats.put(key, new ConcurrentHashMap<>());
-            }
             scheduler.scheduleWithFixedDelay(() -> {
                 try {
                     reportStats();
@@ -86,68 +85,117 @@ public class DefaultTbApiUsageClient implements TbApiUsageClient {
     }
 
     private void reportStats() {
-        ConcurrentMap<OwnerId, ToUsageStatsServiceMsg.Builder> report = new ConcurrentHashMap<>();
-
-        for (ApiUsageRecordKey key : ApiUsageRecordKey.values()) {
-            ConcurrentMap<OwnerId, AtomicLong> statsForKey = stats.get(key);
-            statsForKey.forEach((ownerId, statsValue) -> {
-                long value = statsValue.get();
-                if (value == 0) return;
-
-                ToUsageStatsServiceMsg.Builder statsMsgBuilder = report.computeIfAbsent(ownerId, id -> {
-                    ToUsageStatsServiceMsg.Builder newStatsMsgBuilder = ToUsageStatsServiceMsg.newBuilder();
-
-                    TenantId tenantId = ownerId.getTenantId();
-                    newStatsMsgBuilder.setTenantIdMSB(tenantId.getId().getMostSignificantBits());
-                    newStatsMsgBuilder.setTenantIdLSB(tenantId.getId().getLeastSignificantBits());
-
-                    EntityId entityId = ownerId.getEntityId();
-                    if (entityId != null && entityId.getEntityType() == EntityType.CUSTOMER) {
-                        newStatsMsgBuilder.setCustomerIdMSB(entityId.getId().getMostSignificantBits());
-                        newStatsMsgBuilder.setCustomerIdLSB(entityId.getId().getLeastSignificantBits());
-                    }
-
-                    return newStatsMsgBuilder;
-                });
-
+        int reported = 0;
+        for (Map.Entry<OwnerId, OwnerStats> entry : stats.entrySet()) {
+            OwnerId ownerId = entry.getKey();
+            OwnerStats ownerStats = entry.getValue();
+            AtomicLongArray counters = ownerStats.getCounters();
+            ToUsageStatsServiceMsg.Builder statsMsgBuilder = null;
+            for (ApiUsageRecordKey key : KEYS) {
+                long value = counters.getAndSet(key.ordinal(), 0);
+                if (value == 0) continue;
+
+                if (statsMsgBuilder == null) {
+                    statsMsgBuilder = newStatsMsgBuilder(ownerId);
+                }
                 statsMsgBuilder.addValues(UsageStatsKVProto.newBuilder().setKey(key.name()).setValue(value).build());
-            });
-            statsForKey.clear();
+            }
+            if (statsMsgBuilder != null) {
+                //TODO: figure out how to minimize messages into the queue. Maybe group by 100s of messages?
+                TenantId tenantId = ownerId.getTenantId();
+                EntityId entityId = Optional.ofNullable(ownerId.getEntityId()).orElse(tenantId);
+                TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, entityId).newByTopic(msgProducer.getDefaultTopic());
+                msgProducer.send(tpi, new TbProtoQueueMsg<>(UUID.randomUUID(), statsMsgBuilder.build()), null);
+                reported++;
+            } else {
+                // nothing was reported by the owner during the whole interval
+                evict(ownerId, ownerStats);
+            }
+        }
+
+        if (reported > 0) {
+            log.info("Reporting API usage statistics for {} tenants and customers", reported);
         }
+    }
 
-        report.forEach(((ownerId, statsMsg) -> {
-            //TODO: figure out how to minimize messages into the queue. Maybe group by 100s of messages?
+    private ToUsageStatsServiceMsg.Builder newStatsMsgBuilder(OwnerId ownerId) {
+        ToUsageStatsServiceMsg.Builder newStatsMsgBuilder = ToUsageStatsServiceMsg.newBuilder();
 
-            TenantId tenantId = ownerId.getTenantId();
-            EntityId entityId = Optional.ofNullable(ownerId.getEntityId()).orElse(tenantId);
-            TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, entityId).newByTopic(msgProducer.getDefaultTopic());
-            msgProducer.send(tpi, new TbProtoQueueMsg<>(UUID.randomUUID(), statsMsg.build()), null);
-        }));
+        TenantId tenantId = ownerId.getTenantId();
+        newStatsMsgBuilder.setTenantIdMSB(tenantId.getId().getMostSignificantBits());
+        newStatsMsgBuilder.setTenantIdLSB(tenantId.getId().getLeastSignificantBits());
 
-        if (!report.isEmpty()) {
-            log.info("Reporting API usage statistics for {} tenants and customers", report.size());
+        EntityId entityId = ownerId.getEntityId();
+        if (entityId != null && entityId.getEntityType() == EntityType.CUSTOMER) {
+            newStatsMsgBuilder.setCustomerIdMSB(entityId.getId().getMostSignificantBits());
+            newStatsMsgBuilder.setCustomerIdLSB(entityId.getId().getLeastSignificantBits());
         }
+
+        return newStatsMsgBuilder;
     }
 
     @Override
     public void report(TenantId tenantId, CustomerId customerId, ApiUsageRecordKey key, long value) {
         if (enabled) {
-            ConcurrentMap<OwnerId, AtomicLong> statsForKey = stats.get(key);
-
-            statsForKey.computeIfAbsent(new OwnerId(tenantId), id -> new AtomicLong()).addAndGet(value);
-            statsForKey.computeIfAbsent(new OwnerId(TenantId.SYS_TENANT_ID), id -> new AtomicLong()).addAndGet(value);
+            int idx = key.ordinal();
+            add(new OwnerId(tenantId), idx, value);
+            add(new OwnerId(TenantId.SYS_TENANT_ID), idx, value);
 
             if (enabledPerCustomer && customerId != null && !customerId.isNullUid()) {
-                statsForKey.computeIfAbsent(new OwnerId(tenantId, customerId), id -> new AtomicLong()).addAndGet(value);
+                add(new OwnerId(tenantId, customerId), idx, value);
             }
         }
     }
 
+    private void add(OwnerId ownerId, int idx, long value) {
+        OwnerStats ownerStats = getStats(ownerId);
+        ownerStats.getCounters().addAndGet(idx, value);
+        if (ownerStats.isEvicted()) {
+            // the stats were evicted concurrently, the value may be missed by the eviction
+            moveCount(ownerId, ownerStats, idx);
+        }
+    }
+
+    /**
+     * Removes the stats of the idle owner. The values added to the evicted counters concurrently
+     * are moved to the new stats of the owner either here or by the thread that added them,
+     * whichever of them takes the value from the counter first.
+     */
+    private void evict(OwnerId ownerId, OwnerStats ownerStats) {
+        stats.remove(ownerId, ownerStats);
+        ownerStats.setEvicted(true);
+        for (int idx = 0; idx < KEYS.length; idx++) {
+            moveCount(ownerId, ownerStats, idx);
+        }
+    }
+
+    private void moveCount(OwnerId ownerId, OwnerStats evictedStats, int idx) {
+        long value = evictedStats.getCounters().getAndSet(idx, 0);
+        if (value != 0) {
+            add(ownerId, idx, value);
+        }
+    }
+
+    private OwnerStats getStats(OwnerId ownerId) {
+        OwnerStats ownerStats = stats.get(ownerId);
+        if (ownerStats == null) {
+            ownerStats = stats.computeIfAbsent(ownerId, id -> new OwnerStats());
+        }
+        return ownerStats;
+    }
+
     @Override
     public void report(TenantId tenantId, CustomerId customerId, ApiUsageRecordKey key) {
         report(tenantId, customerId, key, 1);
     }
 
+    @Data
+    private static class OwnerStats {
+        // Counters of the owner indexed by the ordinal of the record key
+        private final AtomicLongArray counters = new AtomicLongArray(KEYS.length);
+        private volatile boolean evicted;
+    }
+
     @Data
     private static class OwnerId {
         private TenantId tenantId;
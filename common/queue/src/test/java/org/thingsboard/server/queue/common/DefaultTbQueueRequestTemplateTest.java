@@ -15,26 +15,35 @@
  */
 package org.thingsboard.server.queue.common;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.thingsboard.server.queue.TbQueueAdmin;
 import org.thingsboard.server.queue.TbQueueConsumer;
 import org.thingsboard.server.queue.TbQueueMsg;
+import org.thingsboard.server.queue.TbQueueMsgHeaders;
 import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.TbQueueRequestLatencyStats;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
@@ -68,6 +77,8 @@ public class DefaultTbQueueRequestTemplateTest {
     TbQueueConsumer<TbQueueMsg> responseTemplate;
     @Mock
     ExecutorService executorMock;
+    @Captor
+    ArgumentCaptor<DefaultTbQueueRequestTemplate.ResponseMetaData<TbQueueMsg>> argumentCaptorResp;
 
     ExecutorService executor;
     String topic = "js-responses-tb-node-0";
@@ -75,12 +86,12 @@ public class DefaultTbQueueRequestTemplateTest {
     long maxPendingRequests = 32;
     long pollInterval = 5;
 
-    DefaultTbQueueRequestTemplate inst;
+    DefaultTbQueueRequestTemplate<TbQueueMsg, TbQueueMsg> inst;
 
     @Before
     public void setUp() throws Exception {
         willReturn(topic).given(responseTemplate).getTopic();
-        inst = spy(new DefaultTbQueueRequestTemplate(
+        inst = spy(new DefaultTbQueueRequestTemplate<>(
                 queueAdmin, requestTemplate, responseTemplate,
                 maxRequestTimeout, maxPendingRequests, pollInterval, executorMock));
 
@@ -106,7 +117,6 @@ public class DefaultTbQueueRequestTemplateTest {
     @Test
     public void givenExternalExecutor_whenInitStop_thenOK() {
         inst.init();
-        assertThat(inst.nextCleanupNs, equalTo(0L));
         verify(queueAdmin, times(1)).createTopicIfNotExists(topic);
         verify(requestTemplate, times(1)).init();
         verify(responseTemplate, times(1)).subscribe();
@@ -179,7 +189,6 @@ public class DefaultTbQueueRequestTemplateTest {
             return currentTime.get();
         }).given(inst).getCurrentClockNs();
         inst.init();
-        inst.setupNextCleanup();
         willReturn(Collections.emptyList()).given(inst).doPoll();
 
         //when
@@ -193,19 +202,140 @@ public class DefaultTbQueueRequestTemplateTest {
         }
 
         //then
-        ArgumentCaptor<DefaultTbQueueRequestTemplate.ResponseMetaData> argumentCaptorResp = ArgumentCaptor.forClass(DefaultTbQueueRequestTemplate.ResponseMetaData.class);
         ArgumentCaptor<UUID> argumentCaptorUUID = ArgumentCaptor.forClass(UUID.class);
         ArgumentCaptor<Long> argumentCaptorLong = ArgumentCaptor.forClass(Long.class);
         verify(inst, atLeastOnce()).setTimeoutException(argumentCaptorUUID.capture(), argumentCaptorResp.capture(), argumentCaptorLong.capture());
 
-        List<DefaultTbQueueRequestTemplate.ResponseMetaData> responseMetaDataList = argumentCaptorResp.getAllValues();
+        List<DefaultTbQueueRequestTemplate.ResponseMetaData<TbQueueMsg>> responseMetaDataList = argumentCaptorResp.getAllValues();
         List<Long> tickTsList = argumentCaptorLong.getAllValues();
         for (int i = 0; i < responseMetaDataList.size(); i++) {
             assertThat("tickTs >= calculatedExpTime", tickTsList.get(i), greaterThanOrEqualTo(responseMetaDataList.get(i).getSubmitTime() + responseMetaDataList.get(i).getTimeout()));
         }
     }
 
+    @Test
+    public void givenResponses_whenFetchAndProcessResponses_thenNoTimeoutAndLatencyStatsPerRequestType() {
+        AtomicLong currentTime = new AtomicLong();
+        willAnswer(x -> currentTime.get()).given(inst).getCurrentClockNs();
+        willDoNothing().given(inst).sendToRequestTemplate(any(), any(), any(), any());
+        Function<TbQueueMsg, String> requestTypeResolver = request -> request.getKey() == null ? "typeA" : "typeB";
+        inst.setRequestTypeResolver(requestTypeResolver);
+        inst.init();
+
+        List<TbQueueMsg> responses = new ArrayList<>();
+        List<ListenableFuture<TbQueueMsg>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            TbQueueMsg request = getRequestMsgMock();
+            willReturn(i % 2 == 0 ? null : UUID.randomUUID()).given(request).getKey();
+            futures.add(inst.send(request));
+            ArgumentCaptor<UUID> requestIdCaptor = ArgumentCaptor.forClass(UUID.class);
+            verify(inst, times(i + 1)).sendToRequestTemplate(any(), requestIdCaptor.capture(), any(), any());
+            if (i < 10) {
+                responses.add(getResponseMsgMock(requestIdCaptor.getValue()));
+            }
+        }
+        willReturn(responses).willReturn(Collections.emptyList()).given(inst).doPoll();
+
+        currentTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(2));
+        inst.fetchAndProcessResponses();
+        assertThat(inst.pendingRequests.mappingCount(), equalTo(10L));
+        for (int i = 0; i < 10; i++) {
+            assertThat(futures.get(i).isDone(), is(true));
+        }
+
+        currentTime.addAndGet(inst.maxRequestTimeoutNs);
+        inst.fetchAndProcessResponses();
+        verify(inst, times(10)).setTimeoutException(any(), any(), anyLong());
+        assertThat(inst.pendingRequests.mappingCount(), equalTo(0L));
+        assertThat(inst.requestTimeouts.size(), equalTo(0));
+        for (int i = 10; i < 20; i++) {
+            assertThat(futures.get(i).isDone(), is(true));
+        }
+
+        List<TbQueueRequestLatencyStats> latencyStats = inst.getAndResetLatencyStats();
+        Map<String, TbQueueRequestLatencyStats> stats = latencyStats.stream()
+                .collect(Collectors.toMap(TbQueueRequestLatencyStats::getRequestType, Function.identity()));
+        assertThat(stats.get("typeA").getResponses(), equalTo(5L));
+        assertThat(stats.get("typeA").getTimeouts(), equalTo(5L));
+        assertThat(stats.get("typeB").getResponses(), equalTo(5L));
+        assertThat(stats.get("typeB").getP50Us(), equalTo(TimeUnit.MILLISECONDS.toMicros(2) / 128 * 128));
+    }
+
+    @Test
+    public void givenConcurrentSends_whenResponsesAndTimeouts_thenEveryRequestIsCompletedOnce() throws Exception {
+        AtomicLong currentTime = new AtomicLong();
+        willAnswer(x -> currentTime.get()).given(inst).getCurrentClockNs();
+        willDoNothing().given(inst).sendToRequestTemplate(any(), any(), any(), any());
+        inst.init();
+
+        int threads = 4;
+        int requestsPerThread = (int) inst.maxPendingRequests / threads;
+        executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch latch = new CountDownLatch(threads);
+        List<ListenableFuture<TbQueueMsg>> futures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < requestsPerThread; i++) {
+                    futures.add(inst.send(new TestQueueMsg()));
+                }
+                latch.countDown();
+            });
+        }
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(inst.pendingRequests.mappingCount(), equalTo(inst.maxPendingRequests));
+
+        ArgumentCaptor<UUID> requestIdCaptor = ArgumentCaptor.forClass(UUID.class);
+        verify(inst, times((int) inst.maxPendingRequests)).sendToRequestTemplate(any(), requestIdCaptor.capture(), any(), any());
+        List<TbQueueMsg> responses = requestIdCaptor.getAllValues().stream()
+                .limit(inst.maxPendingRequests / 2)
+                .map(this::getResponseMsgMock)
+                .collect(Collectors.toList());
+        willReturn(responses).willReturn(Collections.emptyList()).given(inst).doPoll();
+
+        inst.fetchAndProcessResponses();
+        assertThat(inst.pendingRequests.mappingCount(), equalTo(inst.maxPendingRequests / 2));
+        assertThat(inst.requestTimeouts.size(), equalTo((int) inst.maxPendingRequests / 2));
+        verify(inst, never()).setTimeoutException(any(), any(), anyLong());
+
+        currentTime.addAndGet(inst.maxRequestTimeoutNs + TimeUnit.MILLISECONDS.toNanos(inst.pollInterval));
+        inst.fetchAndProcessResponses();
+        verify(inst, times((int) inst.maxPendingRequests / 2)).setTimeoutException(any(), any(), anyLong());
+        assertThat(inst.pendingRequests.mappingCount(), equalTo(0L));
+        assertThat(inst.requestTimeouts.size(), equalTo(0));
+        for (ListenableFuture<TbQueueMsg> future : futures) {
+            assertThat(future.isDone(), is(true));
+        }
+    }
+
+    TbQueueMsg getResponseMsgMock(UUID requestId) {
+        TbQueueMsg response = mock(TbQueueMsg.class);
+        DefaultTbQueueMsgHeaders headers = new DefaultTbQueueMsgHeaders();
+        headers.put(AbstractTbQueueTemplate.REQUEST_ID_HEADER, inst.uuidToBytes(requestId));
+        willReturn(headers).given(response).getHeaders();
+        return response;
+    }
+
     TbQueueMsg getRequestMsgMock() {
         return mock(TbQueueMsg.class, RETURNS_DEEP_STUBS);
     }
+
+    static class TestQueueMsg implements TbQueueMsg {
+        private final UUID key = UUID.randomUUID();
+        private final TbQueueMsgHeaders headers = new DefaultTbQueueMsgHeaders();
+
+        @Override
+        public UUID getKey() {
+            return key;
+        }
+
+        @Override
+        public TbQueueMsgHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public byte[] getData() {
+            return new byte[0];
+        }
+    }
 }
\ No newline at end of file
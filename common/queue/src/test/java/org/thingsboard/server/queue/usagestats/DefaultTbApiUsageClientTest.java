@@ -0,0 +1,170 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.usagestats;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.server.common.data.ApiUsageRecordKey;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.gen.transport.TransportProtos.ToUsageStatsServiceMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.UsageStatsKVProto;
+import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.discovery.PartitionService;
+import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
+import org.thingsboard.server.queue.scheduler.SchedulerComponent;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DefaultTbApiUsageClientTest {
+
+    @Mock
+    PartitionService partitionService;
+    @Mock
+    SchedulerComponent scheduler;
+    @Mock
+    TbQueueProducerProvider producerProvider;
+    @Mock
+    TbQueueProducer<TbProtoQueueMsg<ToUsageStatsServiceMsg>> producer;
+
+    DefaultTbApiUsageClient client;
+    Runnable reportTask;
+
+    @Before
+    public void setUp() throws Exception {
+        when(producerProvider.getTbUsageStatsMsgProducer()).thenReturn(producer);
+        when(producer.getDefaultTopic()).thenReturn("tb_usage_stats");
+        when(partitionService.resolve(any(), any(), any())).thenReturn(new TopicPartitionInfo("tb_core", null, 0, true));
+
+        client = new DefaultTbApiUsageClient(partitionService, scheduler, producerProvider);
+        setField("enabled", true);
+        setField("enabledPerCustomer", true);
+        setField("interval", 10);
+        Method init = DefaultTbApiUsageClient.class.getDeclaredMethod("init");
+        init.setAccessible(true);
+        init.invoke(client);
+
+        ArgumentCaptor<Runnable> taskCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).scheduleWithFixedDelay(taskCaptor.capture(), anyLong(), anyLong(), eq(TimeUnit.SECONDS));
+        reportTask = taskCaptor.getValue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOnlyChangedCountersAreReported() {
+        TenantId tenantId = new TenantId(UUID.randomUUID());
+        CustomerId customerId = new CustomerId(UUID.randomUUID());
+
+        client.report(tenantId, null, ApiUsageRecordKey.TRANSPORT_MSG_COUNT);
+        client.report(tenantId, customerId, ApiUsageRecordKey.TRANSPORT_MSG_COUNT, 4);
+        client.report(tenantId, customerId, ApiUsageRecordKey.STORAGE_DP_COUNT, 10);
+
+        reportTask.run();
+
+        ArgumentCaptor<TbProtoQueueMsg<ToUsageStatsServiceMsg>> msgCaptor = ArgumentCaptor.forClass(TbProtoQueueMsg.class);
+        verify(producer, times(3)).send(any(), msgCaptor.capture(), any());
+        Map<UUID, Map<String, Long>> reported = new HashMap<>();
+        for (TbProtoQueueMsg<ToUsageStatsServiceMsg> msg : msgCaptor.getAllValues()) {
+            ToUsageStatsServiceMsg statsMsg = msg.getValue();
+            UUID ownerId = statsMsg.getCustomerIdMSB() != 0 ? new UUID(statsMsg.getCustomerIdMSB(), statsMsg.getCustomerIdLSB())
+                    : new UUID(statsMsg.getTenantIdMSB(), statsMsg.getTenantIdLSB());
+            Map<String, Long> values = new HashMap<>();
+            for (UsageStatsKVProto kv : statsMsg.getValuesList()) {
+                values.put(kv.getKey(), kv.getValue());
+            }
+            reported.put(ownerId, values);
+        }
+
+        Map<String, Long> expected = new HashMap<>();
+        expected.put(ApiUsageRecordKey.TRANSPORT_MSG_COUNT.name(), 5L);
+        expected.put(ApiUsageRecordKey.STORAGE_DP_COUNT.name(), 10L);
+        assertEquals(expected, reported.get(tenantId.getId()));
+        assertEquals(expected, reported.get(TenantId.SYS_TENANT_ID.getId()));
+        expected.put(ApiUsageRecordKey.TRANSPORT_MSG_COUNT.name(), 4L);
+        assertEquals(expected, reported.get(customerId.getId()));
+
+        clearInvocations(producer);
+        reportTask.run();
+        verify(producer, never()).send(any(), any(), any());
+
+        client.report(tenantId, null, ApiUsageRecordKey.JS_EXEC_COUNT);
+        reportTask.run();
+        verify(producer, times(2)).send(any(), msgCaptor.capture(), any());
+        List<UsageStatsKVProto> values = msgCaptor.getValue().getValue().getValuesList();
+        assertEquals(1, values.size());
+        assertEquals(ApiUsageRecordKey.JS_EXEC_COUNT.name(), values.get(0).getKey());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testIdleOwnersAreEvicted() throws Exception {
+        TenantId tenantId = new TenantId(UUID.randomUUID());
+        CustomerId customerId = new CustomerId(UUID.randomUUID());
+        Field statsField = DefaultTbApiUsageClient.class.getDeclaredField("stats");
+        statsField.setAccessible(true);
+        Map<?, ?> stats = (Map<?, ?>) statsField.get(client);
+
+        client.report(tenantId, customerId, ApiUsageRecordKey.TRANSPORT_MSG_COUNT);
+        assertEquals(3, stats.size());
+        reportTask.run();
+        assertEquals(3, stats.size());
+
+        client.report(tenantId, null, ApiUsageRecordKey.TRANSPORT_MSG_COUNT, 2);
+        reportTask.run();
+        assertEquals(2, stats.size());
+        reportTask.run();
+        assertTrue(stats.isEmpty());
+
+        clearInvocations(producer);
+        client.report(tenantId, null, ApiUsageRecordKey.TRANSPORT_MSG_COUNT, 3);
+        reportTask.run();
+        ArgumentCaptor<TbProtoQueueMsg<ToUsageStatsServiceMsg>> msgCaptor = ArgumentCaptor.forClass(TbProtoQueueMsg.class);
+        verify(producer, times(2)).send(any(), msgCaptor.capture(), any());
+        for (TbProtoQueueMsg<ToUsageStatsServiceMsg> msg : msgCaptor.getAllValues()) {
+            assertEquals(3L, msg.getValue().getValues(0).getValue());
+        }
+    }
+
+    private void setField(String name, Object value) throws Exception {
+        Field field = DefaultTbApiUsageClient.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(client, value);
+    }
+}
@@ -19,6 +19,8 @@ import com.google.gson.JsonParseException;
 import com.google.protobuf.Descriptors;
 import com.google.protobuf.DynamicMessage;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.Request;
@@ -28,7 +30,6 @@ import org.eclipse.californium.core.observe.ObserveRelation;
 import org.eclipse.californium.core.server.resources.CoapExchange;
 import org.eclipse.californium.core.server.resources.Resource;
 import org.eclipse.californium.core.server.resources.ResourceObserver;
-import org.springframework.util.CollectionUtils;
 import org.thingsboard.server.coapserver.CoapServerService;
 import org.thingsboard.server.coapserver.TbCoapDtlsSessionInfo;
 import org.thingsboard.server.common.data.DataConstants;
@@ -54,8 +55,8 @@ import org.thingsboard.server.common.transport.adaptor.JsonConverter;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.transport.coap.adaptors.CoapTransportAdaptor;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
@@ -64,7 +65,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 @Slf4j
 public class CoapTransportResource extends AbstractCoapTransportResource {
@@ -77,7 +77,8 @@ public class CoapTransportResource extends AbstractCoapTransportResource {
     private static final String DTLS_SESSION_ID_KEY = "DTLS_SESSION_ID";
 
     private final ConcurrentMap<String, CoapObserveSessionInfo> tokenToCoapSessionInfoMap = new ConcurrentHashMap<>();
-    private final ConcurrentMap<CoapObserveSessionInfo, ObserveRelation> sessionInfoToObserveRelationMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, CoapObserveSessionInfo> sessionIdToObserveSessionInfoMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ObserveRelation, UUID> observeRelationToSessionIdMap = new ConcurrentHashMap<>();
     private final Set<UUID> rpcSubscriptions = ConcurrentHashMap.newKeySet();
     private final Set<UUID> attributeSubscriptions = ConcurrentHashMap.newKeySet();
 
@@ -92,14 +93,20 @@ public class CoapTransportResource extends AbstractCoapTransportResource {
         this.dtlsSessionIdMap = coapServerService.getDtlsSessionsMap();
         this.timeout = coapServerService.getTimeout();
         this.sessionReportTimeout = ctx.getSessionReportTimeout();
-        ctx.getScheduler().scheduleAtFixedRate(() -> {
-            Set<CoapObserveSessionInfo> coapObserveSessionInfos = sessionInfoToObserveRelationMap.keySet();
-            Set<TransportProtos.SessionInfoProto> observeSessions = coapObserveSessionInfos
-                    .stream()
-                    .map(CoapObserveSessionInfo::getSessionInfoProto)
-                    .collect(Collectors.toSet());
-            observeSessions.forEach(this::reportActivity);
-        }, new Random().nextInt((int) sessionReportTimeout), sessionReportTimeout, TimeUnit.MILLISECONDS);
+        ctx.getScheduler().scheduleAtFixedRate(this::reportObserveSessionsActivity,
+                new Random().nextInt((int) sessionReportTimeout), sessionReportTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void reportObserveSessionsActivity() {
+        try {
+            if (!sessionIdToObserveSessionInfoMap.isEmpty()) {
+                List<TransportProtos.SessionInfoProto> observeSessions = new ArrayList<>(sessionIdToObserveSessionInfoMap.size());
+                sessionIdToObserveSessionInfoMap.values().forEach(info -> observeSessions.add(info.getSessionInfoProto()));
+                transportService.reportActivity(observeSessions);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to report activity of the observe sessions", e);
+        }
     }
 
     @Override
@@ -125,8 +132,13 @@ public class CoapTransportResource extends AbstractCoapTransportResource {
         relation.getExchange().sendResponse(new Response(code));
     }
 
-    private Map<CoapObserveSessionInfo, ObserveRelation> getCoapSessionInfoToObserveRelationMap() {
-        return sessionInfoToObserveRelationMap;
+    ObserveRelation getObserveRelation(UUID sessionId) {
+        CoapObserveSessionInfo coapObserveSessionInfo = sessionIdToObserveSessionInfoMap.get(sessionId);
+        return coapObserveSessionInfo != null ? coapObserveSessionInfo.getObserveRelation() : null;
+    }
+
+    int getObserveSessionsCount() {
+        return sessionIdToObserveSessionInfoMap.size();
     }
 
     @Override
@@ -526,18 +538,9 @@ public class CoapTransportResource extends AbstractCoapTransportResource {
         }
 
         private void closeObserveRelationAndNotify(UUID sessionId, CoAP.ResponseCode responseCode) {
-            Map<CoapObserveSessionInfo, ObserveRelation> sessionToObserveRelationMap = coapTransportResource.getCoapSessionInfoToObserveRelationMap();
-            if (coapTransportResource.getObserverCount() > 0 && !CollectionUtils.isEmpty(sessionToObserveRelationMap)) {
-                Optional<CoapObserveSessionInfo> observeSessionToClose = sessionToObserveRelationMap.keySet().stream().filter(coapObserveSessionInfo -> {
-                    TransportProtos.SessionInfoProto sessionToDelete = coapObserveSessionInfo.getSessionInfoProto();
-                    UUID observeSessionId = new UUID(sessionToDelete.getSessionIdMSB(), sessionToDelete.getSessionIdLSB());
-                    return observeSessionId.equals(sessionId);
-                }).findFirst();
-                if (observeSessionToClose.isPresent()) {
-                    CoapObserveSessionInfo coapObserveSessionInfo = observeSessionToClose.get();
-                    ObserveRelation observeRelation = sessionToObserveRelationMap.get(coapObserveSessionInfo);
-                    coapTransportResource.clearAndNotifyObserveRelation(observeRelation, responseCode);
-                }
+            ObserveRelation observeRelation = coapTransportResource.getObserveRelation(sessionId);
+            if (observeRelation != null) {
+                coapTransportResource.clearAndNotifyObserveRelation(observeRelation, responseCode);
             }
         }
 
@@ -572,7 +575,13 @@ public class CoapTransportResource extends AbstractCoapTransportResource {
         public void addedObserveRelation(ObserveRelation relation) {
             Request request = relation.getExchange().getRequest();
             String token = getTokenFromRequest(request);
-            sessionInfoToObserveRelationMap.putIfAbsent(tokenToCoapSessionInfoMap.get(token), relation);
+            CoapObserveSessionInfo coapObserveSessionInfo = tokenToCoapSessionInfoMap.get(token);
+            if (coapObserveSessionInfo != null) {
+                UUID sessionId = toSessionId(coapObserveSessionInfo.getSessionInfoProto());
+                coapObserveSessionInfo.setObserveRelation(relation);
+                observeRelationToSessionIdMap.put(relation, sessionId);
+                sessionIdToObserveSessionInfoMap.putIfAbsent(sessionId, coapObserveSessionInfo);
+            }
             log.trace("Added Observe relation for token: {}", token);
         }
 
@@ -580,7 +589,10 @@ public class CoapTransportResource extends AbstractCoapTransportResource {
         public void removedObserveRelation(ObserveRelation relation) {
             Request request = relation.getExchange().getRequest();
             String token = getTokenFromRequest(request);
-            sessionInfoToObserveRelationMap.remove(tokenToCoapSessionInfoMap.get(token));
+            UUID sessionId = observeRelationToSessionIdMap.remove(relation);
+            if (sessionId != null) {
+                sessionIdToObserveSessionInfoMap.computeIfPresent(sessionId, (id, info) -> info.getObserveRelation() == relation ? null : info);
+            }
             log.trace("Relation removed for token: {}", token);
         }
     }
@@ -662,6 +674,9 @@ public class CoapTransportResource extends AbstractCoapTransportResource {
 
         private final TransportProtos.SessionInfoProto sessionInfoProto;
         private final AtomicInteger observeNotificationCounter;
+        @EqualsAndHashCode.Exclude
+        @ToString.Exclude
+        private volatile ObserveRelation observeRelation;
 
         private CoapObserveSessionInfo(TransportProtos.SessionInfoProto sessionInfoProto) {
             this.sessionInfoProto = sessionInfoProto;
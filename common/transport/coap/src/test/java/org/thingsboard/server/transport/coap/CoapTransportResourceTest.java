@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.coap;
+
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.Endpoint;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.observe.ObserveRelation;
+import org.eclipse.californium.core.observe.ObservingEndpoint;
+import org.eclipse.californium.elements.AddressEndpointContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.thingsboard.server.coapserver.CoapServerService;
+import org.thingsboard.server.common.transport.TransportService;
+import org.thingsboard.server.gen.transport.TransportProtos;
+import org.thingsboard.server.queue.scheduler.SchedulerComponent;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CoapTransportResourceTest {
+
+    private static final int OBSERVERS_COUNT = 10;
+
+    private TransportService transportService;
+    private CoapTransportResource resource;
+    private Runnable activityReportTask;
+    private Endpoint endpoint;
+    private Map<String, Object> tokenToCoapSessionInfoMap;
+    private Constructor<?> coapObserveSessionInfoConstructor;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() throws Exception {
+        transportService = mock(TransportService.class);
+        SchedulerComponent scheduler = mock(SchedulerComponent.class);
+        CoapTransportContext ctx = mock(CoapTransportContext.class);
+        when(ctx.getTransportService()).thenReturn(transportService);
+        when(ctx.getScheduler()).thenReturn(scheduler);
+        when(ctx.getSessionReportTimeout()).thenReturn(TimeUnit.SECONDS.toMillis(3));
+        CoapServerService coapServerService = mock(CoapServerService.class);
+        when(coapServerService.getDtlsSessionsMap()).thenReturn(new ConcurrentHashMap<>());
+
+        resource = new CoapTransportResource(ctx, coapServerService, "api");
+
+        ArgumentCaptor<Runnable> taskCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).scheduleAtFixedRate(taskCaptor.capture(), anyLong(), anyLong(), eq(TimeUnit.MILLISECONDS));
+        activityReportTask = taskCaptor.getValue();
+
+        // not started, only provides the network config to the observe relations
+        endpoint = new CoapEndpoint.Builder().setNetworkConfig(NetworkConfig.createStandardWithoutFile()).build();
+
+        Field field = CoapTransportResource.class.getDeclaredField("tokenToCoapSessionInfoMap");
+        field.setAccessible(true);
+        tokenToCoapSessionInfoMap = (Map<String, Object>) field.get(resource);
+        Class<?> clazz = Class.forName(CoapTransportResource.class.getName() + "$CoapObserveSessionInfo");
+        coapObserveSessionInfoConstructor = clazz.getDeclaredConstructor(TransportProtos.SessionInfoProto.class);
+        coapObserveSessionInfoConstructor.setAccessible(true);
+    }
+
+    @Test
+    public void testObserveRelationIsIndexedBySessionId() throws Exception {
+        UUID sessionId = UUID.randomUUID();
+        ObserveRelation relation = addObserveRelation(sessionId, 0);
+        assertSame(relation, resource.getObserveRelation(sessionId));
+
+        removeObserveRelation(relation);
+        assertNull(resource.getObserveRelation(sessionId));
+        assertEquals(0, resource.getObserveSessionsCount());
+
+        // relation that was never indexed is ignored
+        removeObserveRelation(relation);
+        assertEquals(0, resource.getObserveSessionsCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testActivityOfObserveSessionsIsReportedInOneBatch() throws Exception {
+        List<UUID> sessionIds = new ArrayList<>(OBSERVERS_COUNT);
+        List<ObserveRelation> relations = new ArrayList<>(OBSERVERS_COUNT);
+        for (int i = 0; i < OBSERVERS_COUNT; i++) {
+            UUID sessionId = UUID.randomUUID();
+            sessionIds.add(sessionId);
+            relations.add(addObserveRelation(sessionId, i));
+        }
+        assertEquals(OBSERVERS_COUNT, resource.getObserveSessionsCount());
+        for (int i = 0; i < OBSERVERS_COUNT; i++) {
+            assertSame(relations.get(i), resource.getObserveRelation(sessionIds.get(i)));
+        }
+
+        activityReportTask.run();
+        ArgumentCaptor<Collection<TransportProtos.SessionInfoProto>> reportCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(transportService, times(1)).reportActivity(reportCaptor.capture());
+        verify(transportService, never()).reportActivity(any(TransportProtos.SessionInfoProto.class));
+        Set<UUID> reportedSessionIds = reportCaptor.getValue().stream()
+                .map(sessionInfo -> new UUID(sessionInfo.getSessionIdMSB(), sessionInfo.getSessionIdLSB()))
+                .collect(Collectors.toSet());
+        assertEquals(new HashSet<>(sessionIds), reportedSessionIds);
+
+        relations.forEach(this::removeObserveRelation);
+        assertEquals(0, resource.getObserveSessionsCount());
+    }
+
+    private ObserveRelation addObserveRelation(UUID sessionId, int idx) throws Exception {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 1024 + idx % 60000);
+        Request request = Request.newGet();
+        request.setToken(new byte[]{(byte) (idx >> 24), (byte) (idx >> 16), (byte) (idx >> 8), (byte) idx});
+        request.setSourceContext(new AddressEndpointContext(address));
+        Exchange exchange = new Exchange(request, Exchange.Origin.REMOTE, Runnable::run);
+        exchange.setEndpoint(endpoint);
+
+        String token = address.getAddress().getHostAddress() + ":" + address.getPort() + ":" + request.getTokenString();
+        TransportProtos.SessionInfoProto sessionInfo = TransportProtos.SessionInfoProto.newBuilder()
+                .setSessionIdMSB(sessionId.getMostSignificantBits())
+                .setSessionIdLSB(sessionId.getLeastSignificantBits())
+                .build();
+        tokenToCoapSessionInfoMap.put(token, coapObserveSessionInfoConstructor.newInstance(sessionInfo));
+
+        ObserveRelation relation = new ObserveRelation(new ObservingEndpoint(address), resource, exchange);
+        resource.addObserveRelation(relation);
+        return relation;
+    }
+
+    private void removeObserveRelation(ObserveRelation relation) {
+        resource.removeObserveRelation(relation);
+    }
+}
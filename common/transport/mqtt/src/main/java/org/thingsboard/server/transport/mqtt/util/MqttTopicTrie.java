@@ -0,0 +1,337 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.mqtt.util;
+
+import java.util.function.BiFunction;
+
+/**
+ * Trie of MQTT topic filters that supports '+' and '#' wildcards.
+ * <p>
+ * Matching walks the topic levels in place, so no regular expressions are evaluated and nothing is allocated per match.
+ * Modifications are serialized and published by copy-on-write of the affected child tables,
+ * so lookups are lock-free and may run concurrently with subscribe/unsubscribe calls.
+ * <p>
+ * Wildcards are only recognized when they occupy a whole level ('#' also has to be the last level);
+ * otherwise they are treated as regular characters of the level.
+ */
+public class MqttTopicTrie<T> {
+
+    private static final char LEVEL_SEPARATOR = '/';
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+
+    private final Node<T> root = new Node<>(null, 0);
+    private volatile int size;
+
+    /**
+     * Associates the value with the topic filter.
+     *
+     * @return previous value associated with the topic filter or null.
+     */
+    public synchronized T put(String topicFilter, T value) {
+        validate(topicFilter);
+        if (value == null) {
+            throw new IllegalArgumentException("Value can't be null!");
+        }
+        Node<T> node = root;
+        int start = 0;
+        while (true) {
+            int end = levelEnd(topicFilter, start);
+            boolean last = end == topicFilter.length();
+            node = node.getOrCreateChild(topicFilter, start, end, last);
+            if (last) {
+                break;
+            }
+            start = end + 1;
+        }
+        T prev = node.value;
+        node.value = value;
+        if (prev == null) {
+            size++;
+        }
+        return prev;
+    }
+
+    /**
+     * Removes the topic filter and prunes the branches that no longer hold any filters.
+     *
+     * @return value associated with the topic filter or null.
+     */
+    public synchronized T remove(String topicFilter) {
+        validate(topicFilter);
+        T prev = remove(root, topicFilter, 0);
+        if (prev != null) {
+            size--;
+        }
+        return prev;
+    }
+
+    /**
+     * @return value associated with exactly this topic filter (no wildcard matching is performed).
+     */
+    public T get(String topicFilter) {
+        validate(topicFilter);
+        Node<T> node = root;
+        int start = 0;
+        while (node != null) {
+            int end = levelEnd(topicFilter, start);
+            boolean last = end == topicFilter.length();
+            node = node.getChild(topicFilter, start, end, last);
+            if (last) {
+                break;
+            }
+            start = end + 1;
+        }
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * @return true if at least one topic filter matches the topic.
+     */
+    public boolean matches(String topic) {
+        return matches(root, topic, 0);
+    }
+
+    /**
+     * Folds values of all topic filters that match the topic.
+     * Use a non-capturing accumulator to keep the lookup allocation free.
+     */
+    public <A> A reduce(String topic, A identity, BiFunction<A, ? super T, A> accumulator) {
+        return reduce(root, topic, 0, identity, accumulator);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized void clear() {
+        root.clear();
+        size = 0;
+    }
+
+    private boolean matches(Node<T> node, String topic, int start) {
+        if (start > topic.length()) {
+            Node<T> multiLevel = node.multiLevel;
+            return node.value != null || (multiLevel != null && multiLevel.value != null);
+        }
+        Node<T> multiLevel = node.multiLevel;
+        if (multiLevel != null && multiLevel.value != null) {
+            return true;
+        }
+        int end = levelEnd(topic, start);
+        Node<T> singleLevel = node.singleLevel;
+        if (singleLevel != null && matches(singleLevel, topic, end + 1)) {
+            return true;
+        }
+        Node<T> child = node.findChild(topic, start, end);
+        return child != null && matches(child, topic, end + 1);
+    }
+
+    private <A> A reduce(Node<T> node, String topic, int start, A acc, BiFunction<A, ? super T, A> accumulator) {
+        Node<T> multiLevel = node.multiLevel;
+        if (multiLevel != null && multiLevel.value != null) {
+            // 'a/#' matches 'a' as well as any of its sub-levels
+            acc = accumulator.apply(acc, multiLevel.value);
+        }
+        if (start > topic.length()) {
+            T value = node.value;
+            return value != null ? accumulator.apply(acc, value) : acc;
+        }
+        int end = levelEnd(topic, start);
+        Node<T> singleLevel = node.singleLevel;
+        if (singleLevel != null) {
+            acc = reduce(singleLevel, topic, end + 1, acc, accumulator);
+        }
+        Node<T> child = node.findChild(topic, start, end);
+        if (child != null) {
+            acc = reduce(child, topic, end + 1, acc, accumulator);
+        }
+        return acc;
+    }
+
+    private T remove(Node<T> node, String topicFilter, int start) {
+        int end = levelEnd(topicFilter, start);
+        boolean last = end == topicFilter.length();
+        Node<T> child = node.getChild(topicFilter, start, end, last);
+        if (child == null) {
+            return null;
+        }
+        T prev;
+        if (last) {
+            prev = child.value;
+            child.value = null;
+        } else {
+            prev = remove(child, topicFilter, end + 1);
+        }
+        if (prev != null && child.isEmpty()) {
+            node.removeChild(child, topicFilter, start, end, last);
+        }
+        return prev;
+    }
+
+    private static int levelEnd(String topic, int start) {
+        int end = topic.indexOf(LEVEL_SEPARATOR, start);
+        return end < 0 ? topic.length() : end;
+    }
+
+    private static boolean isSingleLevelWildcard(String topicFilter, int start, int end) {
+        return end - start == 1 && topicFilter.charAt(start) == '+';
+    }
+
+    private static boolean isMultiLevelWildcard(String topicFilter, int start, int end, boolean last) {
+        return last && end - start == 1 && topicFilter.charAt(start) == '#';
+    }
+
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+
+    private static void validate(String topicFilter) {
+        if (topicFilter == null || topicFilter.isEmpty()) {
+            throw new IllegalArgumentException("Topic filter can't be empty!");
+        }
+    }
+
+    private static final class Node<T> {
+
+        private static final Node<?>[] EMPTY = new Node<?>[0];
+
+        private final String level;
+        private final int hash;
+
+        // open addressing table that is replaced on every modification
+        private volatile Node<T>[] children = emptyChildren();
+        private int childrenCount;
+        private volatile Node<T> singleLevel;
+        private volatile Node<T> multiLevel;
+        private volatile T value;
+
+        Node(String level, int hash) {
+            this.level = level;
+            this.hash = hash;
+        }
+
+        boolean isEmpty() {
+            return value == null && childrenCount == 0 && singleLevel == null && multiLevel == null;
+        }
+
+        void clear() {
+            children = emptyChildren();
+            childrenCount = 0;
+            singleLevel = null;
+            multiLevel = null;
+            value = null;
+        }
+
+        Node<T> getChild(String topicFilter, int start, int end, boolean last) {
+            if (isMultiLevelWildcard(topicFilter, start, end, last)) {
+                return multiLevel;
+            } else if (isSingleLevelWildcard(topicFilter, start, end)) {
+                return singleLevel;
+            } else {
+                return findChild(topicFilter, start, end);
+            }
+        }
+
+        Node<T> findChild(String topic, int start, int end) {
+            Node<T>[] table = children;
+            if (table.length == 0) {
+                return null;
+            }
+            int len = end - start;
+            int h = hash(topic, start, end);
+            int mask = table.length - 1;
+            for (int i = h & mask; ; i = (i + 1) & mask) {
+                Node<T> child = table[i];
+                if (child == null) {
+                    return null;
+                }
+                if (child.hash == h && child.level.length() == len && topic.regionMatches(start, child.level, 0, len)) {
+                    return child;
+                }
+            }
+        }
+
+        Node<T> getOrCreateChild(String topicFilter, int start, int end, boolean last) {
+            Node<T> child = getChild(topicFilter, start, end, last);
+            if (child != null) {
+                return child;
+            }
+            if (isMultiLevelWildcard(topicFilter, start, end, last)) {
+                child = new Node<>(MULTI_LEVEL_WILDCARD, 0);
+                multiLevel = child;
+            } else if (isSingleLevelWildcard(topicFilter, start, end)) {
+                child = new Node<>(SINGLE_LEVEL_WILDCARD, 0);
+                singleLevel = child;
+            } else {
+                String level = topicFilter.substring(start, end);
+                child = new Node<>(level, level.hashCode());
+                childrenCount++;
+                children = rebuild(children, child, null, childrenCount);
+            }
+            return child;
+        }
+
+        void removeChild(Node<T> child, String topicFilter, int start, int end, boolean last) {
+            if (isMultiLevelWildcard(topicFilter, start, end, last)) {
+                multiLevel = null;
+            } else if (isSingleLevelWildcard(topicFilter, start, end)) {
+                singleLevel = null;
+            } else {
+                childrenCount--;
+                children = childrenCount == 0 ? emptyChildren() : rebuild(children, null, child, childrenCount);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] emptyChildren() {
+            return (Node<T>[]) EMPTY;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Node<T>[] rebuild(Node<T>[] old, Node<T> added, Node<T> removed, int count) {
+            // keep the load factor at or below 0.5 so probe sequences stay short
+            int capacity = Integer.highestOneBit(Math.max(2, count) * 2 - 1) << 1;
+            Node<T>[] table = new Node[capacity];
+            for (Node<T> node : old) {
+                if (node != null && node != removed) {
+                    insert(table, node);
+                }
+            }
+            if (added != null) {
+                insert(table, added);
+            }
+            return table;
+        }
+
+        private static <T> void insert(Node<T>[] table, Node<T> node) {
+            int mask = table.length - 1;
+            int i = node.hash & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = node;
+        }
+    }
+}
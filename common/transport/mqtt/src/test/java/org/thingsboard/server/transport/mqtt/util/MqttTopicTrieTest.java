@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.mqtt.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MqttTopicTrieTest {
+
+    @Test
+    public void testWildcardMatching() {
+        MqttTopicTrie<Integer> trie = new MqttTopicTrie<>();
+        trie.put("v1/devices/me/attributes", 0);
+        trie.put("v1/devices/me/rpc/request/+", 1);
+        trie.put("v1/gateway/#", 1);
+
+        assertTrue(trie.matches("v1/devices/me/attributes"));
+        assertFalse(trie.matches("v1/devices/me/attributes/response"));
+        assertTrue(trie.matches("v1/devices/me/rpc/request/42"));
+        assertFalse(trie.matches("v1/devices/me/rpc/request/42/extra"));
+        assertFalse(trie.matches("v1/devices/me/rpc/request"));
+        assertTrue(trie.matches("v1/gateway"));
+        assertTrue(trie.matches("v1/gateway/rpc"));
+        assertTrue(trie.matches("v1/gateway/attributes/response"));
+        assertFalse(trie.matches("v1/gatewayX"));
+
+        assertEquals(Integer.valueOf(1), trie.reduce("v1/devices/me/rpc/request/1", -1, Math::max));
+        assertEquals(Integer.valueOf(-1), trie.reduce("v1/devices/other", -1, Math::max));
+    }
+
+    @Test
+    public void testOverlappingFiltersAreReduced() {
+        MqttTopicTrie<Integer> trie = new MqttTopicTrie<>();
+        trie.put("a/b/c", 0);
+        trie.put("a/+/c", 1);
+        trie.put("a/#", 2);
+        trie.put("#", 0);
+
+        assertEquals(Integer.valueOf(4), trie.reduce("a/b/c", 0, (cnt, qos) -> cnt + 1));
+        assertEquals(Integer.valueOf(2), trie.reduce("a/b/c", -1, Math::max));
+        assertEquals(Integer.valueOf(2), trie.reduce("a", 0, (cnt, qos) -> cnt + 1));
+        assertEquals(Integer.valueOf(1), trie.reduce("b", 0, (cnt, qos) -> cnt + 1));
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        MqttTopicTrie<Integer> trie = new MqttTopicTrie<>();
+        assertNull(trie.put("a/+/c", 0));
+        assertEquals(Integer.valueOf(0), trie.put("a/+/c", 1));
+        assertEquals(1, trie.size());
+        assertEquals(Integer.valueOf(1), trie.get("a/+/c"));
+        assertNull(trie.get("a/b/c"));
+
+        assertNull(trie.remove("a/b/c"));
+        assertEquals(Integer.valueOf(1), trie.remove("a/+/c"));
+        assertTrue(trie.isEmpty());
+        assertFalse(trie.matches("a/b/c"));
+    }
+
+    @Test
+    public void testMalformedWildcardsAreLiterals() {
+        MqttTopicTrie<Integer> trie = new MqttTopicTrie<>();
+        trie.put("Sensor/Temperature#", 0);
+        trie.put("Sensor/a+b", 0);
+
+        assertFalse(trie.matches("Sensor/Temperature"));
+        assertTrue(trie.matches("Sensor/Temperature#"));
+        assertFalse(trie.matches("Sensor/ab"));
+        assertTrue(trie.matches("Sensor/a+b"));
+    }
+
+    @Test
+    public void testMatchesSameTopicsAsRegexScan() {
+        int filtersCount = 3000;
+        Random random = new Random(42);
+        MqttTopicTrie<Integer> trie = new MqttTopicTrie<>();
+        List<Pattern> regexFilters = new ArrayList<>(filtersCount);
+        List<Integer> qosList = new ArrayList<>(filtersCount);
+        for (int i = 0; i < filtersCount; i++) {
+            String filter;
+            switch (i % 3) {
+                case 0:
+                    filter = "tenant" + (i % 50) + "/device" + i + "/telemetry";
+                    break;
+                case 1:
+                    filter = "tenant" + (i % 50) + "/+/attributes" + i;
+                    break;
+                default:
+                    filter = "tenant" + (i % 50) + "/device" + i + "/#";
+                    break;
+            }
+            int qos = random.nextInt(3);
+            trie.put(filter, qos);
+            regexFilters.add(Pattern.compile(filter.replace("+", "[^/]*").replace("/#", "($|/.*)")));
+            qosList.add(qos);
+        }
+        assertEquals(filtersCount, trie.size());
+
+        for (int i = 0; i < 5000; i++) {
+            int device = random.nextInt(filtersCount);
+            String topic;
+            switch (random.nextInt(4)) {
+                case 0:
+                    topic = "tenant" + (device % 50) + "/device" + device + "/telemetry";
+                    break;
+                case 1:
+                    topic = "tenant" + (device % 50) + "/device" + random.nextInt(filtersCount) + "/attributes" + device;
+                    break;
+                case 2:
+                    topic = "tenant" + (device % 50) + "/device" + device;
+                    break;
+                default:
+                    topic = "tenant" + (device % 50) + "/device" + device + "/rpc/" + i;
+                    break;
+            }
+            int expectedQos = -1;
+            for (int j = 0; j < filtersCount; j++) {
+                if (regexFilters.get(j).matcher(topic).matches()) {
+                    expectedQos = Math.max(expectedQos, qosList.get(j));
+                }
+            }
+            assertEquals(topic, expectedQos >= 0, trie.matches(topic));
+            assertEquals(topic, Integer.valueOf(expectedQos), trie.reduce(topic, -1, Math::max));
+        }
+    }
+}
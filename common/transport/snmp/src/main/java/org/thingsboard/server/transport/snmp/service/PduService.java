@@ -64,6 +64,12 @@ public class PduService {
         return pdu;
     }
 
+    public PDU createPdu(DeviceSessionContext sessionContext, SnmpMethod snmpMethod) {
+        PDU pdu = setUpPdu(sessionContext);
+        pdu.setType(snmpMethod.getCode());
+        return pdu;
+    }
+
     public PDU createSingleVariablePdu(DeviceSessionContext sessionContext, SnmpMethod snmpMethod, String oid, String value, DataType dataType) {
         PDU pdu = setUpPdu(sessionContext);
         pdu.setType(snmpMethod.getCode());
@@ -133,7 +139,8 @@ public class PduService {
 
             SnmpMapping mapping = mappings.get(oid);
             if (mapping == null) {
-                log.debug("No SNMP mapping for oid {}", oid);
+                // merged requests also contain the oids of the other communication configs
+                log.trace("No SNMP mapping for oid {}", oid);
                 return;
             }
 
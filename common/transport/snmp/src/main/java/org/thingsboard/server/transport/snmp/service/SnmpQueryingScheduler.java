@@ -0,0 +1,181 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.snmp.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.server.common.data.transport.snmp.config.RepeatingQueryingSnmpCommunicationConfig;
+import org.thingsboard.server.transport.snmp.session.DeviceSessionContext;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Hashed timer wheel that drives repeating SNMP queries of all the devices from a single timer thread.
+ * <p>
+ * The querying slots of a device are aligned to the querying frequency with a per-device offset,
+ * so the configs of one device that are due in the same tick are handed over together (and can be merged into a single request),
+ * while the load of different devices is spread over the period.
+ */
+@Slf4j
+public class SnmpQueryingScheduler {
+
+    private final long tickMs;
+    private final int mask;
+    private final List<QueryingTask>[] wheel;
+    private final BiConsumer<DeviceSessionContext, List<RepeatingQueryingSnmpCommunicationConfig>> dueTasksConsumer;
+
+    private ScheduledExecutorService timer;
+    private long startTs;
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public SnmpQueryingScheduler(long tickMs, int wheelSize,
+                                 BiConsumer<DeviceSessionContext, List<RepeatingQueryingSnmpCommunicationConfig>> dueTasksConsumer) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive!");
+        }
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.tickMs = tickMs;
+        this.mask = size - 1;
+        this.wheel = new List[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.dueTasksConsumer = dueTasksConsumer;
+    }
+
+    public void start() {
+        startTs = System.currentTimeMillis();
+        timer = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("snmp-querying-timer"));
+        timer.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    public QueryingTask schedule(DeviceSessionContext sessionContext, RepeatingQueryingSnmpCommunicationConfig communicationConfig) {
+        long periodTicks = Math.max(1, communicationConfig.getQueryingFrequencyMs() / tickMs);
+        QueryingTask task = new QueryingTask(sessionContext, communicationConfig, periodTicks);
+        // same device gets the same offset for all of its configs, different devices are spread over the period
+        long offset = (sessionContext.getSessionId().hashCode() & Integer.MAX_VALUE) % periodTicks;
+        synchronized (this) {
+            long firstTick = (currentTick / periodTicks + 1) * periodTicks + offset;
+            add(task, firstTick);
+        }
+        return task;
+    }
+
+    public synchronized int getPendingTasksCount() {
+        int count = 0;
+        for (List<QueryingTask> bucket : wheel) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    private void add(QueryingTask task, long deadlineTick) {
+        task.deadlineTick = deadlineTick;
+        wheel[(int) (deadlineTick & mask)].add(task);
+    }
+
+    private void tick() {
+        try {
+            long targetTick = (System.currentTimeMillis() - startTs) / tickMs;
+            while (true) {
+                Map<DeviceSessionContext, List<RepeatingQueryingSnmpCommunicationConfig>> dueTasks;
+                synchronized (this) {
+                    if (currentTick >= targetTick) {
+                        return;
+                    }
+                    currentTick++;
+                    dueTasks = pollDueTasks(currentTick);
+                }
+                dueTasks.forEach((sessionContext, configs) -> {
+                    try {
+                        dueTasksConsumer.accept(sessionContext, configs);
+                    } catch (Exception e) {
+                        log.error("Failed to send SNMP request for device {}: {}", sessionContext.getDeviceId(), e.toString());
+                    }
+                });
+            }
+        } catch (Throwable t) {
+            log.error("Failed to process SNMP querying tick", t);
+        }
+    }
+
+    private Map<DeviceSessionContext, List<RepeatingQueryingSnmpCommunicationConfig>> pollDueTasks(long tick) {
+        Map<DeviceSessionContext, List<RepeatingQueryingSnmpCommunicationConfig>> dueTasks = new IdentityHashMap<>();
+        List<QueryingTask> bucket = wheel[(int) (tick & mask)];
+        List<QueryingTask> rescheduled = null;
+        Iterator<QueryingTask> it = bucket.iterator();
+        while (it.hasNext()) {
+            QueryingTask task = it.next();
+            if (task.cancelled) {
+                it.remove();
+            } else if (task.deadlineTick <= tick) {
+                it.remove();
+                if (task.sessionContext.isActive()) {
+                    dueTasks.computeIfAbsent(task.sessionContext, s -> new ArrayList<>()).add(task.communicationConfig);
+                }
+                if (rescheduled == null) {
+                    rescheduled = new ArrayList<>();
+                }
+                rescheduled.add(task);
+            }
+        }
+        if (rescheduled != null) {
+            for (QueryingTask task : rescheduled) {
+                add(task, tick + task.periodTicks);
+            }
+        }
+        return dueTasks;
+    }
+
+    public static class QueryingTask {
+        @Getter
+        private final DeviceSessionContext sessionContext;
+        @Getter
+        private final RepeatingQueryingSnmpCommunicationConfig communicationConfig;
+        private final long periodTicks;
+        private long deadlineTick;
+        private volatile boolean cancelled;
+
+        QueryingTask(DeviceSessionContext sessionContext, RepeatingQueryingSnmpCommunicationConfig communicationConfig, long periodTicks) {
+            this.sessionContext = sessionContext;
+            this.communicationConfig = communicationConfig;
+            this.periodTicks = periodTicks;
+        }
+
+        /**
+         * Cancelled task is dropped from the wheel when its slot is reached.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -29,7 +29,9 @@ import org.snmp4j.mp.MPv3;
 import org.snmp4j.security.SecurityModels;
 import org.snmp4j.security.SecurityProtocols;
 import org.snmp4j.security.USM;
+import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.VariableBinding;
 import org.snmp4j.transport.DefaultTcpTransportMapping;
 import org.snmp4j.transport.DefaultUdpTransportMapping;
 import org.springframework.beans.factory.annotation.Value;
@@ -40,6 +42,7 @@ import org.thingsboard.server.common.data.kv.DataType;
 import org.thingsboard.server.common.data.transport.snmp.SnmpCommunicationSpec;
 import org.thingsboard.server.common.data.transport.snmp.SnmpMapping;
 import org.thingsboard.server.common.data.transport.snmp.SnmpMethod;
+import org.thingsboard.server.common.data.transport.snmp.SnmpProtocolVersion;
 import org.thingsboard.server.common.data.transport.snmp.config.RepeatingQueryingSnmpCommunicationConfig;
 import org.thingsboard.server.common.data.transport.snmp.config.SnmpCommunicationConfig;
 import org.thingsboard.server.common.transport.TransportService;
@@ -47,22 +50,22 @@ import org.thingsboard.server.common.transport.TransportServiceCallback;
 import org.thingsboard.server.common.transport.adaptor.JsonConverter;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.queue.util.TbSnmpTransportComponent;
+import org.thingsboard.server.transport.snmp.service.SnmpQueryingScheduler.QueryingTask;
 import org.thingsboard.server.transport.snmp.session.DeviceSessionContext;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @TbSnmpTransportComponent
@@ -75,7 +78,8 @@ public class SnmpTransportService implements TbTransportService {
 
     @Getter
     private Snmp snmp;
-    private ScheduledExecutorService queryingExecutor;
+    private SnmpQueryingScheduler queryingScheduler;
+    private ExecutorService queryingExecutor;
     private ExecutorService responseProcessingExecutor;
 
     private final Map<SnmpCommunicationSpec, ResponseDataMapper> responseDataMappers = new EnumMap<>(SnmpCommunicationSpec.class);
@@ -85,16 +89,34 @@ public class SnmpTransportService implements TbTransportService {
     private Integer responseProcessingParallelismLevel;
     @Value("${transport.snmp.underlying_protocol}")
     private String snmpUnderlyingProtocol;
+    @Value("${transport.snmp.querying.tick_duration:50}")
+    private long queryingTickDuration;
+    @Value("${transport.snmp.querying.wheel_size:1024}")
+    private int queryingWheelSize;
+    @Value("${transport.snmp.querying.max_request_oids:64}")
+    private int maxRequestOids;
 
     @PostConstruct
     private void init() throws IOException {
-        queryingExecutor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), ThingsBoardThreadFactory.forName("snmp-querying"));
+        queryingExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), ThingsBoardThreadFactory.forName("snmp-querying"));
         responseProcessingExecutor = Executors.newWorkStealingPool(responseProcessingParallelismLevel);
 
         initializeSnmp();
         configureResponseDataMappers();
         configureResponseProcessors();
 
+        queryingScheduler = new SnmpQueryingScheduler(queryingTickDuration, queryingWheelSize,
+                (sessionContext, configs) -> queryingExecutor.execute(() -> {
+                    try {
+                        if (sessionContext.isActive()) {
+                            sendQueryingRequests(sessionContext, configs);
+                        }
+                    } catch (Exception e) {
+                        log.error("Failed to send SNMP request for device {}: {}", sessionContext.getDeviceId(), e.toString());
+                    }
+                }));
+        queryingScheduler.start();
+
         log.info("SNMP transport service initialized");
     }
 
@@ -118,47 +140,70 @@ public class SnmpTransportService implements TbTransportService {
     }
 
     public void createQueryingTasks(DeviceSessionContext sessionContext) {
-        List<ScheduledFuture<?>> queryingTasks = sessionContext.getProfileTransportConfiguration().getCommunicationConfigs().stream()
+        List<QueryingTask> queryingTasks = sessionContext.getProfileTransportConfiguration().getCommunicationConfigs().stream()
                 .filter(communicationConfig -> communicationConfig instanceof RepeatingQueryingSnmpCommunicationConfig)
-                .map(config -> {
-                    RepeatingQueryingSnmpCommunicationConfig repeatingCommunicationConfig = (RepeatingQueryingSnmpCommunicationConfig) config;
-                    Long queryingFrequency = repeatingCommunicationConfig.getQueryingFrequencyMs();
-
-                    return queryingExecutor.scheduleWithFixedDelay(() -> {
-                        try {
-                            if (sessionContext.isActive()) {
-                                sendRequest(sessionContext, repeatingCommunicationConfig);
-                            }
-                        } catch (Exception e) {
-                            log.error("Failed to send SNMP request for device {}: {}", sessionContext.getDeviceId(), e.toString());
-                        }
-                    }, queryingFrequency, queryingFrequency, TimeUnit.MILLISECONDS);
-                })
+                .map(config -> queryingScheduler.schedule(sessionContext, (RepeatingQueryingSnmpCommunicationConfig) config))
                 .collect(Collectors.toList());
         sessionContext.getQueryingTasks().addAll(queryingTasks);
     }
 
     public void cancelQueryingTasks(DeviceSessionContext sessionContext) {
-        sessionContext.getQueryingTasks().forEach(task -> task.cancel(true));
+        sessionContext.getQueryingTasks().forEach(QueryingTask::cancel);
         sessionContext.getQueryingTasks().clear();
     }
 
-
-    private void sendRequest(DeviceSessionContext sessionContext, SnmpCommunicationConfig communicationConfig) {
-        sendRequest(sessionContext, communicationConfig, Collections.emptyMap());
+    /*
+     * Merges the mappings of all the configs that are due for the device into as few requests as possible,
+     * each of them holding up to maxRequestOids variable bindings.
+     * SNMPv1 agents reject the whole PDU when any of its OIDs fails (noSuchName),
+     * so for them the configs are not merged and a bad OID only affects its own config.
+     * */
+    private void sendQueryingRequests(DeviceSessionContext sessionContext, List<? extends SnmpCommunicationConfig> communicationConfigs) {
+        boolean mergeConfigs = sessionContext.getDeviceTransportConfiguration().getProtocolVersion() != SnmpProtocolVersion.V1;
+        Map<SnmpMethod, List<SnmpCommunicationConfig>> configsByMethod = new LinkedHashMap<>();
+        for (SnmpCommunicationConfig communicationConfig : communicationConfigs) {
+            configsByMethod.computeIfAbsent(communicationConfig.getMethod(), method -> new ArrayList<>()).add(communicationConfig);
+        }
+        configsByMethod.forEach((method, configs) -> {
+            PDU request = null;
+            List<RequestInfo> requestInfos = null;
+            for (SnmpCommunicationConfig communicationConfig : configs) {
+                RequestInfo requestInfo = new RequestInfo(communicationConfig.getSpec(), communicationConfig.getAllMappings());
+                if (!mergeConfigs && request != null) {
+                    sendRequest(sessionContext, request, requestInfos);
+                    request = null;
+                }
+                for (SnmpMapping mapping : communicationConfig.getAllMappings()) {
+                    if (request == null || request.size() >= maxRequestOids) {
+                        if (request != null) {
+                            sendRequest(sessionContext, request, requestInfos);
+                        }
+                        request = pduService.createPdu(sessionContext, method);
+                        requestInfos = new ArrayList<>();
+                    }
+                    if (requestInfos.isEmpty() || requestInfos.get(requestInfos.size() - 1) != requestInfo) {
+                        requestInfos.add(requestInfo);
+                    }
+                    request.add(new VariableBinding(new OID(mapping.getOid())));
+                }
+            }
+            if (request != null) {
+                sendRequest(sessionContext, request, requestInfos);
+            }
+        });
     }
 
     private void sendRequest(DeviceSessionContext sessionContext, SnmpCommunicationConfig communicationConfig, Map<String, String> values) {
         PDU request = pduService.createPdu(sessionContext, communicationConfig, values);
         RequestInfo requestInfo = new RequestInfo(communicationConfig.getSpec(), communicationConfig.getAllMappings());
-        sendRequest(sessionContext, request, requestInfo);
+        sendRequest(sessionContext, request, Collections.singletonList(requestInfo));
     }
 
-    private void sendRequest(DeviceSessionContext sessionContext, PDU request, RequestInfo requestInfo) {
+    private void sendRequest(DeviceSessionContext sessionContext, PDU request, List<RequestInfo> requestInfos) {
         if (request.size() > 0) {
             log.trace("Executing SNMP request for device {}. Variables bindings: {}", sessionContext.getDeviceId(), request.getVariableBindings());
             try {
-                snmp.send(request, sessionContext.getTarget(), requestInfo, sessionContext);
+                snmp.send(request, sessionContext.getTarget(), requestInfos, sessionContext);
             } catch (IOException e) {
                 log.error("Failed to send SNMP request to device {}: {}", sessionContext.getDeviceId(), e.toString());
             }
@@ -204,7 +249,7 @@ public class SnmpTransportService implements TbTransportService {
 
         PDU request = pduService.createSingleVariablePdu(sessionContext, snmpMethod, oid, value, dataType);
         RequestInfo requestInfo = new RequestInfo(toDeviceRpcRequestMsg.getRequestId(), communicationConfig.getSpec(), communicationConfig.getAllMappings());
-        sendRequest(sessionContext, request, requestInfo);
+        sendRequest(sessionContext, request, Collections.singletonList(requestInfo));
     }
 
 
@@ -222,25 +267,32 @@ public class SnmpTransportService implements TbTransportService {
             return;
         }
 
-        RequestInfo requestInfo = (RequestInfo) event.getUserObject();
+        @SuppressWarnings("unchecked")
+        List<RequestInfo> requestInfos = (List<RequestInfo>) event.getUserObject();
         responseProcessingExecutor.execute(() -> {
-            processResponse(sessionContext, response, requestInfo);
+            boolean processed = false;
+            for (RequestInfo requestInfo : requestInfos) {
+                processed |= processResponse(sessionContext, response, requestInfo);
+            }
+            if (processed) {
+                reportActivity(sessionContext.getSessionInfo());
+            }
         });
     }
 
-    private void processResponse(DeviceSessionContext sessionContext, PDU response, RequestInfo requestInfo) {
+    private boolean processResponse(DeviceSessionContext sessionContext, PDU response, RequestInfo requestInfo) {
         ResponseProcessor responseProcessor = responseProcessors.get(requestInfo.getCommunicationSpec());
-        if (responseProcessor == null) return;
+        if (responseProcessor == null) return false;
 
         JsonObject responseData = responseDataMappers.get(requestInfo.getCommunicationSpec()).map(response, requestInfo);
 
         if (responseData.entrySet().isEmpty()) {
             log.debug("No values is the SNMP response for device {}. Request id: {}", sessionContext.getDeviceId(), response.getRequestID());
-            return;
+            return false;
         }
 
         responseProcessor.process(responseData, requestInfo, sessionContext);
-        reportActivity(sessionContext.getSessionInfo());
+        return true;
     }
 
     private void configureResponseDataMappers() {
@@ -306,6 +358,9 @@ public class SnmpTransportService implements TbTransportService {
     @PreDestroy
     public void shutdown() {
         log.info("Stopping SNMP transport!");
+        if (queryingScheduler != null) {
+            queryingScheduler.stop();
+        }
         if (queryingExecutor != null) {
             queryingExecutor.shutdownNow();
         }
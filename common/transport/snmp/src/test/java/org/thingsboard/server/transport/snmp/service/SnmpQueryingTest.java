@@ -0,0 +1,274 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.transport.snmp.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+import org.thingsboard.server.common.data.Device;
+import org.thingsboard.server.common.data.DeviceProfile;
+import org.thingsboard.server.common.data.device.data.SnmpDeviceTransportConfiguration;
+import org.thingsboard.server.common.data.device.profile.SnmpDeviceProfileTransportConfiguration;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.DataType;
+import org.thingsboard.server.common.data.transport.snmp.SnmpMapping;
+import org.thingsboard.server.common.data.transport.snmp.SnmpProtocolVersion;
+import org.thingsboard.server.common.data.transport.snmp.config.RepeatingQueryingSnmpCommunicationConfig;
+import org.thingsboard.server.common.data.transport.snmp.config.impl.ClientAttributesQueryingSnmpCommunicationConfig;
+import org.thingsboard.server.common.data.transport.snmp.config.impl.TelemetryQueryingSnmpCommunicationConfig;
+import org.thingsboard.server.common.transport.TransportService;
+import org.thingsboard.server.gen.transport.TransportProtos;
+import org.thingsboard.server.transport.snmp.SnmpTransportContext;
+import org.thingsboard.server.transport.snmp.session.DeviceSessionContext;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Slf4j
+public class SnmpQueryingTest {
+
+    private static final int TELEMETRY_OIDS = 10;
+    private static final int ATTRIBUTES_OIDS = 5;
+
+    private Snmp agent;
+    private final AtomicInteger partialPdus = new AtomicInteger();
+    private final Set<Integer> pduSizes = ConcurrentHashMap.newKeySet();
+    private volatile Runnable mergedRequestListener = () -> {};
+
+    private SnmpTransportService snmpTransportService;
+    private SnmpTransportContext snmpTransportContext;
+    private final AtomicInteger telemetryMsgs = new AtomicInteger();
+    private final AtomicInteger attributesMsgs = new AtomicInteger();
+
+    @Before
+    public void before() throws Exception {
+        startAgent();
+
+        TransportService transportService = mock(TransportService.class);
+        doAnswer(invocation -> telemetryMsgs.incrementAndGet()).when(transportService)
+                .process(any(), any(TransportProtos.PostTelemetryMsg.class), any());
+        doAnswer(invocation -> attributesMsgs.incrementAndGet()).when(transportService)
+                .process(any(), any(TransportProtos.PostAttributeMsg.class), any());
+
+        snmpTransportService = new SnmpTransportService(transportService, new PduService());
+        setField("responseProcessingParallelismLevel", 4);
+        setField("snmpUnderlyingProtocol", "udp");
+        setField("queryingTickDuration", 10L);
+        setField("queryingWheelSize", 512);
+        setField("maxRequestOids", 64);
+        Method init = SnmpTransportService.class.getDeclaredMethod("init");
+        init.setAccessible(true);
+        init.invoke(snmpTransportService);
+
+        CommunityTarget target = new CommunityTarget();
+        target.setAddress(agent.getMessageDispatcher().getTransportMappings().iterator().next().getListenAddress());
+        target.setCommunity(new OctetString("public"));
+        target.setVersion(SnmpConstants.version2c);
+        target.setTimeout(1000);
+        target.setRetries(0);
+
+        SnmpAuthService snmpAuthService = mock(SnmpAuthService.class);
+        when(snmpAuthService.setUpSnmpTarget(any(), any())).thenReturn(target);
+        snmpTransportContext = mock(SnmpTransportContext.class);
+        when(snmpTransportContext.getSnmpAuthService()).thenReturn(snmpAuthService);
+        when(snmpTransportContext.getSnmpTransportService()).thenReturn(snmpTransportService);
+    }
+
+    @After
+    public void after() throws IOException {
+        snmpTransportService.shutdown();
+        agent.close();
+    }
+
+    @Test
+    public void testQueryingSchedulerMergesDueConfigsOfDevice() throws Exception {
+        DeviceSessionContext sessionContext = createSession(100);
+        List<List<RepeatingQueryingSnmpCommunicationConfig>> dueBatches = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(3);
+        SnmpQueryingScheduler scheduler = new SnmpQueryingScheduler(10, 8, (session, configs) -> {
+            synchronized (dueBatches) {
+                dueBatches.add(configs);
+            }
+            latch.countDown();
+        });
+        scheduler.start();
+        try {
+            List<SnmpQueryingScheduler.QueryingTask> tasks = sessionContext.getProfileTransportConfiguration().getCommunicationConfigs().stream()
+                    .map(config -> scheduler.schedule(sessionContext, (RepeatingQueryingSnmpCommunicationConfig) config))
+                    .collect(Collectors.toList());
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            synchronized (dueBatches) {
+                // the first slot may split if the timer ticked between the two schedule calls
+                assertTrue(dueBatches.stream().skip(1).allMatch(configs -> configs.size() == 2));
+            }
+
+            tasks.forEach(SnmpQueryingScheduler.QueryingTask::cancel);
+            Thread.sleep(300);
+            assertEquals(0, scheduler.getPendingTasksCount());
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testDueConfigsOfDeviceAreQueriedWithSingleRequest() throws Exception {
+        int requestsCount = 5;
+        CountDownLatch mergedRequests = new CountDownLatch(requestsCount);
+        mergedRequestListener = mergedRequests::countDown;
+        DeviceSessionContext sessionContext = createSession(100);
+        snmpTransportService.createQueryingTasks(sessionContext);
+        try {
+            assertTrue(mergedRequests.await(10, TimeUnit.SECONDS));
+        } finally {
+            snmpTransportService.cancelQueryingTasks(sessionContext);
+        }
+
+        // the first slot may split if the timer ticked between the schedule calls of the configs
+        assertTrue(partialPdus.get() <= 2);
+        // the response to the last request may still be in processing
+        assertTrue(telemetryMsgs.get() >= requestsCount - 1);
+        assertTrue(attributesMsgs.get() >= requestsCount - 1);
+    }
+
+    @Test
+    public void testConfigsAreNotMergedForSnmpV1() throws Exception {
+        int devicesCount = 20;
+        List<DeviceSessionContext> sessions = new ArrayList<>(devicesCount);
+        for (int i = 0; i < devicesCount; i++) {
+            DeviceSessionContext sessionContext = createSession(100, SnmpProtocolVersion.V1);
+            sessions.add(sessionContext);
+            snmpTransportService.createQueryingTasks(sessionContext);
+        }
+        Thread.sleep(1000);
+        sessions.forEach(snmpTransportService::cancelQueryingTasks);
+        Thread.sleep(300);
+
+        assertTrue(telemetryMsgs.get() >= devicesCount);
+        assertTrue(attributesMsgs.get() >= devicesCount);
+        // a failing OID of one config must not reject the PDU of another one
+        assertEquals(new HashSet<>(Arrays.asList(TELEMETRY_OIDS, ATTRIBUTES_OIDS)), pduSizes);
+    }
+
+    private DeviceSessionContext createSession(long queryingFrequencyMs) throws Exception {
+        return createSession(queryingFrequencyMs, SnmpProtocolVersion.V2C);
+    }
+
+    private DeviceSessionContext createSession(long queryingFrequencyMs, SnmpProtocolVersion protocolVersion) throws Exception {
+        TelemetryQueryingSnmpCommunicationConfig telemetryConfig = new TelemetryQueryingSnmpCommunicationConfig();
+        telemetryConfig.setQueryingFrequencyMs(queryingFrequencyMs);
+        telemetryConfig.setMappings(createMappings("temperature", 0, TELEMETRY_OIDS));
+        ClientAttributesQueryingSnmpCommunicationConfig attributesConfig = new ClientAttributesQueryingSnmpCommunicationConfig();
+        attributesConfig.setQueryingFrequencyMs(queryingFrequencyMs);
+        attributesConfig.setMappings(createMappings("version", TELEMETRY_OIDS, ATTRIBUTES_OIDS));
+
+        SnmpDeviceProfileTransportConfiguration profileTransportConfiguration = new SnmpDeviceProfileTransportConfiguration();
+        profileTransportConfiguration.setTimeoutMs(1000);
+        profileTransportConfiguration.setRetries(0);
+        profileTransportConfiguration.setCommunicationConfigs(Arrays.asList(telemetryConfig, attributesConfig));
+
+        SnmpDeviceTransportConfiguration deviceTransportConfiguration = new SnmpDeviceTransportConfiguration();
+        deviceTransportConfiguration.setProtocolVersion(protocolVersion);
+        deviceTransportConfiguration.setCommunity("public");
+
+        Device device = new Device(new DeviceId(UUID.randomUUID()));
+        device.setName("SNMP device " + device.getId());
+        return new DeviceSessionContext(device, new DeviceProfile(), "token", profileTransportConfiguration,
+                deviceTransportConfiguration, snmpTransportContext);
+    }
+
+    private List<SnmpMapping> createMappings(String keyPrefix, int oidOffset, int count) {
+        return IntStream.range(oidOffset, oidOffset + count)
+                .mapToObj(i -> new SnmpMapping("1.3.6.1.4.1.3.1." + i, keyPrefix + i, DataType.LONG))
+                .collect(Collectors.toList());
+    }
+
+    /*
+     * Local SNMP agent simulator that answers any GET request with the last OID sub-identifier as a value.
+     * */
+    private void startAgent() throws IOException {
+        DefaultUdpTransportMapping transportMapping = new DefaultUdpTransportMapping(new UdpAddress("127.0.0.1/0"));
+        agent = new Snmp(transportMapping);
+        agent.addCommandResponder(this::respond);
+        agent.listen();
+    }
+
+    private void respond(CommandResponderEvent event) {
+        PDU request = event.getPDU();
+        if (request == null || request.getType() != PDU.GET) {
+            return;
+        }
+        pduSizes.add(request.size());
+        if (request.size() < TELEMETRY_OIDS + ATTRIBUTES_OIDS) {
+            partialPdus.incrementAndGet();
+        } else {
+            mergedRequestListener.run();
+        }
+
+        PDU response = new PDU(request);
+        response.setType(PDU.RESPONSE);
+        response.setErrorStatus(PDU.noError);
+        response.setErrorIndex(0);
+        for (VariableBinding variableBinding : response.getVariableBindings()) {
+            variableBinding.setVariable(new Integer32(variableBinding.getOid().last()));
+        }
+        try {
+            event.getMessageDispatcher().returnResponsePdu(event.getMessageProcessingModel(), event.getSecurityModel(),
+                    event.getSecurityName(), event.getSecurityLevel(), response, event.getMaxSizeResponsePDU(),
+                    event.getStateReference(), new StatusInformation());
+            event.setProcessed(true);
+        } catch (Exception e) {
+            log.warn("Failed to send response", e);
+        }
+    }
+
+    private void setField(String name, Object value) throws Exception {
+        Field field = SnmpTransportService.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(snmpTransportService, value);
+    }
+}
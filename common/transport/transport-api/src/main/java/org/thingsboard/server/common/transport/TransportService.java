@@ -55,6 +55,8 @@ import org.thingsboard.server.gen.transport.TransportProtos.ValidateDeviceLwM2MC
 import org.thingsboard.server.gen.transport.TransportProtos.ValidateDeviceTokenRequestMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.ValidateDeviceX509CertRequestMsg;
 
+import java.util.Collection;
+
 /**
  * Created by ashvayka on 04.10.18.
  */
@@ -125,5 +127,7 @@ public interface TransportService {
 
     SessionMetaData reportActivity(SessionInfoProto sessionInfo);
 
+    void reportActivity(Collection<SessionInfoProto> sessionInfos);
+
     void deregisterSession(SessionInfoProto sessionInfo);
 }
@@ -81,6 +81,7 @@ import org.thingsboard.server.queue.TbQueueCallback;
 import org.thingsboard.server.queue.TbQueueConsumer;
 import org.thingsboard.server.queue.TbQueueMsgMetadata;
 import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.TbQueueRequestLatencyStats;
 import org.thingsboard.server.queue.TbQueueRequestTemplate;
 import org.thingsboard.server.queue.common.AsyncCallbackTemplate;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
@@ -94,6 +95,7 @@ import org.thingsboard.server.queue.util.TbTransportComponent;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -127,6 +129,8 @@ public class DefaultTransportService implements TransportService {
     private long clientSideRpcTimeout;
     @Value("${queue.transport.poll_interval}")
     private int notificationsPollDuration;
+    @Value("${queue.transport_api.stats.print_interval_ms:0}")
+    private long transportApiStatsPrintIntervalMs;
 
     private final Gson gson = new Gson();
     private final TbTransportQueueFactory queueProvider;
@@ -194,6 +198,10 @@ public class DefaultTransportService implements TransportService {
         this.scheduler.scheduleAtFixedRate(this::checkInactivityAndReportActivity, new Random().nextInt((int) sessionReportTimeout), sessionReportTimeout, TimeUnit.MILLISECONDS);
         transportApiRequestTemplate = queueProvider.createTransportApiRequestTemplate();
         transportApiRequestTemplate.setMessagesStats(transportApiStats);
+        transportApiRequestTemplate.setRequestTypeResolver(msg -> getRequestType(msg.getValue()));
+        if (transportApiStatsPrintIntervalMs > 0) {
+            scheduler.scheduleAtFixedRate(this::printTransportApiStats, transportApiStatsPrintIntervalMs, transportApiStatsPrintIntervalMs, TimeUnit.MILLISECONDS);
+        }
         ruleEngineMsgProducer = producerProvider.getRuleEngineMsgProducer();
         tbCoreMsgProducer = producerProvider.getTbCoreMsgProducer();
         transportNotificationsConsumer = queueProvider.createTransportNotificationsConsumer();
@@ -664,6 +672,17 @@ public class DefaultTransportService implements TransportService {
         return reportActivityInternal(sessionInfo);
     }
 
+    @Override
+    public void reportActivity(Collection<TransportProtos.SessionInfoProto> sessionInfos) {
+        long lastActivityTime = System.currentTimeMillis();
+        for (TransportProtos.SessionInfoProto sessionInfo : sessionInfos) {
+            SessionMetaData sessionMetaData = sessions.get(toSessionId(sessionInfo));
+            if (sessionMetaData != null) {
+                sessionMetaData.updateLastActivityTime(lastActivityTime);
+            }
+        }
+    }
+
     private SessionMetaData reportActivityInternal(TransportProtos.SessionInfoProto sessionInfo) {
         UUID sessionId = toSessionId(sessionInfo);
         SessionMetaData sessionMetaData = sessions.get(sessionId);
@@ -673,6 +692,48 @@ public class DefaultTransportService implements TransportService {
         return sessionMetaData;
     }
 
+    private void printTransportApiStats() {
+        for (TbQueueRequestLatencyStats latencyStats : transportApiRequestTemplate.getAndResetLatencyStats()) {
+            if (latencyStats.getResponses() > 0 || latencyStats.getTimeouts() > 0) {
+                log.info("Transport API Latency Stats [{}]: responses [{}] timeouts [{}] avg [{}] us p50 [{}] us p99 [{}] us max [{}] us",
+                        latencyStats.getRequestType(), latencyStats.getResponses(), latencyStats.getTimeouts(),
+                        latencyStats.getAvgUs(), latencyStats.getP50Us(), latencyStats.getP99Us(), latencyStats.getMaxUs());
+            }
+        }
+    }
+
+    private static String getRequestType(TransportApiRequestMsg msg) {
+        if (msg.hasValidateTokenRequestMsg()) {
+            return "validateToken";
+        } else if (msg.hasValidateX509CertRequestMsg()) {
+            return "validateX509Cert";
+        } else if (msg.hasGetOrCreateDeviceRequestMsg()) {
+            return "getOrCreateDevice";
+        } else if (msg.hasEntityProfileRequestMsg()) {
+            return "entityProfile";
+        } else if (msg.hasLwM2MRequestMsg()) {
+            return "lwM2M";
+        } else if (msg.hasValidateBasicMqttCredRequestMsg()) {
+            return "validateBasicMqttCred";
+        } else if (msg.hasProvisionDeviceRequestMsg()) {
+            return "provisionDevice";
+        } else if (msg.hasValidateDeviceLwM2MCredentialsRequestMsg()) {
+            return "validateDeviceLwM2MCredentials";
+        } else if (msg.hasResourceRequestMsg()) {
+            return "resource";
+        } else if (msg.hasOtaPackageRequestMsg()) {
+            return "otaPackage";
+        } else if (msg.hasSnmpDevicesRequestMsg()) {
+            return "snmpDevices";
+        } else if (msg.hasDeviceRequestMsg()) {
+            return "device";
+        } else if (msg.hasDeviceCredentialsRequestMsg()) {
+            return "deviceCredentials";
+        } else {
+            return "unknown";
+        }
+    }
+
     private void checkInactivityAndReportActivity() {
         long expTime = System.currentTimeMillis() - sessionInactivityTimeout;
         sessions.forEach((uuid, sessionMD) -> {
@@ -50,6 +50,10 @@ public class SessionMetaData {
         this.lastActivityTime = System.currentTimeMillis();
     }
 
+    void updateLastActivityTime(long lastActivityTime) {
+        this.lastActivityTime = lastActivityTime;
+    }
+
     void setScheduledFuture(ScheduledFuture scheduledFuture) {
         this.scheduledFuture = scheduledFuture;
     }
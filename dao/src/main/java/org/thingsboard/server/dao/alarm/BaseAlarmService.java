@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
@@ -50,6 +51,7 @@ import org.thingsboard.server.common.data.relation.RelationsSearchParameters;
 import org.thingsboard.server.dao.entity.AbstractEntityService;
 import org.thingsboard.server.dao.entity.EntityService;
 import org.thingsboard.server.dao.exception.DataValidationException;
+import org.thingsboard.server.dao.relation.EntityAncestorsCache;
 import org.thingsboard.server.dao.service.DataValidator;
 import org.thingsboard.server.dao.tenant.TenantDao;
 
@@ -61,10 +63,14 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -76,6 +82,7 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
 
     public static final String INCORRECT_TENANT_ID = "Incorrect tenantId ";
     public static final String INCORRECT_CUSTOMER_ID = "Incorrect customerId ";
+    private static final long PROPAGATION_RETRY_DELAY_MS = 100;
 
     @Autowired
     private AlarmDao alarmDao;
@@ -86,11 +93,34 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
     @Autowired
     private EntityService entityService;
 
+    @Autowired
+    private EntityAncestorsCache ancestorsCache;
+
+    @Value("${sql.alarms.async_propagation:false}")
+    private boolean asyncPropagation;
+
+    @Value("${sql.alarms.async_propagation_threads:2}")
+    private int asyncPropagationThreads;
+
+    @Value("${sql.alarms.async_propagation_queue_size:10000}")
+    private int asyncPropagationQueueSize;
+
+    @Value("${sql.alarms.async_propagation_max_attempts:3}")
+    private int asyncPropagationMaxAttempts;
+
     protected ExecutorService readResultsProcessingExecutor;
 
+    private ExecutorService propagationExecutor;
+
     @PostConstruct
     public void startExecutor() {
         readResultsProcessingExecutor = Executors.newCachedThreadPool(ThingsBoardThreadFactory.forName("alarm-service"));
+        if (asyncPropagation) {
+            // the caller saves the relations itself when the queue is full, so the pending relations stay bounded
+            propagationExecutor = new ThreadPoolExecutor(asyncPropagationThreads, asyncPropagationThreads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(asyncPropagationQueueSize), ThingsBoardThreadFactory.forName("alarm-propagation"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
     }
 
     @PreDestroy
@@ -98,6 +128,9 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
         if (readResultsProcessingExecutor != null) {
             readResultsProcessingExecutor.shutdownNow();
         }
+        if (propagationExecutor != null) {
+            propagationExecutor.shutdown();
+        }
     }
 
     @Override
@@ -143,7 +176,9 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
                                                                AlarmDataQuery query, Collection<EntityId> orderedEntityIds) {
         validateId(tenantId, INCORRECT_TENANT_ID + tenantId);
         validateId(customerId, INCORRECT_CUSTOMER_ID + customerId);
-        return alarmDao.findAlarmDataByQueryForEntities(tenantId, customerId, query, orderedEntityIds);
+        PageData<AlarmData> alarms = alarmDao.findAlarmDataByQueryForEntities(tenantId, customerId, query, orderedEntityIds);
+        fetchOriginatorNames(tenantId, alarms.getData());
+        return alarms;
     }
 
     @Override
@@ -175,28 +210,60 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
         if (alarm.isPropagate()) {
             Set<EntityId> parentEntities = getParentEntities(alarm);
             propagatedEntitiesList = new ArrayList<>(parentEntities.size() + 1);
+            List<EntityRelation> alarmRelations = new ArrayList<>(parentEntities.size());
             for (EntityId parentId : parentEntities) {
                 propagatedEntitiesList.add(parentId);
-                createAlarmRelation(alarm.getTenantId(), parentId, alarm.getId());
+                alarmRelations.add(new EntityRelation(parentId, alarm.getId(), AlarmSearchStatus.ANY.name(), RelationTypeGroup.ALARM));
             }
             propagatedEntitiesList.add(alarm.getOriginator());
+            if (asyncPropagation) {
+                propagationExecutor.execute(() -> saveAlarmRelations(alarm, alarmRelations));
+            } else {
+                relationService.saveRelations(alarm.getTenantId(), alarmRelations);
+            }
         } else {
             propagatedEntitiesList = Collections.singletonList(alarm.getOriginator());
         }
         return propagatedEntitiesList;
     }
 
+    private void saveAlarmRelations(Alarm alarm, List<EntityRelation> alarmRelations) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                relationService.saveRelations(alarm.getTenantId(), alarmRelations);
+                return;
+            } catch (Exception e) {
+                if (attempt >= asyncPropagationMaxAttempts) {
+                    log.error("[{}] Failed to save propagation relations of the alarm [{}] after {} attempts, the alarm is missing in the alarm lists of {}",
+                            alarm.getTenantId(), alarm.getId(), attempt, alarmRelations.stream().map(EntityRelation::getFrom).collect(Collectors.toList()), e);
+                    return;
+                }
+                log.warn("[{}] Failed to save propagation relations of the alarm [{}], attempt {}", alarm.getTenantId(), alarm.getId(), attempt, e);
+                try {
+                    Thread.sleep(PROPAGATION_RETRY_DELAY_MS * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
     private Set<EntityId> getParentEntities(Alarm alarm) throws InterruptedException, ExecutionException {
-        EntityRelationsQuery query = new EntityRelationsQuery();
-        //TODO 3.1: @dlandiak we need to fetch max 3 levels and then fetch more if needed and there is at least one non-duplicate.
-        RelationsSearchParameters parameters = new RelationsSearchParameters(alarm.getOriginator(), EntitySearchDirection.TO, Integer.MAX_VALUE, false);
-        query.setParameters(parameters);
         List<String> propagateRelationTypes = alarm.getPropagateRelationTypes();
-        Stream<EntityRelation> relations = relationService.findByQuery(alarm.getTenantId(), query).get().stream();
-        if (!CollectionUtils.isEmpty(propagateRelationTypes)) {
-            relations = relations.filter(entityRelation -> propagateRelationTypes.contains(entityRelation.getType()));
-        }
-        return relations.map(EntityRelation::getFrom).collect(Collectors.toCollection(LinkedHashSet::new));
+        return ancestorsCache.getAncestors(alarm.getTenantId(), alarm.getOriginator(), propagateRelationTypes, () -> {
+            EntityRelationsQuery query = new EntityRelationsQuery();
+            //TODO 3.1: @dlandiak we need to fetch max 3 levels and then fetch more if needed and there is at least one non-duplicate.
+            RelationsSearchParameters parameters = new RelationsSearchParameters(alarm.getOriginator(), EntitySearchDirection.TO, Integer.MAX_VALUE, false);
+            query.setParameters(parameters);
+            return Futures.transform(relationService.findByQuery(alarm.getTenantId(), query), result -> {
+                Stream<EntityRelation> relations = result.stream();
+                if (!CollectionUtils.isEmpty(propagateRelationTypes)) {
+                    relations = relations.filter(entityRelation -> propagateRelationTypes.contains(entityRelation.getType()));
+                }
+                return relations.map(EntityRelation::getFrom).collect(Collectors.toCollection(LinkedHashSet::new));
+            }, MoreExecutors.directExecutor());
+        });
     }
 
     private ListenableFuture<AlarmOperationResult> updateAlarm(Alarm update) {
@@ -316,21 +383,26 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
     }
 
     private ListenableFuture<PageData<AlarmInfo>> fetchAlarmsOriginators(TenantId tenantId, PageData<AlarmInfo> alarms) {
-        List<ListenableFuture<AlarmInfo>> alarmFutures = new ArrayList<>(alarms.getData().size());
-        for (AlarmInfo alarmInfo : alarms.getData()) {
-            alarmFutures.add(Futures.transform(
-                    entityService.fetchEntityNameAsync(tenantId, alarmInfo.getOriginator()), originatorName -> {
-                        if (originatorName == null) {
-                            originatorName = "Deleted";
-                        }
-                        alarmInfo.setOriginatorName(originatorName);
-                        return alarmInfo;
-                    }, MoreExecutors.directExecutor()
-            ));
+        fetchOriginatorNames(tenantId, alarms.getData());
+        return Futures.immediateFuture(alarms);
+    }
+
+    /**
+     * Resolves the names of all originators of the alarms page at once, instead of a query per alarm.
+     * Skips the alarms which originator name is already fetched by the alarm query.
+     */
+    private void fetchOriginatorNames(TenantId tenantId, List<? extends AlarmInfo> alarms) {
+        Set<EntityId> originatorIds = alarms.stream().filter(alarm -> alarm.getOriginatorName() == null)
+                .map(Alarm::getOriginator).collect(Collectors.toSet());
+        if (originatorIds.isEmpty()) {
+            return;
+        }
+        Map<EntityId, String> originatorNames = entityService.fetchEntityNames(tenantId, originatorIds);
+        for (AlarmInfo alarm : alarms) {
+            if (alarm.getOriginatorName() == null) {
+                alarm.setOriginatorName(originatorNames.getOrDefault(alarm.getOriginator(), "Deleted"));
+            }
         }
-        return Futures.transform(Futures.successfulAsList(alarmFutures),
-                alarmInfos -> new PageData<>(alarmInfos, alarms.getTotalPages(), alarms.getTotalElements(),
-                        alarms.hasNext()), MoreExecutors.directExecutor());
     }
 
     @Override
@@ -391,10 +463,6 @@ public class BaseAlarmService extends AbstractEntityService implements AlarmServ
         }
     }
 
-    private void createAlarmRelation(TenantId tenantId, EntityId entityId, EntityId alarmId) {
-        createRelation(tenantId, new EntityRelation(entityId, alarmId, AlarmSearchStatus.ANY.name(), RelationTypeGroup.ALARM));
-    }
-
     private <T> ListenableFuture<T> getAndUpdate(TenantId tenantId, AlarmId alarmId, Function<Alarm, T> function) {
         validateId(alarmId, "Alarm id should be specified!");
         ListenableFuture<Alarm> entity = alarmDao.findAlarmByIdAsync(tenantId, alarmId.getId());
@@ -26,6 +26,7 @@ import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
@@ -66,6 +67,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import static org.thingsboard.server.common.data.CacheConstants.ASSET_CACHE;
+import static org.thingsboard.server.common.data.CacheConstants.ENTITY_NAME_CACHE;
 import static org.thingsboard.server.dao.DaoUtil.toUUIDs;
 import static org.thingsboard.server.dao.model.ModelConstants.NULL_UUID;
 import static org.thingsboard.server.dao.service.Validator.validateId;
@@ -128,7 +130,10 @@ public class BaseAssetService extends AbstractEntityService implements AssetServ
                 .orElse(null);
     }
 
-    @CacheEvict(cacheNames = ASSET_CACHE, key = "{#asset.tenantId, #asset.name}")
+    @Caching(evict = {
+            @CacheEvict(cacheNames = ASSET_CACHE, key = "{#asset.tenantId, #asset.name}"),
+            @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#asset.id", condition = "#asset.id != null")
+    })
     @Override
     public Asset saveAsset(Asset asset) {
         log.trace("Executing saveAsset [{}]", asset);
@@ -161,6 +166,7 @@ public class BaseAssetService extends AbstractEntityService implements AssetServ
         return saveAsset(asset);
     }
 
+    @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#assetId")
     @Override
     public void deleteAsset(TenantId tenantId, AssetId assetId) {
         log.trace("Executing deleteAsset [{}]", assetId);
@@ -21,8 +21,14 @@ import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
+import org.thingsboard.server.cache.TbMultiKeyCache;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.thingsboard.server.common.data.CacheConstants.ATTRIBUTES_CACHE;
 
 @Service
@@ -45,9 +51,9 @@ public class AttributesCacheWrapper {
         }
     }
 
-    public void put(AttributeCacheKey attributeCacheKey, AttributeKvEntry attributeKvEntry) {
+    public void putIfAbsent(AttributeCacheKey attributeCacheKey, AttributeKvEntry attributeKvEntry) {
         try {
-            attributesCache.put(attributeCacheKey, attributeKvEntry);
+            attributesCache.putIfAbsent(attributeCacheKey, attributeKvEntry);
         } catch (Exception e) {
             log.debug("Failed to put element from cache for key {}. Reason - {}.", attributeCacheKey, e.getMessage());
         }
@@ -60,4 +66,72 @@ public class AttributesCacheWrapper {
             log.debug("Failed to evict element from cache for key {}. Reason - {}.", attributeCacheKey, e.getMessage());
         }
     }
+
+    /**
+     * @return the cached elements only, the missing keys are not present in the result
+     */
+    @SuppressWarnings("unchecked")
+    public Map<AttributeCacheKey, Cache.ValueWrapper> getAll(Collection<AttributeCacheKey> attributeCacheKeys) {
+        try {
+            if (attributesCache instanceof TbMultiKeyCache) {
+                return (Map<AttributeCacheKey, Cache.ValueWrapper>) (Map<?, ?>) ((TbMultiKeyCache) attributesCache).getAll(attributeCacheKeys);
+            }
+            Map<AttributeCacheKey, Cache.ValueWrapper> result = new HashMap<>();
+            for (AttributeCacheKey attributeCacheKey : attributeCacheKeys) {
+                Cache.ValueWrapper valueWrapper = attributesCache.get(attributeCacheKey);
+                if (valueWrapper != null) {
+                    result.put(attributeCacheKey, valueWrapper);
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            log.debug("Failed to retrieve elements from cache for keys {}. Reason - {}.", attributeCacheKeys, e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Caches the attributes loaded from the database, unless a newer value was cached concurrently by the write path.
+     */
+    public void putAllIfAbsent(Map<AttributeCacheKey, AttributeKvEntry> attributes) {
+        try {
+            if (attributesCache instanceof TbMultiKeyCache) {
+                ((TbMultiKeyCache) attributesCache).putAllIfAbsent(attributes);
+            } else {
+                attributes.forEach(attributesCache::putIfAbsent);
+            }
+        } catch (Exception e) {
+            log.debug("Failed to put elements to cache for keys {}. Reason - {}.", attributes.keySet(), e.getMessage());
+        }
+    }
+
+    /**
+     * Updates the cached attributes in place, unless the cached ones have a newer update timestamp.
+     * Evicts the attributes if the cache does not support the conditional update.
+     */
+    public void putAllIfNewer(Map<AttributeCacheKey, AttributeKvEntry> attributes) {
+        try {
+            if (attributesCache instanceof TbMultiKeyCache) {
+                ((TbMultiKeyCache) attributesCache).putAllIfNewer(attributes, (newValue, cachedValue) ->
+                        ((AttributeKvEntry) newValue).getLastUpdateTs() >= ((AttributeKvEntry) cachedValue).getLastUpdateTs());
+            } else {
+                attributes.keySet().forEach(attributesCache::evict);
+            }
+        } catch (Exception e) {
+            log.debug("Failed to update elements in cache for keys {}. Reason - {}.", attributes.keySet(), e.getMessage());
+            evictAll(attributes.keySet());
+        }
+    }
+
+    public void evictAll(Collection<AttributeCacheKey> attributeCacheKeys) {
+        try {
+            if (attributesCache instanceof TbMultiKeyCache) {
+                ((TbMultiKeyCache) attributesCache).evictAll(attributeCacheKeys);
+            } else {
+                attributeCacheKeys.forEach(attributesCache::evict);
+            }
+        } catch (Exception e) {
+            log.debug("Failed to evict elements from cache for keys {}. Reason - {}.", attributeCacheKeys, e.getMessage());
+        }
+    }
 }
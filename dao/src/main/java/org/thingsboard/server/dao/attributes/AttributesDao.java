@@ -39,6 +39,8 @@ public interface AttributesDao {
 
     ListenableFuture<Void> save(TenantId tenantId, EntityId entityId, String attributeType, AttributeKvEntry attribute);
 
+    ListenableFuture<Void> saveAll(TenantId tenantId, EntityId entityId, String attributeType, List<AttributeKvEntry> attributes);
+
     ListenableFuture<List<Void>> removeAll(TenantId tenantId, EntityId entityId, String attributeType, List<String> keys);
 
     List<String> findAllKeysByDeviceProfileId(TenantId tenantId, DeviceProfileId deviceProfileId);
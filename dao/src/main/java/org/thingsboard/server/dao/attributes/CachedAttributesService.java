@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.dao.attributes;
 
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -39,6 +40,7 @@ import org.thingsboard.server.dao.service.Validator;
 import javax.annotation.PostConstruct;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -116,7 +118,7 @@ public class CachedAttributesService implements AttributesService {
             ListenableFuture<Optional<AttributeKvEntry>> result = attributesDao.find(tenantId, entityId, scope, attributeKey);
             return Futures.transform(result, foundAttrKvEntry -> {
                 // TODO: think if it's a good idea to store 'empty' attributes
-                cacheWrapper.put(attributeCacheKey, foundAttrKvEntry.orElse(null));
+                cacheWrapper.putIfAbsent(attributeCacheKey, foundAttrKvEntry.orElse(null));
                 return foundAttrKvEntry;
             }, cacheExecutor);
         }
@@ -146,28 +148,29 @@ public class CachedAttributesService implements AttributesService {
     }
 
     private Map<String, Cache.ValueWrapper> findCachedAttributes(EntityId entityId, String scope, Collection<String> attributeKeys) {
-        Map<String, Cache.ValueWrapper> cachedAttributes = new HashMap<>();
+        List<AttributeCacheKey> attributeCacheKeys = new ArrayList<>(attributeKeys.size());
         for (String attributeKey : attributeKeys) {
-            Cache.ValueWrapper cachedAttributeValue = cacheWrapper.get(new AttributeCacheKey(scope, entityId, attributeKey));
-            if (cachedAttributeValue != null) {
-                hitCounter.increment();
-                cachedAttributes.put(attributeKey, cachedAttributeValue);
-            } else {
-                missCounter.increment();
-            }
+            attributeCacheKeys.add(new AttributeCacheKey(scope, entityId, attributeKey));
         }
+        // single round trip to the cache for all the requested keys
+        Map<AttributeCacheKey, Cache.ValueWrapper> cachedValues = cacheWrapper.getAll(attributeCacheKeys);
+        Map<String, Cache.ValueWrapper> cachedAttributes = new HashMap<>(cachedValues.size());
+        cachedValues.forEach((attributeCacheKey, cachedAttributeValue) -> cachedAttributes.put(attributeCacheKey.getKey(), cachedAttributeValue));
+        hitCounter.add(cachedAttributes.size());
+        missCounter.add(attributeKeys.size() - cachedAttributes.size());
         return cachedAttributes;
     }
 
     private List<AttributeKvEntry> mergeDbAndCacheAttributes(EntityId entityId, String scope, List<AttributeKvEntry> cachedAttributes, Set<String> notFoundAttributeKeys, List<AttributeKvEntry> foundInDbAttributes) {
+        Map<AttributeCacheKey, AttributeKvEntry> attributesToCache = new HashMap<>();
         for (AttributeKvEntry foundInDbAttribute : foundInDbAttributes) {
-            AttributeCacheKey attributeCacheKey = new AttributeCacheKey(scope, entityId, foundInDbAttribute.getKey());
-            cacheWrapper.put(attributeCacheKey, foundInDbAttribute);
+            attributesToCache.put(new AttributeCacheKey(scope, entityId, foundInDbAttribute.getKey()), foundInDbAttribute);
             notFoundAttributeKeys.remove(foundInDbAttribute.getKey());
         }
-        for (String key : notFoundAttributeKeys){
-            cacheWrapper.put(new AttributeCacheKey(scope, entityId, key), null);
+        for (String key : notFoundAttributeKeys) {
+            attributesToCache.put(new AttributeCacheKey(scope, entityId, key), null);
         }
+        cacheWrapper.putAllIfAbsent(attributesToCache);
         List<AttributeKvEntry> mergedAttributes = new ArrayList<>(cachedAttributes);
         mergedAttributes.addAll(foundInDbAttributes);
         return mergedAttributes;
@@ -194,13 +197,19 @@ public class CachedAttributesService implements AttributesService {
         validate(entityId, scope);
         attributes.forEach(AttributeUtils::validate);
 
-        List<ListenableFuture<Void>> saveFutures = attributes.stream().map(attribute -> attributesDao.save(tenantId, entityId, scope, attribute)).collect(Collectors.toList());
-        ListenableFuture<List<Void>> future = Futures.allAsList(saveFutures);
+        ListenableFuture<Void> future = attributesDao.saveAll(tenantId, entityId, scope, attributes);
+        Futures.addCallback(future, new FutureCallback<>() {
+            @Override
+            public void onSuccess(Void result) {
+                updateAttributesInCache(tenantId, entityId, scope, attributes);
+            }
 
-        // TODO: can do if (attributesCache.get() != null) attributesCache.put() instead, but will be more twice more requests to cache
-        List<String> attributeKeys = attributes.stream().map(KvEntry::getKey).collect(Collectors.toList());
-        future.addListener(() -> evictAttributesFromCache(tenantId, entityId, scope, attributeKeys), cacheExecutor);
-        return future;
+            @Override
+            public void onFailure(Throwable t) {
+                evictAttributesFromCache(tenantId, entityId, scope, attributes.stream().map(KvEntry::getKey).collect(Collectors.toList()));
+            }
+        }, cacheExecutor);
+        return Futures.transform(future, v -> Collections.nCopies(attributes.size(), null), MoreExecutors.directExecutor());
     }
 
     @Override
@@ -211,11 +220,22 @@ public class CachedAttributesService implements AttributesService {
         return future;
     }
 
-    private void evictAttributesFromCache(TenantId tenantId, EntityId entityId, String scope, List<String> attributeKeys) {
+    private void updateAttributesInCache(TenantId tenantId, EntityId entityId, String scope, List<AttributeKvEntry> attributes) {
         try {
-            for (String attributeKey : attributeKeys) {
-                cacheWrapper.evict(new AttributeCacheKey(scope, entityId, attributeKey));
+            Map<AttributeCacheKey, AttributeKvEntry> attributesToCache = new HashMap<>(attributes.size());
+            for (AttributeKvEntry attribute : attributes) {
+                attributesToCache.put(new AttributeCacheKey(scope, entityId, attribute.getKey()), attribute);
             }
+            // the concurrent save of the same attribute may complete earlier, so the newer cached value is kept
+            cacheWrapper.putAllIfNewer(attributesToCache);
+        } catch (Exception e) {
+            log.error("[{}][{}] Failed to update values in cache.", tenantId, entityId, e);
+        }
+    }
+
+    private void evictAttributesFromCache(TenantId tenantId, EntityId entityId, String scope, List<String> attributeKeys) {
+        try {
+            cacheWrapper.evictAll(attributeKeys.stream().map(attributeKey -> new AttributeCacheKey(scope, entityId, attributeKey)).collect(Collectors.toList()));
         } catch (Exception e) {
             log.error("[{}][{}] Failed to remove values from cache.", tenantId, entityId, e);
         }
@@ -21,6 +21,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.thingsboard.server.common.data.Customer;
@@ -49,6 +50,7 @@ import org.thingsboard.server.dao.user.UserService;
 import java.io.IOException;
 import java.util.Optional;
 
+import static org.thingsboard.server.common.data.CacheConstants.ENTITY_NAME_CACHE;
 import static org.thingsboard.server.dao.service.Validator.validateId;
 
 @Service
@@ -108,6 +110,7 @@ public class CustomerServiceImpl extends AbstractEntityService implements Custom
         return customerDao.findByIdAsync(tenantId, customerId.getId());
     }
 
+    @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#customer.id", condition = "#customer.id != null")
     @Override
     public Customer saveCustomer(Customer customer) {
         log.trace("Executing saveCustomer [{}]", customer);
@@ -117,6 +120,7 @@ public class CustomerServiceImpl extends AbstractEntityService implements Custom
         return savedCustomer;
     }
 
+    @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#customerId")
     @Override
     public void deleteCustomer(TenantId tenantId, CustomerId customerId) {
         log.trace("Executing deleteCustomer [{}]", customerId);
@@ -20,6 +20,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.thingsboard.server.common.data.Customer;
@@ -47,6 +48,7 @@ import org.thingsboard.server.dao.service.Validator;
 import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
 import org.thingsboard.server.dao.tenant.TenantDao;
 
+import static org.thingsboard.server.common.data.CacheConstants.ENTITY_NAME_CACHE;
 import static org.thingsboard.server.dao.service.Validator.validateId;
 
 @Service
@@ -102,6 +104,7 @@ public class DashboardServiceImpl extends AbstractEntityService implements Dashb
         return dashboardInfoDao.findByIdAsync(tenantId, dashboardId.getId());
     }
 
+    @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#dashboard.id", condition = "#dashboard.id != null")
     @Override
     public Dashboard saveDashboard(Dashboard dashboard) {
         log.trace("Executing saveDashboard [{}]", dashboard);
@@ -161,6 +164,7 @@ public class DashboardServiceImpl extends AbstractEntityService implements Dashb
         }
     }
 
+    @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#dashboardId")
     @Override
     public void deleteDashboard(TenantId tenantId, DashboardId dashboardId) {
         log.trace("Executing deleteDashboard [{}]", dashboardId);
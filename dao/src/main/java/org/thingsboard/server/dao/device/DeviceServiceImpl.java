@@ -95,6 +95,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import static org.thingsboard.server.common.data.CacheConstants.DEVICE_CACHE;
+import static org.thingsboard.server.common.data.CacheConstants.ENTITY_NAME_CACHE;
 import static org.thingsboard.server.dao.DaoUtil.toUUIDs;
 import static org.thingsboard.server.dao.model.ModelConstants.NULL_UUID;
 import static org.thingsboard.server.dao.service.Validator.validateId;
@@ -182,7 +183,8 @@ public class DeviceServiceImpl extends AbstractEntityService implements DeviceSe
 
     @Caching(evict= {
             @CacheEvict(cacheNames = DEVICE_CACHE, key = "{#device.tenantId, #device.name}"),
-            @CacheEvict(cacheNames = DEVICE_CACHE, key = "{#device.tenantId, #device.id}")
+            @CacheEvict(cacheNames = DEVICE_CACHE, key = "{#device.tenantId, #device.id}"),
+            @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#device.id", condition = "#device.id != null")
     })
     @Override
     public Device saveDeviceWithAccessToken(Device device, String accessToken) {
@@ -191,14 +193,18 @@ public class DeviceServiceImpl extends AbstractEntityService implements DeviceSe
 
     @Caching(evict= {
             @CacheEvict(cacheNames = DEVICE_CACHE, key = "{#device.tenantId, #device.name}"),
-            @CacheEvict(cacheNames = DEVICE_CACHE, key = "{#device.tenantId, #device.id}")
+            @CacheEvict(cacheNames = DEVICE_CACHE, key = "{#device.tenantId, #device.id}"),
+            @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#device.id", condition = "#device.id != null")
     })
     @Override
     public Device saveDevice(Device device) {
         return doSaveDevice(device, null);
     }
 
-    @CacheEvict(cacheNames = DEVICE_CACHE, key = "{#device.tenantId, #device.name}")
+    @Caching(evict = {
+            @CacheEvict(cacheNames = DEVICE_CACHE, key = "{#device.tenantId, #device.name}"),
+            @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#device.id", condition = "#device.id != null")
+    })
     @Override
     public Device saveDeviceWithCredentials(Device device, DeviceCredentials deviceCredentials) {
         if (device.getId() == null) {
@@ -313,6 +319,7 @@ public class DeviceServiceImpl extends AbstractEntityService implements DeviceSe
         return saveDevice(device);
     }
 
+    @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#deviceId")
     @Override
     public void deleteDevice(TenantId tenantId, DeviceId deviceId) {
         log.trace("Executing deleteDevice [{}]", deviceId);
@@ -15,12 +15,24 @@
  */
 package org.thingsboard.server.dao.edge;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.common.data.edge.EdgeEvent;
+import org.thingsboard.server.common.data.edge.EdgeEventActionType;
 import org.thingsboard.server.common.data.id.EdgeId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
@@ -28,6 +40,19 @@ import org.thingsboard.server.common.data.page.TimePageLink;
 import org.thingsboard.server.dao.exception.DataValidationException;
 import org.thingsboard.server.dao.service.DataValidator;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 @Service
 @Slf4j
 public class BaseEdgeEventService implements EdgeEventService {
@@ -35,10 +60,56 @@ public class BaseEdgeEventService implements EdgeEventService {
     @Autowired
     private EdgeEventDao edgeEventDao;
 
+    @Value("${edges.storage.telemetry_coalescing_window:0}")
+    private long telemetryCoalescingWindow;
+
+    private final ConcurrentMap<EdgeId, EdgeEventBuffer> buffers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService coalescingScheduler;
+
+    @PostConstruct
+    public void init() {
+        if (telemetryCoalescingWindow > 0) {
+            coalescingScheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("edge-event-coalescing"));
+            coalescingScheduler.scheduleWithFixedDelay(this::flushCoalescedEvents,
+                    telemetryCoalescingWindow, telemetryCoalescingWindow, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (coalescingScheduler != null) {
+            coalescingScheduler.shutdownNow();
+        }
+        flushCoalescedEvents();
+    }
+
     @Override
     public ListenableFuture<EdgeEvent> saveAsync(EdgeEvent edgeEvent) {
         edgeEventValidator.validate(edgeEvent, EdgeEvent::getTenantId);
-        return edgeEventDao.saveAsync(edgeEvent);
+        if (coalescingScheduler == null) {
+            return edgeEventDao.saveAsync(edgeEvent);
+        }
+        CoalescingKey key = toCoalescingKey(edgeEvent);
+        while (true) {
+            EdgeEventBuffer buffer = key != null ?
+                    buffers.computeIfAbsent(edgeEvent.getEdgeId(), edgeId -> new EdgeEventBuffer()) :
+                    buffers.get(edgeEvent.getEdgeId());
+            if (buffer == null) {
+                return edgeEventDao.saveAsync(edgeEvent);
+            }
+            synchronized (buffer) {
+                if (buffer.isRemoved()) {
+                    continue;
+                }
+                if (key != null) {
+                    return buffer.coalesce(key, edgeEvent);
+                }
+                // the event id defines the delivery order and is assigned on save,
+                // so the buffered events of the edge are saved before this one under the same lock
+                buffer.flush();
+                return edgeEventDao.saveAsync(edgeEvent);
+            }
+        }
     }
 
     @Override
@@ -46,6 +117,122 @@ public class BaseEdgeEventService implements EdgeEventService {
         return edgeEventDao.findEdgeEvents(tenantId.getId(), edgeId, pageLink, withTsUpdate);
     }
 
+    private void flushCoalescedEvents() {
+        for (Map.Entry<EdgeId, EdgeEventBuffer> entry : buffers.entrySet()) {
+            EdgeEventBuffer buffer = entry.getValue();
+            try {
+                synchronized (buffer) {
+                    if (buffer.isEmpty()) {
+                        // buffers of the idle edges are released, writers that still see the buffer retry with a new one
+                        buffer.setRemoved(true);
+                        buffers.remove(entry.getKey(), buffer);
+                    } else {
+                        buffer.flush();
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("[{}] Failed to flush coalesced edge events", entry.getKey(), e);
+            }
+        }
+    }
+
+    private ListenableFuture<EdgeEvent> save(CoalescedEdgeEvent coalesced) {
+        ListenableFuture<EdgeEvent> saveFuture = edgeEventDao.saveAsync(coalesced.getEvent());
+        Futures.addCallback(saveFuture, new FutureCallback<EdgeEvent>() {
+            @Override
+            public void onSuccess(@Nullable EdgeEvent result) {
+                coalesced.getFutures().forEach(f -> f.set(result));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                coalesced.getFutures().forEach(f -> f.setException(t));
+            }
+        }, MoreExecutors.directExecutor());
+        return saveFuture;
+    }
+
+    private CoalescingKey toCoalescingKey(EdgeEvent edgeEvent) {
+        if (edgeEvent.getId() != null || edgeEvent.getEntityId() == null || edgeEvent.getBody() == null) {
+            return null;
+        }
+        JsonNode body = edgeEvent.getBody();
+        String kvField;
+        String discriminator;
+        switch (edgeEvent.getAction()) {
+            case TIMESERIES_UPDATED:
+                // only values of the same timestamp are merged, so no data points are lost
+                kvField = "data";
+                discriminator = body.has("ts") ? body.get("ts").asText() : null;
+                break;
+            case ATTRIBUTES_UPDATED:
+            case POST_ATTRIBUTES:
+                kvField = "kv";
+                discriminator = body.has("scope") ? body.get("scope").asText() : null;
+                break;
+            default:
+                return null;
+        }
+        if (discriminator == null || !body.has(kvField) || !body.get(kvField).isObject()) {
+            return null;
+        }
+        return new CoalescingKey(edgeEvent.getEntityId(),
+                edgeEvent.getType() != null ? edgeEvent.getType().name() : null, edgeEvent.getAction(), kvField, discriminator);
+    }
+
+    @Data
+    private static class CoalescingKey {
+        private final UUID entityId;
+        private final String type;
+        private final EdgeEventActionType action;
+        private final String kvField;
+        private final String discriminator;
+    }
+
+    /**
+     * Coalesced events of one edge. All access is guarded by the buffer monitor.
+     */
+    private class EdgeEventBuffer {
+        private final Map<CoalescingKey, CoalescedEdgeEvent> events = new LinkedHashMap<>();
+        @Getter
+        @Setter
+        private boolean removed;
+
+        boolean isEmpty() {
+            return events.isEmpty();
+        }
+
+        ListenableFuture<EdgeEvent> coalesce(CoalescingKey key, EdgeEvent edgeEvent) {
+            SettableFuture<EdgeEvent> future = SettableFuture.create();
+            CoalescedEdgeEvent coalesced = events.get(key);
+            if (coalesced == null) {
+                events.put(key, new CoalescedEdgeEvent(edgeEvent, future));
+            } else {
+                // latest value of the key wins
+                ObjectNode kv = (ObjectNode) coalesced.getEvent().getBody().get(key.getKvField());
+                kv.setAll((ObjectNode) edgeEvent.getBody().get(key.getKvField()));
+                coalesced.getFutures().add(future);
+            }
+            return future;
+        }
+
+        void flush() {
+            events.values().forEach(BaseEdgeEventService.this::save);
+            events.clear();
+        }
+    }
+
+    @Data
+    private static class CoalescedEdgeEvent {
+        private final EdgeEvent event;
+        private final List<SettableFuture<EdgeEvent>> futures = new ArrayList<>();
+
+        CoalescedEdgeEvent(EdgeEvent event, SettableFuture<EdgeEvent> future) {
+            this.event = event;
+            this.futures.add(future);
+        }
+    }
+
     private DataValidator<EdgeEvent> edgeEventValidator =
             new DataValidator<EdgeEvent>() {
                 @Override
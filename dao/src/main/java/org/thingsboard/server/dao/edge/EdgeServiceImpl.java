@@ -35,6 +35,7 @@ import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
@@ -90,6 +91,7 @@ import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 import static org.thingsboard.server.common.data.CacheConstants.EDGE_CACHE;
+import static org.thingsboard.server.common.data.CacheConstants.ENTITY_NAME_CACHE;
 import static org.thingsboard.server.dao.DaoUtil.toUUIDs;
 import static org.thingsboard.server.dao.model.ModelConstants.NULL_UUID;
 import static org.thingsboard.server.dao.service.Validator.validateId;
@@ -181,7 +183,10 @@ public class EdgeServiceImpl extends AbstractEntityService implements EdgeServic
         return edgeDao.findByRoutingKey(tenantId.getId(), routingKey);
     }
 
-    @CacheEvict(cacheNames = EDGE_CACHE, key = "{#edge.tenantId, #edge.name}")
+    @Caching(evict = {
+            @CacheEvict(cacheNames = EDGE_CACHE, key = "{#edge.tenantId, #edge.name}"),
+            @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#edge.id", condition = "#edge.id != null")
+    })
     @Override
     public Edge saveEdge(Edge edge) {
         log.trace("Executing saveEdge [{}]", edge);
@@ -215,6 +220,7 @@ public class EdgeServiceImpl extends AbstractEntityService implements EdgeServic
         return saveEdge(edge);
     }
 
+    @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#edgeId")
     @Override
     public void deleteEdge(TenantId tenantId, EdgeId edgeId) {
         log.trace("Executing deleteEdge [{}]", edgeId);
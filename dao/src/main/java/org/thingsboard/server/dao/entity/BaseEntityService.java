@@ -21,7 +21,11 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
+import org.thingsboard.server.cache.TbMultiKeyCache;
+import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.HasCustomerId;
 import org.thingsboard.server.common.data.HasName;
 import org.thingsboard.server.common.data.id.AlarmId;
@@ -31,6 +35,7 @@ import org.thingsboard.server.common.data.id.DashboardId;
 import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.EdgeId;
 import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.EntityIdFactory;
 import org.thingsboard.server.common.data.id.EntityViewId;
 import org.thingsboard.server.common.data.id.OtaPackageId;
 import org.thingsboard.server.common.data.id.RuleChainId;
@@ -55,6 +60,17 @@ import org.thingsboard.server.dao.rule.RuleChainService;
 import org.thingsboard.server.dao.tenant.TenantService;
 import org.thingsboard.server.dao.user.UserService;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.thingsboard.server.common.data.CacheConstants.ENTITY_NAME_CACHE;
+
 import static org.thingsboard.server.dao.model.ModelConstants.NULL_UUID;
 import static org.thingsboard.server.dao.service.Validator.validateId;
 
@@ -104,6 +120,9 @@ public class BaseEntityService extends AbstractEntityService implements EntitySe
     @Autowired
     private OtaPackageService otaPackageService;
 
+    @Autowired
+    private CacheManager cacheManager;
+
     @Override
     public void deleteEntityRelations(TenantId tenantId, EntityId entityId) {
         super.deleteEntityRelations(tenantId, entityId);
@@ -177,6 +196,85 @@ public class BaseEntityService extends AbstractEntityService implements EntitySe
         return entityName;
     }
 
+    @Override
+    public Map<EntityId, String> fetchEntityNames(TenantId tenantId, Collection<? extends EntityId> entityIds) {
+        log.trace("Executing fetchEntityNames [{}]", entityIds);
+        Map<EntityId, String> entityNames = new HashMap<>();
+        Set<EntityId> missingIds = new LinkedHashSet<>(entityIds);
+        if (missingIds.isEmpty()) {
+            return entityNames;
+        }
+        Cache cache = cacheManager.getCache(ENTITY_NAME_CACHE);
+        getCachedEntityNames(cache, missingIds).forEach((entityId, name) -> {
+            entityNames.put(entityId, name);
+            missingIds.remove(entityId);
+        });
+        Map<EntityId, String> fetchedNames = new HashMap<>();
+        Map<EntityType, List<UUID>> missingIdsByType = missingIds.stream().collect(Collectors.groupingBy(EntityId::getEntityType,
+                Collectors.mapping(EntityId::getId, Collectors.toList())));
+        missingIdsByType.forEach((entityType, ids) -> {
+            Map<UUID, String> names = entityQueryDao.findEntityNames(entityType, ids);
+            if (names != null) {
+                names.forEach((id, name) -> fetchedNames.put(EntityIdFactory.getByTypeAndUuid(entityType, id), name));
+            } else {
+                for (UUID id : ids) {
+                    EntityId entityId = EntityIdFactory.getByTypeAndUuid(entityType, id);
+                    try {
+                        String name = fetchEntityNameAsync(tenantId, entityId).get();
+                        if (name != null) {
+                            entityNames.put(entityId, name);
+                        }
+                    } catch (Exception e) {
+                        log.warn("[{}] Failed to fetch entity name", entityId, e);
+                    }
+                }
+            }
+        });
+        if (!fetchedNames.isEmpty()) {
+            entityNames.putAll(fetchedNames);
+            putCachedEntityNames(cache, fetchedNames);
+        }
+        return entityNames;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<EntityId, String> getCachedEntityNames(Cache cache, Collection<EntityId> entityIds) {
+        Map<EntityId, String> result = new HashMap<>();
+        if (cache == null) {
+            return result;
+        }
+        try {
+            if (cache instanceof TbMultiKeyCache) {
+                ((TbMultiKeyCache) cache).getAll(entityIds).forEach((key, value) -> result.put((EntityId) key, (String) value.get()));
+            } else {
+                for (EntityId entityId : entityIds) {
+                    String name = cache.get(entityId, String.class);
+                    if (name != null) {
+                        result.put(entityId, name);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Failed to retrieve entity names from cache for keys {}. Reason - {}.", entityIds, e.getMessage());
+        }
+        return result;
+    }
+
+    private void putCachedEntityNames(Cache cache, Map<EntityId, String> entityNames) {
+        if (cache == null) {
+            return;
+        }
+        try {
+            if (cache instanceof TbMultiKeyCache) {
+                ((TbMultiKeyCache) cache).putAll(entityNames);
+            } else {
+                entityNames.forEach(cache::put);
+            }
+        } catch (Exception e) {
+            log.debug("Failed to put entity names to cache for keys {}. Reason - {}.", entityNames.keySet(), e.getMessage());
+        }
+    }
+
     @Override
     public CustomerId fetchEntityCustomerId(TenantId tenantId, EntityId entityId) {
         log.trace("Executing fetchEntityCustomerId [{}]", entityId);
@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.dao.entity;
 
+import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.id.CustomerId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
@@ -22,10 +23,19 @@ import org.thingsboard.server.common.data.query.EntityCountQuery;
 import org.thingsboard.server.common.data.query.EntityData;
 import org.thingsboard.server.common.data.query.EntityDataQuery;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
 public interface EntityQueryDao {
 
     long countEntitiesByQuery(TenantId tenantId, CustomerId customerId, EntityCountQuery query);
 
     PageData<EntityData> findEntityDataByQuery(TenantId tenantId, CustomerId customerId, EntityDataQuery query);
 
+    /**
+     * @return names of the found entities, or null if the names of the entity type can't be fetched in bulk
+     */
+    Map<UUID, String> findEntityNames(EntityType entityType, Collection<UUID> entityIds);
+
 }
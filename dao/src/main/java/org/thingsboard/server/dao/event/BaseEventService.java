@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.dao.event;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
@@ -33,6 +34,7 @@ import org.thingsboard.server.dao.service.DataValidator;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
@@ -57,6 +59,24 @@ public class BaseEventService implements EventService {
         return eventDao.saveAsync(event);
     }
 
+    @Override
+    public ListenableFuture<Void> saveBatchedAsync(Event event, Supplier<JsonNode> bodySupplier) {
+        if (event.getEntityId() == null) {
+            throw new DataValidationException("Entity id should be specified!.");
+        }
+        if (StringUtils.isEmpty(event.getType())) {
+            throw new DataValidationException("Event type should be specified!.");
+        }
+        if (bodySupplier == null) {
+            throw new DataValidationException("Event body should be specified!.");
+        }
+        return eventDao.saveBatchedAsync(event, () -> {
+            event.setBody(bodySupplier.get());
+            checkAndTruncateDebugEvent(event);
+            return event.getBody();
+        });
+    }
+
     @Override
     public Optional<Event> saveIfNotExists(Event event) {
         eventValidator.validate(event, Event::getTenantId);
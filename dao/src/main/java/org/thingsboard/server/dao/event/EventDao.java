@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.dao.event;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.thingsboard.server.common.data.Event;
 import org.thingsboard.server.common.data.event.EventFilter;
@@ -27,6 +28,7 @@ import org.thingsboard.server.dao.Dao;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * The Interface EventDao.
@@ -49,6 +51,15 @@ public interface EventDao extends Dao<Event> {
      */
     ListenableFuture<Event> saveAsync(Event event);
 
+    /**
+     * Queue event object for the batched insert
+     *
+     * @param event the event object without body
+     * @param bodySupplier the supplier of the event body, invoked on the writer thread
+     * @return future that is completed once the event is inserted
+     */
+    ListenableFuture<Void> saveBatchedAsync(Event event, Supplier<JsonNode> bodySupplier);
+
     /**
      * Save event object if it is not yet saved
      *
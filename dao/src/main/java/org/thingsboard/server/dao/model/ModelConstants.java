@@ -405,6 +405,17 @@ public class ModelConstants {
     public static final String RULE_NODE_STATE_ENTITY_ID_PROPERTY = "entity_id";
     public static final String RULE_NODE_STATE_DATA_PROPERTY = "state_data";
 
+    /**
+     * Rule node delayed message constants.
+     */
+    public static final String RULE_NODE_DELAYED_MSG_TABLE_NAME = "rule_node_delayed_msg";
+    public static final String RULE_NODE_DELAYED_MSG_NODE_ID_PROPERTY = "rule_node_id";
+    public static final String RULE_NODE_DELAYED_MSG_ENTITY_TYPE_PROPERTY = "entity_type";
+    public static final String RULE_NODE_DELAYED_MSG_ENTITY_ID_PROPERTY = "entity_id";
+    public static final String RULE_NODE_DELAYED_MSG_PARTITION_PROPERTY = "queue_partition";
+    public static final String RULE_NODE_DELAYED_MSG_FIRE_TS_PROPERTY = "fire_ts";
+    public static final String RULE_NODE_DELAYED_MSG_DATA_PROPERTY = "msg_data";
+
     /**
      * OAuth2 client registration constants.
      */
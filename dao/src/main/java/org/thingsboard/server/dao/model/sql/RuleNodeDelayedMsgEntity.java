@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.model.sql;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.thingsboard.server.common.data.id.EntityIdFactory;
+import org.thingsboard.server.common.data.id.RuleNodeDelayedMsgId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.rule.RuleNodeDelayedMsg;
+import org.thingsboard.server.dao.DaoUtil;
+import org.thingsboard.server.dao.model.BaseSqlEntity;
+import org.thingsboard.server.dao.model.ModelConstants;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import java.util.UUID;
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Entity
+@Table(name = ModelConstants.RULE_NODE_DELAYED_MSG_TABLE_NAME)
+public class RuleNodeDelayedMsgEntity extends BaseSqlEntity<RuleNodeDelayedMsg> {
+
+    @Column(name = ModelConstants.RULE_NODE_DELAYED_MSG_NODE_ID_PROPERTY)
+    private UUID ruleNodeId;
+
+    @Column(name = ModelConstants.RULE_NODE_DELAYED_MSG_ENTITY_TYPE_PROPERTY)
+    private String entityType;
+
+    @Column(name = ModelConstants.RULE_NODE_DELAYED_MSG_ENTITY_ID_PROPERTY)
+    private UUID entityId;
+
+    @Column(name = ModelConstants.RULE_NODE_DELAYED_MSG_PARTITION_PROPERTY)
+    private int partition;
+
+    @Column(name = ModelConstants.RULE_NODE_DELAYED_MSG_FIRE_TS_PROPERTY)
+    private long fireTs;
+
+    @Column(name = ModelConstants.RULE_NODE_DELAYED_MSG_DATA_PROPERTY)
+    private byte[] msgData;
+
+    public RuleNodeDelayedMsgEntity() {
+    }
+
+    public RuleNodeDelayedMsgEntity(RuleNodeDelayedMsg delayedMsg) {
+        if (delayedMsg.getId() != null) {
+            this.setUuid(delayedMsg.getUuidId());
+        }
+        this.setCreatedTime(delayedMsg.getCreatedTime());
+        this.ruleNodeId = DaoUtil.getId(delayedMsg.getRuleNodeId());
+        this.entityId = delayedMsg.getEntityId().getId();
+        this.entityType = delayedMsg.getEntityId().getEntityType().name();
+        this.partition = delayedMsg.getPartition();
+        this.fireTs = delayedMsg.getFireTs();
+        this.msgData = delayedMsg.getMsgData();
+    }
+
+    @Override
+    public RuleNodeDelayedMsg toData() {
+        RuleNodeDelayedMsg delayedMsg = new RuleNodeDelayedMsg(new RuleNodeDelayedMsgId(this.getUuid()));
+        delayedMsg.setCreatedTime(createdTime);
+        delayedMsg.setRuleNodeId(new RuleNodeId(ruleNodeId));
+        delayedMsg.setEntityId(EntityIdFactory.getByTypeAndUuid(entityType, entityId));
+        delayedMsg.setPartition(partition);
+        delayedMsg.setFireTs(fireTs);
+        delayedMsg.setMsgData(msgData);
+        return delayedMsg;
+    }
+}
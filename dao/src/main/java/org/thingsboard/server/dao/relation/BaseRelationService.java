@@ -69,6 +69,9 @@ public class BaseRelationService implements RelationService {
     @Autowired
     private CacheManager cacheManager;
 
+    @Autowired
+    private EntityAncestorsCache ancestorsCache;
+
     @Override
     public ListenableFuture<Boolean> checkRelation(TenantId tenantId, EntityId from, EntityId to, String relationType, RelationTypeGroup typeGroup) {
         log.trace("Executing checkRelation [{}][{}][{}][{}]", from, to, relationType, typeGroup);
@@ -104,7 +107,28 @@ public class BaseRelationService implements RelationService {
     public boolean saveRelation(TenantId tenantId, EntityRelation relation) {
         log.trace("Executing saveRelation [{}]", relation);
         validate(relation);
-        return relationDao.saveRelation(tenantId, relation);
+        boolean result = relationDao.saveRelation(tenantId, relation);
+        onRelationsChanged(tenantId, relation.getTypeGroup());
+        return result;
+    }
+
+    @Override
+    public void saveRelations(TenantId tenantId, List<EntityRelation> relations) {
+        log.trace("Executing saveRelations [{}]", relations);
+        if (relations.isEmpty()) {
+            return;
+        }
+        relations.forEach(this::validate);
+        relationDao.saveRelations(tenantId, relations);
+        Cache cache = cacheManager.getCache(RELATIONS_CACHE);
+        boolean commonRelations = false;
+        for (EntityRelation relation : relations) {
+            cacheEviction(relation, cache);
+            commonRelations |= RelationTypeGroup.COMMON.equals(relation.getTypeGroup());
+        }
+        if (commonRelations) {
+            ancestorsCache.invalidate(tenantId);
+        }
     }
 
     @Caching(evict = {
@@ -118,7 +142,7 @@ public class BaseRelationService implements RelationService {
     public ListenableFuture<Boolean> saveRelationAsync(TenantId tenantId, EntityRelation relation) {
         log.trace("Executing saveRelationAsync [{}]", relation);
         validate(relation);
-        return relationDao.saveRelationAsync(tenantId, relation);
+        return onRelationsChanged(tenantId, relation.getTypeGroup(), relationDao.saveRelationAsync(tenantId, relation));
     }
 
     @Caching(evict = {
@@ -132,7 +156,9 @@ public class BaseRelationService implements RelationService {
     public boolean deleteRelation(TenantId tenantId, EntityRelation relation) {
         log.trace("Executing deleteRelation [{}]", relation);
         validate(relation);
-        return relationDao.deleteRelation(tenantId, relation);
+        boolean result = relationDao.deleteRelation(tenantId, relation);
+        onRelationsChanged(tenantId, relation.getTypeGroup());
+        return result;
     }
 
     @Caching(evict = {
@@ -146,7 +172,7 @@ public class BaseRelationService implements RelationService {
     public ListenableFuture<Boolean> deleteRelationAsync(TenantId tenantId, EntityRelation relation) {
         log.trace("Executing deleteRelationAsync [{}]", relation);
         validate(relation);
-        return relationDao.deleteRelationAsync(tenantId, relation);
+        return onRelationsChanged(tenantId, relation.getTypeGroup(), relationDao.deleteRelationAsync(tenantId, relation));
     }
 
     @Caching(evict = {
@@ -160,7 +186,9 @@ public class BaseRelationService implements RelationService {
     public boolean deleteRelation(TenantId tenantId, EntityId from, EntityId to, String relationType, RelationTypeGroup typeGroup) {
         log.trace("Executing deleteRelation [{}][{}][{}][{}]", from, to, relationType, typeGroup);
         validate(from, to, relationType, typeGroup);
-        return relationDao.deleteRelation(tenantId, from, to, relationType, typeGroup);
+        boolean result = relationDao.deleteRelation(tenantId, from, to, relationType, typeGroup);
+        onRelationsChanged(tenantId, typeGroup);
+        return result;
     }
 
     @Caching(evict = {
@@ -174,7 +202,7 @@ public class BaseRelationService implements RelationService {
     public ListenableFuture<Boolean> deleteRelationAsync(TenantId tenantId, EntityId from, EntityId to, String relationType, RelationTypeGroup typeGroup) {
         log.trace("Executing deleteRelationAsync [{}][{}][{}][{}]", from, to, relationType, typeGroup);
         validate(from, to, relationType, typeGroup);
-        return relationDao.deleteRelationAsync(tenantId, from, to, relationType, typeGroup);
+        return onRelationsChanged(tenantId, typeGroup, relationDao.deleteRelationAsync(tenantId, from, to, relationType, typeGroup));
     }
 
     @Override
@@ -201,6 +229,9 @@ public class BaseRelationService implements RelationService {
         }
 
         relationDao.deleteOutboundRelations(tenantId, entityId);
+        if (hasCommonRelations(inboundRelations) || hasCommonRelations(outboundRelations)) {
+            ancestorsCache.invalidate(tenantId);
+        }
     }
 
     @Override
@@ -236,10 +267,35 @@ public class BaseRelationService implements RelationService {
 
         ListenableFuture<List<List<Boolean>>> deletionsFuture = Futures.allAsList(inboundDeletions, outboundDeletions);
 
+        ListenableFuture<List<List<List<EntityRelation>>>> relationsFuture = Futures.allAsList(inboundRelations, outboundRelations);
+
         return Futures.transform(Futures.transformAsync(deletionsFuture,
                 (deletions) -> relationDao.deleteOutboundRelationsAsync(tenantId, entityId),
                 MoreExecutors.directExecutor()),
-                result -> null, MoreExecutors.directExecutor());
+                result -> {
+                    List<List<List<EntityRelation>>> relations = Futures.getUnchecked(relationsFuture);
+                    if (relations.stream().flatMap(List::stream).anyMatch(this::hasCommonRelations)) {
+                        ancestorsCache.invalidate(tenantId);
+                    }
+                    return null;
+                }, MoreExecutors.directExecutor());
+    }
+
+    private boolean hasCommonRelations(List<EntityRelation> relations) {
+        return relations.stream().anyMatch(relation -> RelationTypeGroup.COMMON.equals(relation.getTypeGroup()));
+    }
+
+    private void onRelationsChanged(TenantId tenantId, RelationTypeGroup typeGroup) {
+        if (RelationTypeGroup.COMMON.equals(typeGroup)) {
+            ancestorsCache.invalidate(tenantId);
+        }
+    }
+
+    private <T> ListenableFuture<T> onRelationsChanged(TenantId tenantId, RelationTypeGroup typeGroup, ListenableFuture<T> future) {
+        return Futures.transform(future, result -> {
+            onRelationsChanged(tenantId, typeGroup);
+            return result;
+        }, MoreExecutors.directExecutor());
     }
 
     private List<ListenableFuture<Boolean>> deleteRelationGroupsAsync(TenantId tenantId, List<List<EntityRelation>> relations, Cache cache, boolean deleteFromDb) {
@@ -0,0 +1,103 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.relation;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import static org.thingsboard.server.common.data.CacheConstants.ENTITY_ANCESTORS_CACHE;
+
+/**
+ * Caches the ancestors of the entities reachable by the common relations.
+ * <p>
+ * Any relation change may affect the ancestors of an unknown number of entities,
+ * so the entries are bound to the relations generation of the tenant. The generation is replaced
+ * on every change of the common relations, which makes all the entries of the tenant unreachable.
+ */
+@Component
+@Slf4j
+public class EntityAncestorsCache {
+
+    private static final String GENERATION = "GENERATION";
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    public Set<EntityId> getAncestors(TenantId tenantId, EntityId entityId, Collection<String> relationTypes,
+                                      Supplier<ListenableFuture<Set<EntityId>>> loader) throws InterruptedException, ExecutionException {
+        Cache cache = cacheManager.getCache(ENTITY_ANCESTORS_CACHE);
+        if (cache == null) {
+            return loader.get().get();
+        }
+        String relationTypesKey = CollectionUtils.isEmpty(relationTypes) ? "" : String.join(",", new TreeSet<>(relationTypes));
+        List<Object> key = Arrays.asList(tenantId, entityId, relationTypesKey, getGeneration(cache, tenantId));
+        Cache.ValueWrapper cached = cache.get(key);
+        if (cached != null) {
+            @SuppressWarnings("unchecked")
+            Set<EntityId> ancestors = (Set<EntityId>) cached.get();
+            return ancestors;
+        }
+        Set<EntityId> ancestors = new LinkedHashSet<>(loader.get().get());
+        cache.put(key, ancestors);
+        return ancestors;
+    }
+
+    /**
+     * Should be called after the change of the common relations of the tenant is persisted.
+     */
+    public void invalidate(TenantId tenantId) {
+        Cache cache = cacheManager.getCache(ENTITY_ANCESTORS_CACHE);
+        if (cache != null) {
+            log.trace("[{}] Invalidating entity ancestors", tenantId);
+            cache.put(getGenerationKey(tenantId), UUID.randomUUID());
+        }
+    }
+
+    private UUID getGeneration(Cache cache, TenantId tenantId) {
+        List<Object> generationKey = getGenerationKey(tenantId);
+        UUID generation = cache.get(generationKey, UUID.class);
+        if (generation == null) {
+            // the generation might be evicted as well, a random one never matches the stale entries
+            generation = UUID.randomUUID();
+            Cache.ValueWrapper existing = cache.putIfAbsent(generationKey, generation);
+            if (existing != null && existing.get() != null) {
+                generation = (UUID) existing.get();
+            }
+        }
+        return generation;
+    }
+
+    private static List<Object> getGenerationKey(TenantId tenantId) {
+        return Arrays.asList(tenantId, GENERATION);
+    }
+}
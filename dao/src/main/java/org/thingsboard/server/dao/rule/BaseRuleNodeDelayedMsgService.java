@@ -0,0 +1,81 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.rule;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.thingsboard.server.common.data.id.RuleNodeDelayedMsgId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.page.TimePageLink;
+import org.thingsboard.server.common.data.rule.RuleNodeDelayedMsg;
+import org.thingsboard.server.dao.exception.DataValidationException;
+
+import java.util.Collection;
+
+import static org.thingsboard.server.dao.service.Validator.validateId;
+import static org.thingsboard.server.dao.service.Validator.validatePageLink;
+
+@Service
+@Slf4j
+public class BaseRuleNodeDelayedMsgService implements RuleNodeDelayedMsgService {
+
+    public static final String INCORRECT_TENANT_ID = "Incorrect tenantId ";
+    public static final String INCORRECT_RULE_NODE_ID = "Incorrect ruleNodeId ";
+
+    @Autowired
+    private RuleNodeDelayedMsgDao ruleNodeDelayedMsgDao;
+
+    @Override
+    public ListenableFuture<RuleNodeDelayedMsg> saveAsync(TenantId tenantId, RuleNodeDelayedMsg delayedMsg) {
+        validateId(tenantId, INCORRECT_TENANT_ID + tenantId);
+        if (delayedMsg.getRuleNodeId() == null) {
+            throw new DataValidationException("Rule node id should be specified!");
+        }
+        if (delayedMsg.getEntityId() == null) {
+            throw new DataValidationException("Entity id should be specified!");
+        }
+        if (delayedMsg.getMsgData() == null) {
+            throw new DataValidationException("Message data should be specified!");
+        }
+        return ruleNodeDelayedMsgDao.saveAsync(tenantId, delayedMsg);
+    }
+
+    @Override
+    public ListenableFuture<PageData<RuleNodeDelayedMsg>> findByRuleNodeIdAsync(TenantId tenantId, RuleNodeId ruleNodeId, Collection<Integer> partitions, TimePageLink pageLink) {
+        validateId(tenantId, INCORRECT_TENANT_ID + tenantId);
+        validateId(ruleNodeId, INCORRECT_RULE_NODE_ID + ruleNodeId);
+        validatePageLink(pageLink);
+        return ruleNodeDelayedMsgDao.findByRuleNodeIdAsync(ruleNodeId.getId(), partitions, pageLink);
+    }
+
+    @Override
+    public ListenableFuture<Void> removeByIdAsync(TenantId tenantId, RuleNodeDelayedMsgId delayedMsgId) {
+        validateId(tenantId, INCORRECT_TENANT_ID + tenantId);
+        validateId(delayedMsgId, "Incorrect delayedMsgId " + delayedMsgId);
+        return ruleNodeDelayedMsgDao.removeByIdAsync(delayedMsgId.getId());
+    }
+
+    @Override
+    public ListenableFuture<Void> removeByRuleNodeIdAsync(TenantId tenantId, RuleNodeId ruleNodeId) {
+        validateId(tenantId, INCORRECT_TENANT_ID + tenantId);
+        validateId(ruleNodeId, INCORRECT_RULE_NODE_ID + ruleNodeId);
+        return ruleNodeDelayedMsgDao.removeByRuleNodeIdAsync(ruleNodeId.getId());
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.dao.rule;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -68,6 +69,31 @@ public class BaseRuleNodeStateService extends AbstractEntityService implements R
         return saveOrUpdate(tenantId, ruleNodeState, false);
     }
 
+    @Override
+    public ListenableFuture<Void> saveAsync(TenantId tenantId, RuleNodeState ruleNodeState) {
+        if (tenantId == null) {
+            throw new DataValidationException("Tenant id should be specified!.");
+        }
+        if (ruleNodeState.getRuleNodeId() == null) {
+            throw new DataValidationException("Rule node id should be specified!.");
+        }
+        if (ruleNodeState.getEntityId() == null) {
+            throw new DataValidationException("Entity id should be specified!.");
+        }
+        return ruleNodeStateDao.saveAsync(ruleNodeState);
+    }
+
+    @Override
+    public void flush(TenantId tenantId, RuleNodeId ruleNodeId) {
+        if (tenantId == null) {
+            throw new DataValidationException("Tenant id should be specified!.");
+        }
+        if (ruleNodeId == null) {
+            throw new DataValidationException("Rule node id should be specified!.");
+        }
+        ruleNodeStateDao.flush(ruleNodeId.getId());
+    }
+
     @Override
     public void removeByRuleNodeId(TenantId tenantId, RuleNodeId ruleNodeId) {
         if (tenantId == null) {
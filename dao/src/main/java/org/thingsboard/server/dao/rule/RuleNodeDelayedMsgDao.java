@@ -0,0 +1,41 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.rule;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.page.TimePageLink;
+import org.thingsboard.server.common.data.rule.RuleNodeDelayedMsg;
+import org.thingsboard.server.dao.Dao;
+
+import java.util.Collection;
+import java.util.UUID;
+
+public interface RuleNodeDelayedMsgDao extends Dao<RuleNodeDelayedMsg> {
+
+    ListenableFuture<RuleNodeDelayedMsg> saveAsync(TenantId tenantId, RuleNodeDelayedMsg delayedMsg);
+
+    /**
+     * Finds delayed messages of the rule node in the given queue partitions
+     * with the fire time within the page link start and end times (both inclusive).
+     */
+    ListenableFuture<PageData<RuleNodeDelayedMsg>> findByRuleNodeIdAsync(UUID ruleNodeId, Collection<Integer> partitions, TimePageLink pageLink);
+
+    ListenableFuture<Void> removeByIdAsync(UUID id);
+
+    ListenableFuture<Void> removeByRuleNodeIdAsync(UUID ruleNodeId);
+}
@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.dao.rule;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.RuleNodeId;
 import org.thingsboard.server.common.data.id.TenantId;
@@ -37,4 +38,15 @@ public interface RuleNodeStateDao extends Dao<RuleNodeState> {
     void removeByRuleNodeId(UUID ruleNodeId);
 
     void removeByRuleNodeIdAndEntityId(UUID ruleNodeId, UUID entityId);
+
+    /**
+     * Schedules the state for a batched write. Consecutive updates of the same rule node and entity
+     * that are not yet persisted are coalesced into a single write of the latest state.
+     */
+    ListenableFuture<Void> saveAsync(RuleNodeState ruleNodeState);
+
+    /**
+     * Synchronously persists all pending states of the rule node.
+     */
+    void flush(UUID ruleNodeId);
 }
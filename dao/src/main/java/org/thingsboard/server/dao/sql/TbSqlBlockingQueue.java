@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.dao.sql;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import lombok.extern.slf4j.Slf4j;
@@ -36,7 +37,7 @@ import java.util.stream.Stream;
 @Slf4j
 public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
 
-    private final BlockingQueue<TbSqlQueueElement<E>> queue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<TbSqlQueueElement<E>> queue;
     private final TbSqlBlockingQueueParams params;
 
     private ExecutorService executor;
@@ -45,6 +46,7 @@ public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
     public TbSqlBlockingQueue(TbSqlBlockingQueueParams params, MessagesStats stats) {
         this.params = params;
         this.stats = stats;
+        this.queue = params.getMaxQueueSize() > 0 ? new LinkedBlockingQueue<>(params.getMaxQueueSize()) : new LinkedBlockingQueue<>();
     }
 
     @Override
@@ -61,19 +63,30 @@ public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
                     TbSqlQueueElement<E> attr = queue.poll(maxDelay, TimeUnit.MILLISECONDS);
                     if (attr == null) {
                         continue;
-                    } else {
-                        entities.add(attr);
                     }
-                    queue.drainTo(entities, batchSize - 1);
-                    boolean fullPack = entities.size() == batchSize;
-                    log.debug("[{}] Going to save {} entities", logName, entities.size());
-                    Stream<E> entitiesStream = entities.stream().map(TbSqlQueueElement::getEntity);
+                    entities.add(attr);
+                    int entitiesCount = attr.getEntities().size();
+                    // the elements may hold groups of entities, so the batch size is checked by the number of entities
+                    while (entitiesCount < batchSize) {
+                        int from = entities.size();
+                        int limit = batchSize - entitiesCount;
+                        int drained = queue.drainTo(entities, limit);
+                        for (int i = from; i < entities.size(); i++) {
+                            entitiesCount += entities.get(i).getEntities().size();
+                        }
+                        if (drained < limit) {
+                            break;
+                        }
+                    }
+                    boolean fullPack = entitiesCount >= batchSize;
+                    log.debug("[{}] Going to save {} entities", logName, entitiesCount);
+                    Stream<E> entitiesStream = entities.stream().flatMap(element -> element.getEntities().stream());
                     saveFunction.accept(
                             (params.isBatchSortEnabled() ? entitiesStream.sorted(batchUpdateComparator) : entitiesStream)
                                     .collect(Collectors.toList())
                     );
                     entities.forEach(v -> v.getFuture().set(null));
-                    stats.incrementSuccessful(entities.size());
+                    stats.incrementSuccessful(entitiesCount);
                     if (!fullPack) {
                         long remainingDelay = maxDelay - (System.currentTimeMillis() - currentTs);
                         if (remainingDelay > 0) {
@@ -81,7 +94,7 @@ public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
                         }
                     }
                 } catch (Exception e) {
-                    stats.incrementFailed(entities.size());
+                    stats.incrementFailed(entities.stream().mapToInt(element -> element.getEntities().size()).sum());
                     entities.forEach(entityFutureWrapper -> entityFutureWrapper.getFuture().setException(e));
                     if (e instanceof InterruptedException) {
                         log.info("[{}] Queue polling was interrupted", logName);
@@ -113,9 +126,24 @@ public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
 
     @Override
     public ListenableFuture<Void> add(E element) {
-        SettableFuture<Void> future = SettableFuture.create();
-        queue.add(new TbSqlQueueElement<>(future, element));
-        stats.incrementTotal();
-        return future;
+        return add(new TbSqlQueueElement<>(SettableFuture.create(), element));
+    }
+
+    @Override
+    public ListenableFuture<Void> addAll(List<E> elements) {
+        if (elements.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+        return add(new TbSqlQueueElement<>(SettableFuture.create(), elements));
+    }
+
+    private ListenableFuture<Void> add(TbSqlQueueElement<E> element) {
+        int count = element.getEntities().size();
+        stats.incrementTotal(count);
+        if (!queue.offer(element)) {
+            stats.incrementFailed(count);
+            element.getFuture().setException(new IllegalStateException("Queue [" + params.getLogName() + "] is full!"));
+        }
+        return element.getFuture();
     }
 }
@@ -32,4 +32,6 @@ public class TbSqlBlockingQueueParams {
     private final long statsPrintIntervalMs;
     private final String statsNamePrefix;
     private final boolean batchSortEnabled;
+    // max number of pending elements per queue thread, unbounded if not positive
+    private final int maxQueueSize;
 }
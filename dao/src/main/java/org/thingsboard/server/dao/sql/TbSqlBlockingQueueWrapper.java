@@ -59,6 +59,15 @@ public class TbSqlBlockingQueueWrapper<E> {
         return queues.get(queueIndex).add(element);
     }
 
+    /**
+     * Adds the elements as a single group, that is saved within one batch.
+     * The queue is chosen by the first element, so the elements should share the same hash code.
+     */
+    public ListenableFuture<Void> addAll(List<E> elements) {
+        int queueIndex = !elements.isEmpty() ? (hashCodeFunction.apply(elements.get(0)) & 0x7FFFFFFF) % maxThreads : 0;
+        return queues.get(queueIndex).addAll(elements);
+    }
+
     public void destroy() {
         queues.forEach(TbSqlBlockingQueue::destroy);
     }
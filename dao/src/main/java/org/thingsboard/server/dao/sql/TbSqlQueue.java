@@ -28,4 +28,6 @@ public interface TbSqlQueue<E> {
     void destroy();
 
     ListenableFuture<Void> add(E element);
+
+    ListenableFuture<Void> addAll(List<E> elements);
 }
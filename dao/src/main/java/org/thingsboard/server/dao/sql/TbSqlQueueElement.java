@@ -18,16 +18,24 @@ package org.thingsboard.server.dao.sql;
 import com.google.common.util.concurrent.SettableFuture;
 import lombok.Getter;
 
+import java.util.Collections;
+import java.util.List;
+
 public final class TbSqlQueueElement<E> {
     @Getter
     private final SettableFuture<Void> future;
     @Getter
-    private final E entity;
+    private final List<E> entities;
 
     public TbSqlQueueElement(SettableFuture<Void> future, E entity) {
+        this(future, Collections.singletonList(entity));
+    }
+
+    /**
+     * Group of entities that is saved within the same batch and completes a single future.
+     */
+    public TbSqlQueueElement(SettableFuture<Void> future, List<E> entities) {
         this.future = future;
-        this.entity = entity;
+        this.entities = entities;
     }
 }
-
-
@@ -39,6 +39,7 @@ import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
@@ -154,6 +155,20 @@ public class JpaAttributeDao extends JpaAbstractDaoListeningExecutorService impl
 
     @Override
     public ListenableFuture<Void> save(TenantId tenantId, EntityId entityId, String attributeType, AttributeKvEntry attribute) {
+        return queue.add(toEntity(entityId, attributeType, attribute));
+    }
+
+    @Override
+    public ListenableFuture<Void> saveAll(TenantId tenantId, EntityId entityId, String attributeType, List<AttributeKvEntry> attributes) {
+        List<AttributeKvEntity> entities = new ArrayList<>(attributes.size());
+        for (AttributeKvEntry attribute : attributes) {
+            entities.add(toEntity(entityId, attributeType, attribute));
+        }
+        // all attributes of the entity go to the same queue, so they are saved within one batch
+        return queue.addAll(entities);
+    }
+
+    private AttributeKvEntity toEntity(EntityId entityId, String attributeType, AttributeKvEntry attribute) {
         AttributeKvEntity entity = new AttributeKvEntity();
         entity.setId(new AttributeKvCompositeKey(entityId.getEntityType(), entityId.getId(), attributeType, attribute.getKey()));
         entity.setLastUpdateTs(attribute.getLastUpdateTs());
@@ -162,11 +177,7 @@ public class JpaAttributeDao extends JpaAbstractDaoListeningExecutorService impl
         entity.setLongValue(attribute.getLongValue().orElse(null));
         entity.setBooleanValue(attribute.getBooleanValue().orElse(null));
         entity.setJsonValue(attribute.getJsonValue().orElse(null));
-        return addToQueue(entity);
-    }
-
-    private ListenableFuture<Void> addToQueue(AttributeKvEntity entity) {
-        return queue.add(entity);
+        return entity;
     }
 
     @Override
@@ -19,15 +19,22 @@ import lombok.extern.slf4j.Slf4j;
 import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.thingsboard.server.dao.model.sql.EventEntity;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
 
 @Slf4j
 public abstract class AbstractEventInsertRepository implements EventInsertRepository {
@@ -38,6 +45,46 @@ public abstract class AbstractEventInsertRepository implements EventInsertReposi
     @Autowired
     protected PlatformTransactionManager transactionManager;
 
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Override
+    public void batchInsert(List<EventEntity> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                jdbcTemplate.batchUpdate(getBatchInsertQuery(), new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        EventEntity entity = entities.get(i);
+                        ps.setObject(1, entity.getUuid());
+                        ps.setLong(2, entity.getCreatedTime());
+                        ps.setString(3, entity.getBody() != null ? entity.getBody().toString() : null);
+                        ps.setObject(4, entity.getEntityId());
+                        ps.setString(5, entity.getEntityType().name());
+                        ps.setString(6, entity.getEventType());
+                        ps.setString(7, entity.getEventUid());
+                        ps.setObject(8, entity.getTenantId());
+                        ps.setLong(9, entity.getTs());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return entities.size();
+                    }
+                });
+            }
+        });
+    }
+
+    protected abstract String getBatchInsertQuery();
+
     protected EventEntity saveAndGet(EventEntity entity, String insertOrUpdateOnPrimaryKeyConflict, String insertOrUpdateOnUniqueKeyConflict) {
         EventEntity eventEntity = null;
         TransactionStatus insertTransaction = getTransactionStatus(TransactionDefinition.PROPAGATION_REQUIRED);
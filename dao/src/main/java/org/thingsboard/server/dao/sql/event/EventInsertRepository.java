@@ -17,8 +17,15 @@ package org.thingsboard.server.dao.sql.event;
 
 import org.thingsboard.server.dao.model.sql.EventEntity;
 
+import java.util.List;
+
 public interface EventInsertRepository {
 
     EventEntity saveOrUpdate(EventEntity entity);
 
+    /**
+     * Inserts the events with a single batch, the events that already exist are skipped.
+     */
+    void batchInsert(List<EventEntity> entities);
+
 }
@@ -31,11 +31,19 @@ public class HsqlEventInsertRepository extends AbstractEventInsertRepository {
     private static final String INSERT_OR_UPDATE_ON_P_KEY_CONFLICT = getInsertString(P_KEY_CONFLICT_STATEMENT);
     private static final String INSERT_OR_UPDATE_ON_UNQ_KEY_CONFLICT = getInsertString(UNQ_KEY_CONFLICT_STATEMENT);
 
+    private static final String BATCH_INSERT = "MERGE INTO event USING (VALUES ?, ?, ?, ?, ?, ?, ?, ?, ?) I (id, created_time, body, entity_id, entity_type, event_type, event_uid, tenant_id, ts) ON " + UNQ_KEY_CONFLICT_STATEMENT +
+            " WHEN NOT MATCHED THEN INSERT (id, created_time, body, entity_id, entity_type, event_type, event_uid, tenant_id, ts) VALUES (I.id, I.created_time, I.body, I.entity_id, I.entity_type, I.event_type, I.event_uid, I.tenant_id, I.ts)";
+
     @Override
     public EventEntity saveOrUpdate(EventEntity entity) {
         return saveAndGet(entity, INSERT_OR_UPDATE_ON_P_KEY_CONFLICT, INSERT_OR_UPDATE_ON_UNQ_KEY_CONFLICT);
     }
 
+    @Override
+    protected String getBatchInsertQuery() {
+        return BATCH_INSERT;
+    }
+
     @Override
     protected EventEntity doProcessSaveOrUpdate(EventEntity entity, String query) {
         getQuery(entity, query).executeUpdate();
@@ -16,10 +16,13 @@
 package org.thingsboard.server.dao.sql.event;
 
 import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.util.concurrent.ListenableFuture;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Component;
@@ -34,19 +37,29 @@ import org.thingsboard.server.common.data.id.EventId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.TimePageLink;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.DaoUtil;
 import org.thingsboard.server.dao.event.EventDao;
 import org.thingsboard.server.dao.model.sql.EventEntity;
 import org.thingsboard.server.dao.sql.JpaAbstractDao;
+import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.thingsboard.server.dao.model.ModelConstants.NULL_UUID;
 
@@ -65,6 +78,53 @@ public class JpaBaseEventDao extends JpaAbstractDao<EventEntity, Event> implemen
     @Autowired
     private EventInsertRepository eventInsertRepository;
 
+    @Autowired
+    private ScheduledLogExecutorComponent logExecutor;
+
+    @Autowired
+    private StatsFactory statsFactory;
+
+    @Value("${sql.events.batch_size:1000}")
+    private int batchSize;
+
+    @Value("${sql.events.batch_max_delay:100}")
+    private long maxDelay;
+
+    @Value("${sql.events.stats_print_interval_ms:10000}")
+    private long statsPrintIntervalMs;
+
+    @Value("${sql.events.batch_threads:1}")
+    private int batchThreads;
+
+    @Value("${sql.events.max_queue_size:100000}")
+    private int maxQueueSize;
+
+    private TbSqlBlockingQueueWrapper<PendingEvent> queue;
+
+    @PostConstruct
+    private void init() {
+        TbSqlBlockingQueueParams params = TbSqlBlockingQueueParams.builder()
+                .logName("Events")
+                .batchSize(batchSize)
+                .maxDelay(maxDelay)
+                .statsPrintIntervalMs(statsPrintIntervalMs)
+                .statsNamePrefix("events")
+                .batchSortEnabled(false)
+                .maxQueueSize(maxQueueSize)
+                .build();
+
+        Function<PendingEvent, Integer> hashcodeFunction = pendingEvent -> pendingEvent.getEvent().getEntityId().hashCode();
+        queue = new TbSqlBlockingQueueWrapper<>(params, hashcodeFunction, batchThreads, statsFactory);
+        queue.init(logExecutor, this::savePendingEvents, Comparator.comparing(pendingEvent -> pendingEvent.getEvent().getId().getId()));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (queue != null) {
+            queue.destroy();
+        }
+    }
+
     @Override
     protected Class<EventEntity> getEntityClass() {
         return EventEntity.class;
@@ -78,27 +138,25 @@ public class JpaBaseEventDao extends JpaAbstractDao<EventEntity, Event> implemen
     @Override
     public Event save(TenantId tenantId, Event event) {
         log.debug("Save event [{}] ", event);
-        if (event.getId() == null) {
-            UUID timeBased = Uuids.timeBased();
-            event.setId(new EventId(timeBased));
-            event.setCreatedTime(Uuids.unixTimestamp(timeBased));
-        } else if (event.getCreatedTime() == 0L) {
-            UUID eventId = event.getId().getId();
-            if (eventId.version() == 1) {
-                event.setCreatedTime(Uuids.unixTimestamp(eventId));
-            } else {
-                event.setCreatedTime(System.currentTimeMillis());
-            }
-        }
-        if (StringUtils.isEmpty(event.getUid())) {
-            event.setUid(event.getId().toString());
-        }
+        prepareForSave(event);
         return save(new EventEntity(event), false).orElse(null);
     }
 
     @Override
     public ListenableFuture<Event> saveAsync(Event event) {
         log.debug("Save event [{}] ", event);
+        prepareForSave(event);
+        return service.submit(() -> save(new EventEntity(event), false).orElse(null));
+    }
+
+    @Override
+    public ListenableFuture<Void> saveBatchedAsync(Event event, Supplier<JsonNode> bodySupplier) {
+        log.trace("Queue event [{}] ", event);
+        prepareForSave(event);
+        return queue.add(new PendingEvent(event, bodySupplier));
+    }
+
+    private void prepareForSave(Event event) {
         if (event.getId() == null) {
             UUID timeBased = Uuids.timeBased();
             event.setId(new EventId(timeBased));
@@ -114,7 +172,24 @@ public class JpaBaseEventDao extends JpaAbstractDao<EventEntity, Event> implemen
         if (StringUtils.isEmpty(event.getUid())) {
             event.setUid(event.getId().toString());
         }
-        return service.submit(() -> save(new EventEntity(event), false).orElse(null));
+    }
+
+    private void savePendingEvents(List<PendingEvent> pendingEvents) {
+        List<EventEntity> entities = new ArrayList<>(pendingEvents.size());
+        for (PendingEvent pendingEvent : pendingEvents) {
+            Event event = pendingEvent.getEvent();
+            try {
+                event.setBody(pendingEvent.getBodySupplier().get());
+                EventEntity entity = new EventEntity(event);
+                if (entity.getTenantId() == null) {
+                    entity.setTenantId(systemTenantId);
+                }
+                entities.add(entity);
+            } catch (Exception e) {
+                log.warn("[{}] Failed to build body of the event: {}", event.getEntityId(), event.getType(), e);
+            }
+        }
+        eventInsertRepository.batchInsert(entities);
     }
 
     @Override
@@ -305,4 +380,9 @@ public class JpaBaseEventDao extends JpaAbstractDao<EventEntity, Event> implemen
         return value != null ? value : 0;
     }
 
+    @Data
+    private static class PendingEvent {
+        private final Event event;
+        private final Supplier<JsonNode> bodySupplier;
+    }
 }
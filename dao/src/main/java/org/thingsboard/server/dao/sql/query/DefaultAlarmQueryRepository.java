@@ -50,6 +50,7 @@ import java.util.stream.Collectors;
 @Slf4j
 public class DefaultAlarmQueryRepository implements AlarmQueryRepository {
 
+    private static final String ORIGINATOR_FIELD = "originator";
     private static final Map<String, String> alarmFieldColumnMap = new HashMap<>();
 
     static {
@@ -68,7 +69,7 @@ public class DefaultAlarmQueryRepository implements AlarmQueryRepository {
         alarmFieldColumnMap.put("severity", ModelConstants.ALARM_SEVERITY_PROPERTY);
         alarmFieldColumnMap.put("originatorId", ModelConstants.ALARM_ORIGINATOR_ID_PROPERTY);
         alarmFieldColumnMap.put("originatorType", ModelConstants.ALARM_ORIGINATOR_TYPE_PROPERTY);
-        alarmFieldColumnMap.put("originator", "originator_name");
+        alarmFieldColumnMap.put(ORIGINATOR_FIELD, "originator_name");
     }
 
     private static final String SELECT_ORIGINATOR_NAME = " COALESCE(CASE" +
@@ -88,7 +89,10 @@ public class DefaultAlarmQueryRepository implements AlarmQueryRepository {
             " THEN (select name from entity_view where id = a.originator_id)" +
             " END, 'Deleted') as originator_name";
 
-    private static final String FIELDS_SELECTION = "select a.id as id," +
+    // the names are resolved in bulk by the alarm service, unless the query sorts or searches by them
+    private static final String SELECT_NULL_ORIGINATOR_NAME = " null as originator_name";
+
+    private static final String FIELDS_SELECTION_WITHOUT_ORIGINATOR_NAME = "select a.id as id," +
             " a.created_time as created_time," +
             " a.ack_ts as ack_ts," +
             " a.clear_ts as clear_ts," +
@@ -103,7 +107,7 @@ public class DefaultAlarmQueryRepository implements AlarmQueryRepository {
             " a.tenant_id as tenant_id, " +
             " a.customer_id as customer_id, " +
             " a.propagate_relation_types as propagate_relation_types, " +
-            " a.type as type," + SELECT_ORIGINATOR_NAME + ", ";
+            " a.type as type,";
 
     private static final String JOIN_RELATIONS = "left join relation r on r.relation_type_group = 'ALARM' and r.relation_type = 'ANY' and a.id = r.to_id and r.from_id in (:entity_ids)";
 
@@ -125,7 +129,14 @@ public class DefaultAlarmQueryRepository implements AlarmQueryRepository {
             AlarmDataPageLink pageLink = query.getPageLink();
             QueryContext ctx = new QueryContext(new QuerySecurityContext(tenantId, customerId, EntityType.ALARM));
             ctx.addUuidListParameter("entity_ids", orderedEntityIds.stream().map(EntityId::getId).collect(Collectors.toList()));
-            StringBuilder selectPart = new StringBuilder(FIELDS_SELECTION);
+            EntityDataSortOrder sortOrder = pageLink.getSortOrder();
+            boolean sortByOriginatorName = sortOrder != null && sortOrder.getKey().getType().equals(EntityKeyType.ALARM_FIELD)
+                    && ORIGINATOR_FIELD.equals(sortOrder.getKey().getKey());
+            boolean searchByOriginatorName = !StringUtils.isEmpty(pageLink.getTextSearch()) && query.getAlarmFields() != null
+                    && query.getAlarmFields().stream().anyMatch(key -> ORIGINATOR_FIELD.equals(key.getKey()));
+            StringBuilder selectPart = new StringBuilder(FIELDS_SELECTION_WITHOUT_ORIGINATOR_NAME)
+                    .append(sortByOriginatorName || searchByOriginatorName ? SELECT_ORIGINATOR_NAME : SELECT_NULL_ORIGINATOR_NAME)
+                    .append(", ");
             StringBuilder fromPart = new StringBuilder(" from alarm a ");
             StringBuilder wherePart = new StringBuilder(" where ");
             StringBuilder sortPart = new StringBuilder(" order by ");
@@ -139,7 +150,6 @@ public class DefaultAlarmQueryRepository implements AlarmQueryRepository {
             } else {
                 selectPart.append(" a.originator_id as entity_id ");
             }
-            EntityDataSortOrder sortOrder = pageLink.getSortOrder();
             if (sortOrder != null && sortOrder.getKey().getType().equals(EntityKeyType.ALARM_FIELD)) {
                 String sortOrderKey = sortOrder.getKey().getKey();
                 sortPart.append(alarmFieldColumnMap.getOrDefault(sortOrderKey, sortOrderKey))
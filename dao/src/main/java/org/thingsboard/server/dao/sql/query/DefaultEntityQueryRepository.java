@@ -15,11 +15,14 @@
  */
 package org.thingsboard.server.dao.sql.query;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.support.TransactionTemplate;
+import org.thingsboard.common.util.JacksonUtil;
 import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.id.CustomerId;
 import org.thingsboard.server.common.data.id.EntityId;
@@ -50,13 +53,15 @@ import org.thingsboard.server.common.data.query.RelationsQueryFilter;
 import org.thingsboard.server.common.data.query.SingleEntityFilter;
 import org.thingsboard.server.common.data.relation.EntitySearchDirection;
 import org.thingsboard.server.common.data.relation.RelationEntityTypeFilter;
+import org.thingsboard.server.dao.exception.IncorrectParameterException;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -64,6 +69,7 @@ import java.util.stream.Collectors;
 @Slf4j
 public class DefaultEntityQueryRepository implements EntityQueryRepository {
     private static final Map<EntityType, String> entityTableMap = new HashMap<>();
+    private static final Map<EntityType, String> entityNameQueryMap = new HashMap<>();
     private static final String SELECT_PHONE = " CASE WHEN entity.entity_type = 'TENANT' THEN (select phone from tenant where id = entity_id)" +
             " WHEN entity.entity_type = 'CUSTOMER' THEN (select phone from customer where id = entity_id) END as phone";
     private static final String SELECT_ZIP = " CASE WHEN entity.entity_type = 'TENANT' THEN (select zip from tenant where id = entity_id)" +
@@ -233,6 +239,15 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
         entityTableMap.put(EntityType.USER, "tb_user");
         entityTableMap.put(EntityType.TENANT, "tenant");
         entityTableMap.put(EntityType.API_USAGE_STATE, SELECT_API_USAGE_STATE);
+
+        entityNameQueryMap.put(EntityType.TENANT, "select id, title as name from tenant where id in (:entity_ids)");
+        entityNameQueryMap.put(EntityType.CUSTOMER, "select id, title as name from customer where id in (:entity_ids)");
+        entityNameQueryMap.put(EntityType.USER, "select id, email as name from tb_user where id in (:entity_ids)");
+        entityNameQueryMap.put(EntityType.DASHBOARD, "select id, title as name from dashboard where id in (:entity_ids)");
+        entityNameQueryMap.put(EntityType.ASSET, "select id, name from asset where id in (:entity_ids)");
+        entityNameQueryMap.put(EntityType.DEVICE, "select id, name from device where id in (:entity_ids)");
+        entityNameQueryMap.put(EntityType.ENTITY_VIEW, "select id, name from entity_view where id in (:entity_ids)");
+        entityNameQueryMap.put(EntityType.EDGE, "select id, name from edge where id in (:entity_ids)");
         entityTableMap.put(EntityType.EDGE, "edge");
     }
 
@@ -255,10 +270,17 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
     private static final String HIERARCHICAL_TO_QUERY_TEMPLATE = HIERARCHICAL_QUERY_TEMPLATE.replace("$in", "to").replace("$out", "from");
     private static final String HIERARCHICAL_FROM_QUERY_TEMPLATE = HIERARCHICAL_QUERY_TEMPLATE.replace("$in", "from").replace("$out", "to");
 
+    private static final String TOTAL_COUNT_ALIAS = "entities_total_count";
+
     private final NamedParameterJdbcTemplate jdbcTemplate;
     private final TransactionTemplate transactionTemplate;
     private final DefaultQueryLogComponent queryLog;
 
+    @Value("${sql.entity_data_query.window_count:false}")
+    private boolean windowCount;
+    @Value("${sql.entity_data_query.estimated_count_threshold:0}")
+    private long estimatedCountThreshold;
+
     public DefaultEntityQueryRepository(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, DefaultQueryLogComponent queryLog) {
         this.jdbcTemplate = jdbcTemplate;
         this.transactionTemplate = transactionTemplate;
@@ -402,50 +424,149 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
                 //Unfortunately, we need to sacrifice performance in case of full text search, because it is applied to all joined records.
                 fromClauseCount = fromClauseData;
             }
-            String countQuery = String.format("select count(id) %s", fromClauseCount);
-
-            long startTs = System.currentTimeMillis();
-            int totalElements;
-            try {
-                totalElements = jdbcTemplate.queryForObject(countQuery, ctx, Integer.class);
-            } finally {
-                queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
+            EntityDataSortOrder sortOrder = pageLink.getSortOrder();
+            EntityKeyMapping sortOrderMapping = sortOrder != null ?
+                    mappings.stream().filter(EntityKeyMapping::isSortOrder).findFirst().orElse(null) : null;
+            // Keyset pagination needs a single comparable sort column, so sorting by latest values keeps using the offset.
+            boolean keysetSort = pageLink.getPageSize() > 0 && sortOrderMapping != null
+                    && sortOrderMapping.getEntityKey().getType() == EntityKeyType.ENTITY_FIELD;
+            EntityDataCursor cursor = null;
+            if (keysetSort && !StringUtils.isEmpty(pageLink.getCursor())) {
+                cursor = EntityDataCursor.decode(pageLink.getCursor());
+                if (!cursor.matches(sortOrderMapping.getEntityKey().getKey(), sortOrder.getDirection())) {
+                    throw new IncorrectParameterException("Page cursor does not match the sort order of the query!");
+                }
             }
 
-            if (totalElements == 0) {
-                return new PageData<>();
+            int startIndex = pageLink.getPageSize() * pageLink.getPage();
+            long totalElements = 0;
+            boolean estimated = false;
+            if (estimatedCountThreshold > 0) {
+                long estimate = estimateCount(ctx, fromClauseCount);
+                if (estimate > estimatedCountThreshold) {
+                    totalElements = estimate;
+                    estimated = true;
+                }
+            }
+            boolean useWindowCount = windowCount && !estimated;
+            if (!useWindowCount && !estimated) {
+                totalElements = countEntities(ctx, fromClauseCount);
+                if (totalElements == 0) {
+                    return new PageData<>();
+                }
             }
-            String dataQuery = String.format("select * %s", fromClauseData);
 
-            EntityDataSortOrder sortOrder = pageLink.getSortOrder();
-            if (sortOrder != null) {
-                Optional<EntityKeyMapping> sortOrderMappingOpt = mappings.stream().filter(EntityKeyMapping::isSortOrder).findFirst();
-                if (sortOrderMappingOpt.isPresent()) {
-                    EntityKeyMapping sortOrderMapping = sortOrderMappingOpt.get();
-                    String direction = sortOrder.getDirection() == EntityDataSortOrder.Direction.ASC ? "asc" : "desc";
-                    if (sortOrderMapping.getEntityKey().getType() == EntityKeyType.ENTITY_FIELD) {
-                        dataQuery = String.format("%s order by %s %s", dataQuery, sortOrderMapping.getValueAlias(), direction);
-                    } else {
-                        dataQuery = String.format("%s order by %s %s, %s %s", dataQuery,
-                                sortOrderMapping.getSortOrderNumAlias(), direction, sortOrderMapping.getSortOrderStrAlias(), direction);
+            String dataQuery = String.format(useWindowCount ? "select *, count(*) over() as " + TOTAL_COUNT_ALIAS + " %s" : "select * %s", fromClauseData);
+            if (sortOrderMapping != null) {
+                String direction = sortOrder.getDirection() == EntityDataSortOrder.Direction.ASC ? "asc" : "desc";
+                if (keysetSort) {
+                    String sortExpression = String.format("coalesce(%s, '')", sortOrderMapping.getValueAlias());
+                    if (cursor != null) {
+                        ctx.addStringParameter("entity_data_cursor_value", cursor.getValue());
+                        ctx.addUuidParameter("entity_data_cursor_id", cursor.getId());
+                        dataQuery = String.format("%s %s (%s %s :entity_data_cursor_value or (%s = :entity_data_cursor_value and id %s :entity_data_cursor_id))",
+                                dataQuery, StringUtils.isEmpty(textSearchQuery) ? "where" : "and",
+                                sortExpression, "asc".equals(direction) ? ">" : "<", sortExpression, "asc".equals(direction) ? ">" : "<");
                     }
+                    dataQuery = String.format("%s order by %s %s, id %s", dataQuery, sortExpression, direction, direction);
+                } else if (sortOrderMapping.getEntityKey().getType() == EntityKeyType.ENTITY_FIELD) {
+                    dataQuery = String.format("%s order by %s %s", dataQuery, sortOrderMapping.getValueAlias(), direction);
+                } else {
+                    dataQuery = String.format("%s order by %s %s, %s %s", dataQuery,
+                            sortOrderMapping.getSortOrderNumAlias(), direction, sortOrderMapping.getSortOrderStrAlias(), direction);
                 }
             }
-            int startIndex = pageLink.getPageSize() * pageLink.getPage();
             if (pageLink.getPageSize() > 0) {
-                dataQuery = String.format("%s limit %s offset %s", dataQuery, pageLink.getPageSize(), startIndex);
+                // with the estimated count one extra row tells whether the next page exists
+                int limit = estimated ? pageLink.getPageSize() + 1 : pageLink.getPageSize();
+                if (cursor != null) {
+                    dataQuery = String.format("%s limit %s", dataQuery, limit);
+                } else {
+                    dataQuery = String.format("%s limit %s offset %s", dataQuery, limit, startIndex);
+                }
             }
-            startTs = System.currentTimeMillis();
+            long startTs = System.currentTimeMillis();
             List<Map<String, Object>> rows;
             try {
                 rows = jdbcTemplate.queryForList(dataQuery, ctx);
             } finally {
-                queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
+                queryLog.logQuery(ctx, dataQuery, System.currentTimeMillis() - startTs);
             }
-            return EntityDataAdapter.createEntityData(pageLink, selectionMapping, rows, totalElements);
+
+            if (useWindowCount) {
+                if (!rows.isEmpty()) {
+                    // the window count sees the rows left after the cursor, the rows before it are the previous pages
+                    long count = ((Number) rows.get(0).get(TOTAL_COUNT_ALIAS)).longValue();
+                    totalElements = cursor != null ? startIndex + count : count;
+                } else if (cursor != null) {
+                    totalElements = startIndex;
+                } else if (startIndex > 0) {
+                    totalElements = countEntities(ctx, fromClauseCount);
+                } else {
+                    return new PageData<>();
+                }
+            }
+            boolean hasNext;
+            if (estimated) {
+                hasNext = rows.size() > pageLink.getPageSize();
+                if (hasNext) {
+                    rows = rows.subList(0, pageLink.getPageSize());
+                }
+            } else {
+                hasNext = pageLink.getPageSize() > 0 && totalElements > startIndex + rows.size();
+            }
+            String nextPageCursor = null;
+            if (keysetSort && hasNext) {
+                Map<String, Object> lastRow = rows.get(rows.size() - 1);
+                Object lastValue = lastRow.get(sortOrderMapping.getValueAlias());
+                nextPageCursor = new EntityDataCursor(sortOrderMapping.getEntityKey().getKey(), sortOrder.getDirection(),
+                        lastValue != null ? lastValue.toString() : "", (UUID) lastRow.get("id")).encode();
+            }
+            return EntityDataAdapter.createEntityData(pageLink, selectionMapping, rows, totalElements, hasNext, nextPageCursor);
         });
     }
 
+    @Override
+    public Map<UUID, String> findEntityNames(EntityType entityType, Collection<UUID> entityIds) {
+        String query = entityNameQueryMap.get(entityType);
+        if (query == null) {
+            return null;
+        }
+        QueryContext ctx = new QueryContext(new QuerySecurityContext(TenantId.SYS_TENANT_ID, null, entityType));
+        ctx.addUuidListParameter("entity_ids", new ArrayList<>(entityIds));
+        Map<UUID, String> names = new HashMap<>();
+        long startTs = System.currentTimeMillis();
+        try {
+            jdbcTemplate.query(query, ctx, rs -> {
+                names.put((UUID) rs.getObject("id"), rs.getString("name"));
+            });
+        } finally {
+            queryLog.logQuery(ctx, query, System.currentTimeMillis() - startTs);
+        }
+        return names;
+    }
+
+    private long countEntities(QueryContext ctx, String fromClause) {
+        String countQuery = String.format("select count(id) %s", fromClause);
+        long startTs = System.currentTimeMillis();
+        try {
+            return jdbcTemplate.queryForObject(countQuery, ctx, Long.class);
+        } finally {
+            queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
+        }
+    }
+
+    private long estimateCount(QueryContext ctx, String fromClause) {
+        String explainQuery = String.format("explain (format json) select id %s", fromClause);
+        long startTs = System.currentTimeMillis();
+        try {
+            JsonNode plan = JacksonUtil.toJsonNode(jdbcTemplate.queryForObject(explainQuery, ctx, String.class));
+            return plan.get(0).get("Plan").get("Plan Rows").asLong();
+        } finally {
+            queryLog.logQuery(ctx, explainQuery, System.currentTimeMillis() - startTs);
+        }
+    }
+
     private String buildEntityWhere(QueryContext ctx, EntityFilter entityFilter, List<EntityKeyMapping> entityFieldsFilters) {
         String permissionQuery = this.buildPermissionQuery(ctx, entityFilter);
         String entityFilterQuery = this.buildEntityFilterQuery(ctx, entityFilter);
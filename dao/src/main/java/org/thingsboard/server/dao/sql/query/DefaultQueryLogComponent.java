@@ -16,10 +16,13 @@
 package org.thingsboard.server.dao.sql.query;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
+import java.util.List;
 
 @Component
 @Slf4j
@@ -29,12 +32,29 @@ public class DefaultQueryLogComponent implements QueryLogComponent {
     private boolean logSqlQueries;
     @Value("${sql.log_queries_threshold:5000}")
     private long logQueriesThreshold;
+    @Value("${sql.log_query_plans:false}")
+    private boolean logQueryPlans;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
 
     @Override
     public void logQuery(QueryContext ctx, String query, long duration) {
         if (logSqlQueries && duration > logQueriesThreshold) {
             log.info("QUERY: {} took {}ms", query, duration);
             Arrays.asList(ctx.getParameterNames()).forEach(param -> log.info("QUERY PARAM: {} -> {}", param, ctx.getValue(param)));
+            if (logQueryPlans && !query.startsWith("explain")) {
+                logQueryPlan(ctx, query);
+            }
+        }
+    }
+
+    private void logQueryPlan(QueryContext ctx, String query) {
+        try {
+            List<String> plan = jdbcTemplate.queryForList("explain " + query, ctx, String.class);
+            log.info("QUERY PLAN:\n{}", String.join("\n", plan));
+        } catch (Exception e) {
+            log.warn("Failed to explain query: {}", query, e);
         }
     }
 }
@@ -22,6 +22,7 @@ import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.EntityIdFactory;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityDataPageData;
 import org.thingsboard.server.common.data.query.EntityDataPageLink;
 import org.thingsboard.server.common.data.query.EntityKey;
 import org.thingsboard.server.common.data.query.EntityKeyType;
@@ -39,11 +40,14 @@ public class EntityDataAdapter {
     public static PageData<EntityData> createEntityData(EntityDataPageLink pageLink,
                                                         List<EntityKeyMapping> selectionMapping,
                                                         List<Map<String, Object>> rows,
-                                                        int totalElements) {
-        int totalPages = pageLink.getPageSize() > 0 ? (int) Math.ceil((float) totalElements / pageLink.getPageSize()) : 1;
-        int startIndex = pageLink.getPageSize() * pageLink.getPage();
-        boolean hasNext = pageLink.getPageSize() > 0 && totalElements > startIndex + rows.size();
+                                                        long totalElements,
+                                                        boolean hasNext,
+                                                        String nextPageCursor) {
+        int totalPages = pageLink.getPageSize() > 0 ? (int) Math.ceil((double) totalElements / pageLink.getPageSize()) : 1;
         List<EntityData> entitiesData = convertListToEntityData(rows, selectionMapping);
+        if (nextPageCursor != null) {
+            return new EntityDataPageData(entitiesData, totalPages, totalElements, hasNext, nextPageCursor);
+        }
         return new PageData<>(entitiesData, totalPages, totalElements, hasNext);
     }
 
@@ -0,0 +1,62 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.query;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.thingsboard.common.util.JacksonUtil;
+import org.thingsboard.server.common.data.query.EntityDataSortOrder;
+import org.thingsboard.server.dao.exception.IncorrectParameterException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Keyset position of the last entity of a page: the value of the sort key and the entity id used as a tie-breaker.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class EntityDataCursor {
+
+    private String key;
+    private EntityDataSortOrder.Direction direction;
+    private String value;
+    private UUID id;
+
+    boolean matches(String key, EntityDataSortOrder.Direction direction) {
+        return this.key.equals(key) && this.direction == direction;
+    }
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(JacksonUtil.toString(this).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static EntityDataCursor decode(String cursor) {
+        try {
+            EntityDataCursor result = JacksonUtil.fromString(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8), EntityDataCursor.class);
+            if (result.getKey() == null || result.getDirection() == null || result.getValue() == null || result.getId() == null) {
+                throw new IncorrectParameterException("Incorrect page cursor: " + cursor);
+            }
+            return result;
+        } catch (IllegalArgumentException e) {
+            throw new IncorrectParameterException("Incorrect page cursor: " + cursor, e);
+        }
+    }
+
+}
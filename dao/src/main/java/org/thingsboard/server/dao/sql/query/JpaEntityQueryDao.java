@@ -17,6 +17,7 @@ package org.thingsboard.server.dao.sql.query;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.id.CustomerId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
@@ -25,6 +26,10 @@ import org.thingsboard.server.common.data.query.EntityData;
 import org.thingsboard.server.common.data.query.EntityDataQuery;
 import org.thingsboard.server.dao.entity.EntityQueryDao;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
 @Component
 public class JpaEntityQueryDao implements EntityQueryDao {
 
@@ -40,4 +45,9 @@ public class JpaEntityQueryDao implements EntityQueryDao {
     public PageData<EntityData> findEntityDataByQuery(TenantId tenantId, CustomerId customerId, EntityDataQuery query) {
         return entityQueryRepository.findEntityDataByQuery(tenantId, customerId, query);
     }
+
+    @Override
+    public Map<UUID, String> findEntityNames(EntityType entityType, Collection<UUID> entityIds) {
+        return entityQueryRepository.findEntityNames(entityType, entityIds);
+    }
 }
@@ -16,12 +16,20 @@
 package org.thingsboard.server.dao.sql.relation;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.thingsboard.server.dao.model.sql.RelationEntity;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.UUID;
 
 @Slf4j
 public abstract class AbstractRelationInsertRepository implements RelationInsertRepository {
@@ -29,6 +37,9 @@ public abstract class AbstractRelationInsertRepository implements RelationInsert
     @PersistenceContext
     protected EntityManager entityManager;
 
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
     protected Query getQuery(RelationEntity entity, String query) {
         Query nativeQuery = entityManager.createNativeQuery(query, RelationEntity.class);
         if (entity.getAdditionalInfo() == null) {
@@ -48,4 +59,34 @@ public abstract class AbstractRelationInsertRepository implements RelationInsert
     @Modifying
     protected abstract RelationEntity processSaveOrUpdate(RelationEntity entity);
 
+    protected abstract String getBatchInsertOrUpdateQuery();
+
+    protected abstract Object toUuidParameter(UUID uuid);
+
+    @Override
+    public void saveOrUpdate(List<RelationEntity> entities) {
+        jdbcTemplate.batchUpdate(getBatchInsertOrUpdateQuery(), new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                RelationEntity entity = entities.get(i);
+                ps.setObject(1, toUuidParameter(entity.getFromId()));
+                ps.setString(2, entity.getFromType());
+                ps.setObject(3, toUuidParameter(entity.getToId()));
+                ps.setString(4, entity.getToType());
+                ps.setString(5, entity.getRelationTypeGroup());
+                ps.setString(6, entity.getRelationType());
+                if (entity.getAdditionalInfo() == null) {
+                    ps.setNull(7, Types.VARCHAR);
+                } else {
+                    ps.setString(7, entity.getAdditionalInfo().toString());
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entities.size();
+            }
+        });
+    }
+
 }
\ No newline at end of file
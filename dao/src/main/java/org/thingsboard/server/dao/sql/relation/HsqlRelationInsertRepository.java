@@ -22,6 +22,7 @@ import org.thingsboard.server.dao.model.sql.RelationEntity;
 import org.thingsboard.server.dao.util.HsqlDao;
 
 import javax.persistence.Query;
+import java.util.UUID;
 
 @HsqlDao
 @Repository
@@ -34,6 +35,9 @@ public class HsqlRelationInsertRepository extends AbstractRelationInsertReposito
             "WHEN MATCHED THEN UPDATE SET relation.additional_info = R.additional_info " +
             "WHEN NOT MATCHED THEN INSERT (from_id, from_type, to_id, to_type, relation_type_group, relation_type, additional_info) VALUES (UUID(R.from_id), R.from_type, UUID(R.to_id), R.to_type, R.relation_type_group, R.relation_type, R.additional_info)";
 
+    private static final String BATCH_INSERT_ON_CONFLICT_DO_UPDATE = INSERT_ON_CONFLICT_DO_UPDATE
+            .replace(":fromId, :fromType, :toId, :toType, :relationTypeGroup, :relationType, :additionalInfo", "?, ?, ?, ?, ?, ?, ?");
+
     protected Query getQuery(RelationEntity entity, String query) {
         Query nativeQuery = entityManager.createNativeQuery(query, RelationEntity.class);
         if (entity.getAdditionalInfo() == null) {
@@ -60,4 +64,14 @@ public class HsqlRelationInsertRepository extends AbstractRelationInsertReposito
         getQuery(entity, INSERT_ON_CONFLICT_DO_UPDATE).executeUpdate();
         return entityManager.find(RelationEntity.class, new RelationCompositeKey(entity.toData()));
     }
+
+    @Override
+    protected String getBatchInsertOrUpdateQuery() {
+        return BATCH_INSERT_ON_CONFLICT_DO_UPDATE;
+    }
+
+    @Override
+    protected Object toUuidParameter(UUID uuid) {
+        return uuid.toString();
+    }
 }
@@ -33,6 +33,7 @@ import org.thingsboard.server.dao.sql.JpaAbstractDaoListeningExecutorService;
 
 import javax.persistence.criteria.Predicate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -127,6 +128,13 @@ public class JpaRelationDao extends JpaAbstractDaoListeningExecutorService imple
         return service.submit(() -> relationInsertRepository.saveOrUpdate(new RelationEntity(relation)) != null);
     }
 
+    @Override
+    public void saveRelations(TenantId tenantId, Collection<EntityRelation> relations) {
+        List<RelationEntity> entities = new ArrayList<>(relations.size());
+        relations.forEach(relation -> entities.add(new RelationEntity(relation)));
+        relationInsertRepository.saveOrUpdate(entities);
+    }
+
     @Override
     public boolean deleteRelation(TenantId tenantId, EntityRelation relation) {
         RelationCompositeKey key = new RelationCompositeKey(relation);
@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.rule;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.page.TimePageLink;
+import org.thingsboard.server.common.data.rule.RuleNodeDelayedMsg;
+import org.thingsboard.server.dao.DaoUtil;
+import org.thingsboard.server.dao.model.sql.RuleNodeDelayedMsgEntity;
+import org.thingsboard.server.dao.rule.RuleNodeDelayedMsgDao;
+import org.thingsboard.server.dao.sql.JpaAbstractDao;
+
+import java.util.Collection;
+import java.util.UUID;
+
+@Slf4j
+@Component
+public class JpaRuleNodeDelayedMsgDao extends JpaAbstractDao<RuleNodeDelayedMsgEntity, RuleNodeDelayedMsg> implements RuleNodeDelayedMsgDao {
+
+    @Autowired
+    private RuleNodeDelayedMsgRepository ruleNodeDelayedMsgRepository;
+
+    @Override
+    protected Class<RuleNodeDelayedMsgEntity> getEntityClass() {
+        return RuleNodeDelayedMsgEntity.class;
+    }
+
+    @Override
+    protected CrudRepository<RuleNodeDelayedMsgEntity, UUID> getCrudRepository() {
+        return ruleNodeDelayedMsgRepository;
+    }
+
+    @Override
+    public ListenableFuture<RuleNodeDelayedMsg> saveAsync(TenantId tenantId, RuleNodeDelayedMsg delayedMsg) {
+        return service.submit(() -> save(tenantId, delayedMsg));
+    }
+
+    @Override
+    public ListenableFuture<PageData<RuleNodeDelayedMsg>> findByRuleNodeIdAsync(UUID ruleNodeId, Collection<Integer> partitions, TimePageLink pageLink) {
+        if (partitions.isEmpty()) {
+            return Futures.immediateFuture(new PageData<>());
+        }
+        return service.submit(() -> DaoUtil.toPageData(ruleNodeDelayedMsgRepository.findByRuleNodeIdAndFireTs(ruleNodeId, partitions,
+                pageLink.getStartTime() != null ? pageLink.getStartTime() : 0L,
+                pageLink.getEndTime() != null ? pageLink.getEndTime() : Long.MAX_VALUE,
+                DaoUtil.toPageable(pageLink))));
+    }
+
+    @Override
+    public ListenableFuture<Void> removeByIdAsync(UUID id) {
+        return service.submit(() -> {
+            ruleNodeDelayedMsgRepository.removeById(id);
+            return null;
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> removeByRuleNodeIdAsync(UUID ruleNodeId) {
+        return service.submit(() -> {
+            ruleNodeDelayedMsgRepository.removeByRuleNodeId(ruleNodeId);
+            return null;
+        });
+    }
+}
@@ -15,29 +15,110 @@
  */
 package org.thingsboard.server.dao.sql.rule;
 
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.util.concurrent.ListenableFuture;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
-import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.RuleNodeStateId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.PageLink;
 import org.thingsboard.server.common.data.rule.RuleNodeState;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.DaoUtil;
 import org.thingsboard.server.dao.model.sql.RuleNodeStateEntity;
 import org.thingsboard.server.dao.rule.RuleNodeStateDao;
 import org.thingsboard.server.dao.sql.JpaAbstractDao;
+import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 @Slf4j
 @Component
 public class JpaRuleNodeStateDao extends JpaAbstractDao<RuleNodeStateEntity, RuleNodeState> implements RuleNodeStateDao {
 
+    @Autowired
+    private ScheduledLogExecutorComponent logExecutor;
+
     @Autowired
     private RuleNodeStateRepository ruleNodeStateRepository;
 
+    @Autowired
+    private RuleNodeStateInsertRepository ruleNodeStateInsertRepository;
+
+    @Autowired
+    private StatsFactory statsFactory;
+
+    @Value("${sql.rule_node_state.batch_size:1000}")
+    private int batchSize;
+
+    @Value("${sql.rule_node_state.batch_max_delay:1000}")
+    private long maxDelay;
+
+    @Value("${sql.rule_node_state.stats_print_interval_ms:10000}")
+    private long statsPrintIntervalMs;
+
+    @Value("${sql.rule_node_state.batch_threads:2}")
+    private int batchThreads;
+
+    @Value("${sql.batch_sort:false}")
+    private boolean batchSortEnabled;
+
+    private final ConcurrentMap<RuleNodeStateKey, PendingRuleNodeState> pendingStates = new ConcurrentHashMap<>();
+
+    private TbSqlBlockingQueueWrapper<RuleNodeStateKey> queue;
+    private Function<RuleNodeStateKey, Integer> hashcodeFunction;
+    // one lock per queue partition: saves and removals of a key are serialized,
+    // so an older state is never committed after a newer one and a removed state is not saved again
+    private ReentrantLock[] partitionLocks;
+
+    @PostConstruct
+    private void init() {
+        TbSqlBlockingQueueParams params = TbSqlBlockingQueueParams.builder()
+                .logName("Rule Node States")
+                .batchSize(batchSize)
+                .maxDelay(maxDelay)
+                .statsPrintIntervalMs(statsPrintIntervalMs)
+                .statsNamePrefix("rule.node.states")
+                .batchSortEnabled(batchSortEnabled)
+                .build();
+
+        hashcodeFunction = key -> key.getEntityId().hashCode();
+        partitionLocks = new ReentrantLock[batchThreads];
+        for (int i = 0; i < batchThreads; i++) {
+            partitionLocks[i] = new ReentrantLock();
+        }
+        queue = new TbSqlBlockingQueueWrapper<>(params, hashcodeFunction, batchThreads, statsFactory);
+        queue.init(logExecutor, this::savePendingStates,
+                Comparator.comparing(RuleNodeStateKey::getRuleNodeId).thenComparing(RuleNodeStateKey::getEntityId));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        flushPendingStates(key -> true);
+        if (queue != null) {
+            queue.destroy();
+        }
+    }
+
     @Override
     protected Class<RuleNodeStateEntity> getEntityClass() {
         return RuleNodeStateEntity.class;
@@ -50,23 +131,137 @@ public class JpaRuleNodeStateDao extends JpaAbstractDao<RuleNodeStateEntity, Rul
 
     @Override
     public PageData<RuleNodeState> findByRuleNodeId(UUID ruleNodeId, PageLink pageLink) {
+        flush(ruleNodeId);
         return DaoUtil.toPageData(ruleNodeStateRepository.findByRuleNodeId(ruleNodeId, DaoUtil.toPageable(pageLink)));
     }
 
     @Override
     public RuleNodeState findByRuleNodeIdAndEntityId(UUID ruleNodeId, UUID entityId) {
+        PendingRuleNodeState pendingState = pendingStates.get(new RuleNodeStateKey(ruleNodeId, entityId));
+        if (pendingState != null) {
+            return pendingState.getEntity().toData();
+        }
         return DaoUtil.getData(ruleNodeStateRepository.findByRuleNodeIdAndEntityId(ruleNodeId, entityId));
     }
 
     @Transactional
     @Override
     public void removeByRuleNodeId(UUID ruleNodeId) {
-        ruleNodeStateRepository.removeByRuleNodeId(ruleNodeId);
+        // locks are always taken in the same order, the batch threads hold one lock at a time
+        for (ReentrantLock lock : partitionLocks) {
+            lock.lock();
+        }
+        try {
+            pendingStates.keySet().removeIf(key -> key.getRuleNodeId().equals(ruleNodeId));
+            ruleNodeStateRepository.removeByRuleNodeId(ruleNodeId);
+        } finally {
+            for (int i = partitionLocks.length - 1; i >= 0; i--) {
+                partitionLocks[i].unlock();
+            }
+        }
     }
 
     @Transactional
     @Override
     public void removeByRuleNodeIdAndEntityId(UUID ruleNodeId, UUID entityId) {
-        ruleNodeStateRepository.removeByRuleNodeIdAndEntityId(ruleNodeId, entityId);
+        RuleNodeStateKey key = new RuleNodeStateKey(ruleNodeId, entityId);
+        ReentrantLock lock = partitionLocks[partition(key)];
+        lock.lock();
+        try {
+            pendingStates.remove(key);
+            ruleNodeStateRepository.removeByRuleNodeIdAndEntityId(ruleNodeId, entityId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ListenableFuture<Void> saveAsync(RuleNodeState ruleNodeState) {
+        if (ruleNodeState.getId() == null) {
+            UUID uuid = Uuids.timeBased();
+            ruleNodeState.setId(new RuleNodeStateId(uuid));
+            ruleNodeState.setCreatedTime(Uuids.unixTimestamp(uuid));
+        }
+        RuleNodeStateEntity entity = new RuleNodeStateEntity(ruleNodeState);
+        RuleNodeStateKey key = new RuleNodeStateKey(entity.getRuleNodeId(), entity.getEntityId());
+        return pendingStates.compute(key, (k, pendingState) -> {
+            if (pendingState == null) {
+                return new PendingRuleNodeState(entity, queue.add(k));
+            } else {
+                pendingState.setEntity(entity);
+                return pendingState;
+            }
+        }).getFuture();
+    }
+
+    @Override
+    public void flush(UUID ruleNodeId) {
+        flushPendingStates(key -> key.getRuleNodeId().equals(ruleNodeId));
+    }
+
+    private void flushPendingStates(Predicate<RuleNodeStateKey> filter) {
+        List<RuleNodeStateKey> keys = new ArrayList<>();
+        pendingStates.keySet().forEach(key -> {
+            if (filter.test(key)) {
+                keys.add(key);
+            }
+        });
+        if (!keys.isEmpty()) {
+            log.debug("Flushing {} pending rule node states", keys.size());
+            savePendingStates(keys);
+        }
+    }
+
+    /**
+     * Keys of the states that were already flushed or removed are skipped.
+     * Updates that arrive after the state was taken from the pending map are queued again.
+     * The states are taken and saved under the lock of their queue partition, so a concurrent flush
+     * or removal of the same key waits until the save is committed.
+     */
+    private void savePendingStates(List<RuleNodeStateKey> keys) {
+        Map<Integer, List<RuleNodeStateKey>> keysByPartition = new TreeMap<>();
+        for (RuleNodeStateKey key : keys) {
+            keysByPartition.computeIfAbsent(partition(key), p -> new ArrayList<>()).add(key);
+        }
+        keysByPartition.forEach((partition, partitionKeys) -> {
+            ReentrantLock lock = partitionLocks[partition];
+            lock.lock();
+            try {
+                List<RuleNodeStateEntity> entities = new ArrayList<>(partitionKeys.size());
+                for (RuleNodeStateKey key : partitionKeys) {
+                    PendingRuleNodeState pendingState = pendingStates.remove(key);
+                    if (pendingState != null) {
+                        entities.add(pendingState.getEntity());
+                    }
+                }
+                if (!entities.isEmpty()) {
+                    ruleNodeStateInsertRepository.saveOrUpdate(entities);
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    private int partition(RuleNodeStateKey key) {
+        // same partitioning as in the TbSqlBlockingQueueWrapper, so a batch thread takes only its own lock
+        return (hashcodeFunction.apply(key) & 0x7FFFFFFF) % batchThreads;
+    }
+
+    @Data
+    private static class RuleNodeStateKey {
+        private final UUID ruleNodeId;
+        private final UUID entityId;
+    }
+
+    @Data
+    private static class PendingRuleNodeState {
+        private volatile RuleNodeStateEntity entity;
+        private final ListenableFuture<Void> future;
+
+        PendingRuleNodeState(RuleNodeStateEntity entity, ListenableFuture<Void> future) {
+            this.entity = entity;
+            this.future = future;
+        }
     }
 }
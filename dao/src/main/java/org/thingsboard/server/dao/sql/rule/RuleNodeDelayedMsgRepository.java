@@ -0,0 +1,49 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql.rule;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import org.thingsboard.server.dao.model.sql.RuleNodeDelayedMsgEntity;
+
+import java.util.Collection;
+import java.util.UUID;
+
+public interface RuleNodeDelayedMsgRepository extends PagingAndSortingRepository<RuleNodeDelayedMsgEntity, UUID> {
+
+    @Query("SELECT e FROM RuleNodeDelayedMsgEntity e WHERE e.ruleNodeId = :ruleNodeId " +
+            "AND e.partition IN :partitions AND e.fireTs >= :startTime AND e.fireTs <= :endTime")
+    Page<RuleNodeDelayedMsgEntity> findByRuleNodeIdAndFireTs(@Param("ruleNodeId") UUID ruleNodeId,
+                                                             @Param("partitions") Collection<Integer> partitions,
+                                                             @Param("startTime") long startTime,
+                                                             @Param("endTime") long endTime,
+                                                             Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM RuleNodeDelayedMsgEntity e WHERE e.id = :id")
+    void removeById(@Param("id") UUID id);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM RuleNodeDelayedMsgEntity e WHERE e.ruleNodeId = :ruleNodeId")
+    void removeByRuleNodeId(@Param("ruleNodeId") UUID ruleNodeId);
+}
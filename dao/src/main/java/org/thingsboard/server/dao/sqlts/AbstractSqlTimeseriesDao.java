@@ -85,6 +85,10 @@ public abstract class AbstractSqlTimeseriesDao extends BaseAbstractSqlTimeseries
         }
     }
 
+    public void cleanup(TenantId tenantId, long ttl) {
+        // tenant and customer TTLs are applied by the cleanup_timeseries_by_ttl procedure
+    }
+
     protected ListenableFuture<List<TsKvEntry>> processFindAllAsync(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries) {
         List<ListenableFuture<List<TsKvEntry>>> futures = queries
                 .stream()
@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.dictionary;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.thingsboard.server.dao.model.sqlts.dictionary.TsKvDictionary;
+import org.thingsboard.server.dao.model.sqlts.dictionary.TsKvDictionaryCompositeKey;
+import org.thingsboard.server.dao.sqlts.insert.InsertTsKvDictionaryRepository;
+import org.thingsboard.server.dao.util.SqlTsOrTsLatestAnyDao;
+
+import javax.annotation.PostConstruct;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-process copy of the ts_kv_dictionary table shared by the SQL timeseries and latest DAOs.
+ * The whole dictionary is loaded on startup, missing keys are inserted with "insert if absent" statements,
+ * so concurrent writers of the same key do not need a lock.
+ */
+@Slf4j
+@Component
+@SqlTsOrTsLatestAnyDao
+public class TsKvDictionaryCache {
+
+    private static final int SAVE_ATTEMPTS = 2;
+
+    private final ConcurrentMap<String, Integer> keyIds = new ConcurrentHashMap<>();
+
+    @Autowired
+    private TsKvDictionaryRepository dictionaryRepository;
+
+    @Autowired
+    private InsertTsKvDictionaryRepository insertRepository;
+
+    @PostConstruct
+    public void init() {
+        try {
+            dictionaryRepository.findAll().forEach(this::put);
+            log.info("Loaded {} timeseries keys from the dictionary", keyIds.size());
+        } catch (Exception e) {
+            // the table does not exist yet during the installation
+            log.warn("Failed to load the timeseries keys dictionary: {}", e.getMessage());
+        }
+    }
+
+    public Integer getOrSaveKeyId(String key) {
+        Integer keyId = keyIds.get(key);
+        if (keyId != null) {
+            return keyId;
+        }
+        for (int attempt = 0; attempt < SAVE_ATTEMPTS; attempt++) {
+            try {
+                insertRepository.saveIfAbsent(key);
+            } catch (DataIntegrityViolationException e) {
+                // the key was inserted concurrently
+                log.warn("Failed to insert key {}, attempt {}", key, attempt + 1, e);
+            }
+            Optional<TsKvDictionary> dictionary = dictionaryRepository.findById(new TsKvDictionaryCompositeKey(key));
+            if (dictionary.isPresent()) {
+                put(dictionary.get());
+                return dictionary.get().getKeyId();
+            }
+        }
+        throw new RuntimeException("Failed to get TsKvDictionary entity from DB!");
+    }
+
+    private void put(TsKvDictionary dictionary) {
+        keyIds.put(dictionary.getKey(), dictionary.getKeyId());
+    }
+
+}
@@ -23,6 +23,10 @@ import org.thingsboard.server.dao.util.SqlTsDao;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @SqlTsDao
 @PsqlDao
@@ -30,6 +34,10 @@ import javax.persistence.PersistenceContext;
 @Transactional
 public class PsqlPartitioningRepository {
 
+    private static final String SELECT_PARTITIONS = "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i " +
+            "INNER JOIN pg_class c ON c.oid = i.inhrelid INNER JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = 'ts_kv'";
+    private static final Pattern PARTITION_BOUNDS = Pattern.compile("FROM \\('?(-?\\d+)'?\\) TO \\('?(-?\\d+)'?\\)");
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -38,4 +46,18 @@ public class PsqlPartitioningRepository {
                 .executeUpdate();
     }
 
+    @SuppressWarnings("unchecked")
+    public List<PsqlPartition> findAll() {
+        List<Object[]> rows = entityManager.createNativeQuery(SELECT_PARTITIONS).getResultList();
+        List<PsqlPartition> partitions = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Matcher matcher = PARTITION_BOUNDS.matcher(String.valueOf(row[1]));
+            if (matcher.find()) {
+                String partitionDate = ((String) row[0]).substring(PsqlPartition.TABLE_REGEX.length());
+                partitions.add(new PsqlPartition(Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)), partitionDate));
+            }
+        }
+        return partitions;
+    }
+
 }
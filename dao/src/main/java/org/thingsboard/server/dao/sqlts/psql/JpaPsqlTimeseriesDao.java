@@ -19,18 +19,18 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import lombok.extern.slf4j.Slf4j;
-import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
 import org.thingsboard.server.dao.sqlts.AbstractChunkedAggregationTimeseriesDao;
 import org.thingsboard.server.dao.sqlts.insert.psql.PsqlPartitioningRepository;
-import org.thingsboard.server.dao.timeseries.PsqlPartition;
 import org.thingsboard.server.dao.timeseries.SqlTsPartitionDate;
 import org.thingsboard.server.dao.util.PsqlDao;
 import org.thingsboard.server.dao.util.SqlTsDao;
@@ -39,15 +39,15 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @Slf4j
@@ -55,17 +55,54 @@ import java.util.concurrent.locks.ReentrantLock;
 @SqlTsDao
 public class JpaPsqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDao {
 
-    private final Map<Long, PsqlPartition> partitions = new ConcurrentHashMap<>();
-    private static final ReentrantLock partitionCreationLock = new ReentrantLock();
+    private static final String TTL_STATS_NAME = "ts.ttl.cleanup";
+    private static final String PARTITIONS_STATS_NAME = "ts.partitions";
+    private static final int TTL_ENTITIES_BATCH_SIZE = 1000;
+    private static final UUID MIN_UUID = new UUID(0, 0);
+
+    private static final String SELECT_MAX_PROFILE_TTL_DAYS =
+            "SELECT max((profile_data -> 'configuration' ->> 'defaultStorageTtlDays')::bigint) FROM tenant_profile";
+    private static final String SELECT_TTL_ATTRIBUTE =
+            "SELECT max(long_v) FROM attribute_kv WHERE entity_id = ? AND attribute_key = 'TTL'";
+    private static final String SELECT_TENANT_ENTITIES_WITH_CUSTOMER_TTL =
+            "SELECT e.id, (SELECT max(a.long_v) FROM attribute_kv a WHERE a.entity_id = e.customer_id AND a.attribute_key = 'TTL') AS customer_ttl " +
+                    "FROM (SELECT id, customer_id FROM device WHERE tenant_id = ? " +
+                    "UNION ALL SELECT id, customer_id FROM asset WHERE tenant_id = ? " +
+                    "UNION ALL SELECT id, id AS customer_id FROM customer WHERE tenant_id = ?) e " +
+                    "WHERE e.id > ? ORDER BY e.id LIMIT ?";
+    private static final String SELECT_TENANT_HAS_CUSTOMER_TTL =
+            "SELECT 1 FROM customer c JOIN attribute_kv a ON a.entity_id = c.id " +
+                    "WHERE c.tenant_id = ? AND a.attribute_key = 'TTL' AND a.long_v > 0 LIMIT 1";
+    private static final String DELETE_EXPIRED_TS_KV_CHUNK =
+            "DELETE FROM ts_kv WHERE (entity_id, key, ts) IN " +
+                    "(SELECT entity_id, key, ts FROM ts_kv WHERE entity_id = ANY (?) AND ts < ? LIMIT ?)";
 
     @Autowired
     private PsqlPartitioningRepository partitioningRepository;
 
+    @Autowired
+    private StatsFactory statsFactory;
+
     private SqlTsPartitionDate tsFormat;
 
     @Value("${sql.postgres.ts_key_value_partitioning:MONTHS}")
     private String partitioning;
 
+    @Value("${sql.ttl.ts.delete_batch_size:10000}")
+    private int ttlDeleteBatchSize;
+
+    @Value("${sql.ttl.ts.delete_batch_pause_ms:100}")
+    private long ttlDeleteBatchPauseMs;
+
+    @Value("${sql.postgres.ts_partitions_precreate_count:2}")
+    private int partitionsPrecreateCount;
+
+    @Value("${sql.postgres.ts_partitions_check_interval_ms:3600000}")
+    private long partitionsCheckIntervalMs;
+
+    private DefaultCounter ttlDeletedRows;
+    private PsqlPartitionsManager partitionsManager;
+    private ScheduledExecutorService partitionsScheduler;
 
     @Override
     protected void init() {
@@ -77,12 +114,40 @@ public class JpaPsqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDa
             log.warn("Incorrect configuration of partitioning {}", partitioning);
             throw new RuntimeException("Failed to parse partitioning property: " + partitioning + "!");
         }
+        ttlDeletedRows = statsFactory.createDefaultCounter(TTL_STATS_NAME, "statsName", "deletedRows");
+        partitionsManager = new PsqlPartitionsManager(tsFormat, partitioningRepository, partitionsPrecreateCount,
+                statsFactory.createDefaultCounter(PARTITIONS_STATS_NAME, "statsName", "slowPathDataPoints"));
+        if (!SqlTsPartitionDate.INDEFINITE.equals(tsFormat)) {
+            try {
+                partitionsManager.init(System.currentTimeMillis());
+            } catch (Exception e) {
+                log.warn("Failed to validate and create timeseries partitions on startup", e);
+            }
+            partitionsScheduler = Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("ts-partitions-manager"));
+            partitionsScheduler.scheduleWithFixedDelay(this::ensurePartitions, partitionsCheckIntervalMs, partitionsCheckIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    protected void destroy() {
+        if (partitionsScheduler != null) {
+            partitionsScheduler.shutdownNow();
+        }
+        super.destroy();
+    }
+
+    private void ensurePartitions() {
+        try {
+            partitionsManager.ensurePartitions(System.currentTimeMillis());
+        } catch (Exception e) {
+            log.warn("Failed to create upcoming timeseries partitions", e);
+        }
     }
 
     @Override
     public ListenableFuture<Integer> save(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long ttl) {
         int dataPointDays = getDataPointDays(tsKvEntry, computeTtl(ttl));
-        savePartitionIfNotExist(tsKvEntry.getTs());
+        partitionsManager.savePartitionIfNotExist(tsKvEntry.getTs());
         String strKey = tsKvEntry.getKey();
         Integer keyId = getOrSaveKeyId(strKey);
         TsKvEntity entity = new TsKvEntity();
@@ -98,68 +163,146 @@ public class JpaPsqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDa
         return Futures.transform(tsQueue.add(entity), v -> dataPointDays, MoreExecutors.directExecutor());
     }
 
+    /**
+     * Drops the partitions that are older than the longest TTL of the system, the tenant profiles and the TTL attributes.
+     * Rows that are expired within the remaining partitions are removed by {@link #cleanup(TenantId, long)}
+     * on the node that owns the tenant.
+     */
     @Override
     public void cleanup(long systemTtl) {
-        cleanupPartitions(systemTtl);
-        super.cleanup(systemTtl);
+        cleanupPartitions(systemTtl > 0 ? Math.max(systemTtl, getMaxProfileTtl()) : systemTtl);
     }
 
-    private void cleanupPartitions(long systemTtl) {
-        log.info("Going to cleanup old timeseries data partitions using partition type: {} and ttl: {}s", partitioning, systemTtl);
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement stmt = connection.prepareStatement("call drop_partitions_by_max_ttl(?,?,?)")) {
-            stmt.setString(1, partitioning);
-            stmt.setLong(2, systemTtl);
-            stmt.setLong(3, 0);
-            stmt.execute();
-            printWarnings(stmt);
-            try (ResultSet resultSet = stmt.getResultSet()) {
-                resultSet.next();
-                log.info("Total partitions removed by TTL: [{}]", resultSet.getLong(1));
+    /**
+     * Removes the expired rows of the tenant devices, assets and customers in bounded chunks.
+     * The TTL attribute of the tenant overrides the given ttl, the TTL attribute of a customer overrides
+     * the tenant one for the customer and its devices and assets.
+     */
+    @Override
+    public void cleanup(TenantId tenantId, long ttl) {
+        long startTs = System.currentTimeMillis();
+        long deleted = 0;
+        try {
+            long tenantTtl = Optional.ofNullable(getTtlAttribute(tenantId.getId())).orElse(ttl);
+            if (tenantTtl <= 0 && !hasCustomerTtl(tenantId)) {
+                // nothing expires, no need to iterate over the tenant entities
+                return;
+            }
+            UUID lastId = MIN_UUID;
+            boolean hasNext = true;
+            while (hasNext && !Thread.currentThread().isInterrupted()) {
+                Map<Long, List<UUID>> entitiesByExpirationTs = new HashMap<>();
+                int count = 0;
+                try (Connection connection = dataSource.getConnection();
+                     PreparedStatement stmt = connection.prepareStatement(SELECT_TENANT_ENTITIES_WITH_CUSTOMER_TTL)) {
+                    stmt.setObject(1, tenantId.getId());
+                    stmt.setObject(2, tenantId.getId());
+                    stmt.setObject(3, tenantId.getId());
+                    stmt.setObject(4, lastId);
+                    stmt.setInt(5, TTL_ENTITIES_BATCH_SIZE);
+                    try (ResultSet resultSet = stmt.executeQuery()) {
+                        while (resultSet.next()) {
+                            lastId = resultSet.getObject(1, UUID.class);
+                            count++;
+                            long customerTtl = resultSet.getLong(2);
+                            long entityTtl = resultSet.wasNull() ? tenantTtl : customerTtl;
+                            if (entityTtl > 0) {
+                                entitiesByExpirationTs.computeIfAbsent(startTs - TimeUnit.SECONDS.toMillis(entityTtl), ts -> new ArrayList<>()).add(lastId);
+                            }
+                        }
+                    }
+                }
+                for (Map.Entry<Long, List<UUID>> entry : entitiesByExpirationTs.entrySet()) {
+                    deleted += deleteExpiredRows(entry.getValue(), entry.getKey());
+                }
+                hasNext = count == TTL_ENTITIES_BATCH_SIZE;
             }
         } catch (SQLException e) {
-            log.error("SQLException occurred during TTL task execution ", e);
+            log.error("[{}] SQLException occurred during timeseries TTL task execution ", tenantId, e);
+        }
+        if (deleted > 0) {
+            log.info("[{}] Removed {} expired timeseries rows in {} ms", tenantId, deleted, System.currentTimeMillis() - startTs);
         }
     }
 
-    private void savePartitionIfNotExist(long ts) {
-        if (!tsFormat.equals(SqlTsPartitionDate.INDEFINITE) && ts >= 0) {
-            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneOffset.UTC);
-            LocalDateTime localDateTimeStart = tsFormat.trancateTo(time);
-            long partitionStartTs = toMills(localDateTimeStart);
-            if (partitions.get(partitionStartTs) == null) {
-                LocalDateTime localDateTimeEnd = tsFormat.plusTo(localDateTimeStart);
-                long partitionEndTs = toMills(localDateTimeEnd);
-                ZonedDateTime zonedDateTime = localDateTimeStart.atZone(ZoneOffset.UTC);
-                String partitionDate = zonedDateTime.format(DateTimeFormatter.ofPattern(tsFormat.getPattern()));
-                savePartition(new PsqlPartition(partitionStartTs, partitionEndTs, partitionDate));
+    private long deleteExpiredRows(List<UUID> entityIds, long expirationTs) throws SQLException {
+        long deleted = 0;
+        int chunkDeleted;
+        do {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(DELETE_EXPIRED_TS_KV_CHUNK)) {
+                stmt.setArray(1, connection.createArrayOf("uuid", entityIds.toArray()));
+                stmt.setLong(2, expirationTs);
+                stmt.setInt(3, ttlDeleteBatchSize);
+                chunkDeleted = stmt.executeUpdate();
             }
-        }
+            deleted += chunkDeleted;
+            ttlDeletedRows.add(chunkDeleted);
+            log.trace("Removed {} timeseries rows older than {} for {} entities", chunkDeleted, expirationTs, entityIds.size());
+            if (chunkDeleted == ttlDeleteBatchSize && ttlDeleteBatchPauseMs > 0) {
+                try {
+                    Thread.sleep(ttlDeleteBatchPauseMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } while (chunkDeleted == ttlDeleteBatchSize);
+        return deleted;
     }
 
-    private void savePartition(PsqlPartition psqlPartition) {
-        if (!partitions.containsKey(psqlPartition.getStart())) {
-            partitionCreationLock.lock();
-            try {
-                log.trace("Saving partition: {}", psqlPartition);
-                partitioningRepository.save(psqlPartition);
-                log.trace("Adding partition to Set: {}", psqlPartition);
-                partitions.put(psqlPartition.getStart(), psqlPartition);
-            } catch (DataIntegrityViolationException ex) {
-                log.trace("Error occurred during partition save:", ex);
-                if (ex.getCause() instanceof ConstraintViolationException) {
-                    log.warn("Saving partition [{}] rejected. Timeseries data will save to the ts_kv_indefinite (DEFAULT) partition.", psqlPartition.getPartitionDate());
-                    partitions.put(psqlPartition.getStart(), psqlPartition);
-                } else {
-                    throw new RuntimeException(ex);
+    private Long getTtlAttribute(UUID entityId) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(SELECT_TTL_ATTRIBUTE)) {
+            stmt.setObject(1, entityId);
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                if (resultSet.next()) {
+                    long ttl = resultSet.getLong(1);
+                    return resultSet.wasNull() ? null : ttl;
                 }
-            } finally {
-                partitionCreationLock.unlock();
             }
         }
+        return null;
+    }
+
+    private boolean hasCustomerTtl(TenantId tenantId) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(SELECT_TENANT_HAS_CUSTOMER_TTL)) {
+            stmt.setObject(1, tenantId.getId());
+            try (ResultSet resultSet = stmt.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private long getMaxProfileTtl() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(SELECT_MAX_PROFILE_TTL_DAYS);
+             ResultSet resultSet = stmt.executeQuery()) {
+            if (resultSet.next()) {
+                return TimeUnit.DAYS.toSeconds(resultSet.getLong(1));
+            }
+        } catch (SQLException e) {
+            log.error("Failed to fetch max storage TTL of the tenant profiles", e);
+        }
+        return 0;
     }
 
-    private static long toMills(LocalDateTime time) {
-        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    private void cleanupPartitions(long maxTtl) {
+        log.info("Going to cleanup old timeseries data partitions using partition type: {} and ttl: {}s", partitioning, maxTtl);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("call drop_partitions_by_max_ttl(?,?,?)")) {
+            stmt.setString(1, partitioning);
+            stmt.setLong(2, maxTtl);
+            stmt.setLong(3, 0);
+            stmt.execute();
+            printWarnings(stmt);
+            try (ResultSet resultSet = stmt.getResultSet()) {
+                resultSet.next();
+                log.info("Total partitions removed by TTL: [{}]", resultSet.getLong(1));
+            }
+        } catch (SQLException e) {
+            log.error("SQLException occurred during TTL task execution ", e);
+        }
     }
 }
@@ -0,0 +1,165 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.psql;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.dao.sqlts.insert.psql.PsqlPartitioningRepository;
+import org.thingsboard.server.dao.timeseries.PsqlPartition;
+import org.thingsboard.server.dao.timeseries.SqlTsPartitionDate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the ts_kv partitions for the current and the upcoming periods created ahead of the ingestion,
+ * so the check of a data point is a single range comparison. Data points outside of that range
+ * (late or back-dated ones) go through the slow path that creates the missing partition on demand.
+ */
+@Slf4j
+public class PsqlPartitionsManager {
+
+    private final SqlTsPartitionDate tsFormat;
+    private final PsqlPartitioningRepository partitioningRepository;
+    private final int precreateCount;
+    private final DefaultCounter slowPathCounter;
+
+    private final Map<Long, PsqlPartition> partitions = new ConcurrentHashMap<>();
+    private final ReentrantLock partitionCreationLock = new ReentrantLock();
+
+    private volatile PartitionsRange range = new PartitionsRange(0, 0);
+
+    public PsqlPartitionsManager(SqlTsPartitionDate tsFormat, PsqlPartitioningRepository partitioningRepository,
+                                 int precreateCount, DefaultCounter slowPathCounter) {
+        this.tsFormat = tsFormat;
+        this.partitioningRepository = partitioningRepository;
+        this.precreateCount = precreateCount;
+        this.slowPathCounter = slowPathCounter;
+        if (SqlTsPartitionDate.INDEFINITE.equals(tsFormat)) {
+            range = new PartitionsRange(Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+    }
+
+    public void init(long currentTs) {
+        if (SqlTsPartitionDate.INDEFINITE.equals(tsFormat)) {
+            return;
+        }
+        for (PsqlPartition partition : partitioningRepository.findAll()) {
+            long expectedEnd = toMills(tsFormat.plusTo(toLocalDateTime(partition.getStart())));
+            if (partition.getStart() != toMills(tsFormat.trancateTo(toLocalDateTime(partition.getStart()))) || partition.getEnd() != expectedEnd) {
+                log.warn("Partition [{}] does not match the configured partitioning {}. Data points of this period may be stored to the ts_kv_indefinite partition.",
+                        partition.getPartitionDate(), tsFormat);
+                continue;
+            }
+            partitions.put(partition.getStart(), partition);
+        }
+        log.info("Found {} existing timeseries partitions", partitions.size());
+        ensurePartitions(currentTs);
+    }
+
+    /**
+     * Creates the partition of the given timestamp and the configured number of the following ones
+     * and extends the range of the data points that skip the partition check.
+     */
+    public void ensurePartitions(long currentTs) {
+        if (SqlTsPartitionDate.INDEFINITE.equals(tsFormat)) {
+            return;
+        }
+        LocalDateTime start = tsFormat.trancateTo(toLocalDateTime(currentTs));
+        long rangeStart = toMills(start);
+        long rangeEnd = rangeStart;
+        for (int i = 0; i <= precreateCount; i++) {
+            rangeEnd = savePartitionIfNotExist(start).getEnd();
+            start = tsFormat.plusTo(start);
+        }
+        range = new PartitionsRange(rangeStart, rangeEnd);
+        log.debug("Timeseries partitions are ensured for range [{}, {})", rangeStart, rangeEnd);
+    }
+
+    public void savePartitionIfNotExist(long ts) {
+        PartitionsRange current = range;
+        if (ts >= current.start && ts < current.end) {
+            return;
+        }
+        if (ts >= 0) {
+            slowPathCounter.increment();
+            savePartitionIfNotExist(tsFormat.trancateTo(toLocalDateTime(ts)));
+        }
+    }
+
+    private PsqlPartition savePartitionIfNotExist(LocalDateTime localDateTimeStart) {
+        long partitionStartTs = toMills(localDateTimeStart);
+        PsqlPartition partition = partitions.get(partitionStartTs);
+        if (partition != null) {
+            return partition;
+        }
+        long partitionEndTs = toMills(tsFormat.plusTo(localDateTimeStart));
+        String partitionDate = localDateTimeStart.atZone(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(tsFormat.getPattern()));
+        return savePartition(new PsqlPartition(partitionStartTs, partitionEndTs, partitionDate));
+    }
+
+    private PsqlPartition savePartition(PsqlPartition psqlPartition) {
+        partitionCreationLock.lock();
+        try {
+            PsqlPartition existing = partitions.get(psqlPartition.getStart());
+            if (existing != null) {
+                return existing;
+            }
+            log.trace("Saving partition: {}", psqlPartition);
+            partitioningRepository.save(psqlPartition);
+            log.trace("Adding partition to Set: {}", psqlPartition);
+            partitions.put(psqlPartition.getStart(), psqlPartition);
+            return psqlPartition;
+        } catch (DataIntegrityViolationException ex) {
+            log.trace("Error occurred during partition save:", ex);
+            if (ex.getCause() instanceof ConstraintViolationException) {
+                log.warn("Saving partition [{}] rejected. Timeseries data will save to the ts_kv_indefinite (DEFAULT) partition.", psqlPartition.getPartitionDate());
+                partitions.put(psqlPartition.getStart(), psqlPartition);
+                return psqlPartition;
+            } else {
+                throw new RuntimeException(ex);
+            }
+        } finally {
+            partitionCreationLock.unlock();
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(long ts) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneOffset.UTC);
+    }
+
+    private static long toMills(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static class PartitionsRange {
+        private final long start;
+        private final long end;
+
+        private PartitionsRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+}
@@ -19,6 +19,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.thingsboard.server.common.data.Tenant;
 import org.thingsboard.server.common.data.TenantInfo;
@@ -46,6 +47,7 @@ import org.thingsboard.server.dao.usagerecord.ApiUsageStateService;
 import org.thingsboard.server.dao.user.UserService;
 import org.thingsboard.server.dao.widget.WidgetsBundleService;
 
+import static org.thingsboard.server.common.data.CacheConstants.ENTITY_NAME_CACHE;
 import static org.thingsboard.server.dao.service.Validator.validateId;
 
 @Service
@@ -121,6 +123,7 @@ public class TenantServiceImpl extends AbstractEntityService implements TenantSe
         return tenantDao.findByIdAsync(callerId, tenantId.getId());
     }
 
+    @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#tenant.id", condition = "#tenant.id != null")
     @Override
     public Tenant saveTenant(Tenant tenant) {
         log.trace("Executing saveTenant [{}]", tenant);
@@ -138,6 +141,7 @@ public class TenantServiceImpl extends AbstractEntityService implements TenantSe
         return savedTenant;
     }
 
+    @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#tenantId")
     @Override
     public void deleteTenant(TenantId tenantId) {
         log.trace("Executing deleteTenant [{}]", tenantId);
@@ -131,6 +131,11 @@ public class BaseTimeseriesService implements TimeseriesService {
         timeseriesDao.cleanup(systemTtl);
     }
 
+    @Override
+    public void cleanup(TenantId tenantId, long ttl) {
+        timeseriesDao.cleanup(tenantId, ttl);
+    }
+
     @Override
     public ListenableFuture<Integer> save(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry) {
         validate(entityId);
@@ -20,6 +20,7 @@ import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
 import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
 import com.datastax.oss.driver.api.querybuilder.select.Select;
 import com.google.common.base.Function;
@@ -34,7 +35,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
 import org.springframework.stereotype.Component;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.EntityIdFactory;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.Aggregation;
 import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
@@ -43,6 +46,8 @@ import org.thingsboard.server.common.data.kv.DeleteTsKvQuery;
 import org.thingsboard.server.common.data.kv.KvEntry;
 import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.model.ModelConstants;
 import org.thingsboard.server.dao.nosql.TbResultSet;
 import org.thingsboard.server.dao.nosql.TbResultSetFuture;
@@ -56,11 +61,15 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -82,20 +91,41 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
 
     protected static List<Long> FIXED_PARTITION = Arrays.asList(new Long[]{0L});
 
+    private static final String PARTITIONS_FILTER_STATS_NAME = "ts.partitions.filter";
+    private static final int PARTITIONS_FILTER_MAX_PARTITIONS = 2;
+
     private CassandraTsPartitionsCache cassandraTsPartitionsCache;
+    private CassandraTsPartitionsFilter cassandraTsPartitionsFilter;
+    private DefaultCounter partitionsFilterAvoidedWrites;
+    private ExecutorService partitionsFilterWarmUpExecutor;
 
     @Autowired
     private Environment environment;
 
+    @Autowired
+    private StatsFactory statsFactory;
+
     @Value("${cassandra.query.ts_key_value_partitioning}")
     private String partitioning;
 
     @Value("${cassandra.query.ts_key_value_partitions_max_cache_size:100000}")
     private long partitionsCacheSize;
 
+    @Value("${cassandra.query.ts_key_value_partitions_filter_expected_insertions:0}")
+    private long partitionsFilterExpectedInsertions;
+
+    @Value("${cassandra.query.ts_key_value_partitions_filter_fpp:0.000001}")
+    private double partitionsFilterFpp;
+
+    @Value("${cassandra.query.ts_key_value_partitions_filter_warm_up:false}")
+    private boolean partitionsFilterWarmUp;
+
     @Value("${cassandra.query.ts_key_value_ttl}")
     private long systemTtl;
 
+    @Value("${cassandra.query.ts_read_partitions_parallelism:4}")
+    private int readPartitionsParallelism;
+
     @Value("${cassandra.query.set_null_values_enabled}")
     private boolean setNullValuesEnabled;
 
@@ -126,6 +156,15 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
             tsFormat = partition.get();
             if (!isFixedPartitioning() && partitionsCacheSize > 0) {
                 cassandraTsPartitionsCache = new CassandraTsPartitionsCache(partitionsCacheSize);
+                if (partitionsFilterExpectedInsertions > 0) {
+                    cassandraTsPartitionsFilter = new CassandraTsPartitionsFilter(partitionsFilterExpectedInsertions, partitionsFilterFpp, PARTITIONS_FILTER_MAX_PARTITIONS);
+                    partitionsFilterAvoidedWrites = statsFactory.createDefaultCounter(PARTITIONS_FILTER_STATS_NAME, "statsName", "avoidedWrites");
+                    if (partitionsFilterWarmUp && !isInstall()) {
+                        partitionsFilterWarmUpExecutor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("ts-partitions-filter-warm-up"));
+                        partitionsFilterWarmUpExecutor.submit(this::warmUpPartitionsFilter);
+                        partitionsFilterWarmUpExecutor.shutdown();
+                    }
+                }
             }
         } else {
             log.warn("Incorrect configuration of partitioning {}", partitioning);
@@ -135,6 +174,9 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
 
     @PreDestroy
     public void stop() {
+        if (partitionsFilterWarmUpExecutor != null) {
+            partitionsFilterWarmUpExecutor.shutdownNow();
+        }
         super.stopExecutor();
     }
 
@@ -191,13 +233,20 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
             return doSavePartition(tenantId, entityId, key, ttl, partition);
         } else {
             CassandraPartitionCacheKey partitionSearchKey = new CassandraPartitionCacheKey(entityId, key, partition);
-            if (!cassandraTsPartitionsCache.has(partitionSearchKey)) {
-                ListenableFuture<Integer> result = doSavePartition(tenantId, entityId, key, ttl, partition);
-                Futures.addCallback(result, new CacheCallback<>(partitionSearchKey), MoreExecutors.directExecutor());
-                return result;
-            } else {
+            if (cassandraTsPartitionsCache.has(partitionSearchKey)) {
                 return Futures.immediateFuture(0);
             }
+            // future partitions are not tracked by the filter, so data with the wrong clock does not retire the current one
+            boolean filtered = cassandraTsPartitionsFilter != null && tsKvEntryTs <= System.currentTimeMillis();
+            if (filtered && cassandraTsPartitionsFilter.mightContain(partitionSearchKey)) {
+                // a false positive skips the write of a missing partition record, its probability is bounded by the configured fpp
+                cassandraTsPartitionsCache.put(partitionSearchKey);
+                partitionsFilterAvoidedWrites.increment();
+                return Futures.immediateFuture(0);
+            }
+            ListenableFuture<Integer> result = doSavePartition(tenantId, entityId, key, ttl, partition);
+            Futures.addCallback(result, new CacheCallback<>(partitionSearchKey, filtered), MoreExecutors.directExecutor());
+            return result;
         }
     }
 
@@ -293,6 +342,11 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
         //Cleanup by TTL is native for Cassandra
     }
 
+    @Override
+    public void cleanup(TenantId tenantId, long ttl) {
+        //Cleanup by TTL is native for Cassandra
+    }
+
     private ListenableFuture<List<TsKvEntry>> findAllAsyncWithLimit(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
         long minPartition = toPartitionTs(query.getStartTs());
         long maxPartition = toPartitionTs(query.getEndTs());
@@ -303,12 +357,13 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
             @Override
             public void onSuccess(@Nullable List<Long> partitions) {
                 TsKvQueryCursor cursor = new TsKvQueryCursor(entityId.getEntityType().name(), entityId.getId(), query, partitions);
-                findAllAsyncSequentiallyWithLimit(tenantId, cursor, resultFuture);
+                findAllAsyncWithLimit(tenantId, cursor, new ArrayDeque<>(), 1, resultFuture);
             }
 
             @Override
             public void onFailure(Throwable t) {
                 log.error("[{}][{}] Failed to fetch partitions for interval {}-{}", entityId.getEntityType().name(), entityId.getId(), toPartitionTs(query.getStartTs()), toPartitionTs(query.getEndTs()), t);
+                resultFuture.setException(t);
             }
         }, readResultsProcessingExecutor);
 
@@ -320,54 +375,62 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
         return tsFormat.truncatedTo(time).toInstant(ZoneOffset.UTC).toEpochMilli();
     }
 
-    private void findAllAsyncSequentiallyWithLimit(TenantId tenantId, final TsKvQueryCursor cursor, final SimpleListenableFuture<List<TsKvEntry>> resultFuture) {
-        if (cursor.isFull() || !cursor.hasNextPartition()) {
+    /**
+     * Reads the partitions in the requested order while the next ones are already being fetched.
+     * The number of partitions in flight starts from one and doubles up to the configured parallelism
+     * while the fetched partitions do not satisfy the limit, so small queries do not read ahead.
+     */
+    private void findAllAsyncWithLimit(TenantId tenantId, final TsKvQueryCursor cursor, final Deque<ListenableFuture<List<TsKvEntry>>> pending,
+                                       int window, final SimpleListenableFuture<List<TsKvEntry>> resultFuture) {
+        while (pending.size() < window && !cursor.isFull() && cursor.hasNextPartition()) {
+            pending.add(fetchPartitionWithLimit(tenantId, cursor, cursor.getNextPartition()));
+        }
+        ListenableFuture<List<TsKvEntry>> next = pending.poll();
+        if (next == null) {
             resultFuture.set(cursor.getData());
-        } else {
-            PreparedStatement proto = getFetchStmt(Aggregation.NONE, cursor.getOrderBy());
-            BoundStatementBuilder stmtBuilder = new BoundStatementBuilder(proto.bind());
-
-            stmtBuilder.setString(0, cursor.getEntityType());
-            stmtBuilder.setUuid(1, cursor.getEntityId());
-            stmtBuilder.setString(2, cursor.getKey());
-            stmtBuilder.setLong(3, cursor.getNextPartition());
-            stmtBuilder.setLong(4, cursor.getStartTs());
-            stmtBuilder.setLong(5, cursor.getEndTs());
-            stmtBuilder.setInt(6, cursor.getCurrentLimit());
-
-            BoundStatement stmt = stmtBuilder.build();
+            return;
+        }
+        Futures.addCallback(next, new FutureCallback<List<TsKvEntry>>() {
+            @Override
+            public void onSuccess(@Nullable List<TsKvEntry> result) {
+                cursor.addData(result == null ? Collections.emptyList() : result);
+                if (cursor.isFull()) {
+                    pending.forEach(future -> future.cancel(false));
+                    resultFuture.set(cursor.getData());
+                } else {
+                    findAllAsyncWithLimit(tenantId, cursor, pending, Math.min(window * 2, Math.max(1, readPartitionsParallelism)), resultFuture);
+                }
+            }
 
-            Futures.addCallback(executeAsyncRead(tenantId, stmt), new FutureCallback<TbResultSet>() {
-                @Override
-                public void onSuccess(@Nullable TbResultSet result) {
-                    if (result == null) {
-                        cursor.addData(convertResultToTsKvEntryList(Collections.emptyList()));
-                        findAllAsyncSequentiallyWithLimit(tenantId, cursor, resultFuture);
-                    } else {
-                        Futures.addCallback(result.allRows(readResultsProcessingExecutor), new FutureCallback<List<Row>>() {
-
-                            @Override
-                            public void onSuccess(@Nullable List<Row> result) {
-                                cursor.addData(convertResultToTsKvEntryList(result == null ? Collections.emptyList() : result));
-                                findAllAsyncSequentiallyWithLimit(tenantId, cursor, resultFuture);
-                            }
-
-                            @Override
-                            public void onFailure(Throwable t) {
-                                log.error("[{}][{}] Failed to fetch data for query {}-{}", stmt, t);
-                            }
-                        }, readResultsProcessingExecutor);
+            @Override
+            public void onFailure(Throwable t) {
+                log.error("[{}][{}] Failed to fetch data for key {}", cursor.getEntityType(), cursor.getEntityId(), cursor.getKey(), t);
+                pending.forEach(future -> future.cancel(false));
+                resultFuture.setException(t);
+            }
+        }, readResultsProcessingExecutor);
+    }
 
+    private ListenableFuture<List<TsKvEntry>> fetchPartitionWithLimit(TenantId tenantId, TsKvQueryCursor cursor, long partition) {
+        PreparedStatement proto = getFetchStmt(Aggregation.NONE, cursor.getOrderBy());
+        BoundStatementBuilder stmtBuilder = new BoundStatementBuilder(proto.bind());
 
-                    }
-                }
+        stmtBuilder.setString(0, cursor.getEntityType());
+        stmtBuilder.setUuid(1, cursor.getEntityId());
+        stmtBuilder.setString(2, cursor.getKey());
+        stmtBuilder.setLong(3, partition);
+        stmtBuilder.setLong(4, cursor.getStartTs());
+        stmtBuilder.setLong(5, cursor.getEndTs());
+        stmtBuilder.setInt(6, cursor.getCurrentLimit());
 
-                @Override
-                public void onFailure(Throwable t) {
-                    log.error("[{}][{}] Failed to fetch data for query {}-{}", stmt, t);
-                }
-            }, readResultsProcessingExecutor);
-        }
+        BoundStatement stmt = stmtBuilder.build();
+        log.trace("Fetching data for partition [{}] for entityType {} and entityId {}", partition, cursor.getEntityType(), cursor.getEntityId());
+        return Futures.transformAsync(executeAsyncRead(tenantId, stmt), result -> {
+            if (result == null) {
+                return Futures.immediateFuture(Collections.emptyList());
+            }
+            return Futures.transform(result.allRows(readResultsProcessingExecutor), this::convertResultToTsKvEntryList, readResultsProcessingExecutor);
+        }, readResultsProcessingExecutor);
     }
 
     private ListenableFuture<Optional<TsKvEntry>> findAndAggregateAsync(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, long minPartition, long maxPartition) {
@@ -495,14 +558,19 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
 
     private class CacheCallback<Void> implements FutureCallback<Void> {
         private final CassandraPartitionCacheKey key;
+        private final boolean filtered;
 
-        private CacheCallback(CassandraPartitionCacheKey key) {
+        private CacheCallback(CassandraPartitionCacheKey key, boolean filtered) {
             this.key = key;
+            this.filtered = filtered;
         }
 
         @Override
         public void onSuccess(Void result) {
             cassandraTsPartitionsCache.put(key);
+            if (filtered) {
+                cassandraTsPartitionsFilter.put(key);
+            }
         }
 
         @Override
@@ -745,10 +813,42 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
     }
 
     /**
-     * //     * Select existing partitions from the table
-     * //     * <code>{@link ModelConstants#TS_KV_PARTITIONS_CF}</code> for the given entity
-     * //
+     * Loads the keys of the current partition from the table <code>{@link ModelConstants#TS_KV_PARTITIONS_CF}</code>.
+     * The query scans the whole table, so the warm-up is disabled by default and runs on its own thread.
      */
+    private void warmUpPartitionsFilter() {
+        long partition = toPartitionTs(System.currentTimeMillis());
+        log.info("Going to warm up the partitions filter with the keys of partition {}", partition);
+        try {
+            Statement<?> stmt = QueryBuilder.selectFrom(ModelConstants.TS_KV_PARTITIONS_CF)
+                    .columns(ModelConstants.ENTITY_TYPE_COLUMN, ModelConstants.ENTITY_ID_COLUMN, ModelConstants.KEY_COLUMN)
+                    .whereColumn(ModelConstants.PARTITION_COLUMN).isEqualTo(literal(partition))
+                    .allowFiltering()
+                    .build();
+            long count = 0;
+            AsyncResultSet rs = executeRead(TenantId.SYS_TENANT_ID, stmt);
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    log.info("Partitions filter warm up is interrupted after {} keys", count);
+                    return;
+                }
+                for (Row row : rs.currentPage()) {
+                    EntityId entityId = EntityIdFactory.getByTypeAndUuid(row.getString(ModelConstants.ENTITY_TYPE_COLUMN), row.getUuid(ModelConstants.ENTITY_ID_COLUMN));
+                    cassandraTsPartitionsFilter.put(new CassandraPartitionCacheKey(entityId, row.getString(ModelConstants.KEY_COLUMN), partition));
+                    count++;
+                }
+                if (!rs.hasMorePages()) {
+                    break;
+                }
+                stmt = stmt.setPagingState(rs.getExecutionInfo().getPagingState());
+                rs = executeRead(TenantId.SYS_TENANT_ID, stmt);
+            }
+            log.info("Partitions filter is warmed up with {} keys, expected false positive probability {}", count, cassandraTsPartitionsFilter.getExpectedFpp(partition));
+        } catch (Exception e) {
+            log.warn("Failed to warm up the partitions filter", e);
+        }
+    }
+
     private TbResultSetFuture fetchPartitions(TenantId tenantId, EntityId entityId, String key, long minPartition, long maxPartition) {
         Select select = QueryBuilder.selectFrom(ModelConstants.TS_KV_PARTITIONS_CF).column(ModelConstants.PARTITION_COLUMN)
                 .whereColumn(ModelConstants.ENTITY_TYPE_COLUMN).isEqualTo(literal(entityId.getEntityType().name()))
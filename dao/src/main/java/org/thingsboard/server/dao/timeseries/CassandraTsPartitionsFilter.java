@@ -0,0 +1,120 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Compact index of the entity keys that are already stored in the ts_kv_partitions_cf table.
+ * Keeps a scalable Bloom filter for each of the latest partitions: once a filter reaches the expected
+ * number of insertions, the next one is chained with a twice lower false positive probability,
+ * so the total false positive rate stays below the configured one.
+ */
+@Slf4j
+public class CassandraTsPartitionsFilter {
+
+    private static final Funnel<CassandraPartitionCacheKey> KEY_FUNNEL = (key, into) -> into
+            .putLong(key.getEntityId().getId().getMostSignificantBits())
+            .putLong(key.getEntityId().getId().getLeastSignificantBits())
+            .putString(key.getKey(), StandardCharsets.UTF_8);
+
+    private final long expectedInsertions;
+    private final double fpp;
+    private final int maxPartitions;
+
+    private final ConcurrentNavigableMap<Long, List<BloomFilter<CassandraPartitionCacheKey>>> filters = new ConcurrentSkipListMap<>();
+
+    public CassandraTsPartitionsFilter(long expectedInsertions, double fpp, int maxPartitions) {
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.maxPartitions = maxPartitions;
+    }
+
+    public boolean mightContain(CassandraPartitionCacheKey key) {
+        List<BloomFilter<CassandraPartitionCacheKey>> partitionFilters = filters.get(key.getPartition());
+        if (partitionFilters != null) {
+            for (BloomFilter<CassandraPartitionCacheKey> filter : partitionFilters) {
+                if (filter.mightContain(key)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public void put(CassandraPartitionCacheKey key) {
+        List<BloomFilter<CassandraPartitionCacheKey>> partitionFilters = filters.get(key.getPartition());
+        if (partitionFilters == null) {
+            partitionFilters = createPartitionFilters(key.getPartition());
+            if (partitionFilters == null) {
+                return;
+            }
+        }
+        BloomFilter<CassandraPartitionCacheKey> filter = partitionFilters.get(partitionFilters.size() - 1);
+        if (filter.approximateElementCount() >= expectedInsertions) {
+            synchronized (partitionFilters) {
+                filter = partitionFilters.get(partitionFilters.size() - 1);
+                if (filter.approximateElementCount() >= expectedInsertions) {
+                    filter = BloomFilter.create(KEY_FUNNEL, expectedInsertions, fpp / (1L << Math.min(partitionFilters.size() + 1, 62)));
+                    partitionFilters.add(filter);
+                    log.debug("[{}] Partitions filter is scaled to {} stages", key.getPartition(), partitionFilters.size());
+                }
+            }
+        }
+        filter.put(key);
+    }
+
+    public double getExpectedFpp(long partition) {
+        List<BloomFilter<CassandraPartitionCacheKey>> partitionFilters = filters.get(partition);
+        return partitionFilters == null ? 0.0 : partitionFilters.stream().mapToDouble(BloomFilter::expectedFpp).sum();
+    }
+
+    public long getApproximateElementCount(long partition) {
+        List<BloomFilter<CassandraPartitionCacheKey>> partitionFilters = filters.get(partition);
+        return partitionFilters == null ? 0 : partitionFilters.stream().mapToLong(BloomFilter::approximateElementCount).sum();
+    }
+
+    private synchronized List<BloomFilter<CassandraPartitionCacheKey>> createPartitionFilters(long partition) {
+        List<BloomFilter<CassandraPartitionCacheKey>> partitionFilters = filters.get(partition);
+        if (partitionFilters != null) {
+            return partitionFilters;
+        }
+        if (filters.size() >= maxPartitions && partition < filters.firstKey()) {
+            // late data of a partition that is not tracked anymore
+            return null;
+        }
+        partitionFilters = new CopyOnWriteArrayList<>();
+        partitionFilters.add(BloomFilter.create(KEY_FUNNEL, expectedInsertions, fpp / 2));
+        filters.put(partition, partitionFilters);
+        while (filters.size() > maxPartitions) {
+            Map.Entry<Long, List<BloomFilter<CassandraPartitionCacheKey>>> retired = filters.pollFirstEntry();
+            log.info("[{}] Partitions filter is retired with approximately {} keys and expected false positive probability {}",
+                    retired.getKey(), retired.getValue().stream().mapToLong(BloomFilter::approximateElementCount).sum(),
+                    retired.getValue().stream().mapToDouble(BloomFilter::expectedFpp).sum());
+        }
+        return partitionFilters;
+    }
+
+}
@@ -20,7 +20,7 @@ import lombok.Data;
 @Data
 public class PsqlPartition {
 
-    private static final String TABLE_REGEX = "ts_kv_";
+    public static final String TABLE_REGEX = "ts_kv_";
 
     private long start;
     private long end;
@@ -71,6 +71,10 @@ public class TsKvQueryCursor extends QueryCursor {
     }
 
     public void addData(List<TsKvEntry> newData) {
+        // partitions fetched ahead were queried with the limit of their launch time
+        if (newData.size() > currentLimit) {
+            newData = newData.subList(0, Math.max(currentLimit, 0));
+        }
         currentLimit -= newData.size();
         data.addAll(newData);
     }
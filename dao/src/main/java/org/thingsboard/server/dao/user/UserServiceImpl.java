@@ -23,6 +23,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.security.authentication.DisabledException;
@@ -56,6 +57,7 @@ import org.thingsboard.server.dao.tenant.TenantDao;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.thingsboard.server.common.data.CacheConstants.ENTITY_NAME_CACHE;
 import static org.thingsboard.server.dao.service.Validator.validateId;
 import static org.thingsboard.server.dao.service.Validator.validatePageLink;
 import static org.thingsboard.server.dao.service.Validator.validateString;
@@ -124,6 +126,7 @@ public class UserServiceImpl extends AbstractEntityService implements UserServic
         return userDao.findByIdAsync(tenantId, userId.getId());
     }
 
+    @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#user.id", condition = "#user.id != null")
     @Override
     public User saveUser(User user) {
         log.trace("Executing saveUser [{}]", user);
@@ -225,6 +228,7 @@ public class UserServiceImpl extends AbstractEntityService implements UserServic
         return saveUserCredentialsAndPasswordHistory(tenantId, userCredentials);
     }
 
+    @CacheEvict(cacheNames = ENTITY_NAME_CACHE, key = "#userId")
     @Override
     public void deleteUser(TenantId tenantId, UserId userId) {
         log.trace("Executing deleteUser [{}]", userId);
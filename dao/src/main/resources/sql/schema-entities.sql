@@ -178,6 +178,18 @@ CREATE TABLE IF NOT EXISTS rule_node_state (
     CONSTRAINT fk_rule_node_state_node_id FOREIGN KEY (rule_node_id) REFERENCES rule_node(id) ON DELETE CASCADE
 );
 
+CREATE TABLE IF NOT EXISTS rule_node_delayed_msg (
+    id uuid NOT NULL CONSTRAINT rule_node_delayed_msg_pkey PRIMARY KEY,
+    created_time bigint NOT NULL,
+    rule_node_id uuid NOT NULL,
+    entity_type varchar(32) NOT NULL,
+    entity_id uuid NOT NULL,
+    queue_partition int NOT NULL,
+    fire_ts bigint NOT NULL,
+    msg_data bytea NOT NULL,
+    CONSTRAINT fk_rule_node_delayed_msg_node_id FOREIGN KEY (rule_node_id) REFERENCES rule_node(id) ON DELETE CASCADE
+);
+
 CREATE TABLE IF NOT EXISTS ota_package (
     id uuid NOT NULL CONSTRAINT ota_package_pkey PRIMARY KEY,
     created_time bigint NOT NULL,
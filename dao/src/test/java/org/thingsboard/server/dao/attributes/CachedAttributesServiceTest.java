@@ -15,15 +15,52 @@
  */
 package org.thingsboard.server.dao.attributes;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import io.micrometer.core.instrument.Counter;
 import org.junit.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.cache.TbCaffeineCache;
+import org.thingsboard.server.common.data.DataConstants;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+import org.thingsboard.server.common.data.kv.BaseAttributeKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.cache.CacheExecutorService;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.willCallRealMethod;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.thingsboard.server.common.data.CacheConstants.ATTRIBUTES_CACHE;
 
 public class CachedAttributesServiceTest {
 
@@ -60,4 +97,91 @@ public class CachedAttributesServiceTest {
 
     }
 
+    @Test
+    public void givenPartiallyCachedKeys_whenFind_thenMissingKeysFetchedWithSingleQueryAndCached() throws Exception {
+        AttributesDao attributesDao = mock(AttributesDao.class);
+        CachedAttributesService service = createService(attributesDao);
+        EntityId entityId = new DeviceId(UUID.randomUUID());
+        List<Set<String>> dbQueries = new ArrayList<>();
+        when(attributesDao.find(any(), eq(entityId), eq(DataConstants.SERVER_SCOPE), anyCollection())).thenAnswer(invocation -> {
+            Collection<String> keys = invocation.getArgument(3);
+            dbQueries.add(new HashSet<>(keys));
+            return Futures.immediateFuture(keys.stream().filter(key -> !key.equals("absent")).map(key -> attribute(key, 1L)).collect(Collectors.toList()));
+        });
+
+        assertEquals(2, service.find(null, entityId, DataConstants.SERVER_SCOPE, Arrays.asList("a", "b")).get().size());
+        List<AttributeKvEntry> result = service.find(null, entityId, DataConstants.SERVER_SCOPE, Arrays.asList("a", "b", "c", "absent")).get();
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), result.stream().map(AttributeKvEntry::getKey).collect(Collectors.toSet()));
+
+        // the absent key is cached as well
+        assertEquals(3, service.find(null, entityId, DataConstants.SERVER_SCOPE, Arrays.asList("a", "b", "c", "absent")).get().size());
+        assertEquals(Arrays.asList(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(Arrays.asList("c", "absent"))), dbQueries);
+    }
+
+    @Test
+    public void givenSavedAttributes_whenFind_thenReturnedFromCache() throws Exception {
+        AttributesDao attributesDao = mock(AttributesDao.class);
+        CachedAttributesService service = createService(attributesDao);
+        EntityId entityId = new DeviceId(UUID.randomUUID());
+        when(attributesDao.saveAll(any(), eq(entityId), eq(DataConstants.SERVER_SCOPE), anyList())).thenReturn(Futures.immediateFuture(null));
+
+        assertEquals(2, service.save(null, entityId, DataConstants.SERVER_SCOPE, Arrays.asList(attribute("a", 1L), attribute("b", 1L))).get().size());
+        verify(attributesDao, times(1)).saveAll(any(), eq(entityId), eq(DataConstants.SERVER_SCOPE), anyList());
+
+        Optional<AttributeKvEntry> cached = service.find(null, entityId, DataConstants.SERVER_SCOPE, "a").get();
+        assertEquals(attribute("a", 1L), cached.get());
+        assertEquals(2, service.find(null, entityId, DataConstants.SERVER_SCOPE, Arrays.asList("a", "b")).get().size());
+        verify(attributesDao, never()).find(any(), any(), any(), any(String.class));
+        verify(attributesDao, never()).find(any(), any(), any(), anyCollection());
+    }
+
+    @Test
+    public void givenSaveCompletedAfterNewerSave_whenFind_thenNewerValueIsCached() throws Exception {
+        AttributesDao attributesDao = mock(AttributesDao.class);
+        CachedAttributesService service = createService(attributesDao);
+        EntityId entityId = new DeviceId(UUID.randomUUID());
+        SettableFuture<Void> olderSave = SettableFuture.create();
+        when(attributesDao.saveAll(any(), eq(entityId), eq(DataConstants.SERVER_SCOPE), anyList()))
+                .thenReturn(olderSave)
+                .thenReturn(Futures.immediateFuture(null));
+
+        service.save(null, entityId, DataConstants.SERVER_SCOPE, Collections.singletonList(attribute("a", 1L)));
+        service.save(null, entityId, DataConstants.SERVER_SCOPE, Collections.singletonList(attribute("a", 2L)));
+        olderSave.set(null);
+
+        assertEquals(attribute("a", 2L), service.find(null, entityId, DataConstants.SERVER_SCOPE, "a").get().get());
+    }
+
+    @Test
+    public void givenReadCompletedAfterSave_whenFind_thenSavedValueIsNotOverwritten() throws Exception {
+        AttributesDao attributesDao = mock(AttributesDao.class);
+        CachedAttributesService service = createService(attributesDao);
+        EntityId entityId = new DeviceId(UUID.randomUUID());
+        SettableFuture<List<AttributeKvEntry>> staleRead = SettableFuture.create();
+        when(attributesDao.find(any(), eq(entityId), eq(DataConstants.SERVER_SCOPE), anyCollection())).thenReturn(staleRead);
+        when(attributesDao.saveAll(any(), eq(entityId), eq(DataConstants.SERVER_SCOPE), anyList())).thenReturn(Futures.immediateFuture(null));
+
+        ListenableFuture<List<AttributeKvEntry>> found = service.find(null, entityId, DataConstants.SERVER_SCOPE, Collections.singletonList("a"));
+        service.save(null, entityId, DataConstants.SERVER_SCOPE, Collections.singletonList(attribute("a", 2L)));
+        staleRead.set(Collections.singletonList(attribute("a", 1L)));
+        assertEquals(Collections.singletonList(attribute("a", 1L)), found.get());
+
+        assertEquals(attribute("a", 2L), service.find(null, entityId, DataConstants.SERVER_SCOPE, "a").get().get());
+    }
+
+    private CachedAttributesService createService(AttributesDao attributesDao) {
+        CacheManager cacheManager = mock(CacheManager.class);
+        when(cacheManager.getCache(ATTRIBUTES_CACHE)).thenReturn(new TbCaffeineCache(ATTRIBUTES_CACHE, Caffeine.newBuilder().build()));
+        StatsFactory statsFactory = mock(StatsFactory.class, invocation -> new DefaultCounter(new AtomicInteger(), mock(Counter.class)));
+        CachedAttributesService service = new CachedAttributesService(attributesDao, new AttributesCacheWrapper(cacheManager),
+                statsFactory, mock(CacheExecutorService.class));
+        ReflectionTestUtils.setField(service, "cacheType", CachedAttributesService.LOCAL_CACHE_TYPE);
+        service.init();
+        return service;
+    }
+
+    private AttributeKvEntry attribute(String key, long ts) {
+        return new BaseAttributeKvEntry(new LongDataEntry(key, ts), ts);
+    }
+
 }
\ No newline at end of file
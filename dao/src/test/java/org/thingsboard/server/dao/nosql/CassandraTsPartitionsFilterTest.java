@@ -0,0 +1,77 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.nosql;
+
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.dao.timeseries.CassandraPartitionCacheKey;
+import org.thingsboard.server.dao.timeseries.CassandraTsPartitionsFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CassandraTsPartitionsFilterTest {
+
+    private static final int EXPECTED_INSERTIONS = 10000;
+    private static final double FPP = 0.001;
+
+    @Test
+    public void testFilterScalesAboveExpectedInsertions() {
+        CassandraTsPartitionsFilter filter = new CassandraTsPartitionsFilter(EXPECTED_INSERTIONS, FPP, 2);
+        List<CassandraPartitionCacheKey> keys = newKeys(5 * EXPECTED_INSERTIONS, 1L);
+        keys.forEach(filter::put);
+
+        keys.forEach(key -> assertTrue(filter.mightContain(key)));
+        assertTrue(filter.getExpectedFpp(1L) <= FPP);
+
+        long falsePositives = newKeys(EXPECTED_INSERTIONS * 10, 1L).stream().filter(filter::mightContain).count();
+        assertTrue("Too many false positives: " + falsePositives, falsePositives < EXPECTED_INSERTIONS * 10 * FPP * 3);
+    }
+
+    @Test
+    public void testOnlyLatestPartitionsAreTracked() {
+        CassandraTsPartitionsFilter filter = new CassandraTsPartitionsFilter(EXPECTED_INSERTIONS, FPP, 2);
+        CassandraPartitionCacheKey first = newKeys(1, 1L).get(0);
+        CassandraPartitionCacheKey second = newKeys(1, 2L).get(0);
+        CassandraPartitionCacheKey third = newKeys(1, 3L).get(0);
+        filter.put(first);
+        filter.put(second);
+        filter.put(third);
+
+        assertFalse(filter.mightContain(first));
+        assertTrue(filter.mightContain(second));
+        assertTrue(filter.mightContain(third));
+
+        // late data of the retired partition is not tracked
+        filter.put(first);
+        assertFalse(filter.mightContain(first));
+        assertEquals(1, filter.getApproximateElementCount(3L));
+    }
+
+    private List<CassandraPartitionCacheKey> newKeys(int count, long partition) {
+        List<CassandraPartitionCacheKey> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(new CassandraPartitionCacheKey(new DeviceId(UUID.randomUUID()), "key" + (i % 10), partition));
+        }
+        return keys;
+    }
+
+}
@@ -32,6 +32,7 @@ import org.thingsboard.server.common.data.alarm.AlarmStatus;
 import org.thingsboard.server.common.data.asset.Asset;
 import org.thingsboard.server.common.data.id.AssetId;
 import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.SortOrder;
@@ -50,8 +51,10 @@ import org.thingsboard.common.util.JacksonUtil;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
 public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
 
@@ -111,6 +114,41 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
         Assert.assertEquals(created, fetched);
     }
 
+    @Test
+    public void testAlarmPropagationFollowsRelationChanges() throws ExecutionException, InterruptedException {
+        AssetId rootId = new AssetId(Uuids.timeBased());
+        AssetId parentId = new AssetId(Uuids.timeBased());
+        AssetId childId = new AssetId(Uuids.timeBased());
+
+        Assert.assertTrue(relationService.saveRelationAsync(tenantId, new EntityRelation(parentId, childId, EntityRelation.CONTAINS_TYPE)).get());
+
+        AlarmOperationResult result = createPropagatedAlarm(childId, "ALARM_1", null);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(parentId, childId)), new HashSet<>(result.getPropagatedEntitiesList()));
+
+        Assert.assertTrue(relationService.saveRelation(tenantId, new EntityRelation(rootId, parentId, EntityRelation.MANAGES_TYPE)));
+        result = createPropagatedAlarm(childId, "ALARM_2", null);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(rootId, parentId, childId)), new HashSet<>(result.getPropagatedEntitiesList()));
+        Assert.assertEquals(2, relationService.findByTo(tenantId, result.getAlarm().getId(), RelationTypeGroup.ALARM).size());
+
+        result = createPropagatedAlarm(childId, "ALARM_3", Collections.singletonList(EntityRelation.CONTAINS_TYPE));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(parentId, childId)), new HashSet<>(result.getPropagatedEntitiesList()));
+
+        Assert.assertTrue(relationService.deleteRelation(tenantId, new EntityRelation(parentId, childId, EntityRelation.CONTAINS_TYPE)));
+        result = createPropagatedAlarm(childId, "ALARM_4", null);
+        Assert.assertEquals(Collections.singletonList(childId), result.getPropagatedEntitiesList());
+        Assert.assertTrue(relationService.findByTo(tenantId, result.getAlarm().getId(), RelationTypeGroup.ALARM).isEmpty());
+    }
+
+    private AlarmOperationResult createPropagatedAlarm(EntityId originator, String type, List<String> propagateRelationTypes) {
+        Alarm alarm = Alarm.builder().tenantId(tenantId).originator(originator)
+                .type(type)
+                .propagate(true)
+                .propagateRelationTypes(propagateRelationTypes)
+                .severity(AlarmSeverity.CRITICAL).status(AlarmStatus.ACTIVE_UNACK)
+                .startTs(System.currentTimeMillis()).build();
+        return alarmService.createOrUpdateAlarm(alarm);
+    }
+
     @Test
     public void testFindAlarm() throws ExecutionException, InterruptedException {
         AssetId parentId = new AssetId(Uuids.timeBased());
@@ -270,9 +308,11 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
         PageData<AlarmData> customerAlarms = alarmService.findAlarmDataByQueryForEntities(tenantId, customer.getId(), toQuery(pageLink), Collections.singletonList(customerDevice.getId()));
         Assert.assertEquals(1, customerAlarms.getData().size());
         Assert.assertEquals(deviceAlarm, customerAlarms.getData().get(0));
+        Assert.assertEquals("TestCustomerDevice", customerAlarms.getData().get(0).getOriginatorName());
 
         PageData<AlarmInfo> alarms = alarmService.findAlarms(tenantId, AlarmQuery.builder()
                 .affectedEntityId(tenantDevice.getId())
+                .fetchOriginator(true)
                 .status(AlarmStatus.ACTIVE_UNACK).pageLink(
                         new TimePageLink(10, 0, "",
                                 new SortOrder("createdTime", SortOrder.Direction.DESC), 0L, System.currentTimeMillis())
@@ -280,6 +320,13 @@ public abstract class BaseAlarmServiceTest extends AbstractServiceTest {
         Assert.assertNotNull(alarms.getData());
         Assert.assertEquals(1, alarms.getData().size());
         Assert.assertEquals(tenantAlarm, alarms.getData().get(0));
+        Assert.assertEquals("TestTenantDevice", alarms.getData().get(0).getOriginatorName());
+
+        tenantDevice.setName("RenamedTenantDevice");
+        deviceService.saveDevice(tenantDevice);
+        tenantAlarms = alarmService.findAlarmDataByQueryForEntities(tenantId, new CustomerId(CustomerId.NULL_UUID), toQuery(pageLink), Arrays.asList(tenantDevice.getId(), customerDevice.getId()));
+        Assert.assertEquals(new HashSet<>(Arrays.asList("RenamedTenantDevice", "TestCustomerDevice")),
+                tenantAlarms.getData().stream().map(AlarmData::getOriginatorName).collect(Collectors.toSet()));
     }
 
     @Test
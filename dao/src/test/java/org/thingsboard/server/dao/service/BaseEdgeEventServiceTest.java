@@ -16,6 +16,8 @@
 package org.thingsboard.server.dao.service;
 
 import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.junit.Assert;
 import org.junit.Test;
 import org.thingsboard.server.common.data.edge.EdgeEvent;
@@ -121,6 +123,57 @@ public abstract class BaseEdgeEventServiceTest extends AbstractServiceTest {
         Assert.assertTrue(edgeEventsWithoutTsUpdate.getData().isEmpty());
     }
 
+    @Test
+    public void coalesceTimeseriesUpdatesOfTheSameEntity() throws Exception {
+        EdgeId edgeId = new EdgeId(Uuids.timeBased());
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        TenantId tenantId = new TenantId(Uuids.timeBased());
+
+        ListenableFuture<EdgeEvent> first = edgeEventService.saveAsync(generateTsEdgeEvent(tenantId, edgeId, deviceId, "temperature", 42));
+        ListenableFuture<EdgeEvent> second = edgeEventService.saveAsync(generateTsEdgeEvent(tenantId, edgeId, deviceId, "humidity", 73));
+        ListenableFuture<EdgeEvent> third = edgeEventService.saveAsync(generateTsEdgeEvent(tenantId, edgeId, deviceId, "temperature", 43));
+        EdgeEvent added = edgeEventService.saveAsync(generateEdgeEvent(tenantId, edgeId, deviceId, EdgeEventActionType.ADDED)).get();
+        Assert.assertNotNull(added);
+        Assert.assertEquals(first.get().getUuidId(), second.get().getUuidId());
+        Assert.assertEquals(first.get().getUuidId(), third.get().getUuidId());
+
+        PageData<EdgeEvent> edgeEvents = edgeEventService.findEdgeEvents(tenantId, edgeId,
+                new TimePageLink(10, 0, null, new SortOrder("createdTime", SortOrder.Direction.ASC)), true);
+        Assert.assertEquals(2, edgeEvents.getData().size());
+        EdgeEvent coalesced = edgeEvents.getData().get(0);
+        Assert.assertEquals(EdgeEventActionType.TIMESERIES_UPDATED, coalesced.getAction());
+        Assert.assertEquals(43, coalesced.getBody().get("data").get("temperature").asInt());
+        Assert.assertEquals(73, coalesced.getBody().get("data").get("humidity").asInt());
+        Assert.assertEquals(EdgeEventActionType.ADDED, edgeEvents.getData().get(1).getAction());
+    }
+
+    @Test
+    public void coalescedEventsAreSavedBeforeLaterEventsOfTheSameEdge() throws Exception {
+        EdgeId edgeId = new EdgeId(Uuids.timeBased());
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        DeviceId otherDeviceId = new DeviceId(Uuids.timeBased());
+        TenantId tenantId = new TenantId(Uuids.timeBased());
+
+        ListenableFuture<EdgeEvent> telemetry = edgeEventService.saveAsync(generateTsEdgeEvent(tenantId, edgeId, deviceId, "temperature", 42));
+        EdgeEvent added = edgeEventService.saveAsync(generateEdgeEvent(tenantId, edgeId, otherDeviceId, EdgeEventActionType.ADDED)).get();
+        Assert.assertTrue(telemetry.get().getCreatedTime() <= added.getCreatedTime());
+
+        PageData<EdgeEvent> edgeEvents = edgeEventService.findEdgeEvents(tenantId, edgeId,
+                new TimePageLink(10, 0, null, new SortOrder("createdTime", SortOrder.Direction.ASC)), true);
+        Assert.assertEquals(2, edgeEvents.getData().size());
+        Assert.assertEquals(EdgeEventActionType.TIMESERIES_UPDATED, edgeEvents.getData().get(0).getAction());
+        Assert.assertEquals(EdgeEventActionType.ADDED, edgeEvents.getData().get(1).getAction());
+    }
+
+    private EdgeEvent generateTsEdgeEvent(TenantId tenantId, EdgeId edgeId, EntityId entityId, String key, int value) throws IOException {
+        EdgeEvent edgeEvent = generateEdgeEvent(tenantId, edgeId, entityId, EdgeEventActionType.TIMESERIES_UPDATED);
+        ObjectNode body = mapper.createObjectNode();
+        body.put("ts", 1000L);
+        body.putObject("data").put(key, value);
+        edgeEvent.setBody(body);
+        return edgeEvent;
+    }
+
     private EdgeEvent saveEdgeEventWithProvidedTime(long time, EdgeId edgeId, EntityId entityId, TenantId tenantId) throws Exception {
         EdgeEvent edgeEvent = generateEdgeEvent(tenantId, edgeId, entityId, EdgeEventActionType.ADDED);
         edgeEvent.setId(new EdgeEventId(Uuids.startOf(time)));
@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.dao.service;
 
+import com.datastax.oss.driver.api.core.uuid.Uuids;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -25,6 +26,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.thingsboard.server.common.data.Customer;
 import org.thingsboard.server.common.data.DataConstants;
 import org.thingsboard.server.common.data.Device;
 import org.thingsboard.server.common.data.EntityType;
@@ -51,6 +53,7 @@ import org.thingsboard.server.common.data.query.EdgeSearchQueryFilter;
 import org.thingsboard.server.common.data.query.EdgeTypeFilter;
 import org.thingsboard.server.common.data.query.EntityCountQuery;
 import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityDataPageData;
 import org.thingsboard.server.common.data.query.EntityDataPageLink;
 import org.thingsboard.server.common.data.query.EntityDataQuery;
 import org.thingsboard.server.common.data.query.EntityDataSortOrder;
@@ -68,6 +71,7 @@ import org.thingsboard.server.common.data.relation.EntitySearchDirection;
 import org.thingsboard.server.common.data.relation.RelationEntityTypeFilter;
 import org.thingsboard.server.common.data.relation.RelationTypeGroup;
 import org.thingsboard.server.dao.attributes.AttributesService;
+import org.thingsboard.server.dao.exception.IncorrectParameterException;
 import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
 import org.thingsboard.server.dao.timeseries.TimeseriesService;
 
@@ -76,6 +80,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
@@ -633,6 +638,118 @@ public abstract class BaseEntityServiceTest extends AbstractServiceTest {
         deviceService.deleteDevicesByTenantId(tenantId);
     }
 
+    @Test
+    public void testFetchEntityNames() {
+        Device device = new Device();
+        device.setTenantId(tenantId);
+        device.setName("Device A");
+        device.setType("default");
+        device = deviceService.saveDevice(device);
+
+        Asset asset = new Asset();
+        asset.setTenantId(tenantId);
+        asset.setName("Asset A");
+        asset.setType("default");
+        asset = assetService.saveAsset(asset);
+
+        Customer customer = new Customer();
+        customer.setTenantId(tenantId);
+        customer.setTitle("Customer A");
+        customer = customerService.saveCustomer(customer);
+
+        DeviceId missingDeviceId = new DeviceId(Uuids.timeBased());
+        List<EntityId> entityIds = Arrays.asList(device.getId(), asset.getId(), customer.getId(), missingDeviceId, tenantId);
+        Map<EntityId, String> names = entityService.fetchEntityNames(tenantId, entityIds);
+        Assert.assertEquals(4, names.size());
+        Assert.assertEquals("Device A", names.get(device.getId()));
+        Assert.assertEquals("Asset A", names.get(asset.getId()));
+        Assert.assertEquals("Customer A", names.get(customer.getId()));
+        Assert.assertEquals(tenantService.findTenantById(tenantId).getName(), names.get(tenantId));
+        Assert.assertFalse(names.containsKey(missingDeviceId));
+
+        // the cached names are evicted on rename
+        device.setName("Device B");
+        deviceService.saveDevice(device);
+        customer.setTitle("Customer B");
+        customerService.saveCustomer(customer);
+        names = entityService.fetchEntityNames(tenantId, entityIds);
+        Assert.assertEquals("Device B", names.get(device.getId()));
+        Assert.assertEquals("Asset A", names.get(asset.getId()));
+        Assert.assertEquals("Customer B", names.get(customer.getId()));
+
+        deviceService.deleteDevice(tenantId, device.getId());
+        Assert.assertFalse(entityService.fetchEntityNames(tenantId, entityIds).containsKey(device.getId()));
+        Assert.assertTrue(entityService.fetchEntityNames(tenantId, Collections.emptyList()).isEmpty());
+
+        assetService.deleteAsset(tenantId, asset.getId());
+        customerService.deleteCustomer(tenantId, customer.getId());
+    }
+
+    @Test
+    public void testFindEntityDataByQueryWithPageCursor() throws InterruptedException {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 47; i++) {
+            Device device = new Device();
+            device.setTenantId(tenantId);
+            device.setName("Device" + i);
+            device.setType("default");
+            // duplicated labels and missing labels, so the entity id has to break the ties
+            device.setLabel(i % 5 == 0 ? null : "testLabel" + (i % 7));
+            devices.add(deviceService.saveDevice(device));
+        }
+
+        DeviceTypeFilter filter = new DeviceTypeFilter();
+        filter.setDeviceType("default");
+        filter.setDeviceNameFilter("");
+        List<EntityKey> entityFields = Arrays.asList(new EntityKey(EntityKeyType.ENTITY_FIELD, "name"),
+                new EntityKey(EntityKeyType.ENTITY_FIELD, "label"));
+
+        for (EntityDataSortOrder.Direction direction : EntityDataSortOrder.Direction.values()) {
+            EntityDataSortOrder sortOrder = new EntityDataSortOrder(new EntityKey(EntityKeyType.ENTITY_FIELD, "label"), direction);
+            EntityDataQuery query = new EntityDataQuery(filter, new EntityDataPageLink(10, 0, null, sortOrder), entityFields, null, null);
+
+            List<EntityData> offsetEntities = new ArrayList<>();
+            PageData<EntityData> data;
+            do {
+                data = entityService.findEntityDataByQuery(tenantId, new CustomerId(CustomerId.NULL_UUID), query);
+                offsetEntities.addAll(data.getData());
+                query = query.next();
+            } while (data.hasNext());
+            Assert.assertEquals(47, offsetEntities.size());
+
+            EntityDataPageLink pageLink = new EntityDataPageLink(10, 0, null, sortOrder);
+            List<EntityData> cursorEntities = new ArrayList<>();
+            while (true) {
+                data = entityService.findEntityDataByQuery(tenantId, new CustomerId(CustomerId.NULL_UUID),
+                        new EntityDataQuery(filter, pageLink, entityFields, null, null));
+                Assert.assertEquals(47, data.getTotalElements());
+                Assert.assertEquals(5, data.getTotalPages());
+                cursorEntities.addAll(data.getData());
+                if (!data.hasNext()) {
+                    break;
+                }
+                Assert.assertTrue(data instanceof EntityDataPageData);
+                pageLink = pageLink.nextPageLink(((EntityDataPageData) data).getNextPageCursor());
+            }
+            Assert.assertEquals(offsetEntities.stream().map(EntityData::getEntityId).collect(Collectors.toList()),
+                    cursorEntities.stream().map(EntityData::getEntityId).collect(Collectors.toList()));
+            Assert.assertEquals(47, cursorEntities.stream().map(EntityData::getEntityId).distinct().count());
+
+            // the cursor of one sort order can't be used to page through another one
+            EntityDataSortOrder nameSortOrder = new EntityDataSortOrder(new EntityKey(EntityKeyType.ENTITY_FIELD, "name"), direction);
+            EntityDataPageLink namePageLink = new EntityDataPageLink(10, 1, null, nameSortOrder, false, pageLink.getCursor());
+            try {
+                entityService.findEntityDataByQuery(tenantId, new CustomerId(CustomerId.NULL_UUID),
+                        new EntityDataQuery(filter, namePageLink, entityFields, null, null));
+                Assert.fail("Cursor of another sort order should be rejected!");
+            } catch (IncorrectParameterException e) {
+                Assert.assertTrue(e.getMessage().contains("cursor"));
+            }
+        }
+
+        deviceService.deleteDevicesByTenantId(tenantId);
+    }
+
     @Test
     public void testFindEntityDataByQuery_operationEqual_emptySearchQuery() {
         List<Device> devices = createMockDevices(10);
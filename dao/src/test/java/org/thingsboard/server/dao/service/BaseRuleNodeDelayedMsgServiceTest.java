@@ -0,0 +1,134 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.service;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.thingsboard.server.common.data.Tenant;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RuleNodeDelayedMsgId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.page.SortOrder;
+import org.thingsboard.server.common.data.page.TimePageLink;
+import org.thingsboard.server.common.data.rule.RuleChain;
+import org.thingsboard.server.common.data.rule.RuleChainMetaData;
+import org.thingsboard.server.common.data.rule.RuleNode;
+import org.thingsboard.server.common.data.rule.RuleNodeDelayedMsg;
+import org.thingsboard.server.dao.rule.RuleNodeDelayedMsgService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public abstract class BaseRuleNodeDelayedMsgServiceTest extends AbstractServiceTest {
+
+    private static final SortOrder FIRE_TS_SORT_ORDER = new SortOrder("fireTs", SortOrder.Direction.ASC);
+
+    @Autowired
+    private RuleNodeDelayedMsgService ruleNodeDelayedMsgService;
+
+    private TenantId tenantId;
+    private RuleNodeId ruleNodeId;
+
+    @Before
+    public void before() {
+        Tenant tenant = new Tenant();
+        tenant.setTitle("My tenant");
+        Tenant savedTenant = tenantService.saveTenant(tenant);
+        Assert.assertNotNull(savedTenant);
+        tenantId = savedTenant.getId();
+
+        RuleChain ruleChain = new RuleChain();
+        ruleChain.setName("My RuleChain");
+        ruleChain.setTenantId(tenantId);
+        RuleChain savedRuleChain = ruleChainService.saveRuleChain(ruleChain);
+
+        RuleNode ruleNode = new RuleNode();
+        ruleNode.setName("Delay Node");
+        ruleNode.setType("org.thingsboard.rule.engine.delay.TbMsgDelayNode");
+        ruleNode.setConfiguration(mapper.createObjectNode());
+        RuleChainMetaData ruleChainMetaData = new RuleChainMetaData();
+        ruleChainMetaData.setRuleChainId(savedRuleChain.getId());
+        ruleChainMetaData.setFirstNodeIndex(0);
+        ruleChainMetaData.setNodes(new ArrayList<>(Collections.singletonList(ruleNode)));
+        Assert.assertTrue(ruleChainService.saveRuleChainMetaData(tenantId, ruleChainMetaData));
+        ruleNodeId = ruleChainService.loadRuleChainMetaData(tenantId, savedRuleChain.getId()).getNodes().get(0).getId();
+    }
+
+    @After
+    public void after() {
+        tenantService.deleteTenant(tenantId);
+    }
+
+    @Test
+    public void testSaveFindByFireTsAndRemove() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        RuleNodeDelayedMsg early = ruleNodeDelayedMsgService.saveAsync(tenantId, newDelayedMsg(deviceId, 1, 2000)).get(10, TimeUnit.SECONDS);
+        RuleNodeDelayedMsg late = ruleNodeDelayedMsgService.saveAsync(tenantId, newDelayedMsg(deviceId, 1, 5000)).get(10, TimeUnit.SECONDS);
+        ruleNodeDelayedMsgService.saveAsync(tenantId, newDelayedMsg(deviceId, 1, 1000)).get(10, TimeUnit.SECONDS);
+
+        PageData<RuleNodeDelayedMsg> dueMsgs = findByRuleNodeId(Collections.singletonList(1), new TimePageLink(10, 0, null, FIRE_TS_SORT_ORDER, 1500L, 5000L));
+        Assert.assertEquals(2, dueMsgs.getData().size());
+        Assert.assertEquals(early.getId(), dueMsgs.getData().get(0).getId());
+        Assert.assertEquals(late.getId(), dueMsgs.getData().get(1).getId());
+        Assert.assertEquals(deviceId, dueMsgs.getData().get(0).getEntityId());
+        Assert.assertEquals(1, dueMsgs.getData().get(0).getPartition());
+        Assert.assertArrayEquals(new byte[]{2, 0, 0, 0}, dueMsgs.getData().get(0).getMsgData());
+
+        ruleNodeDelayedMsgService.removeByIdAsync(tenantId, early.getId()).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(2, findByRuleNodeId(Collections.singletonList(1), new TimePageLink(10)).getData().size());
+
+        ruleNodeDelayedMsgService.removeByRuleNodeIdAsync(tenantId, ruleNodeId).get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(findByRuleNodeId(Collections.singletonList(1), new TimePageLink(10)).getData().isEmpty());
+    }
+
+    @Test
+    public void testFindByPartitions() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        for (int partition = 0; partition < 4; partition++) {
+            ruleNodeDelayedMsgService.saveAsync(tenantId, newDelayedMsg(deviceId, partition, 1000)).get(10, TimeUnit.SECONDS);
+        }
+        PageData<RuleNodeDelayedMsg> msgs = findByRuleNodeId(Arrays.asList(1, 3), new TimePageLink(10));
+        Assert.assertEquals(2, msgs.getData().size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(1, 3)),
+                msgs.getData().stream().map(RuleNodeDelayedMsg::getPartition).collect(Collectors.toSet()));
+        Assert.assertTrue(findByRuleNodeId(Collections.emptyList(), new TimePageLink(10)).getData().isEmpty());
+    }
+
+    private PageData<RuleNodeDelayedMsg> findByRuleNodeId(List<Integer> partitions, TimePageLink pageLink) throws Exception {
+        return ruleNodeDelayedMsgService.findByRuleNodeIdAsync(tenantId, ruleNodeId, partitions, pageLink).get(10, TimeUnit.SECONDS);
+    }
+
+    private RuleNodeDelayedMsg newDelayedMsg(DeviceId deviceId, int partition, long fireTs) {
+        RuleNodeDelayedMsg delayedMsg = new RuleNodeDelayedMsg(new RuleNodeDelayedMsgId(Uuids.timeBased()));
+        delayedMsg.setRuleNodeId(ruleNodeId);
+        delayedMsg.setEntityId(deviceId);
+        delayedMsg.setPartition(partition);
+        delayedMsg.setFireTs(fireTs);
+        delayedMsg.setMsgData(new byte[]{(byte) (fireTs / 1000), 0, 0, 0});
+        return delayedMsg;
+    }
+}
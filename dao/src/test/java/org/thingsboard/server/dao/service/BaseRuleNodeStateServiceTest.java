@@ -0,0 +1,170 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.service;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.thingsboard.server.common.data.Tenant;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.page.PageLink;
+import org.thingsboard.server.common.data.rule.RuleChain;
+import org.thingsboard.server.common.data.rule.RuleChainMetaData;
+import org.thingsboard.server.common.data.rule.RuleNode;
+import org.thingsboard.server.common.data.rule.RuleNodeState;
+import org.thingsboard.server.dao.rule.RuleNodeStateService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public abstract class BaseRuleNodeStateServiceTest extends AbstractServiceTest {
+
+    @Autowired
+    private RuleNodeStateService ruleNodeStateService;
+
+    private TenantId tenantId;
+    private RuleNodeId ruleNodeId;
+
+    @Before
+    public void before() {
+        Tenant tenant = new Tenant();
+        tenant.setTitle("My tenant");
+        Tenant savedTenant = tenantService.saveTenant(tenant);
+        Assert.assertNotNull(savedTenant);
+        tenantId = savedTenant.getId();
+
+        RuleChain ruleChain = new RuleChain();
+        ruleChain.setName("My RuleChain");
+        ruleChain.setTenantId(tenantId);
+        RuleChain savedRuleChain = ruleChainService.saveRuleChain(ruleChain);
+
+        RuleNode ruleNode = new RuleNode();
+        ruleNode.setName("Device Profile Node");
+        ruleNode.setType("org.thingsboard.rule.engine.profile.TbDeviceProfileNode");
+        ruleNode.setConfiguration(mapper.createObjectNode());
+        RuleChainMetaData ruleChainMetaData = new RuleChainMetaData();
+        ruleChainMetaData.setRuleChainId(savedRuleChain.getId());
+        ruleChainMetaData.setFirstNodeIndex(0);
+        ruleChainMetaData.setNodes(new ArrayList<>(Collections.singletonList(ruleNode)));
+        Assert.assertTrue(ruleChainService.saveRuleChainMetaData(tenantId, ruleChainMetaData));
+        ruleNodeId = ruleChainService.loadRuleChainMetaData(tenantId, savedRuleChain.getId()).getNodes().get(0).getId();
+    }
+
+    @After
+    public void after() {
+        tenantService.deleteTenant(tenantId);
+    }
+
+    @Test
+    public void testSaveAsyncCoalescesUpdates() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        RuleNodeState state = newState(deviceId);
+        ListenableFuture<Void> future = null;
+        for (int i = 0; i < 100; i++) {
+            state.setStateData("{\"version\":" + i + "}");
+            future = ruleNodeStateService.saveAsync(tenantId, state);
+        }
+        Assert.assertEquals("{\"version\":99}", ruleNodeStateService.findByRuleNodeIdAndEntityId(tenantId, ruleNodeId, deviceId).getStateData());
+
+        future.get(10, TimeUnit.SECONDS);
+        RuleNodeState persistedState = ruleNodeStateService.findByRuleNodeIdAndEntityId(tenantId, ruleNodeId, deviceId);
+        Assert.assertEquals("{\"version\":99}", persistedState.getStateData());
+
+        // a new state object of the same entity updates the existing row
+        RuleNodeState newState = newState(deviceId);
+        newState.setStateData("{\"version\":100}");
+        ruleNodeStateService.saveAsync(tenantId, newState);
+        ruleNodeStateService.flush(tenantId, ruleNodeId);
+        PageData<RuleNodeState> states = ruleNodeStateService.findByRuleNodeId(tenantId, ruleNodeId, new PageLink(10));
+        Assert.assertEquals(1, states.getData().size());
+        Assert.assertEquals(persistedState.getId(), states.getData().get(0).getId());
+        Assert.assertEquals("{\"version\":100}", states.getData().get(0).getStateData());
+    }
+
+    @Test
+    public void testRemovedStateIsNotFlushed() {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        RuleNodeState state = newState(deviceId);
+        state.setStateData("{}");
+        ruleNodeStateService.saveAsync(tenantId, state);
+        ruleNodeStateService.removeByRuleNodeIdAndEntityId(tenantId, ruleNodeId, deviceId);
+        ruleNodeStateService.flush(tenantId, ruleNodeId);
+        Assert.assertNull(ruleNodeStateService.findByRuleNodeIdAndEntityId(tenantId, ruleNodeId, deviceId));
+    }
+
+    @Test
+    public void testRemovedStatesAreNotSavedByQueuedBatch() throws Exception {
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        List<DeviceId> deviceIds = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            DeviceId deviceId = new DeviceId(Uuids.timeBased());
+            deviceIds.add(deviceId);
+            RuleNodeState state = newState(deviceId);
+            state.setStateData("{}");
+            futures.add(ruleNodeStateService.saveAsync(tenantId, state));
+        }
+        ruleNodeStateService.removeByRuleNodeId(tenantId, ruleNodeId);
+        Futures.allAsList(futures).get(10, TimeUnit.SECONDS);
+        for (DeviceId deviceId : deviceIds) {
+            Assert.assertNull(ruleNodeStateService.findByRuleNodeIdAndEntityId(tenantId, ruleNodeId, deviceId));
+        }
+    }
+
+    @Test
+    public void testConcurrentFlushKeepsLatestState() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<ListenableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                RuleNodeState state = newState(deviceId);
+                state.setStateData("{\"version\":" + i + "}");
+                futures.add(ruleNodeStateService.saveAsync(tenantId, state));
+                if (i % 10 == 0) {
+                    executor.submit(() -> ruleNodeStateService.flush(tenantId, ruleNodeId));
+                }
+            }
+            Futures.allAsList(futures).get(10, TimeUnit.SECONDS);
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        ruleNodeStateService.flush(tenantId, ruleNodeId);
+        PageData<RuleNodeState> states = ruleNodeStateService.findByRuleNodeId(tenantId, ruleNodeId, new PageLink(10));
+        Assert.assertEquals(1, states.getData().size());
+        Assert.assertEquals("{\"version\":199}", states.getData().get(0).getStateData());
+    }
+
+    private RuleNodeState newState(DeviceId deviceId) {
+        RuleNodeState state = new RuleNodeState();
+        state.setRuleNodeId(ruleNodeId);
+        state.setEntityId(deviceId);
+        return state;
+    }
+}
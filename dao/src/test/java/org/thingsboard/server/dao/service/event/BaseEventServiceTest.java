@@ -16,6 +16,8 @@
 package org.thingsboard.server.dao.service.event;
 
 import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.junit.Assert;
 import org.junit.Test;
 import org.thingsboard.server.common.data.DataConstants;
@@ -34,7 +36,11 @@ import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.Month;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class BaseEventServiceTest extends AbstractServiceTest {
 
@@ -59,6 +65,32 @@ public abstract class BaseEventServiceTest extends AbstractServiceTest {
         Assert.assertFalse(saved.isPresent());
     }
 
+    @Test
+    public void saveEventsBatched() throws Exception {
+        TenantId tenantId = new TenantId(Uuids.timeBased());
+        DeviceId devId = new DeviceId(Uuids.timeBased());
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        AtomicInteger builtBodies = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            Event event = new Event();
+            event.setTenantId(tenantId);
+            event.setEntityId(devId);
+            event.setType(DataConstants.DEBUG_RULE_NODE);
+            int idx = i;
+            futures.add(eventService.saveBatchedAsync(event, () -> {
+                builtBodies.incrementAndGet();
+                return mapper.createObjectNode().put("idx", idx);
+            }));
+        }
+        Futures.allAsList(futures).get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(10, builtBodies.get());
+
+        PageData<Event> events = eventService.findEvents(tenantId, devId, DataConstants.DEBUG_RULE_NODE,
+                new TimePageLink(20, 0, "", new SortOrder("createdTime"), null, null));
+        Assert.assertEquals(10, events.getData().size());
+        Assert.assertEquals(10, events.getData().stream().map(event -> event.getBody().get("idx").asInt()).distinct().count());
+    }
+
     @Test
     public void findEventsByTypeAndTimeAscOrder() throws Exception {
         long timeBeforeStartTime = LocalDateTime.of(2016, Month.NOVEMBER, 1, 11, 30).toEpochSecond(ZoneOffset.UTC);
@@ -0,0 +1,96 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.dictionary;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.dao.model.sqlts.dictionary.TsKvDictionary;
+import org.thingsboard.server.dao.model.sqlts.dictionary.TsKvDictionaryCompositeKey;
+import org.thingsboard.server.dao.sqlts.insert.InsertTsKvDictionaryRepository;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TsKvDictionaryCacheTest {
+
+    private TsKvDictionaryRepository dictionaryRepository;
+    private InsertTsKvDictionaryRepository insertRepository;
+    private TsKvDictionaryCache cache;
+
+    @Before
+    public void before() {
+        dictionaryRepository = mock(TsKvDictionaryRepository.class);
+        insertRepository = mock(InsertTsKvDictionaryRepository.class);
+        when(dictionaryRepository.findAll()).thenReturn(Arrays.asList(newDictionary("temperature", 1), newDictionary("humidity", 2)));
+        cache = new TsKvDictionaryCache();
+        ReflectionTestUtils.setField(cache, "dictionaryRepository", dictionaryRepository);
+        ReflectionTestUtils.setField(cache, "insertRepository", insertRepository);
+        cache.init();
+    }
+
+    @Test
+    public void testPreloadedKeysAreResolvedWithoutQueries() {
+        assertEquals(Integer.valueOf(1), cache.getOrSaveKeyId("temperature"));
+        assertEquals(Integer.valueOf(2), cache.getOrSaveKeyId("humidity"));
+        verify(insertRepository, never()).saveIfAbsent(anyString());
+        verify(dictionaryRepository, never()).findById(any());
+    }
+
+    @Test
+    public void testMissingKeyIsSavedOnce() {
+        when(dictionaryRepository.findById(new TsKvDictionaryCompositeKey("pressure")))
+                .thenReturn(Optional.of(newDictionary("pressure", 3)));
+
+        assertEquals(Integer.valueOf(3), cache.getOrSaveKeyId("pressure"));
+        assertEquals(Integer.valueOf(3), cache.getOrSaveKeyId("pressure"));
+        verify(insertRepository, times(1)).saveIfAbsent("pressure");
+        verify(dictionaryRepository, times(1)).findById(any());
+    }
+
+    @Test
+    public void testConcurrentlyInsertedKeyIsReadBack() {
+        doThrow(new DataIntegrityViolationException("duplicate key")).when(insertRepository).saveIfAbsent(anyString());
+        when(dictionaryRepository.findById(new TsKvDictionaryCompositeKey("pressure")))
+                .thenReturn(Optional.of(newDictionary("pressure", 3)));
+
+        assertEquals(Integer.valueOf(3), cache.getOrSaveKeyId("pressure"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testFailsWhenKeyIsNotSaved() {
+        cache.getOrSaveKeyId("pressure");
+    }
+
+    private static TsKvDictionary newDictionary(String key, int keyId) {
+        TsKvDictionary dictionary = new TsKvDictionary();
+        dictionary.setKey(key);
+        dictionary.setKeyId(keyId);
+        return dictionary;
+    }
+
+}
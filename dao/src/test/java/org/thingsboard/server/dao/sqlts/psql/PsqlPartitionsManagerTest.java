@@ -0,0 +1,109 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.psql;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.dao.sqlts.insert.psql.PsqlPartitioningRepository;
+import org.thingsboard.server.dao.timeseries.PsqlPartition;
+import org.thingsboard.server.dao.timeseries.SqlTsPartitionDate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PsqlPartitionsManagerTest {
+
+    private static final long MAY_2021 = toMills(LocalDateTime.of(2021, 5, 1, 0, 0));
+    private static final long JUNE_2021 = toMills(LocalDateTime.of(2021, 6, 1, 0, 0));
+
+    private PsqlPartitioningRepository partitioningRepository;
+    private DefaultCounter slowPathCounter;
+    private PsqlPartitionsManager partitionsManager;
+
+    @Before
+    public void before() {
+        partitioningRepository = mock(PsqlPartitioningRepository.class);
+        slowPathCounter = mock(DefaultCounter.class);
+        partitionsManager = new PsqlPartitionsManager(SqlTsPartitionDate.MONTHS, partitioningRepository, 2, slowPathCounter);
+    }
+
+    @Test
+    public void testUpcomingPartitionsAreCreatedOnInit() {
+        when(partitioningRepository.findAll()).thenReturn(Arrays.asList(
+                new PsqlPartition(MAY_2021, JUNE_2021, "2021_05"),
+                new PsqlPartition(JUNE_2021, JUNE_2021 + 1000, "2021_06")));
+
+        partitionsManager.init(MAY_2021 + 1000);
+
+        // existing May partition is reused, June one does not match the monthly partitioning
+        assertEquals(Arrays.asList("2021_06", "2021_07"), getSavedPartitions(2));
+
+        partitionsManager.savePartitionIfNotExist(MAY_2021);
+        partitionsManager.savePartitionIfNotExist(JUNE_2021 + 1000);
+        partitionsManager.savePartitionIfNotExist(toMills(LocalDateTime.of(2021, 7, 31, 23, 59)));
+        verify(slowPathCounter, never()).increment();
+        verify(partitioningRepository, times(2)).save(any());
+    }
+
+    @Test
+    public void testLateDataPointsGoThroughSlowPath() {
+        partitionsManager.init(MAY_2021);
+
+        long aprilTs = toMills(LocalDateTime.of(2021, 4, 15, 12, 0));
+        partitionsManager.savePartitionIfNotExist(aprilTs);
+        partitionsManager.savePartitionIfNotExist(aprilTs + 1000);
+
+        assertEquals(Arrays.asList("2021_05", "2021_06", "2021_07", "2021_04"), getSavedPartitions(4));
+        verify(slowPathCounter, times(2)).increment();
+    }
+
+    @Test
+    public void testRangeMovesWithCurrentPartition() {
+        partitionsManager.init(MAY_2021);
+        partitionsManager.ensurePartitions(JUNE_2021 + 1000);
+
+        assertEquals(Arrays.asList("2021_05", "2021_06", "2021_07", "2021_08"), getSavedPartitions(4));
+
+        partitionsManager.savePartitionIfNotExist(toMills(LocalDateTime.of(2021, 8, 31, 0, 0)));
+        partitionsManager.savePartitionIfNotExist(MAY_2021);
+        verify(slowPathCounter, times(1)).increment();
+        verify(partitioningRepository, times(4)).save(any());
+    }
+
+    private List<String> getSavedPartitions(int count) {
+        ArgumentCaptor<PsqlPartition> captor = ArgumentCaptor.forClass(PsqlPartition.class);
+        verify(partitioningRepository, times(count)).save(captor.capture());
+        return captor.getAllValues().stream().map(PsqlPartition::getPartitionDate).collect(Collectors.toList());
+    }
+
+    private static long toMills(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+}
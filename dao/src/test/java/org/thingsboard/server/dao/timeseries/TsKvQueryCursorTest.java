@@ -0,0 +1,82 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.timeseries;
+
+import org.junit.Test;
+import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TsKvQueryCursorTest {
+
+    @Test
+    public void testPartitionsAreIteratedInRequestedOrder() {
+        List<Long> partitions = Arrays.asList(1L, 2L, 3L);
+        TsKvQueryCursor desc = newCursor(partitions, 10, CassandraBaseTimeseriesDao.DESC_ORDER);
+        assertEquals(Arrays.asList(3L, 2L, 1L), drain(desc));
+        TsKvQueryCursor asc = newCursor(partitions, 10, CassandraBaseTimeseriesDao.ASC_ORDER);
+        assertEquals(Arrays.asList(1L, 2L, 3L), drain(asc));
+    }
+
+    @Test
+    public void testDataFetchedAheadIsTrimmedToLimit() {
+        TsKvQueryCursor cursor = newCursor(Arrays.asList(1L, 2L), 5, CassandraBaseTimeseriesDao.DESC_ORDER);
+
+        cursor.addData(newEntries(0, 3));
+        assertFalse(cursor.isFull());
+        assertEquals(2, cursor.getCurrentLimit());
+
+        // fetched in parallel with the limit of 5
+        cursor.addData(newEntries(3, 8));
+        assertTrue(cursor.isFull());
+        assertEquals(5, cursor.getData().size());
+        assertEquals(4L, cursor.getData().get(4).getTs());
+
+        cursor.addData(newEntries(8, 10));
+        assertEquals(5, cursor.getData().size());
+    }
+
+    private TsKvQueryCursor newCursor(List<Long> partitions, int limit, String order) {
+        return new TsKvQueryCursor("DEVICE", UUID.randomUUID(), new BaseReadTsKvQuery("temperature", 0, 100, limit, order), partitions);
+    }
+
+    private List<Long> drain(TsKvQueryCursor cursor) {
+        List<Long> result = new ArrayList<>();
+        while (cursor.hasNextPartition()) {
+            result.add(cursor.getNextPartition());
+        }
+        return result;
+    }
+
+    private List<TsKvEntry> newEntries(long from, long to) {
+        return LongStream.range(from, to)
+                .mapToObj(ts -> new BasicTsKvEntry(ts, new LongDataEntry("temperature", ts)))
+                .collect(Collectors.toList());
+    }
+
+}
@@ -21,6 +21,7 @@ DROP TABLE IF EXISTS entity_view;
 DROP TABLE IF EXISTS device_profile;
 DROP TABLE IF EXISTS tenant_profile;
 DROP TABLE IF EXISTS dashboard;
+DROP TABLE IF EXISTS rule_node_delayed_msg;
 DROP TABLE IF EXISTS rule_node_state;
 DROP TABLE IF EXISTS rule_node;
 DROP TABLE IF EXISTS rule_chain;
@@ -2,5 +2,6 @@ TRUNCATE TABLE device_credentials;
 TRUNCATE TABLE device;
 TRUNCATE TABLE device_profile;
 TRUNCATE TABLE rule_node_state;
+TRUNCATE TABLE rule_node_delayed_msg;
 TRUNCATE TABLE rule_node;
 TRUNCATE TABLE rule_chain;
\ No newline at end of file
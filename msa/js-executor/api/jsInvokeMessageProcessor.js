@@ -18,6 +18,7 @@
 const COMPILATION_ERROR = 0;
 const RUNTIME_ERROR = 1;
 const TIMEOUT_ERROR = 2;
+const NOT_FOUND_ERROR = 3;
 const UNRECOGNIZED = -1;
 
 const config = require('config'),
@@ -33,11 +34,13 @@ const slowQueryLogMs = Number(config.get('script.slow_query_log_ms'));
 const slowQueryLogBody = config.get('script.slow_query_log_body') === 'true';
 
 const {performance} = require('perf_hooks');
+const crypto = require('crypto');
 
 function JsInvokeMessageProcessor(producer) {
     this.producer = producer;
     this.executor = new JsExecutor(useSandbox);
     this.scriptMap = new Map();
+    this.scriptHashMap = new Map();
     this.scriptIds = [];
     this.executedScriptsCounter = 0;
     this.lastStatTime = performance.now();
@@ -64,6 +67,8 @@ JsInvokeMessageProcessor.prototype.onJsInvokeMessage = function (message) {
             this.processCompileRequest(requestId, responseTopic, headers, request.compileRequest);
         } else if (request.invokeRequest) {
             this.processInvokeRequest(requestId, responseTopic, headers, request.invokeRequest);
+        } else if (request.invokeBatchRequest) {
+            this.processInvokeBatchRequest(requestId, responseTopic, headers, request.invokeBatchRequest);
         } else if (request.releaseRequest) {
             this.processReleaseRequest(requestId, responseTopic, headers, request.releaseRequest);
         } else {
@@ -103,7 +108,7 @@ JsInvokeMessageProcessor.prototype.processCompileRequest = function (requestId,
 
     this.executor.compileScript(compileRequest.scriptBody).then(
         (script) => {
-            this.cacheScript(scriptId, script);
+            this.cacheScript(scriptId, script, getScriptHash(compileRequest.scriptBody));
             var compileResponse = createCompileResponse(scriptId, true);
             logger.debug('[%s] Sending success compile response, scriptId: [%s]', requestId, scriptId);
             this.sendResponse(requestId, responseTopic, headers, scriptId, compileResponse);
@@ -117,6 +122,26 @@ JsInvokeMessageProcessor.prototype.processCompileRequest = function (requestId,
 }
 
 JsInvokeMessageProcessor.prototype.processInvokeRequest = function (requestId, responseTopic, headers, invokeRequest) {
+    var scriptId = getScriptId(invokeRequest);
+    this.invokeScript(requestId, invokeRequest).then(
+        (invokeResponse) => {
+            this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
+        }
+    );
+}
+
+JsInvokeMessageProcessor.prototype.processInvokeBatchRequest = function (requestId, responseTopic, headers, invokeBatchRequest) {
+    var invokeRequests = invokeBatchRequest.invokeRequests || [];
+    logger.debug('[%s] Processing invoke batch request, size: [%s]', requestId, invokeRequests.length);
+    Promise.all(invokeRequests.map((invokeRequest) => this.invokeScript(requestId, invokeRequest))).then(
+        (invokeResponses) => {
+            var scriptId = invokeRequests.length ? getScriptId(invokeRequests[0]) : requestId;
+            this.sendResponse(requestId, responseTopic, headers, scriptId, null, null, null, {invokeResponses: invokeResponses});
+        }
+    );
+}
+
+JsInvokeMessageProcessor.prototype.invokeScript = function (requestId, invokeRequest) {
     var scriptId = getScriptId(invokeRequest);
     logger.debug('[%s] Processing invoke request, scriptId: [%s]', requestId, scriptId);
     this.executedScriptsCounter++;
@@ -131,13 +156,16 @@ JsInvokeMessageProcessor.prototype.processInvokeRequest = function (requestId, r
     if (this.executedScriptsCounter % scriptBodyTraceFrequency == 0) {
         logger.info('[%s] Executing script body: [%s]', scriptId, invokeRequest.scriptBody);
     }
-    this.getOrCompileScript(scriptId, invokeRequest.scriptBody).then(
+    return this.getOrCompileScript(scriptId, invokeRequest.scriptBody, invokeRequest.scriptHash).then(
         (script) => {
-            this.executor.executeScript(script, invokeRequest.args, invokeRequest.timeout).then(
+            if (!script) {
+                logger.debug('[%s] Script is not found, requesting script body, scriptId: [%s]', requestId, scriptId);
+                return createInvokeResponse("", false, NOT_FOUND_ERROR);
+            }
+            return this.executor.executeScript(script, invokeRequest.args, invokeRequest.timeout).then(
                 (result) => {
-                    var invokeResponse = createInvokeResponse(result, true);
                     logger.debug('[%s] Sending success invoke response, scriptId: [%s]', requestId, scriptId);
-                    this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
+                    return createInvokeResponse(result, true);
                 },
                 (err) => {
                     var errorCode;
@@ -146,16 +174,14 @@ JsInvokeMessageProcessor.prototype.processInvokeRequest = function (requestId, r
                     } else {
                         errorCode = RUNTIME_ERROR;
                     }
-                    var invokeResponse = createInvokeResponse("", false, errorCode, err);
                     logger.debug('[%s] Sending failed invoke response, scriptId: [%s], errorCode: [%s]', requestId, scriptId, errorCode);
-                    this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
+                    return createInvokeResponse("", false, errorCode, err);
                 }
             )
         },
         (err) => {
-            var invokeResponse = createInvokeResponse("", false, COMPILATION_ERROR, err);
             logger.debug('[%s] Sending failed invoke response, scriptId: [%s], errorCode: [%s]', requestId, scriptId, COMPILATION_ERROR);
-            this.sendResponse(requestId, responseTopic, headers, scriptId, null, invokeResponse);
+            return createInvokeResponse("", false, COMPILATION_ERROR, err);
         }
     );
 }
@@ -169,15 +195,16 @@ JsInvokeMessageProcessor.prototype.processReleaseRequest = function (requestId,
             this.scriptIds.splice(index, 1);
         }
         this.scriptMap.delete(scriptId);
+        this.scriptHashMap.delete(scriptId);
     }
     var releaseResponse = createReleaseResponse(scriptId, true);
     logger.debug('[%s] Sending success release response, scriptId: [%s]', requestId, scriptId);
     this.sendResponse(requestId, responseTopic, headers, scriptId, null, null, releaseResponse);
 }
 
-JsInvokeMessageProcessor.prototype.sendResponse = function (requestId, responseTopic, headers, scriptId, compileResponse, invokeResponse, releaseResponse) {
+JsInvokeMessageProcessor.prototype.sendResponse = function (requestId, responseTopic, headers, scriptId, compileResponse, invokeResponse, releaseResponse, invokeBatchResponse) {
     var tStartSending = performance.now();
-    var remoteResponse = createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse);
+    var remoteResponse = createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse, invokeBatchResponse);
     var rawResponse = Buffer.from(JSON.stringify(remoteResponse), 'utf8');
     logger.debug('[%s] Sending response to queue, scriptId: [%s]', requestId, scriptId);
     this.producer.send(responseTopic, scriptId, rawResponse, headers).then(
@@ -193,16 +220,19 @@ JsInvokeMessageProcessor.prototype.sendResponse = function (requestId, responseT
     );
 }
 
-JsInvokeMessageProcessor.prototype.getOrCompileScript = function (scriptId, scriptBody) {
+JsInvokeMessageProcessor.prototype.getOrCompileScript = function (scriptId, scriptBody, scriptHash) {
     var self = this;
     return new Promise(function (resolve, reject) {
         const script = self.scriptMap.get(scriptId);
-        if (script) {
+        if (script && (!scriptHash || self.scriptHashMap.get(scriptId) === scriptHash)) {
             resolve(script);
+        } else if (!scriptBody) {
+            // the caller sends the script body only after it is reported as not found
+            resolve(null);
         } else {
             self.executor.compileScript(scriptBody).then(
                 (compiledScript) => {
-                    self.cacheScript(scriptId, compiledScript);
+                    self.cacheScript(scriptId, compiledScript, getScriptHash(scriptBody));
                     resolve(compiledScript);
                 },
                 (err) => {
@@ -213,7 +243,7 @@ JsInvokeMessageProcessor.prototype.getOrCompileScript = function (scriptId, scri
     });
 }
 
-JsInvokeMessageProcessor.prototype.cacheScript = function (scriptId, script) {
+JsInvokeMessageProcessor.prototype.cacheScript = function (scriptId, script, scriptHash) {
     if (!this.scriptMap.has(scriptId)) {
         this.scriptIds.push(scriptId);
         while (this.scriptIds.length > maxActiveScripts) {
@@ -221,20 +251,23 @@ JsInvokeMessageProcessor.prototype.cacheScript = function (scriptId, script) {
             const prevScriptId = this.scriptIds.shift();
             logger.info('Removing active script with id [%s]', prevScriptId);
             this.scriptMap.delete(prevScriptId);
+            this.scriptHashMap.delete(prevScriptId);
         }
     }
     this.scriptMap.set(scriptId, script);
+    this.scriptHashMap.set(scriptId, scriptHash);
     logger.info("scriptMap size is [%s]", this.scriptMap.size);
 }
 
-function createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse) {
+function createRemoteResponse(requestId, compileResponse, invokeResponse, releaseResponse, invokeBatchResponse) {
     const requestIdBits = Utils.UUIDToBits(requestId);
     return {
         requestIdMSB: requestIdBits[0],
         requestIdLSB: requestIdBits[1],
         compileResponse: compileResponse,
         invokeResponse: invokeResponse,
-        releaseResponse: releaseResponse
+        releaseResponse: releaseResponse,
+        invokeBatchResponse: invokeBatchResponse
     };
 }
 
@@ -287,6 +320,10 @@ function parseJsErrorDetails(err) {
     return details;
 }
 
+function getScriptHash(scriptBody) {
+    return crypto.createHash('sha256').update(scriptBody, 'utf8').digest('hex');
+}
+
 function getScriptId(request) {
     return Utils.toUUIDString(request.scriptIdMSB, request.scriptIdLSB);
 }
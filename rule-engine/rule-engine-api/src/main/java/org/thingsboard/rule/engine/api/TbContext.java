@@ -15,6 +15,7 @@
  */
 package org.thingsboard.rule.engine.api;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import io.netty.channel.EventLoopGroup;
 import org.thingsboard.common.util.ListeningExecutor;
 import org.thingsboard.rule.engine.api.sms.SmsSenderFactory;
@@ -28,11 +29,14 @@ import org.thingsboard.server.common.data.id.CustomerId;
 import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.EdgeId;
 import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.RuleNodeDelayedMsgId;
 import org.thingsboard.server.common.data.id.RuleNodeId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.page.PageData;
 import org.thingsboard.server.common.data.page.PageLink;
+import org.thingsboard.server.common.data.page.TimePageLink;
 import org.thingsboard.server.common.data.rule.RuleNode;
+import org.thingsboard.server.common.data.rule.RuleNodeDelayedMsg;
 import org.thingsboard.server.common.data.rule.RuleNodeState;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
@@ -58,6 +62,7 @@ import org.thingsboard.server.dao.user.UserService;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 /**
  * Created by ashvayka on 13.01.18.
@@ -258,8 +263,37 @@ public interface TbContext {
 
     RuleNodeState saveRuleNodeState(RuleNodeState state);
 
+    /**
+     * Persists the state in background. Updates of the same entity are coalesced and written in batches,
+     * so the persisted state may lag behind for up to the configured batch delay.
+     */
+    ListenableFuture<Void> saveRuleNodeStateAsync(RuleNodeState state);
+
+    /**
+     * Synchronously persists the states of the current rule node that were saved with {@link #saveRuleNodeStateAsync(RuleNodeState)}.
+     */
+    void flushRuleNodeStates();
+
     void clearRuleNodeStates();
 
+    /**
+     * Creates the per-entity state cache of the current rule node, bounded by the configured number of entities and time to live.
+     * The cache memory usage is reported in the rule engine stats.
+     */
+    <K extends EntityId, V> TbNodeStateCache<K, V> createNodeStateCache(ToLongFunction<V> sizeEstimator);
+
+    ListenableFuture<RuleNodeDelayedMsg> saveRuleNodeDelayedMsg(RuleNodeDelayedMsg delayedMsg);
+
+    /**
+     * Finds persisted delayed messages of the current rule node with the fire time within the page link start and end times.
+     * Only the messages of the entities in the rule engine partitions of the current server are returned.
+     */
+    ListenableFuture<PageData<RuleNodeDelayedMsg>> findRuleNodeDelayedMsgs(TimePageLink pageLink);
+
+    ListenableFuture<Void> removeRuleNodeDelayedMsg(RuleNodeDelayedMsgId delayedMsgId);
+
+    ListenableFuture<Void> clearRuleNodeDelayedMsgs();
+
     void addTenantProfileListener(Consumer<TenantProfile> listener);
 
     void addDeviceProfileListeners(Consumer<DeviceProfile> listener, BiConsumer<DeviceId, DeviceProfile> deviceListener);
@@ -0,0 +1,164 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.api;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import lombok.RequiredArgsConstructor;
+import org.thingsboard.server.common.data.id.EntityId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Per-entity state of a rule node, bounded by the number of entities and the time since the last access.
+ * Evicted states are expected to be reloaded on demand (e.g. from the rule node state or the latest telemetry),
+ * so the cache keeps the node memory footprint stable regardless of the device churn.
+ */
+public class TbNodeStateCache<K extends EntityId, V> {
+
+    // rough size of the cache entry, including the entity id of the key
+    static final long ENTRY_OVERHEAD_BYTES = 160;
+
+    private final Cache<K, Entry<V>> cache;
+    private final ToLongFunction<V> sizeEstimator;
+    private final AtomicLong estimatedBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize       maximum number of cached entities, 0 - unlimited
+     * @param ttlMs         time since the last access after which the state is evicted, 0 - never expire
+     * @param sizeEstimator estimates the size of the cached value in bytes
+     */
+    public TbNodeStateCache(long maxSize, long ttlMs, ToLongFunction<V> sizeEstimator) {
+        this.sizeEstimator = sizeEstimator;
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+        if (maxSize > 0) {
+            cacheBuilder.maximumSize(maxSize);
+        }
+        if (ttlMs > 0) {
+            cacheBuilder.expireAfterAccess(ttlMs, TimeUnit.MILLISECONDS);
+        }
+        this.cache = cacheBuilder.removalListener(this::onRemoval).build();
+    }
+
+    public V getIfPresent(K key) {
+        Entry<V> entry = cache.getIfPresent(key);
+        if (entry != null) {
+            hits.increment();
+            return entry.value;
+        } else {
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached state or loads it using the loader. Null states are not cached.
+     */
+    public V get(K key, Function<K, V> loader) {
+        V value = getIfPresent(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        long size = ENTRY_OVERHEAD_BYTES + sizeEstimator.applyAsLong(value);
+        estimatedBytes.addAndGet(size);
+        cache.put(key, new Entry<>(value, size));
+    }
+
+    public V remove(K key) {
+        Entry<V> entry = cache.asMap().remove(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Returns a snapshot of the cached states. Does not affect the expiration of the states.
+     */
+    public Collection<V> values() {
+        Collection<Entry<V>> entries = cache.asMap().values();
+        List<V> result = new ArrayList<>(entries.size());
+        for (Entry<V> entry : entries) {
+            result.add(entry.value);
+        }
+        return result;
+    }
+
+    public void removeIf(Predicate<K> predicate) {
+        cache.asMap().keySet().removeIf(predicate);
+    }
+
+    /**
+     * Removes the states of the entities that are no longer assigned to the partitions of the current server.
+     */
+    public void removeNonLocal(TbContext ctx) {
+        removeIf(key -> !ctx.isLocalEntity(key));
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes.get();
+    }
+
+    /**
+     * Performs the pending expiration of the states that were not accessed for a while and returns the cache stats
+     * collected since the previous call.
+     */
+    public TbNodeStateCacheStats getAndResetStats() {
+        cache.cleanUp();
+        return new TbNodeStateCacheStats(cache.size(), estimatedBytes.get(), hits.sumThenReset(), misses.sumThenReset(), evictions.sumThenReset());
+    }
+
+    private void onRemoval(RemovalNotification<K, Entry<V>> notification) {
+        Entry<V> entry = notification.getValue();
+        if (entry != null) {
+            estimatedBytes.addAndGet(-entry.size);
+        }
+        if (notification.getCause() == RemovalCause.SIZE || notification.getCause() == RemovalCause.EXPIRED) {
+            evictions.increment();
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Entry<V> {
+        private final V value;
+        private final long size;
+    }
+}
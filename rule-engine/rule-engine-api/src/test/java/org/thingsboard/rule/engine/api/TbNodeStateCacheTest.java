@@ -0,0 +1,98 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.api;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class TbNodeStateCacheTest {
+
+    private static final long VALUE_SIZE = 40;
+
+    @Test
+    public void testSizeEvictionAndMemoryAccounting() {
+        TbNodeStateCache<DeviceId, String> cache = new TbNodeStateCache<>(100, 0, value -> VALUE_SIZE);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new DeviceId(UUID.randomUUID()), "state" + i);
+        }
+        TbNodeStateCacheStats stats = cache.getAndResetStats();
+        Assert.assertTrue(stats.getEntities() <= 100);
+        Assert.assertEquals(1000 - stats.getEntities(), stats.getEvictions());
+        Assert.assertEquals(stats.getEntities() * (TbNodeStateCache.ENTRY_OVERHEAD_BYTES + VALUE_SIZE), stats.getEstimatedBytes());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getEstimatedBytes());
+        Assert.assertEquals(0, cache.getAndResetStats().getEvictions());
+    }
+
+    @Test
+    public void testExpiredStateIsReloaded() throws Exception {
+        TbNodeStateCache<DeviceId, String> cache = new TbNodeStateCache<>(0, 50, value -> VALUE_SIZE);
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        List<DeviceId> loaded = new ArrayList<>();
+        Assert.assertEquals("loaded", cache.get(deviceId, id -> {
+            loaded.add(id);
+            return "loaded";
+        }));
+        Assert.assertEquals("loaded", cache.get(deviceId, id -> "reloaded"));
+        Assert.assertEquals(1, loaded.size());
+
+        Thread.sleep(100);
+        TbNodeStateCacheStats stats = cache.getAndResetStats();
+        Assert.assertEquals(0, stats.getEntities());
+        Assert.assertEquals(1, stats.getEvictions());
+        Assert.assertEquals(1, stats.getHits());
+        Assert.assertEquals(1, stats.getMisses());
+        Assert.assertEquals(0, stats.getEstimatedBytes());
+        Assert.assertEquals("reloaded", cache.get(deviceId, id -> "reloaded"));
+
+        // missing states are not cached
+        DeviceId otherDeviceId = new DeviceId(UUID.randomUUID());
+        Assert.assertNull(cache.get(otherDeviceId, id -> null));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testReplaceAndRemoveNonLocalStates() {
+        TbNodeStateCache<EntityId, String> cache = new TbNodeStateCache<>(0, 0, String::length);
+        DeviceId localId = new DeviceId(UUID.randomUUID());
+        DeviceId remoteId = new DeviceId(UUID.randomUUID());
+        cache.put(localId, "a");
+        cache.put(localId, "abc");
+        cache.put(remoteId, "abcdef");
+        Assert.assertEquals(2 * TbNodeStateCache.ENTRY_OVERHEAD_BYTES + 9, cache.getEstimatedBytes());
+
+        TbContext ctx = Mockito.mock(TbContext.class);
+        Mockito.when(ctx.isLocalEntity(localId)).thenReturn(true);
+        cache.removeNonLocal(ctx);
+        Assert.assertEquals("abc", cache.getIfPresent(localId));
+        Assert.assertNull(cache.getIfPresent(remoteId));
+        Assert.assertEquals(TbNodeStateCache.ENTRY_OVERHEAD_BYTES + 3, cache.getEstimatedBytes());
+
+        Assert.assertEquals("abc", cache.remove(localId));
+        Assert.assertEquals(0, cache.getEstimatedBytes());
+        Assert.assertEquals(0, cache.getAndResetStats().getEvictions());
+    }
+
+}
@@ -15,23 +15,40 @@
  */
 package org.thingsboard.rule.engine.delay;
 
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.math.NumberUtils;
+import org.thingsboard.common.util.DonAsynchron;
 import org.thingsboard.rule.engine.api.RuleNode;
 import org.thingsboard.rule.engine.api.TbContext;
 import org.thingsboard.rule.engine.api.TbNode;
 import org.thingsboard.rule.engine.api.TbNodeConfiguration;
 import org.thingsboard.rule.engine.api.TbNodeException;
 import org.thingsboard.rule.engine.api.util.TbNodeUtils;
+import org.thingsboard.server.common.data.id.RuleNodeDelayedMsgId;
+import org.thingsboard.server.common.data.page.SortOrder;
+import org.thingsboard.server.common.data.page.TimePageLink;
 import org.thingsboard.server.common.data.plugin.ComponentType;
+import org.thingsboard.server.common.data.rule.RuleNodeDelayedMsg;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.queue.PartitionChangeMsg;
 import org.thingsboard.server.common.msg.queue.ServiceQueue;
+import org.thingsboard.server.common.msg.queue.TbMsgCallback;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.thingsboard.rule.engine.api.TbRelationTypes.SUCCESS;
 
@@ -50,33 +67,204 @@ import static org.thingsboard.rule.engine.api.TbRelationTypes.SUCCESS;
 public class TbMsgDelayNode implements TbNode {
 
     private static final String TB_MSG_DELAY_NODE_MSG = "TbMsgDelayNodeMsg";
+    private static final String TB_MSG_DELAY_NODE_POLL_MSG = "TbMsgDelayNodePollMsg";
+    private static final String TB_MSG_DELAY_NODE_LOADED_MSG = "TbMsgDelayNodeLoadedMsg";
+    private static final long POLL_INTERVAL_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final int POLL_PAGE_SIZE = 1024;
+    private static final SortOrder FIRE_TS_SORT_ORDER = new SortOrder("fireTs", SortOrder.Direction.ASC);
 
     private TbMsgDelayNodeConfiguration config;
-    private Map<UUID, TbMsg> pendingMsgs;
+    private Map<UUID, PendingMsg> pendingMsgs;
+    // Fired messages whose rows are not deleted yet, so that a reload does not deliver them again
+    private Set<UUID> firedMsgs;
+    // All persisted messages of the local originators that are due before this timestamp are already pending in memory
+    private long loadedUntilTs;
+    // Fire ts of the earliest overflow message saved since the last load, updated from the db callbacks
+    private AtomicLong overflowFireTs;
+    // Pages are fetched on the db callback executor and handed over to the actor thread
+    private Queue<LoadedPage> loadedPages;
+    private boolean loading;
+    private int loadGeneration;
 
     @Override
     public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
         this.config = TbNodeUtils.convert(configuration, TbMsgDelayNodeConfiguration.class);
-        this.pendingMsgs = new HashMap<>();
+        this.pendingMsgs = new ConcurrentHashMap<>();
+        this.firedMsgs = ConcurrentHashMap.newKeySet();
+        this.loadedUntilTs = 0;
+        this.overflowFireTs = new AtomicLong(Long.MAX_VALUE);
+        this.loadedPages = new ConcurrentLinkedQueue<>();
+        if (config.isPersistPendingMsgs()) {
+            loadPersistedMsgs(ctx);
+            schedulePoll(ctx);
+        } else if (ctx.isLocalEntity(ctx.getSelfId())) {
+            DonAsynchron.withCallback(ctx.clearRuleNodeDelayedMsgs(), v -> {},
+                    t -> log.warn("[{}] Failed to clear persisted delayed msgs", ctx.getSelfId(), t),
+                    ctx.getDbCallbackExecutor());
+        }
     }
 
     @Override
     public void onMsg(TbContext ctx, TbMsg msg) {
         if (msg.getType().equals(TB_MSG_DELAY_NODE_MSG)) {
-            TbMsg pendingMsg = pendingMsgs.remove(UUID.fromString(msg.getData()));
+            PendingMsg pendingMsg = pendingMsgs.remove(UUID.fromString(msg.getData()));
             if (pendingMsg != null) {
-                ctx.enqueueForTellNext(pendingMsg, SUCCESS);
+                ctx.enqueueForTellNext(pendingMsg.getMsg(), SUCCESS);
+                if (pendingMsg.getPersistFuture() != null) {
+                    removeFiredMsg(ctx, pendingMsg);
+                }
+            }
+        } else if (msg.getType().equals(TB_MSG_DELAY_NODE_POLL_MSG)) {
+            loadPersistedMsgs(ctx);
+            schedulePoll(ctx);
+        } else if (msg.getType().equals(TB_MSG_DELAY_NODE_LOADED_MSG)) {
+            LoadedPage loadedPage = loadedPages.poll();
+            if (loadedPage != null) {
+                onPageLoaded(ctx, loadedPage);
             }
+        } else if (config.isPersistPendingMsgs()) {
+            persistMsg(ctx, msg);
+        } else if (pendingMsgs.size() < config.getMaxPendingMsgs()) {
+            schedule(ctx, new PendingMsg(msg.getId(), msg, null), getDelay(msg));
+            ctx.ack(msg);
         } else {
-            if (pendingMsgs.size() < config.getMaxPendingMsgs()) {
-                pendingMsgs.put(msg.getId(), msg);
-                TbMsg tickMsg = ctx.newMsg(ServiceQueue.MAIN, TB_MSG_DELAY_NODE_MSG, ctx.getSelfId(), msg.getCustomerId(), new TbMsgMetaData(), msg.getId().toString());
-                ctx.tellSelf(tickMsg, getDelay(msg));
-                ctx.ack(msg);
+            ctx.tellFailure(msg, new RuntimeException("Max limit of pending messages reached!"));
+        }
+    }
+
+    @Override
+    public void onPartitionChangeMsg(TbContext ctx, PartitionChangeMsg msg) {
+        if (config.isPersistPendingMsgs()) {
+            // persisted messages of the originators that moved to other servers are delivered by the new owners
+            pendingMsgs.values().removeIf(pendingMsg -> pendingMsg.getPersistFuture() != null
+                    && !ctx.isLocalEntity(pendingMsg.getMsg().getOriginator()));
+            loadedUntilTs = 0;
+            // the page that is being loaded belongs to the previous partitions, the load is restarted once it arrives
+            loadGeneration++;
+            loadPersistedMsgs(ctx);
+        }
+    }
+
+    private void persistMsg(TbContext ctx, TbMsg msg) {
+        long now = System.currentTimeMillis();
+        long fireTs = now + getDelay(msg);
+        UUID id = Uuids.timeBased();
+        RuleNodeDelayedMsg delayedMsg = new RuleNodeDelayedMsg(new RuleNodeDelayedMsgId(id));
+        delayedMsg.setEntityId(msg.getOriginator());
+        delayedMsg.setFireTs(fireTs);
+        delayedMsg.setMsgData(TbMsg.toByteArray(msg));
+        ListenableFuture<RuleNodeDelayedMsg> persistFuture = ctx.saveRuleNodeDelayedMsg(delayedMsg);
+        boolean inMemory = pendingMsgs.size() < config.getMaxPendingMsgs();
+        if (inMemory) {
+            schedule(ctx, new PendingMsg(id, msg, persistFuture), fireTs - now);
+        }
+        DonAsynchron.withCallback(persistFuture, saved -> {
+            if (!inMemory) {
+                // overflow stays in the database only and is loaded by the poll once there is a free slot
+                overflowFireTs.accumulateAndGet(fireTs, Math::min);
+            }
+            ctx.ack(msg);
+        }, t -> {
+            if (!inMemory || pendingMsgs.remove(id) != null) {
+                ctx.tellFailure(msg, t);
             } else {
-                ctx.tellFailure(msg, new RuntimeException("Max limit of pending messages reached!"));
+                // already delivered from memory, nothing to retry
+                ctx.ack(msg);
+            }
+        }, ctx.getDbCallbackExecutor());
+    }
+
+    private void loadPersistedMsgs(TbContext ctx) {
+        if (loading) {
+            // the next poll continues from where the current load stops
+            return;
+        }
+        loading = true;
+        loadedUntilTs = Math.min(loadedUntilTs, overflowFireTs.getAndSet(Long.MAX_VALUE) - 1);
+        long loadUntilTs = System.currentTimeMillis() + 2 * POLL_INTERVAL_MS;
+        fetchPage(ctx, new LoadRequest(loadGeneration, loadedUntilTs + 1, 0, loadUntilTs));
+    }
+
+    private void fetchPage(TbContext ctx, LoadRequest request) {
+        TimePageLink pageLink = new TimePageLink(POLL_PAGE_SIZE, request.getPage(), null, FIRE_TS_SORT_ORDER, request.getStartTs(), request.getLoadUntilTs());
+        DonAsynchron.withCallback(ctx.findRuleNodeDelayedMsgs(pageLink),
+                pageData -> onPageFetched(ctx, new LoadedPage(request, pageData.getData())),
+                t -> {
+                    log.warn("[{}] Failed to load persisted delayed msgs", ctx.getSelfId(), t);
+                    onPageFetched(ctx, new LoadedPage(request, null));
+                }, ctx.getDbCallbackExecutor());
+    }
+
+    private void onPageFetched(TbContext ctx, LoadedPage loadedPage) {
+        loadedPages.add(loadedPage);
+        ctx.tellSelf(ctx.newMsg(ServiceQueue.MAIN, TB_MSG_DELAY_NODE_LOADED_MSG, ctx.getSelfId(), new TbMsgMetaData(), ""), 0);
+    }
+
+    private void onPageLoaded(TbContext ctx, LoadedPage loadedPage) {
+        LoadRequest request = loadedPage.getRequest();
+        if (request.getGeneration() != loadGeneration) {
+            loading = false;
+            loadPersistedMsgs(ctx);
+            return;
+        }
+        List<RuleNodeDelayedMsg> delayedMsgs = loadedPage.getDelayedMsgs();
+        if (delayedMsgs == null) {
+            // retried by the next poll
+            loading = false;
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (RuleNodeDelayedMsg delayedMsg : delayedMsgs) {
+            UUID id = delayedMsg.getUuidId();
+            if (pendingMsgs.containsKey(id) || firedMsgs.contains(id) || !ctx.isLocalEntity(delayedMsg.getEntityId())) {
+                continue;
             }
+            if (pendingMsgs.size() >= config.getMaxPendingMsgs()) {
+                finishLoading(delayedMsg.getFireTs() - 1);
+                return;
+            }
+            TbMsg msg = TbMsg.fromBytes(ServiceQueue.MAIN, delayedMsg.getMsgData(), TbMsgCallback.EMPTY);
+            schedule(ctx, new PendingMsg(id, msg, Futures.immediateFuture(delayedMsg)), delayedMsg.getFireTs() - now);
+        }
+        if (delayedMsgs.size() < POLL_PAGE_SIZE) {
+            finishLoading(request.getLoadUntilTs());
+            return;
         }
+        // keyset pagination by the fire ts, since fired messages are removed concurrently and would shift the offsets
+        long lastFireTs = delayedMsgs.get(delayedMsgs.size() - 1).getFireTs();
+        if (lastFireTs > request.getStartTs()) {
+            fetchPage(ctx, new LoadRequest(request.getGeneration(), lastFireTs, 0, request.getLoadUntilTs()));
+        } else {
+            fetchPage(ctx, new LoadRequest(request.getGeneration(), request.getStartTs(), request.getPage() + 1, request.getLoadUntilTs()));
+        }
+    }
+
+    private void removeFiredMsg(TbContext ctx, PendingMsg pendingMsg) {
+        UUID id = pendingMsg.getId();
+        firedMsgs.add(id);
+        // the message may fire before it is saved, so the removal must not overtake the insert
+        pendingMsg.getPersistFuture().addListener(() -> DonAsynchron.withCallback(ctx.removeRuleNodeDelayedMsg(new RuleNodeDelayedMsgId(id)),
+                v -> firedMsgs.remove(id),
+                // the id is kept, so the row is never delivered again by this node
+                t -> log.warn("[{}][{}] Failed to remove fired delayed msg", ctx.getSelfId(), id, t),
+                ctx.getDbCallbackExecutor()), MoreExecutors.directExecutor());
+    }
+
+    private void finishLoading(long untilTs) {
+        // the overflow saved while the pages were fetched may be missing in them
+        loadedUntilTs = Math.min(untilTs, overflowFireTs.get() - 1);
+        loading = false;
+    }
+
+    private void schedule(TbContext ctx, PendingMsg pendingMsg, long delayMs) {
+        pendingMsgs.put(pendingMsg.getId(), pendingMsg);
+        TbMsg tickMsg = ctx.newMsg(ServiceQueue.MAIN, TB_MSG_DELAY_NODE_MSG, ctx.getSelfId(), pendingMsg.getMsg().getCustomerId(), new TbMsgMetaData(), pendingMsg.getId().toString());
+        ctx.tellSelf(tickMsg, delayMs);
+    }
+
+    private void schedulePoll(TbContext ctx) {
+        TbMsg pollMsg = ctx.newMsg(ServiceQueue.MAIN, TB_MSG_DELAY_NODE_POLL_MSG, ctx.getSelfId(), new TbMsgMetaData(), "");
+        ctx.tellSelf(pollMsg, POLL_INTERVAL_MS);
     }
 
     private long getDelay(TbMsg msg) {
@@ -100,5 +288,31 @@ public class TbMsgDelayNode implements TbNode {
     @Override
     public void destroy() {
         pendingMsgs.clear();
+        if (loadedPages != null) {
+            loadedPages.clear();
+        }
+    }
+
+    @Data
+    private static class PendingMsg {
+        private final UUID id;
+        private final TbMsg msg;
+        // null if the message is kept in memory only
+        private final ListenableFuture<?> persistFuture;
+    }
+
+    @Data
+    private static class LoadRequest {
+        private final int generation;
+        private final long startTs;
+        private final int page;
+        private final long loadUntilTs;
+    }
+
+    @Data
+    private static class LoadedPage {
+        private final LoadRequest request;
+        // null if the page failed to load
+        private final List<RuleNodeDelayedMsg> delayedMsgs;
     }
 }
@@ -21,7 +21,9 @@ import com.google.gson.JsonParser;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.rule.engine.api.RuleNode;
 import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
 import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.rule.engine.api.TbNodeStateCache;
 import org.thingsboard.server.common.data.DataConstants;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
@@ -29,11 +31,10 @@ import org.thingsboard.server.common.data.kv.BaseAttributeKvEntry;
 import org.thingsboard.server.common.data.kv.StringDataEntry;
 import org.thingsboard.server.common.data.plugin.ComponentType;
 import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.queue.PartitionChangeMsg;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -55,16 +56,25 @@ import java.util.concurrent.TimeoutException;
 )
 public class TbGpsGeofencingActionNode extends AbstractGeofencingNode<TbGpsGeofencingActionNodeConfiguration> {
 
-    private final Map<EntityId, EntityGeofencingState> entityStates = new HashMap<>();
+    // object header, switch time and flags
+    private static final long ENTITY_STATE_SIZE = 32;
+
+    private TbNodeStateCache<EntityId, EntityGeofencingState> entityStates;
     private final Gson gson = new Gson();
     private final JsonParser parser = new JsonParser();
 
+    @Override
+    public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
+        super.init(ctx, configuration);
+        entityStates = ctx.createNodeStateCache(state -> ENTITY_STATE_SIZE);
+    }
+
     @Override
     public void onMsg(TbContext ctx, TbMsg msg) throws TbNodeException {
         boolean matches = checkMatches(msg);
         long ts = System.currentTimeMillis();
 
-        EntityGeofencingState entityState = entityStates.computeIfAbsent(msg.getOriginator(), key -> {
+        EntityGeofencingState entityState = entityStates.get(msg.getOriginator(), key -> {
             try {
                 Optional<AttributeKvEntry> entry = ctx.getAttributesService()
                         .find(ctx.getTenantId(), msg.getOriginator(), DataConstants.SERVER_SCOPE, ctx.getServiceId())
@@ -123,6 +133,18 @@ public class TbGpsGeofencingActionNode extends AbstractGeofencingNode<TbGpsGeofe
         ctx.getAttributesService().save(ctx.getTenantId(), entityId, DataConstants.SERVER_SCOPE, attributeKvEntryList);
     }
 
+    @Override
+    public void onPartitionChangeMsg(TbContext ctx, PartitionChangeMsg msg) {
+        entityStates.removeNonLocal(ctx);
+    }
+
+    @Override
+    public void destroy() {
+        if (entityStates != null) {
+            entityStates.clear();
+        }
+    }
+
     @Override
     protected Class<TbGpsGeofencingActionNodeConfiguration> getConfigClazz() {
         return TbGpsGeofencingActionNodeConfiguration.class;
@@ -26,6 +26,7 @@ import org.thingsboard.rule.engine.api.TbContext;
 import org.thingsboard.rule.engine.api.TbNode;
 import org.thingsboard.rule.engine.api.TbNodeConfiguration;
 import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.rule.engine.api.TbNodeStateCache;
 import org.thingsboard.rule.engine.api.TbRelationTypes;
 import org.thingsboard.rule.engine.api.util.TbNodeUtils;
 import org.thingsboard.rule.engine.telemetry.TbMsgTimeseriesNode;
@@ -33,6 +34,7 @@ import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
 import org.thingsboard.server.common.data.plugin.ComponentType;
 import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.queue.PartitionChangeMsg;
 import org.thingsboard.server.common.msg.session.SessionMsgType;
 import org.thingsboard.server.dao.timeseries.TimeseriesService;
 import org.thingsboard.common.util.JacksonUtil;
@@ -40,8 +42,6 @@ import org.thingsboard.common.util.JacksonUtil;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Collections;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @RuleNode(type = ComponentType.ENRICHMENT,
@@ -55,7 +55,10 @@ import java.util.concurrent.ConcurrentHashMap;
         uiResources = {"static/rulenode/rulenode-core-config.js"},
         configDirective = "tbEnrichmentNodeCalculateDeltaConfig")
 public class CalculateDeltaNode implements TbNode {
-    private Map<EntityId, ValueWithTs> cache;
+    // object header, ts and value
+    private static final long VALUE_WITH_TS_SIZE = 32;
+
+    private TbNodeStateCache<EntityId, ValueWithTs> cache;
     private CalculateDeltaNodeConfiguration config;
     private TbContext ctx;
     private TimeseriesService timeseriesService;
@@ -69,7 +72,7 @@ public class CalculateDeltaNode implements TbNode {
         this.useCache = config.isUseCache();
 
         if (useCache) {
-            cache = new ConcurrentHashMap<>();
+            cache = ctx.createNodeStateCache(value -> VALUE_WITH_TS_SIZE);
         }
     }
 
@@ -122,6 +125,13 @@ public class CalculateDeltaNode implements TbNode {
         }
     }
 
+    @Override
+    public void onPartitionChangeMsg(TbContext ctx, PartitionChangeMsg msg) {
+        if (useCache) {
+            cache.removeNonLocal(ctx);
+        }
+    }
+
     @Override
     public void destroy() {
         if (useCache) {
@@ -137,7 +147,7 @@ public class CalculateDeltaNode implements TbNode {
 
     private ListenableFuture<ValueWithTs> getLastValue(EntityId entityId) {
         ValueWithTs latestValue;
-        if (useCache && (latestValue = cache.get(entityId)) != null) {
+        if (useCache && (latestValue = cache.getIfPresent(entityId)) != null) {
             return Futures.immediateFuture(latestValue);
         } else {
             return fetchLatestValue(entityId);
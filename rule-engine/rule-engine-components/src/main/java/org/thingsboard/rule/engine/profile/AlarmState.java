@@ -51,7 +51,7 @@ import java.util.function.BiFunction;
 @Slf4j
 class AlarmState {
 
-    private final ProfileState deviceProfile;
+    private ProfileState deviceProfile;
     private final EntityId originator;
     private DeviceProfileAlarm alarmDefinition;
     private volatile List<AlarmRuleState> createRulesSortedBySeverityDesc;
@@ -147,10 +147,8 @@ class AlarmState {
     public boolean validateUpdate(SnapshotUpdate update, AlarmRuleState state) {
         if (update != null) {
             //Check that the update type and that keys match.
-            if (update.getType().equals(AlarmConditionKeyType.TIME_SERIES)) {
-                return state.validateTsUpdate(update.getKeys());
-            } else if (update.getType().equals(AlarmConditionKeyType.ATTRIBUTE)) {
-                return state.validateAttrUpdate(update.getKeys());
+            if (update.getType().equals(AlarmConditionKeyType.TIME_SERIES) || update.getType().equals(AlarmConditionKeyType.ATTRIBUTE)) {
+                return update.isAffected(state.getRuleIndex());
             }
         }
         return true;
@@ -212,13 +210,13 @@ class AlarmState {
                     alarmState.getCreateRuleStates().put(severity, ruleState);
                 }
             }
-            createRulesSortedBySeverityDesc.add(new AlarmRuleState(severity, rule,
-                    deviceProfile.getCreateAlarmKeys(alarm.getId(), severity), ruleState, dynamicPredicateValueCtx));
+            createRulesSortedBySeverityDesc.add(new AlarmRuleState(severity,
+                    deviceProfile.getCreateRule(alarm.getId(), severity), ruleState, dynamicPredicateValueCtx));
         });
         createRulesSortedBySeverityDesc.sort(Comparator.comparingInt(state -> state.getSeverity().ordinal()));
         PersistedAlarmRuleState ruleState = alarmState == null ? null : alarmState.getClearRuleState();
         if (alarmDefinition.getClearRule() != null) {
-            clearState = new AlarmRuleState(null, alarmDefinition.getClearRule(), deviceProfile.getClearAlarmKeys(alarm.getId()), ruleState, dynamicPredicateValueCtx);
+            clearState = new AlarmRuleState(null, deviceProfile.getClearRule(alarm.getId()), ruleState, dynamicPredicateValueCtx);
         }
     }
 
@@ -0,0 +1,450 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.profile;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionFilter;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionFilterKey;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionKeyType;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionSpec;
+import org.thingsboard.server.common.data.device.profile.AlarmRule;
+import org.thingsboard.server.common.data.device.profile.DurationAlarmConditionSpec;
+import org.thingsboard.server.common.data.device.profile.RepeatingAlarmConditionSpec;
+import org.thingsboard.server.common.data.device.profile.SimpleAlarmConditionSpec;
+import org.thingsboard.server.common.data.query.BooleanFilterPredicate;
+import org.thingsboard.server.common.data.query.ComplexFilterPredicate;
+import org.thingsboard.server.common.data.query.DynamicValue;
+import org.thingsboard.server.common.data.query.DynamicValueSourceType;
+import org.thingsboard.server.common.data.query.FilterPredicateValue;
+import org.thingsboard.server.common.data.query.KeyFilterPredicate;
+import org.thingsboard.server.common.data.query.NumericFilterPredicate;
+import org.thingsboard.server.common.data.query.StringFilterPredicate;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Alarm rule compiled against the key slots of the device profile. Constant values are parsed and the keys of the
+ * filters and dynamic values are resolved once, so the evaluation reads the snapshot values by slot and does not
+ * walk the generic filter predicates.
+ */
+@Slf4j
+class CompiledAlarmRule {
+
+    @Getter
+    private final AlarmRule alarmRule;
+    @Getter
+    private final AlarmConditionSpec spec;
+    @Getter
+    private final Set<AlarmConditionFilterKey> entityKeys;
+    @Getter
+    private final int index;
+    private final KeyFilter[] filters;
+    private final DynamicValueSource specValueSource;
+
+    /**
+     * @param index       index of the rule within the device profile, used to check if the update affects the rule
+     * @param entityKeys  keys of the rule filters and dynamic values
+     * @param keySlots    resolves the slot of the key in the data snapshot, -1 if the key is not tracked
+     */
+    CompiledAlarmRule(AlarmRule alarmRule, int index, Set<AlarmConditionFilterKey> entityKeys, ToIntFunction<AlarmConditionFilterKey> keySlots) {
+        this.alarmRule = alarmRule;
+        this.index = index;
+        this.entityKeys = entityKeys;
+        AlarmConditionSpec spec = alarmRule.getCondition().getSpec();
+        this.spec = spec != null ? spec : new SimpleAlarmConditionSpec();
+        List<AlarmConditionFilter> conditionFilters = alarmRule.getCondition().getCondition();
+        this.filters = new KeyFilter[conditionFilters != null ? conditionFilters.size() : 0];
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = compileFilter(conditionFilters.get(i), keySlots);
+        }
+        this.specValueSource = compileSpecValueSource(this.spec, keySlots);
+    }
+
+    boolean eval(DataSnapshot data, DynamicPredicateValueCtx ctx) {
+        for (KeyFilter filter : filters) {
+            EntityKeyValue value = filter.constant ? filter.constantValue : data.getValue(filter.slot);
+            if (value == null || !filter.predicate.eval(value, data, ctx)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Resolves the dynamic value of the duration or repeating condition spec.
+     */
+    EntityKeyValue getSpecDynamicValue(DataSnapshot data, DynamicPredicateValueCtx ctx) {
+        return specValueSource != null ? specValueSource.resolve(data, ctx) : null;
+    }
+
+    private static DynamicValueSource compileSpecValueSource(AlarmConditionSpec spec, ToIntFunction<AlarmConditionFilterKey> keySlots) {
+        FilterPredicateValue<?> predicateValue;
+        switch (spec.getType()) {
+            case DURATION:
+                predicateValue = ((DurationAlarmConditionSpec) spec).getPredicate();
+                break;
+            case REPEATING:
+                predicateValue = ((RepeatingAlarmConditionSpec) spec).getPredicate();
+                break;
+            default:
+                return null;
+        }
+        if (predicateValue != null && predicateValue.getDynamicValue() != null && predicateValue.getDynamicValue().getSourceAttribute() != null) {
+            return compileDynamicValue(predicateValue.getDynamicValue(), keySlots);
+        }
+        return null;
+    }
+
+    private static KeyFilter compileFilter(AlarmConditionFilter filter, ToIntFunction<AlarmConditionFilterKey> keySlots) {
+        boolean constant = filter.getKey().getType() == AlarmConditionKeyType.CONSTANT;
+        EntityKeyValue constantValue = null;
+        int slot = -1;
+        if (constant) {
+            try {
+                constantValue = getConstantValue(filter);
+            } catch (RuntimeException e) {
+                log.warn("Failed to parse constant value from filter: {}", filter, e);
+            }
+        } else {
+            slot = keySlots.applyAsInt(filter.getKey());
+        }
+        return new KeyFilter(constant, slot, constantValue, compilePredicate(filter.getPredicate(), constant, keySlots));
+    }
+
+    private static EntityKeyValue getConstantValue(AlarmConditionFilter filter) {
+        EntityKeyValue value = new EntityKeyValue();
+        String valueStr = filter.getValue().toString();
+        switch (filter.getValueType()) {
+            case STRING:
+                value.setStrValue(valueStr);
+                break;
+            case DATE_TIME:
+                value.setLngValue(Long.valueOf(valueStr));
+                break;
+            case NUMERIC:
+                value.setDblValue(Double.valueOf(valueStr));
+                break;
+            case BOOLEAN:
+                value.setBoolValue(Boolean.valueOf(valueStr));
+                break;
+        }
+        return value;
+    }
+
+    private static ValuePredicate compilePredicate(KeyFilterPredicate predicate, boolean constantKey, ToIntFunction<AlarmConditionFilterKey> keySlots) {
+        switch (predicate.getType()) {
+            case STRING:
+                StringFilterPredicate strPredicate = (StringFilterPredicate) predicate;
+                return new StringPredicate(strPredicate.getOperation(), strPredicate.isIgnoreCase(),
+                        compilePredicateValue(strPredicate.getValue(), constantKey, keySlots, CompiledAlarmRule::getStrValue));
+            case NUMERIC:
+                NumericFilterPredicate numPredicate = (NumericFilterPredicate) predicate;
+                return new NumericPredicate(numPredicate.getOperation(),
+                        compilePredicateValue(numPredicate.getValue(), constantKey, keySlots, CompiledAlarmRule::getDblValue));
+            case BOOLEAN:
+                BooleanFilterPredicate boolPredicate = (BooleanFilterPredicate) predicate;
+                return new BooleanPredicate(boolPredicate.getOperation(),
+                        compilePredicateValue(boolPredicate.getValue(), constantKey, keySlots, CompiledAlarmRule::getBoolValue));
+            case COMPLEX:
+                ComplexFilterPredicate complexPredicate = (ComplexFilterPredicate) predicate;
+                ValuePredicate[] predicates = new ValuePredicate[complexPredicate.getPredicates().size()];
+                for (int i = 0; i < predicates.length; i++) {
+                    predicates[i] = compilePredicate(complexPredicate.getPredicates().get(i), constantKey, keySlots);
+                }
+                return new ComplexPredicate(complexPredicate.getOperation(), predicates);
+            default:
+                return (value, data, ctx) -> false;
+        }
+    }
+
+    private static <T> PredicateValue<T> compilePredicateValue(FilterPredicateValue<T> value, boolean constantKey,
+                                                               ToIntFunction<AlarmConditionFilterKey> keySlots,
+                                                               Function<EntityKeyValue, T> transformFunction) {
+        // the default value is not applicable to the constant keys
+        T defaultValue = constantKey ? null : value.getDefaultValue();
+        return new PredicateValue<>(defaultValue, compileDynamicValue(value.getDynamicValue(), keySlots), transformFunction);
+    }
+
+    private static DynamicValueSource compileDynamicValue(DynamicValue<?> value, ToIntFunction<AlarmConditionFilterKey> keySlots) {
+        if (value == null || value.getSourceType() == null) {
+            return null;
+        }
+        int slot = value.getSourceType() == DynamicValueSourceType.CURRENT_DEVICE ?
+                keySlots.applyAsInt(new AlarmConditionFilterKey(AlarmConditionKeyType.ATTRIBUTE, value.getSourceAttribute())) : -1;
+        return new DynamicValueSource(value.getSourceType(), value.getSourceAttribute(), value.isInherit(), slot);
+    }
+
+    static String getStrValue(EntityKeyValue ekv) {
+        switch (ekv.getDataType()) {
+            case LONG:
+                return ekv.getLngValue() != null ? ekv.getLngValue().toString() : null;
+            case DOUBLE:
+                return ekv.getDblValue() != null ? ekv.getDblValue().toString() : null;
+            case BOOLEAN:
+                return ekv.getBoolValue() != null ? ekv.getBoolValue().toString() : null;
+            case STRING:
+                return ekv.getStrValue();
+            case JSON:
+                return ekv.getJsonValue();
+            default:
+                return null;
+        }
+    }
+
+    static Double getDblValue(EntityKeyValue ekv) {
+        switch (ekv.getDataType()) {
+            case LONG:
+                return ekv.getLngValue() != null ? ekv.getLngValue().doubleValue() : null;
+            case DOUBLE:
+                return ekv.getDblValue() != null ? ekv.getDblValue() : null;
+            case BOOLEAN:
+                return ekv.getBoolValue() != null ? (ekv.getBoolValue() ? 1.0 : 0.0) : null;
+            case STRING:
+                try {
+                    return Double.parseDouble(ekv.getStrValue());
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            case JSON:
+                try {
+                    return Double.parseDouble(ekv.getJsonValue());
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    static Boolean getBoolValue(EntityKeyValue ekv) {
+        switch (ekv.getDataType()) {
+            case LONG:
+                return ekv.getLngValue() != null ? ekv.getLngValue() > 0 : null;
+            case DOUBLE:
+                return ekv.getDblValue() != null ? ekv.getDblValue() > 0 : null;
+            case BOOLEAN:
+                return ekv.getBoolValue();
+            case STRING:
+                try {
+                    return Boolean.parseBoolean(ekv.getStrValue());
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            case JSON:
+                try {
+                    return Boolean.parseBoolean(ekv.getJsonValue());
+                } catch (RuntimeException e) {
+                    return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class KeyFilter {
+        private final boolean constant;
+        private final int slot;
+        private final EntityKeyValue constantValue;
+        private final ValuePredicate predicate;
+    }
+
+    private interface ValuePredicate {
+        boolean eval(EntityKeyValue value, DataSnapshot data, DynamicPredicateValueCtx ctx);
+    }
+
+    @RequiredArgsConstructor
+    private static class NumericPredicate implements ValuePredicate {
+        private final NumericFilterPredicate.NumericOperation operation;
+        private final PredicateValue<Double> predicateValue;
+
+        @Override
+        public boolean eval(EntityKeyValue ekv, DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            Double val = getDblValue(ekv);
+            if (val == null) {
+                return false;
+            }
+            Double predicateVal = predicateValue.get(data, ctx);
+            if (predicateVal == null) {
+                return false;
+            }
+            double value = val;
+            double threshold = predicateVal;
+            switch (operation) {
+                case NOT_EQUAL:
+                    // same semantics as Double.equals
+                    return Double.compare(value, threshold) != 0;
+                case EQUAL:
+                    return Double.compare(value, threshold) == 0;
+                case GREATER:
+                    return value > threshold;
+                case GREATER_OR_EQUAL:
+                    return value >= threshold;
+                case LESS:
+                    return value < threshold;
+                case LESS_OR_EQUAL:
+                    return value <= threshold;
+                default:
+                    throw new RuntimeException("Operation not supported: " + operation);
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class StringPredicate implements ValuePredicate {
+        private final StringFilterPredicate.StringOperation operation;
+        private final boolean ignoreCase;
+        private final PredicateValue<String> predicateValue;
+
+        @Override
+        public boolean eval(EntityKeyValue ekv, DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            String val = getStrValue(ekv);
+            if (val == null) {
+                return false;
+            }
+            String predicateVal = predicateValue.get(data, ctx);
+            if (predicateVal == null) {
+                return false;
+            }
+            if (ignoreCase) {
+                val = val.toLowerCase();
+                predicateVal = predicateVal.toLowerCase();
+            }
+            switch (operation) {
+                case CONTAINS:
+                    return val.contains(predicateVal);
+                case EQUAL:
+                    return val.equals(predicateVal);
+                case STARTS_WITH:
+                    return val.startsWith(predicateVal);
+                case ENDS_WITH:
+                    return val.endsWith(predicateVal);
+                case NOT_EQUAL:
+                    return !val.equals(predicateVal);
+                case NOT_CONTAINS:
+                    return !val.contains(predicateVal);
+                default:
+                    throw new RuntimeException("Operation not supported: " + operation);
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class BooleanPredicate implements ValuePredicate {
+        private final BooleanFilterPredicate.BooleanOperation operation;
+        private final PredicateValue<Boolean> predicateValue;
+
+        @Override
+        public boolean eval(EntityKeyValue ekv, DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            Boolean val = getBoolValue(ekv);
+            if (val == null) {
+                return false;
+            }
+            Boolean predicateVal = predicateValue.get(data, ctx);
+            if (predicateVal == null) {
+                return false;
+            }
+            switch (operation) {
+                case EQUAL:
+                    return val.booleanValue() == predicateVal.booleanValue();
+                case NOT_EQUAL:
+                    return val.booleanValue() != predicateVal.booleanValue();
+                default:
+                    throw new RuntimeException("Operation not supported: " + operation);
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class ComplexPredicate implements ValuePredicate {
+        private final ComplexFilterPredicate.ComplexOperation operation;
+        private final ValuePredicate[] predicates;
+
+        @Override
+        public boolean eval(EntityKeyValue ekv, DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            switch (operation) {
+                case OR:
+                    for (ValuePredicate predicate : predicates) {
+                        if (predicate.eval(ekv, data, ctx)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case AND:
+                    for (ValuePredicate predicate : predicates) {
+                        if (!predicate.eval(ekv, data, ctx)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                default:
+                    throw new RuntimeException("Operation not supported: " + operation);
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class PredicateValue<T> {
+        private final T defaultValue;
+        private final DynamicValueSource dynamicValue;
+        private final Function<EntityKeyValue, T> transformFunction;
+
+        T get(DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            if (dynamicValue != null) {
+                EntityKeyValue ekv = dynamicValue.resolve(data, ctx);
+                if (ekv != null) {
+                    T result = transformFunction.apply(ekv);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            }
+            return defaultValue;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class DynamicValueSource {
+        private final DynamicValueSourceType sourceType;
+        private final String sourceAttribute;
+        private final boolean inherit;
+        private final int slot;
+
+        EntityKeyValue resolve(DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            EntityKeyValue ekv = null;
+            switch (sourceType) {
+                case CURRENT_DEVICE:
+                    ekv = data.getValue(slot);
+                    if (ekv != null || !inherit) {
+                        break;
+                    }
+                case CURRENT_CUSTOMER:
+                    ekv = ctx.getCustomerValue(sourceAttribute);
+                    if (ekv != null || !inherit) {
+                        break;
+                    }
+                case CURRENT_TENANT:
+                    ekv = ctx.getTenantValue(sourceAttribute);
+            }
+            return ekv;
+        }
+    }
+}
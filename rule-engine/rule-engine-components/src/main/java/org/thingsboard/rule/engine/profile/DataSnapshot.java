@@ -22,21 +22,21 @@ import org.thingsboard.server.common.data.device.profile.AlarmConditionKeyType;
 import org.thingsboard.server.common.data.query.EntityKey;
 import org.thingsboard.server.common.data.query.EntityKeyType;
 
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-
+/**
+ * Latest values of the keys used by the alarm rules of the device, stored by the key slots of the compiled device profile.
+ */
 class DataSnapshot {
 
     private volatile boolean ready;
     @Getter
     @Setter
     private long ts;
-    private final Set<AlarmConditionFilterKey> keys;
-    private final Map<AlarmConditionFilterKey, EntityKeyValue> values = new ConcurrentHashMap<>();
+    private ProfileState profile;
+    private EntityKeyValue[] values;
 
-    DataSnapshot(Set<AlarmConditionFilterKey> entityKeysToFetch) {
-        this.keys = entityKeysToFetch;
+    DataSnapshot(ProfileState profile) {
+        this.profile = profile;
+        this.values = new EntityKeyValue[profile.getSlotKeys().length];
     }
 
     static AlarmConditionFilterKey toConditionKey(EntityKey key) {
@@ -59,18 +59,37 @@ class DataSnapshot {
         }
     }
 
-    void removeValue(EntityKey key) {
-        values.remove(toConditionKey(key));
+    /**
+     * Moves the values to the slots of the new device profile version. Values of the keys that are no longer used are dropped.
+     */
+    void updateProfile(ProfileState newProfile) {
+        EntityKeyValue[] newValues = new EntityKeyValue[newProfile.getSlotKeys().length];
+        AlarmConditionFilterKey[] oldKeys = profile.getSlotKeys();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                int slot = newProfile.getSlot(oldKeys[i]);
+                if (slot >= 0) {
+                    newValues[slot] = values[i];
+                }
+            }
+        }
+        this.profile = newProfile;
+        this.values = newValues;
     }
 
-    boolean putValue(AlarmConditionFilterKey key, long newTs, EntityKeyValue value) {
-        return putIfKeyExists(key, value, ts != newTs);
+    void removeValue(EntityKey key) {
+        int slot = profile.getSlot(toConditionKey(key));
+        if (slot >= 0) {
+            values[slot] = null;
+        }
     }
 
-    private boolean putIfKeyExists(AlarmConditionFilterKey key, EntityKeyValue value, boolean updateOfTs) {
-        if (keys.contains(key)) {
-            EntityKeyValue oldValue = values.put(key, value);
-            if (updateOfTs) {
+    boolean putValue(AlarmConditionFilterKey key, long newTs, EntityKeyValue value) {
+        int slot = profile.getSlot(key);
+        if (slot >= 0) {
+            EntityKeyValue oldValue = values[slot];
+            values[slot] = value;
+            if (ts != newTs) {
                 return true;
             } else {
                 return oldValue == null || !oldValue.equals(value);
@@ -81,6 +100,10 @@ class DataSnapshot {
     }
 
     EntityKeyValue getValue(AlarmConditionFilterKey key) {
-        return values.get(key);
+        return getValue(profile.getSlot(key));
+    }
+
+    EntityKeyValue getValue(int slot) {
+        return slot >= 0 ? values[slot] : null;
     }
 }
@@ -24,7 +24,6 @@ import org.thingsboard.rule.engine.profile.state.PersistedDeviceState;
 import org.thingsboard.rule.engine.telemetry.TbMsgTimeseriesNode;
 import org.thingsboard.server.common.data.DataConstants;
 import org.thingsboard.server.common.data.Device;
-import org.thingsboard.server.common.data.DeviceProfile;
 import org.thingsboard.server.common.data.alarm.Alarm;
 import org.thingsboard.server.common.data.device.profile.AlarmConditionFilterKey;
 import org.thingsboard.server.common.data.device.profile.AlarmConditionKeyType;
@@ -61,7 +60,7 @@ class DeviceState {
 
     private final boolean persistState;
     private final DeviceId deviceId;
-    private final ProfileState deviceProfile;
+    private ProfileState deviceProfile;
     private RuleNodeState state;
     private PersistedDeviceState pds;
     private DataSnapshot latestValues;
@@ -99,10 +98,11 @@ class DeviceState {
         }
     }
 
-    public void updateProfile(TbContext ctx, DeviceProfile deviceProfile) throws ExecutionException, InterruptedException {
+    public void updateProfile(TbContext ctx, ProfileState deviceProfile) throws ExecutionException, InterruptedException {
         Set<AlarmConditionFilterKey> oldKeys = this.deviceProfile.getEntityKeys();
-        this.deviceProfile.updateDeviceProfile(deviceProfile);
+        this.deviceProfile = deviceProfile;
         if (latestValues != null) {
+            latestValues.updateProfile(deviceProfile);
             Set<AlarmConditionFilterKey> keysToFetch = new HashSet<>(this.deviceProfile.getEntityKeys());
             keysToFetch.removeAll(oldKeys);
             if (!keysToFetch.isEmpty()) {
@@ -113,7 +113,9 @@ class DeviceState {
         alarmStates.keySet().removeIf(id -> !newAlarmStateIds.contains(id));
         for (DeviceProfileAlarm alarm : this.deviceProfile.getAlarmSettings()) {
             if (alarmStates.containsKey(alarm.getId())) {
-                alarmStates.get(alarm.getId()).updateState(alarm, getOrInitPersistedAlarmState(alarm));
+                AlarmState alarmState = alarmStates.get(alarm.getId());
+                alarmState.setDeviceProfile(this.deviceProfile);
+                alarmState.updateState(alarm, getOrInitPersistedAlarmState(alarm));
             } else {
                 alarmStates.putIfAbsent(alarm.getId(), new AlarmState(this.deviceProfile, deviceId, alarm, getOrInitPersistedAlarmState(alarm), dynamicPredicateValueCtx));
             }
@@ -128,7 +130,7 @@ class DeviceState {
         }
         if (persistState && stateChanged) {
             state.setStateData(JacksonUtil.toString(pds));
-            state = ctx.saveRuleNodeState(state);
+            ctx.saveRuleNodeStateAsync(state);
         }
     }
 
@@ -161,7 +163,7 @@ class DeviceState {
         }
         if (persistState && stateChanged) {
             state.setStateData(JacksonUtil.toString(pds));
-            state = ctx.saveRuleNodeState(state);
+            ctx.saveRuleNodeStateAsync(state);
         }
     }
 
@@ -284,7 +286,7 @@ class DeviceState {
             }
         }
         latestValues.setTs(newTs);
-        return new SnapshotUpdate(AlarmConditionKeyType.TIME_SERIES, keys);
+        return new SnapshotUpdate(AlarmConditionKeyType.TIME_SERIES, keys, deviceProfile.getAffectedRules(AlarmConditionKeyType.TIME_SERIES, keys));
     }
 
     private SnapshotUpdate merge(DataSnapshot latestValues, Set<AttributeKvEntry> attributes, String scope) {
@@ -298,7 +300,7 @@ class DeviceState {
             }
         }
         latestValues.setTs(newTs);
-        return new SnapshotUpdate(AlarmConditionKeyType.ATTRIBUTE, keys);
+        return new SnapshotUpdate(AlarmConditionKeyType.ATTRIBUTE, keys, deviceProfile.getAffectedRules(AlarmConditionKeyType.ATTRIBUTE, keys));
     }
 
     private static EntityKeyType getKeyTypeFromScope(String scope) {
@@ -315,7 +317,7 @@ class DeviceState {
 
     private DataSnapshot fetchLatestValues(TbContext ctx, EntityId originator) throws ExecutionException, InterruptedException {
         Set<AlarmConditionFilterKey> entityKeysToFetch = deviceProfile.getEntityKeys();
-        DataSnapshot result = new DataSnapshot(entityKeysToFetch);
+        DataSnapshot result = new DataSnapshot(deviceProfile);
         addEntityKeysToSnapshot(ctx, originator, entityKeysToFetch, result);
         return result;
     }
@@ -403,6 +405,17 @@ class DeviceState {
         return deviceProfile.getProfileId();
     }
 
+    /**
+     * Rough estimate of the memory used by the state: the alarm states and the persisted state json.
+     */
+    long estimateSize() {
+        long size = 256 + 512L * alarmStates.size();
+        if (state != null && state.getStateData() != null) {
+            size += 2L * state.getStateData().length();
+        }
+        return size;
+    }
+
     private PersistedAlarmState getOrInitPersistedAlarmState(DeviceProfileAlarm alarm) {
         if (pds != null) {
             PersistedAlarmState alarmState = pds.getAlarmStates().get(alarm.getId());
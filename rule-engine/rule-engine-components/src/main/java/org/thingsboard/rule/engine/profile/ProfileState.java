@@ -34,37 +34,43 @@ import org.thingsboard.server.common.data.query.DynamicValueSourceType;
 import org.thingsboard.server.common.data.query.KeyFilterPredicate;
 import org.thingsboard.server.common.data.query.SimpleKeyFilterPredicate;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-
 
+/**
+ * Alarm rules of the device profile version, compiled once and shared by the states of all devices of the profile.
+ */
 class ProfileState {
 
-    private DeviceProfile deviceProfile;
+    private final DeviceProfile deviceProfile;
     @Getter(AccessLevel.PACKAGE)
-    private final List<DeviceProfileAlarm> alarmSettings = new CopyOnWriteArrayList<>();
+    private final List<DeviceProfileAlarm> alarmSettings = new ArrayList<>();
     @Getter(AccessLevel.PACKAGE)
-    private final Set<AlarmConditionFilterKey> entityKeys = ConcurrentHashMap.newKeySet();
+    private final Set<AlarmConditionFilterKey> entityKeys = new HashSet<>();
 
     private final Map<String, Map<AlarmSeverity, Set<AlarmConditionFilterKey>>> alarmCreateKeys = new HashMap<>();
     private final Map<String, Set<AlarmConditionFilterKey>> alarmClearKeys = new HashMap<>();
 
-    ProfileState(DeviceProfile deviceProfile) {
-        updateDeviceProfile(deviceProfile);
-    }
+    private final Map<AlarmConditionFilterKey, Integer> keySlots = new HashMap<>();
+    @Getter(AccessLevel.PACKAGE)
+    private final AlarmConditionFilterKey[] slotKeys;
+    private final Map<String, Map<AlarmSeverity, CompiledAlarmRule>> createRules = new HashMap<>();
+    private final Map<String, CompiledAlarmRule> clearRules = new HashMap<>();
+    // rules that use the key, so only the rules affected by the update are evaluated
+    private final Map<AlarmConditionFilterKey, BitSet> keyRules = new HashMap<>();
+    // rules that use time series keys and are not evaluated on attribute updates
+    private final BitSet tsRules = new BitSet();
+    private int rulesCount;
 
-    void updateDeviceProfile(DeviceProfile deviceProfile) {
+    ProfileState(DeviceProfile deviceProfile) {
         this.deviceProfile = deviceProfile;
-        alarmSettings.clear();
-        alarmCreateKeys.clear();
-        alarmClearKeys.clear();
-        entityKeys.clear();
         if (deviceProfile.getProfileData().getAlarms() != null) {
             alarmSettings.addAll(deviceProfile.getProfileData().getAlarms());
             for (DeviceProfileAlarm alarm : deviceProfile.getProfileData().getAlarms()) {
@@ -89,6 +95,29 @@ class ProfileState {
                 }
             }
         }
+        slotKeys = entityKeys.toArray(new AlarmConditionFilterKey[0]);
+        for (int i = 0; i < slotKeys.length; i++) {
+            keySlots.put(slotKeys[i], i);
+        }
+        for (DeviceProfileAlarm alarm : alarmSettings) {
+            Map<AlarmSeverity, CompiledAlarmRule> alarmCreateRules = createRules.computeIfAbsent(alarm.getId(), id -> new HashMap<>());
+            alarm.getCreateRules().forEach((severity, alarmRule) ->
+                    alarmCreateRules.put(severity, compileRule(alarmRule, getCreateAlarmKeys(alarm.getId(), severity))));
+            if (alarm.getClearRule() != null) {
+                clearRules.put(alarm.getId(), compileRule(alarm.getClearRule(), getClearAlarmKeys(alarm.getId())));
+            }
+        }
+    }
+
+    private CompiledAlarmRule compileRule(AlarmRule alarmRule, Set<AlarmConditionFilterKey> ruleKeys) {
+        int index = rulesCount++;
+        for (AlarmConditionFilterKey key : ruleKeys) {
+            keyRules.computeIfAbsent(key, k -> new BitSet()).set(index);
+            if (key.getType() == AlarmConditionKeyType.TIME_SERIES) {
+                tsRules.set(index);
+            }
+        }
+        return new CompiledAlarmRule(alarmRule, index, ruleKeys, this::getSlot);
     }
 
     private void addEntityKeysFromAlarmConditionSpec(AlarmRule alarmRule) {
@@ -148,6 +177,46 @@ class ProfileState {
         return deviceProfile.getId();
     }
 
+    /**
+     * Checks if the alarm rules of the device profile are the same as the compiled ones.
+     */
+    boolean isCompiledFrom(DeviceProfile deviceProfile) {
+        return this.deviceProfile == deviceProfile || (this.deviceProfile.getId().equals(deviceProfile.getId()) &&
+                Objects.equals(this.deviceProfile.getProfileData().getAlarms(), deviceProfile.getProfileData().getAlarms()));
+    }
+
+    int getSlot(AlarmConditionFilterKey key) {
+        Integer slot = keySlots.get(key);
+        return slot != null ? slot : -1;
+    }
+
+    CompiledAlarmRule getCreateRule(String alarmId, AlarmSeverity severity) {
+        Map<AlarmSeverity, CompiledAlarmRule> rules = createRules.get(alarmId);
+        return rules != null ? rules.get(severity) : null;
+    }
+
+    CompiledAlarmRule getClearRule(String alarmId) {
+        return clearRules.get(alarmId);
+    }
+
+    /**
+     * Returns the indexes of the rules that use the changed keys.
+     */
+    BitSet getAffectedRules(AlarmConditionKeyType updateType, Set<AlarmConditionFilterKey> changedKeys) {
+        BitSet result = new BitSet(rulesCount);
+        for (AlarmConditionFilterKey key : changedKeys) {
+            BitSet rules = keyRules.get(key);
+            if (rules != null) {
+                result.or(rules);
+            }
+        }
+        if (updateType == AlarmConditionKeyType.ATTRIBUTE) {
+            //If the attribute was updated, but no new telemetry arrived - we ignore this until new telemetry is there.
+            result.andNot(tsRules);
+        }
+        return result;
+    }
+
     Set<AlarmConditionFilterKey> getCreateAlarmKeys(String id, AlarmSeverity severity) {
         Map<AlarmSeverity, Set<AlarmConditionFilterKey>> sKeys = alarmCreateKeys.get(id);
         if (sKeys == null) {
@@ -21,6 +21,7 @@ import org.thingsboard.server.common.data.device.profile.AlarmConditionKeyType;
 import org.thingsboard.server.common.data.query.EntityKey;
 import org.thingsboard.server.common.data.query.EntityKeyType;
 
+import java.util.BitSet;
 import java.util.Set;
 
 class SnapshotUpdate {
@@ -29,10 +30,16 @@ class SnapshotUpdate {
     private final AlarmConditionKeyType type;
     @Getter
     private final Set<AlarmConditionFilterKey> keys;
+    private final BitSet affectedRules;
 
-    SnapshotUpdate(AlarmConditionKeyType type, Set<AlarmConditionFilterKey> keys) {
+    SnapshotUpdate(AlarmConditionKeyType type, Set<AlarmConditionFilterKey> keys, BitSet affectedRules) {
         this.type = type;
         this.keys = keys;
+        this.affectedRules = affectedRules;
+    }
+
+    boolean isAffected(int ruleIndex) {
+        return affectedRules.get(ruleIndex);
     }
 
     boolean hasUpdate(){
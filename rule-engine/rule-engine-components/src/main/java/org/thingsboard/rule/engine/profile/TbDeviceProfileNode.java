@@ -24,6 +24,7 @@ import org.thingsboard.rule.engine.api.TbContext;
 import org.thingsboard.rule.engine.api.TbNode;
 import org.thingsboard.rule.engine.api.TbNodeConfiguration;
 import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.rule.engine.api.TbNodeStateCache;
 import org.thingsboard.rule.engine.api.util.TbNodeUtils;
 import org.thingsboard.server.common.data.DataConstants;
 import org.thingsboard.server.common.data.Device;
@@ -67,13 +68,15 @@ public class TbDeviceProfileNode implements TbNode {
     private TbDeviceProfileNodeConfiguration config;
     private RuleEngineDeviceProfileCache cache;
     private TbContext ctx;
-    private final Map<DeviceId, DeviceState> deviceStates = new ConcurrentHashMap<>();
+    private TbNodeStateCache<DeviceId, DeviceState> deviceStates;
+    private final Map<DeviceProfileId, ProfileState> profileStates = new ConcurrentHashMap<>();
 
     @Override
     public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
         this.config = TbNodeUtils.convert(configuration, TbDeviceProfileNodeConfiguration.class);
         this.cache = ctx.getDeviceProfileCache();
         this.ctx = ctx;
+        this.deviceStates = ctx.createNodeStateCache(DeviceState::estimateSize);
         scheduleAlarmHarvesting(ctx, null);
         ctx.addDeviceProfileListeners(this::onProfileUpdate, this::onDeviceUpdate);
         if (config.isFetchAlarmRulesStateOnStart()) {
@@ -146,28 +149,48 @@ public class TbDeviceProfileNode implements TbNode {
 
     @Override
     public void onPartitionChangeMsg(TbContext ctx, PartitionChangeMsg msg) {
+        // Persist the pending states, so the servers that now own the entities fetch the latest ones
+        if (config.isPersistAlarmRulesState()) {
+            ctx.flushRuleNodeStates();
+        }
         // Cleanup the cache for all entities that are no longer assigned to current server partitions
-        deviceStates.entrySet().removeIf(entry -> !ctx.isLocalEntity(entry.getKey()));
+        deviceStates.removeNonLocal(ctx);
     }
 
     @Override
     public void destroy() {
         ctx.removeListeners();
+        if (config.isPersistAlarmRulesState()) {
+            ctx.flushRuleNodeStates();
+        }
         deviceStates.clear();
+        profileStates.clear();
     }
 
     protected DeviceState getOrCreateDeviceState(TbContext ctx, DeviceId deviceId, RuleNodeState rns) {
-        DeviceState deviceState = deviceStates.get(deviceId);
+        DeviceState deviceState = deviceStates.getIfPresent(deviceId);
         if (deviceState == null) {
             DeviceProfile deviceProfile = cache.get(ctx.getTenantId(), deviceId);
             if (deviceProfile != null) {
-                deviceState = new DeviceState(ctx, config, deviceId, new ProfileState(deviceProfile), rns);
+                deviceState = new DeviceState(ctx, config, deviceId, getProfileState(deviceProfile), rns);
                 deviceStates.put(deviceId, deviceState);
             }
         }
         return deviceState;
     }
 
+    /**
+     * Returns the alarm rules of the device profile, compiled once per profile version and shared by the device states.
+     */
+    private ProfileState getProfileState(DeviceProfile deviceProfile) {
+        ProfileState profileState = profileStates.get(deviceProfile.getId());
+        if (profileState == null || !profileState.isCompiledFrom(deviceProfile)) {
+            profileState = new ProfileState(deviceProfile);
+            profileStates.put(deviceProfile.getId(), profileState);
+        }
+        return profileState;
+    }
+
     protected void scheduleAlarmHarvesting(TbContext ctx, TbMsg msg) {
         TbMsg periodicCheck = TbMsg.newMsg(PERIODIC_MSG_TYPE, ctx.getTenantId(), msg != null ? msg.getCustomerId() : null, TbMsgMetaData.EMPTY, "{}");
         ctx.tellSelf(periodicCheck, TimeUnit.MINUTES.toMillis(1));
@@ -183,9 +206,10 @@ public class TbDeviceProfileNode implements TbNode {
         DeviceProfile deviceProfile = cache.get(ctx.getTenantId(), deviceProfileId);
         if (deviceProfile != null) {
             log.debug("[{}] Received device profile update notification: {}", ctx.getSelfId(), deviceProfile);
+            ProfileState profileState = getProfileState(deviceProfile);
             for (DeviceState state : deviceStates.values()) {
                 if (deviceProfile.getId().equals(state.getProfileId())) {
-                    state.updateProfile(ctx, deviceProfile);
+                    state.updateProfile(ctx, profileState);
                 }
             }
         } else {
@@ -207,7 +231,7 @@ public class TbDeviceProfileNode implements TbNode {
     }
 
     protected void invalidateDeviceProfileCache(DeviceId deviceId, String deviceJson) {
-        DeviceState deviceState = deviceStates.get(deviceId);
+        DeviceState deviceState = deviceStates.getIfPresent(deviceId);
         if (deviceState != null) {
             DeviceProfileId currentProfileId = deviceState.getProfileId();
             Device device = JacksonUtil.fromString(deviceJson, Device.class);
@@ -218,7 +242,7 @@ public class TbDeviceProfileNode implements TbNode {
     }
 
     protected void invalidateDeviceProfileCache(DeviceId deviceId, DeviceProfileId deviceProfileId) {
-        DeviceState deviceState = deviceStates.get(deviceId);
+        DeviceState deviceState = deviceStates.getIfPresent(deviceId);
         if (deviceState != null) {
             if (!deviceState.getProfileId().equals(deviceProfileId)) {
                 removeDeviceState(deviceId);
@@ -227,8 +251,9 @@ public class TbDeviceProfileNode implements TbNode {
     }
 
     private void removeDeviceState(DeviceId deviceId) {
-        DeviceState state = deviceStates.remove(deviceId);
-        if (config.isPersistAlarmRulesState() && (state != null || !config.isFetchAlarmRulesStateOnStart())) {
+        deviceStates.remove(deviceId);
+        // the state may be evicted from the cache, so the persisted one is removed regardless of the cached one
+        if (config.isPersistAlarmRulesState()) {
             ctx.removeRuleNodeStateForEntity(deviceId);
         }
     }
@@ -0,0 +1,277 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.delay;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.common.util.ListeningExecutor;
+import org.thingsboard.rule.engine.api.TbContext;
+import org.thingsboard.rule.engine.api.TbNodeConfiguration;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.RuleNodeDelayedMsgId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.rule.RuleNodeDelayedMsg;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.queue.PartitionChangeMsg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.thingsboard.rule.engine.api.TbRelationTypes.SUCCESS;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbMsgDelayNodeTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String LOADED_MSG_TYPE = "TbMsgDelayNodeLoadedMsg";
+
+    private final RuleNodeId ruleNodeId = new RuleNodeId(Uuids.timeBased());
+    private final DeviceId localDeviceId = new DeviceId(Uuids.timeBased());
+    private final DeviceId remoteDeviceId = new DeviceId(Uuids.timeBased());
+
+    @Mock
+    private TbContext ctx;
+
+    private TbMsgDelayNode node;
+
+    @Before
+    public void before() {
+        node = new TbMsgDelayNode();
+        lenient().when(ctx.getSelfId()).thenReturn(ruleNodeId);
+        lenient().when(ctx.isLocalEntity(any())).thenAnswer(invocation -> !remoteDeviceId.equals(invocation.getArgument(0)));
+        lenient().when(ctx.newMsg(any(), any(), any(), any(), any(), any())).thenAnswer(invocation ->
+                TbMsg.newMsg(invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(4), invocation.getArgument(5)));
+        lenient().when(ctx.newMsg(any(), any(), any(), any(TbMsgMetaData.class), any())).thenAnswer(invocation ->
+                TbMsg.newMsg(invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(3), invocation.getArgument(4)));
+        lenient().when(ctx.getDbCallbackExecutor()).thenReturn(new ListeningExecutor() {
+            @Override
+            public <T> ListenableFuture<T> executeAsync(Callable<T> task) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        lenient().when(ctx.clearRuleNodeDelayedMsgs()).thenReturn(Futures.immediateFuture(null));
+        lenient().when(ctx.removeRuleNodeDelayedMsg(any())).thenReturn(Futures.immediateFuture(null));
+        // loaded pages are handed over to the node right away, as the actor would do
+        lenient().doAnswer(invocation -> {
+            TbMsg msg = invocation.getArgument(0);
+            if (LOADED_MSG_TYPE.equals(msg.getType())) {
+                node.onMsg(ctx, msg);
+            }
+            return null;
+        }).when(ctx).tellSelf(any(), anyLong());
+    }
+
+    @Test
+    public void testMsgIsDelayedInMemory() throws Exception {
+        init(false, 10);
+        verify(ctx).clearRuleNodeDelayedMsgs();
+
+        TbMsg msg = newMsg(localDeviceId);
+        node.onMsg(ctx, msg);
+        verify(ctx).ack(msg);
+        TbMsg tickMsg = captureTickMsgs(1, 60000).get(0);
+
+        node.onMsg(ctx, tickMsg);
+        verify(ctx).enqueueForTellNext(same(msg), eq(SUCCESS));
+        // a tick of the delivered message is ignored
+        node.onMsg(ctx, tickMsg);
+        verify(ctx, times(1)).enqueueForTellNext(any(), any(String.class));
+        verify(ctx, never()).saveRuleNodeDelayedMsg(any());
+    }
+
+    @Test
+    public void testPersistedMsgsAreRestoredAndOverflowStaysInDatabase() throws Exception {
+        TbMsg restoredMsg = newMsg(localDeviceId);
+        RuleNodeDelayedMsg localDelayedMsg = newDelayedMsg(restoredMsg, System.currentTimeMillis() + 1500);
+        RuleNodeDelayedMsg remoteDelayedMsg = newDelayedMsg(newMsg(remoteDeviceId), System.currentTimeMillis() + 1000);
+        when(ctx.findRuleNodeDelayedMsgs(any())).thenReturn(Futures.immediateFuture(new PageData<>(Arrays.asList(remoteDelayedMsg, localDelayedMsg), 1, 2, false)));
+        init(true, 1);
+        verify(ctx, never()).clearRuleNodeDelayedMsgs();
+
+        // the node is at capacity with the restored message, so the new one is persisted only
+        TbMsg msg = newMsg(localDeviceId);
+        when(ctx.saveRuleNodeDelayedMsg(any())).thenAnswer(invocation -> Futures.immediateFuture(invocation.getArgument(0)));
+        node.onMsg(ctx, msg);
+        verify(ctx).ack(msg);
+        ArgumentCaptor<RuleNodeDelayedMsg> delayedMsgCaptor = ArgumentCaptor.forClass(RuleNodeDelayedMsg.class);
+        verify(ctx).saveRuleNodeDelayedMsg(delayedMsgCaptor.capture());
+        assertEquals(localDeviceId, delayedMsgCaptor.getValue().getEntityId());
+        assertEquals(msg.getData(), TbMsg.fromBytes(null, delayedMsgCaptor.getValue().getMsgData(), null).getData());
+
+        ArgumentCaptor<TbMsg> tellSelfCaptor = ArgumentCaptor.forClass(TbMsg.class);
+        ArgumentCaptor<Long> delayCaptor = ArgumentCaptor.forClass(Long.class);
+        // loaded page, restored message tick and poll tick
+        verify(ctx, times(3)).tellSelf(tellSelfCaptor.capture(), delayCaptor.capture());
+        assertEquals(LOADED_MSG_TYPE, tellSelfCaptor.getAllValues().get(0).getType());
+        TbMsg tickMsg = tellSelfCaptor.getAllValues().get(1);
+        assertEquals(localDelayedMsg.getUuidId().toString(), tickMsg.getData());
+        assertTrue(delayCaptor.getAllValues().get(1) <= 1500);
+
+        node.onMsg(ctx, tickMsg);
+        ArgumentCaptor<TbMsg> deliveredCaptor = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx).enqueueForTellNext(deliveredCaptor.capture(), eq(SUCCESS));
+        assertEquals(restoredMsg.getId(), deliveredCaptor.getValue().getId());
+        assertEquals(restoredMsg.getData(), deliveredCaptor.getValue().getData());
+        verify(ctx).removeRuleNodeDelayedMsg(localDelayedMsg.getId());
+    }
+
+    @Test
+    public void testMsgIsFailedIfNotPersisted() throws Exception {
+        when(ctx.findRuleNodeDelayedMsgs(any())).thenReturn(Futures.immediateFuture(new PageData<>(Collections.emptyList(), 0, 0, false)));
+        init(true, 10);
+
+        TbMsg msg = newMsg(localDeviceId);
+        RuntimeException error = new RuntimeException("Database is down");
+        when(ctx.saveRuleNodeDelayedMsg(any())).thenReturn(Futures.immediateFailedFuture(error));
+        node.onMsg(ctx, msg);
+        verify(ctx).tellFailure(msg, error);
+        verify(ctx, never()).ack(msg);
+
+        TbMsg tickMsg = captureTickMsgs(2, 60000).get(1);
+        node.onMsg(ctx, tickMsg);
+        verify(ctx, never()).enqueueForTellNext(any(), any(String.class));
+    }
+
+    @Test
+    public void testPersistedMsgsAreLoadedAsynchronously() throws Exception {
+        SettableFuture<PageData<RuleNodeDelayedMsg>> loadFuture = SettableFuture.create();
+        when(ctx.findRuleNodeDelayedMsgs(any())).thenReturn(loadFuture);
+        init(true, 10);
+        TbMsg pollMsg = captureTickMsgs(1, 1000).get(0);
+
+        // the poll does not start another load while the previous one is in progress
+        node.onMsg(ctx, pollMsg);
+        verify(ctx, times(1)).findRuleNodeDelayedMsgs(any());
+
+        TbMsg restoredMsg = newMsg(localDeviceId);
+        RuleNodeDelayedMsg delayedMsg = newDelayedMsg(restoredMsg, System.currentTimeMillis() + 1500);
+        loadFuture.set(new PageData<>(Collections.singletonList(delayedMsg), 1, 1, false));
+        List<TbMsg> tickMsgs = captureTickMsgs(3, 1000);
+        assertEquals(delayedMsg.getUuidId().toString(), tickMsgs.get(2).getData());
+
+        // the next poll loads again
+        node.onMsg(ctx, pollMsg);
+        verify(ctx, times(2)).findRuleNodeDelayedMsgs(any());
+    }
+
+    @Test
+    public void testPageOfPreviousPartitionsIsDiscarded() throws Exception {
+        SettableFuture<PageData<RuleNodeDelayedMsg>> staleFuture = SettableFuture.create();
+        when(ctx.findRuleNodeDelayedMsgs(any())).thenReturn(staleFuture)
+                .thenReturn(Futures.immediateFuture(new PageData<>(Collections.emptyList(), 0, 0, false)));
+        init(true, 10);
+
+        node.onPartitionChangeMsg(ctx, new PartitionChangeMsg(null, Collections.emptySet()));
+        verify(ctx, times(1)).findRuleNodeDelayedMsgs(any());
+
+        staleFuture.set(new PageData<>(Collections.singletonList(newDelayedMsg(newMsg(localDeviceId), System.currentTimeMillis())), 1, 1, false));
+        // the stale page is dropped and the messages are loaded again for the new partitions
+        verify(ctx, times(2)).findRuleNodeDelayedMsgs(any());
+        captureTickMsgs(1, 1000);
+    }
+
+    @Test
+    public void testFiredMsgIsNotReloadedWhileRemovalIsPending() throws Exception {
+        TbMsg restoredMsg = newMsg(localDeviceId);
+        RuleNodeDelayedMsg delayedMsg = newDelayedMsg(restoredMsg, System.currentTimeMillis() + 1500);
+        when(ctx.findRuleNodeDelayedMsgs(any())).thenAnswer(invocation ->
+                Futures.immediateFuture(new PageData<>(Collections.singletonList(delayedMsg), 1, 1, false)));
+        SettableFuture<Void> removeFuture = SettableFuture.create();
+        when(ctx.removeRuleNodeDelayedMsg(delayedMsg.getId())).thenReturn(removeFuture);
+        init(true, 10);
+
+        // restored message tick and poll tick
+        TbMsg tickMsg = captureTickMsgs(2, 1000).get(0);
+        assertEquals(delayedMsg.getUuidId().toString(), tickMsg.getData());
+        node.onMsg(ctx, tickMsg);
+        verify(ctx).enqueueForTellNext(any(), eq(SUCCESS));
+        verify(ctx).removeRuleNodeDelayedMsg(delayedMsg.getId());
+
+        // the row is still in the database, but the reload does not schedule it again
+        node.onPartitionChangeMsg(ctx, new PartitionChangeMsg(null, Collections.emptySet()));
+        verify(ctx, times(2)).findRuleNodeDelayedMsgs(any());
+        captureTickMsgs(2, 1000);
+
+        // the id is forgotten once the row is removed, the mocked page still returns it
+        removeFuture.set(null);
+        node.onPartitionChangeMsg(ctx, new PartitionChangeMsg(null, Collections.emptySet()));
+        verify(ctx, times(3)).findRuleNodeDelayedMsgs(any());
+        captureTickMsgs(3, 1000);
+    }
+
+    private void init(boolean persistPendingMsgs, int maxPendingMsgs) throws Exception {
+        TbMsgDelayNodeConfiguration config = new TbMsgDelayNodeConfiguration().defaultConfiguration();
+        config.setPersistPendingMsgs(persistPendingMsgs);
+        config.setMaxPendingMsgs(maxPendingMsgs);
+        node.init(ctx, new TbNodeConfiguration(mapper.valueToTree(config)));
+    }
+
+    private List<TbMsg> captureTickMsgs(int count, long expectedDelay) {
+        ArgumentCaptor<TbMsg> captor = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx, atLeast(count)).tellSelf(captor.capture(), anyLong());
+        List<TbMsg> tickMsgs = captor.getAllValues().stream()
+                .filter(msg -> !LOADED_MSG_TYPE.equals(msg.getType()))
+                .collect(Collectors.toList());
+        assertEquals(count, tickMsgs.size());
+        verify(ctx, atLeast(1)).tellSelf(any(), eq(expectedDelay));
+        return tickMsgs;
+    }
+
+    private TbMsg newMsg(EntityId originator) {
+        return TbMsg.newMsg("POST_TELEMETRY_REQUEST", originator, new TbMsgMetaData(), "{\"temperature\":42}");
+    }
+
+    private RuleNodeDelayedMsg newDelayedMsg(TbMsg msg, long fireTs) {
+        RuleNodeDelayedMsg delayedMsg = new RuleNodeDelayedMsg(new RuleNodeDelayedMsgId(Uuids.timeBased()));
+        delayedMsg.setRuleNodeId(ruleNodeId);
+        delayedMsg.setEntityId(msg.getOriginator());
+        delayedMsg.setFireTs(fireTs);
+        delayedMsg.setMsgData(TbMsg.toByteArray(msg));
+        return delayedMsg;
+    }
+}
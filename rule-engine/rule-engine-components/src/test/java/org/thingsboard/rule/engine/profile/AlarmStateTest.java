@@ -26,6 +26,7 @@ import org.thingsboard.server.common.data.device.profile.DurationAlarmConditionS
 import org.thingsboard.server.common.data.device.profile.RepeatingAlarmConditionSpec;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
 
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
@@ -78,7 +79,7 @@ public class AlarmStateTest {
         AlarmRule alarmRule = new AlarmRule();
         alarmRule.setCondition(alarmCondition);
 
-        return new AlarmRuleState(null, alarmRule, null, null, null);
+        return new AlarmRuleState(null, new CompiledAlarmRule(alarmRule, 0, Collections.emptySet(), key -> -1), null, null);
     }
 
     private AlarmState createMockAlarmState() {
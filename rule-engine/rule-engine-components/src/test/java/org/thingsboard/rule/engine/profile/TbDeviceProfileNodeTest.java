@@ -19,9 +19,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -30,10 +32,12 @@ import org.thingsboard.rule.engine.api.RuleEngineDeviceProfileCache;
 import org.thingsboard.rule.engine.api.TbContext;
 import org.thingsboard.rule.engine.api.TbNodeConfiguration;
 import org.thingsboard.rule.engine.api.TbNodeException;
+import org.thingsboard.rule.engine.api.TbNodeStateCache;
 import org.thingsboard.server.common.data.DataConstants;
 import org.thingsboard.server.common.data.Device;
 import org.thingsboard.server.common.data.DeviceProfile;
 import org.thingsboard.server.common.data.EntityType;
+import org.thingsboard.server.common.data.alarm.Alarm;
 import org.thingsboard.server.common.data.alarm.AlarmSeverity;
 import org.thingsboard.server.common.data.device.profile.AlarmCondition;
 import org.thingsboard.server.common.data.device.profile.AlarmConditionFilter;
@@ -55,6 +59,7 @@ import org.thingsboard.server.common.data.query.DynamicValueSourceType;
 import org.thingsboard.server.common.data.query.EntityKeyType;
 import org.thingsboard.server.common.data.query.EntityKeyValueType;
 import org.thingsboard.server.common.data.query.FilterPredicateValue;
+import org.thingsboard.server.common.data.query.KeyFilterPredicate;
 import org.thingsboard.server.common.data.query.NumericFilterPredicate;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgDataType;
@@ -68,6 +73,7 @@ import org.thingsboard.server.dao.timeseries.TimeseriesService;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -75,6 +81,7 @@ import java.util.Optional;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
@@ -109,6 +116,7 @@ public class TbDeviceProfileNodeTest {
         init();
 
         DeviceProfile deviceProfile = new DeviceProfile();
+        deviceProfile.setId(deviceProfileId);
         DeviceProfileData deviceProfileData = new DeviceProfileData();
         deviceProfileData.setAlarms(Collections.emptyList());
         deviceProfile.setProfileData(deviceProfileData);
@@ -128,6 +136,7 @@ public class TbDeviceProfileNodeTest {
         init();
 
         DeviceProfile deviceProfile = new DeviceProfile();
+        deviceProfile.setId(deviceProfileId);
         DeviceProfileData deviceProfileData = new DeviceProfileData();
         deviceProfileData.setAlarms(Collections.emptyList());
         deviceProfile.setProfileData(deviceProfileData);
@@ -147,6 +156,7 @@ public class TbDeviceProfileNodeTest {
         init();
 
         DeviceProfile deviceProfile = new DeviceProfile();
+        deviceProfile.setId(deviceProfileId);
         DeviceProfileData deviceProfileData = new DeviceProfileData();
 
         AlarmConditionFilter highTempFilter = new AlarmConditionFilter();
@@ -1170,6 +1180,7 @@ public class TbDeviceProfileNodeTest {
         init();
 
         DeviceProfile deviceProfile = new DeviceProfile();
+        deviceProfile.setId(deviceProfileId);
         DeviceProfileData deviceProfileData = new DeviceProfileData();
 
         AttributeKvCompositeKey compositeKey = new AttributeKvCompositeKey(
@@ -1244,6 +1255,7 @@ public class TbDeviceProfileNodeTest {
         init();
 
         DeviceProfile deviceProfile = new DeviceProfile();
+        deviceProfile.setId(deviceProfileId);
         DeviceProfileData deviceProfileData = new DeviceProfileData();
 
         AttributeKvCompositeKey compositeKey = new AttributeKvCompositeKey(
@@ -1330,6 +1342,7 @@ public class TbDeviceProfileNodeTest {
         init();
 
         DeviceProfile deviceProfile = new DeviceProfile();
+        deviceProfile.setId(deviceProfileId);
         DeviceProfileData deviceProfileData = new DeviceProfileData();
 
         AttributeKvCompositeKey compositeKey = new AttributeKvCompositeKey(
@@ -1409,6 +1422,78 @@ public class TbDeviceProfileNodeTest {
         verify(ctx, Mockito.never()).tellFailure(Mockito.any(), Mockito.any());
     }
 
+    @Test
+    public void testOnlyAlarmsOfUpdatedKeysAreEvaluated() throws Exception {
+        init();
+
+        int alarmsCount = 60;
+        List<DeviceProfileAlarm> alarms = new ArrayList<>();
+        ObjectNode allKeysData = mapper.createObjectNode();
+        for (int i = 0; i < alarmsCount; i++) {
+            String key = "temperature" + i;
+            allKeysData.put(key, 20);
+
+            NumericFilterPredicate highPredicate = new NumericFilterPredicate();
+            highPredicate.setOperation(NumericFilterPredicate.NumericOperation.GREATER);
+            highPredicate.setValue(new FilterPredicateValue<>(100.0));
+            NumericFilterPredicate lowPredicate = new NumericFilterPredicate();
+            lowPredicate.setOperation(NumericFilterPredicate.NumericOperation.LESS);
+            lowPredicate.setValue(new FilterPredicateValue<>(0.0));
+
+            DeviceProfileAlarm dpa = new DeviceProfileAlarm();
+            dpa.setId("alarm" + i);
+            dpa.setAlarmType("alarm" + i);
+            dpa.setCreateRules(new TreeMap<>(Collections.singletonMap(AlarmSeverity.CRITICAL, newAlarmRule(key, highPredicate))));
+            dpa.setClearRule(newAlarmRule(key, lowPredicate));
+            alarms.add(dpa);
+        }
+        DeviceProfile deviceProfile = new DeviceProfile();
+        deviceProfile.setId(deviceProfileId);
+        DeviceProfileData deviceProfileData = new DeviceProfileData();
+        deviceProfileData.setAlarms(alarms);
+        deviceProfile.setProfileData(deviceProfileData);
+
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(deviceProfile);
+        Mockito.when(timeseriesService.findLatest(Mockito.eq(tenantId), Mockito.eq(deviceId), Mockito.anyCollection()))
+                .thenReturn(Futures.immediateFuture(Collections.emptyList()));
+        Mockito.when(alarmService.findLatestByOriginatorAndType(Mockito.eq(tenantId), Mockito.eq(deviceId), Mockito.anyString()))
+                .thenReturn(Futures.immediateFuture(null));
+        Mockito.when(alarmService.createOrUpdateAlarm(Mockito.any())).thenAnswer(AdditionalAnswers.returnsFirstArg());
+        TbMsg theMsg = TbMsg.newMsg("ALARM", deviceId, new TbMsgMetaData(), "");
+        Mockito.when(ctx.newMsg(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyString())).thenReturn(theMsg);
+
+        node.onMsg(ctx, newTelemetryMsg(mapper.writeValueAsString(allKeysData)));
+        verify(alarmService, Mockito.never()).createOrUpdateAlarm(Mockito.any());
+
+        node.onMsg(ctx, newTelemetryMsg("{\"temperature5\":150}"));
+        node.onMsg(ctx, newTelemetryMsg("{\"temperature7\":150}"));
+        // the alarm of temperature5 is not evaluated again on the update of temperature7
+        node.onMsg(ctx, newTelemetryMsg("{\"temperature9\":50}"));
+        ArgumentCaptor<Alarm> alarmCaptor = ArgumentCaptor.forClass(Alarm.class);
+        verify(alarmService, Mockito.times(2)).createOrUpdateAlarm(alarmCaptor.capture());
+        Assert.assertEquals(Arrays.asList("alarm5", "alarm7"),
+                alarmCaptor.getAllValues().stream().map(Alarm::getType).collect(Collectors.toList()));
+        verify(ctx, Mockito.times(2)).tellNext(theMsg, "Alarm Created");
+        verify(ctx, Mockito.never()).tellFailure(Mockito.any(), Mockito.any());
+    }
+
+    private AlarmRule newAlarmRule(String key, KeyFilterPredicate predicate) {
+        AlarmConditionFilter filter = new AlarmConditionFilter();
+        filter.setKey(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, key));
+        filter.setValueType(EntityKeyValueType.NUMERIC);
+        filter.setPredicate(predicate);
+        AlarmCondition condition = new AlarmCondition();
+        condition.setCondition(Collections.singletonList(filter));
+        AlarmRule alarmRule = new AlarmRule();
+        alarmRule.setCondition(condition);
+        return alarmRule;
+    }
+
+    private TbMsg newTelemetryMsg(String data) {
+        return TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, new TbMsgMetaData(),
+                TbMsgDataType.JSON, data, null, null);
+    }
+
     private void init() throws TbNodeException {
         Mockito.when(ctx.getTenantId()).thenReturn(tenantId);
         Mockito.when(ctx.getDeviceProfileCache()).thenReturn(cache);
@@ -1416,6 +1501,7 @@ public class TbDeviceProfileNodeTest {
         Mockito.when(ctx.getAlarmService()).thenReturn(alarmService);
         Mockito.when(ctx.getDeviceService()).thenReturn(deviceService);
         Mockito.when(ctx.getAttributesService()).thenReturn(attributesService);
+        Mockito.when(ctx.createNodeStateCache(Mockito.any())).thenAnswer(invocation -> new TbNodeStateCache<>(0, 0, invocation.getArgument(0)));
         TbNodeConfiguration nodeConfiguration = new TbNodeConfiguration(mapper.createObjectNode());
         node = new TbDeviceProfileNode();
         node.init(ctx, nodeConfiguration);